@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.filter;
+
+import java.util.Collection;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.apache.yetus.audience.InterfaceStability;
+
+/**
+ * Statistics of the cells of a data block of a store file, passed to
+ * {@link Filter#canSkipBlock(BlockStats)}. All bounds are inclusive, and may be looser than the
+ * actual minimum and maximum, e.g. as long values are truncated. A statistic which is not known,
+ * either as it was not recorded when the file was written or as using it could change the result
+ * of the scan, gives no bound.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface BlockStats {
+
+  /** Returns a lower bound of the timestamps of the cells, {@link Long#MIN_VALUE} if unknown */
+  long getMinTimestamp();
+
+  /** Returns an upper bound of the timestamps of the cells, {@link Long#MAX_VALUE} if unknown */
+  long getMaxTimestamp();
+
+  /** Returns a lower bound of the qualifiers of the cells, empty if unknown */
+  byte[] getMinQualifier();
+
+  /** Returns an upper bound of the qualifiers of the cells, or null if unknown */
+  byte[] getMaxQualifier();
+
+  /**
+   * Returns whether the values of every cell of the block are known to be within the value bounds
+   * of their qualifier, i.e. whether {@link #getQualifiers()} covers all the cells of the block.
+   */
+  boolean hasAllValueBounds();
+
+  /** Returns the qualifiers of the cells with known value bounds, see {@link #getMinValue} */
+  Collection<byte[]> getQualifiers();
+
+  /**
+   * Returns a lower bound of the values of the cells with the given qualifier, or null if unknown
+   */
+  byte[] getMinValue(byte[] qualifier);
+
+  /**
+   * Returns an upper bound of the values of the cells with the given qualifier, or null if unknown
+   */
+  byte[] getMaxValue(byte[] qualifier);
+}
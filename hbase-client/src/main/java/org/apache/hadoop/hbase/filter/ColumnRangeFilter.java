@@ -130,6 +130,22 @@ public class ColumnRangeFilter extends FilterBase implements HintingFilter {
     return ReturnCode.NEXT_ROW;
   }
 
+  @Override
+  public boolean canSkipBlock(BlockStats stats) {
+    byte[] maxQualifier = stats.getMaxQualifier();
+    if (this.minColumn != null && maxQualifier != null) {
+      int cmp = Bytes.compareTo(maxQualifier, this.minColumn);
+      if (cmp < 0 || (cmp == 0 && !this.minColumnInclusive)) {
+        return true;
+      }
+    }
+    if (this.maxColumn != null) {
+      int cmp = Bytes.compareTo(stats.getMinQualifier(), this.maxColumn);
+      return cmp > 0 || (cmp == 0 && !this.maxColumnInclusive);
+    }
+    return false;
+  }
+
   public static Filter createFilterFromArguments(ArrayList<byte[]> filterArguments) {
     Preconditions.checkArgument(filterArguments.size() == 4, "Expected 4 but got: %s",
       filterArguments.size());
@@ -19,6 +19,7 @@ package org.apache.hadoop.hbase.filter;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Objects;
 import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.CompareOperator;
@@ -136,6 +137,43 @@ public abstract class CompareFilter extends FilterBase {
     }
   }
 
+  /**
+   * Returns whether a value between the given bounds may pass the compare op, i.e. false only if
+   * the comparator orders values as bytes, as {@link BinaryComparator} and
+   * {@link BinaryPrefixComparator} do, and no value between the bounds can pass.
+   * @param min inclusive lower bound of the values, or null if unknown
+   * @param max inclusive upper bound of the values, or null if unknown
+   */
+  static boolean mayMatch(final CompareOperator op, final ByteArrayComparable comparator,
+    byte[] min, byte[] max) {
+    byte[] operand = comparator.getValue();
+    if (comparator.getClass() == BinaryPrefixComparator.class) {
+      // Values are compared through their prefix of the length of the operand, in the same order.
+      min = min == null ? null : Arrays.copyOf(min, Math.min(min.length, operand.length));
+      max = max == null ? null : Arrays.copyOf(max, Math.min(max.length, operand.length));
+    } else if (comparator.getClass() != BinaryComparator.class) {
+      return true;
+    }
+    int cmpMin = min == null ? -1 : Bytes.compareTo(min, operand);
+    int cmpMax = max == null ? 1 : Bytes.compareTo(max, operand);
+    switch (op) {
+      case LESS:
+        return cmpMin < 0;
+      case LESS_OR_EQUAL:
+        return cmpMin <= 0;
+      case EQUAL:
+        return cmpMin <= 0 && cmpMax >= 0;
+      case NOT_EQUAL:
+        return cmpMin != 0 || cmpMax != 0;
+      case GREATER_OR_EQUAL:
+        return cmpMax >= 0;
+      case GREATER:
+        return cmpMax > 0;
+      default:
+        return true;
+    }
+  }
+
   /** Returns an array of heterogeneous objects */
   public static ArrayList<Object> extractArguments(ArrayList<byte[]> filterArguments) {
     Preconditions.checkArgument(filterArguments.size() == 2, "Expected 2 but got: %s",
@@ -198,6 +198,21 @@ public abstract class Filter {
    */
   abstract public boolean isFamilyEssential(byte[] name) throws IOException;
 
+  /**
+   * Check whether this filter rejects every cell of a data block with the given statistics, so
+   * that the store file scanner may move past the block without reading it. Only asked for
+   * blocks free of delete markers, and for filters applied to the cells of a single column family.
+   * The rejection must not depend on the other cells of a row, i.e. a filter deciding on whole rows
+   * must return false. Concrete implementers can signal a failure condition in their code by
+   * throwing an {@link IOException}.
+   * @param stats the statistics of the cells of the block
+   * @return true if no cell of the block can be included, false if some may be
+   * @throws IOException in case an I/O or an filter specific failure needs to be signaled.
+   */
+  public boolean canSkipBlock(BlockStats stats) throws IOException {
+    return false;
+  }
+
   /**
    * TODO: JAVADOC Concrete implementers can signal a failure condition in their code by throwing an
    * {@link IOException}.
@@ -60,6 +60,12 @@ public class QualifierFilter extends CompareFilter {
     return ReturnCode.INCLUDE;
   }
 
+  @Override
+  public boolean canSkipBlock(BlockStats stats) {
+    return !mayMatch(getCompareOperator(), this.comparator, stats.getMinQualifier(),
+      stats.getMaxQualifier());
+  }
+
   public static Filter createFilterFromArguments(ArrayList<byte[]> filterArguments) {
     ArrayList<?> arguments = CompareFilter.extractArguments(filterArguments);
     CompareOperator compareOp = (CompareOperator) arguments.get(0);
@@ -116,6 +116,12 @@ public class TimestampsFilter extends FilterBase implements HintingFilter {
     return canHint ? ReturnCode.SEEK_NEXT_USING_HINT : ReturnCode.SKIP;
   }
 
+  @Override
+  public boolean canSkipBlock(BlockStats stats) {
+    Long timestamp = timestamps.ceiling(stats.getMinTimestamp());
+    return timestamp == null || timestamp > stats.getMaxTimestamp();
+  }
+
   /**
    * Pick the next cell that the scanner should seek to. Since this can skip any number of cells any
    * of which can be a delete this can resurect old data. The method will only be used if canHint
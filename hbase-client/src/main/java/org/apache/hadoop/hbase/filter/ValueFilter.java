@@ -61,6 +61,22 @@ public class ValueFilter extends CompareFilter {
     return ReturnCode.INCLUDE;
   }
 
+  @Override
+  public boolean canSkipBlock(BlockStats stats) {
+    if (!stats.hasAllValueBounds()) {
+      return false;
+    }
+    for (byte[] qualifier : stats.getQualifiers()) {
+      if (
+        mayMatch(getCompareOperator(), this.comparator, stats.getMinValue(qualifier),
+          stats.getMaxValue(qualifier))
+      ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   public static Filter createFilterFromArguments(ArrayList<byte[]> filterArguments) {
     @SuppressWarnings("rawtypes") // for arguments
     ArrayList arguments = CompareFilter.extractArguments(filterArguments);
@@ -72,6 +72,9 @@ public class HFileBlockDefaultEncodingContext implements HFileBlockEncodingConte
 
   private EncodingState encoderState;
 
+  /** Whether row index encoded blocks are written with a hash index of their rows */
+  private final boolean rowHashIndexEnabled;
+
   /**
    * @param conf        configuraton
    * @param encoding    encoding used
@@ -82,6 +85,8 @@ public class HFileBlockDefaultEncodingContext implements HFileBlockEncodingConte
     byte[] headerBytes, HFileContext fileContext) {
     this.encodingAlgo = encoding;
     this.fileContext = fileContext;
+    this.rowHashIndexEnabled = conf != null && conf.getBoolean(
+      RowIndexCodecV1.ROW_HASH_INDEX_ENABLED_KEY, RowIndexCodecV1.DEFAULT_ROW_HASH_INDEX_ENABLED);
     Compression.Algorithm compressionAlgorithm =
       fileContext.getCompression() == null ? NONE : fileContext.getCompression();
     if (compressionAlgorithm != NONE) {
@@ -114,6 +119,11 @@ public class HFileBlockDefaultEncodingContext implements HFileBlockEncodingConte
       "Please pass HConstants.HFILEBLOCK_DUMMY_HEADER instead of null for param headerBytes");
   }
 
+  /** Returns whether row index encoded blocks are written with a hash index of their rows */
+  public boolean isRowHashIndexEnabled() {
+    return rowHashIndexEnabled;
+  }
+
   /**
    * prepare to start a new encoding.
    */
@@ -32,7 +32,10 @@ public enum IndexBlockEncoding {
 
   /** Disable index block encoding. */
   NONE(0, null),
-  // id 1 is reserved for the PREFIX_TREE algorithm to be added later
+  /**
+   * Store the key bytes shared by all entries of an index block once and front code the rest. The
+   * encoder lives in hbase-server, see PrefixTreeIndexBlockEncoder.
+   */
   PREFIX_TREE(1, null);
 
   private final short id;
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.encoding;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.apache.hadoop.hbase.ByteBufferExtendedCell;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A hash table of the rows of a {@link RowIndexCodecV1} block, from the hash of a row to its index
+ * in the row offsets, so that a seek to an exact row takes a single row comparison instead of a
+ * binary search. Like the data block hash index of RocksDB, every bucket holds a single row, or
+ * tells that several rows hash to it, in which case the seeker falls back to the binary search, as
+ * it does for rows not in the block, since it then has to find where the row would be.
+ * <p>
+ * Format, written between the row offsets and the data size of the block, where readers unaware of
+ * it skip it: integer: number of buckets, short: bucket0, short: bucket1, ... A bucket is 0 if no
+ * row hashes to it, {@link #COLLISION} if several rows do, and the index of the row plus 1
+ * otherwise.
+ */
+@InterfaceAudience.Private
+final class RowHashIndex {
+
+  private static final int EMPTY = 0;
+  private static final int COLLISION = 0xFFFF;
+  /** Blocks with more rows are written without hash index */
+  static final int MAX_ROWS = COLLISION - 2;
+  /** Size of the index per row, counted in the encoded size of a block */
+  static final int BYTES_PER_ROW = Bytes.SIZEOF_SHORT;
+
+  /** Returned by {@link #lookup} when the index does not tell the row */
+  static final int UNKNOWN = -1;
+
+  private final ByteBuff buckets;
+  private final int numBuckets;
+
+  private RowHashIndex(ByteBuff buckets, int numBuckets) {
+    this.buckets = buckets;
+    this.numBuckets = numBuckets;
+  }
+
+  /**
+   * Returns the hash index of the block, given the block positioned after its row offsets and
+   * limited to before its data size, or null if the block has none.
+   */
+  static RowHashIndex read(ByteBuff buffer) {
+    if (buffer.remaining() < Bytes.SIZEOF_INT) {
+      return null;
+    }
+    int numBuckets = buffer.getIntAfterPosition(0);
+    if (numBuckets <= 0 || buffer.remaining() < Bytes.SIZEOF_INT + numBuckets * BYTES_PER_ROW) {
+      return null;
+    }
+    ByteBuff buckets = buffer.duplicate();
+    buckets.position(buffer.position() + Bytes.SIZEOF_INT);
+    buckets.limit(buckets.position() + numBuckets * BYTES_PER_ROW);
+    return new RowHashIndex(buckets.slice(), numBuckets);
+  }
+
+  /**
+   * Returns the index of the only row of the block which may be the row of the given cell, or
+   * {@link #UNKNOWN}. The caller has to check that the row matches.
+   */
+  int lookup(Cell cell) {
+    int bucket = buckets.getShortAfterPosition(bucket(hash(cell), numBuckets) * BYTES_PER_ROW)
+      & 0xFFFF;
+    return bucket == EMPTY || bucket == COLLISION ? UNKNOWN : bucket - 1;
+  }
+
+  private static int bucket(int hash, int numBuckets) {
+    return (hash & Integer.MAX_VALUE) % numBuckets;
+  }
+
+  /** Returns the hash of the row of the given cell. */
+  static int hash(Cell cell) {
+    int hash = 1;
+    int length = cell.getRowLength();
+    if (cell instanceof ByteBufferExtendedCell) {
+      ByteBuffer row = ((ByteBufferExtendedCell) cell).getRowByteBuffer();
+      int position = ((ByteBufferExtendedCell) cell).getRowPosition();
+      for (int i = 0; i < length; i++) {
+        hash = 31 * hash + row.get(position + i);
+      }
+    } else {
+      byte[] row = cell.getRowArray();
+      int offset = cell.getRowOffset();
+      for (int i = 0; i < length; i++) {
+        hash = 31 * hash + row[offset + i];
+      }
+    }
+    // Spreads the low bits, the bucket being taken modulo a small number.
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    return hash ^ (hash >>> 13);
+  }
+
+  /**
+   * Writes the hash index of the rows of a block.
+   * @param hashes the hashes of the rows, in order, only the first rowCount ones being used
+   */
+  static void write(DataOutputStream out, int[] hashes, int rowCount) throws IOException {
+    // A load factor of 0.75. The rows being no more than MAX_ROWS, the buckets fit a short.
+    int numBuckets = rowCount + rowCount / 3 + 1;
+    int[] buckets = new int[numBuckets];
+    Arrays.fill(buckets, EMPTY);
+    for (int i = 0; i < rowCount; i++) {
+      int bucket = bucket(hashes[i], numBuckets);
+      buckets[bucket] = buckets[bucket] == EMPTY ? i + 1 : COLLISION;
+    }
+    out.writeInt(numBuckets);
+    for (int bucket : buckets) {
+      out.writeShort(bucket);
+    }
+  }
+}
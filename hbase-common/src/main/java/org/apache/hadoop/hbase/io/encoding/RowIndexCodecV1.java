@@ -38,10 +38,19 @@ import org.apache.yetus.audience.InterfaceAudience;
  * Store cells following every row's start offset, so we can binary search to a row's cells. Format:
  * flat cells integer: number of rows integer: row0's offset integer: row1's offset .... integer:
  * dataSize
+ * <p>
+ * With {@link #ROW_HASH_INDEX_ENABLED_KEY}, a {@link RowHashIndex} of the rows is written before
+ * the data size, so that seeks to exact rows, as Gets do, skip the binary search. Readers unaware
+ * of it skip it, so the encoding id stays the same.
  */
 @InterfaceAudience.Private
 public class RowIndexCodecV1 extends AbstractDataBlockEncoder {
 
+  /** Whether the blocks are written with a hash index of their rows, also settable per family */
+  public static final String ROW_HASH_INDEX_ENABLED_KEY =
+    "hbase.io.encoding.row.index.hash.enabled";
+  public static final boolean DEFAULT_ROW_HASH_INDEX_ENABLED = false;
+
   private static class RowIndexEncodingState extends EncodingState {
     RowIndexEncoderV1 encoder = null;
 
@@ -19,6 +19,7 @@ package org.apache.hadoop.hbase.io.encoding;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import org.apache.hadoop.hbase.ExtendedCell;
 import org.apache.hadoop.hbase.KeyValueUtil;
 import org.apache.hadoop.hbase.io.ByteArrayOutputStream;
@@ -38,12 +39,17 @@ public class RowIndexEncoderV1 {
   private NoneEncoder encoder;
   private int startOffset = -1;
   private ByteArrayOutputStream rowsOffsetBAOS = new ByteArrayOutputStream(64 * 4);
+  // The hashes of the rows, for the row hash index, null if not enabled.
+  private int[] rowHashes;
   private final HFileBlockEncodingContext context;
 
   public RowIndexEncoderV1(DataOutputStream out, HFileBlockDefaultEncodingContext encodingCtx) {
     this.out = out;
     this.encoder = new NoneEncoder(out, encodingCtx);
     this.context = encodingCtx;
+    if (encodingCtx.isRowHashIndexEnabled()) {
+      this.rowHashes = new int[64];
+    }
   }
 
   public void write(ExtendedCell cell) throws IOException {
@@ -57,12 +63,24 @@ public class RowIndexEncoderV1 {
       rowsOffsetBAOS.writeInt(out.size() - startOffset);
       // added for the int written in the previous line
       extraBytesForRowIndex = Bytes.SIZEOF_INT;
+      if (rowHashes != null) {
+        addRowHash(cell);
+        extraBytesForRowIndex += RowHashIndex.BYTES_PER_ROW;
+      }
     }
     lastCell = cell;
     int size = encoder.write(cell);
     context.getEncodingState().postCellEncode(size, size + extraBytesForRowIndex);
   }
 
+  private void addRowHash(ExtendedCell cell) {
+    int row = rowsOffsetBAOS.size() / 4 - 1;
+    if (row >= rowHashes.length) {
+      rowHashes = Arrays.copyOf(rowHashes, rowHashes.length * 2);
+    }
+    rowHashes[row] = RowHashIndex.hash(cell);
+  }
+
   protected boolean checkRow(final ExtendedCell cell) throws IOException {
     boolean isDuplicateRow = false;
     if (cell == null) {
@@ -85,10 +103,14 @@ public class RowIndexEncoderV1 {
     if (startOffset >= 0) {
       onDiskDataSize = out.size() - startOffset;
     }
-    out.writeInt(rowsOffsetBAOS.size() / 4);
+    int rowCount = rowsOffsetBAOS.size() / 4;
+    out.writeInt(rowCount);
     if (rowsOffsetBAOS.size() > 0) {
       out.write(rowsOffsetBAOS.getBuffer(), 0, rowsOffsetBAOS.size());
     }
+    if (rowHashes != null && rowCount > 0 && rowCount <= RowHashIndex.MAX_ROWS) {
+      RowHashIndex.write(out, rowHashes, rowCount);
+    }
     out.writeInt(onDiskDataSize);
     if (LOG.isTraceEnabled()) {
       LOG.trace("RowNumber: " + rowsOffsetBAOS.size() / 4 + ", onDiskDataSize: " + onDiskDataSize
@@ -50,6 +50,8 @@ public class RowIndexSeekerV1 extends AbstractEncodedSeeker {
 
   private int rowNumber;
   private ByteBuff rowOffsets = null;
+  // The hash index of the rows, null if the block has none.
+  private RowHashIndex rowHashIndex;
   private final CellComparator cellComparator;
 
   public RowIndexSeekerV1(HFileBlockDecodingContext decodingCtx) {
@@ -77,6 +79,12 @@ public class RowIndexSeekerV1 extends AbstractEncodedSeeker {
     rowDup.limit(buffer.position() + totalRowOffsetsLength);
     rowOffsets = rowDup.slice();
 
+    // Row hash index, if any, between the row offsets and the data size
+    ByteBuff hashDup = buffer.duplicate();
+    hashDup.position(buffer.position() + totalRowOffsetsLength);
+    hashDup.limit(buffer.limit() - Bytes.SIZEOF_INT);
+    rowHashIndex = RowHashIndex.read(hashDup);
+
     decodeFirst();
   }
 
@@ -124,6 +132,22 @@ public class RowIndexSeekerV1 extends AbstractEncodedSeeker {
     return true;
   }
 
+  /**
+   * Returns the index of the row of the given cell from the row hash index, or of the row before
+   * it if seeking before, as {@link #binarySearch} does, or {@link RowHashIndex#UNKNOWN} if the
+   * index does not have the row.
+   */
+  private int hashSearch(Cell seekCell, boolean seekBefore) {
+    int index = rowHashIndex.lookup(seekCell);
+    if (index == RowHashIndex.UNKNOWN || index >= rowNumber) {
+      return RowHashIndex.UNKNOWN;
+    }
+    if (this.cellComparator.compareRows(getRow(index), seekCell) != 0) {
+      return RowHashIndex.UNKNOWN;
+    }
+    return seekBefore ? index - 1 : index;
+  }
+
   private int binarySearch(Cell seekCell, boolean seekBefore) {
     int low = 0;
     int high = rowNumber - 1;
@@ -167,7 +191,13 @@ public class RowIndexSeekerV1 extends AbstractEncodedSeeker {
   @Override
   public int seekToKeyInBlock(ExtendedCell seekCell, boolean seekBefore) {
     previous.invalidate();
-    int index = binarySearch(seekCell, seekBefore);
+    int index = RowHashIndex.UNKNOWN;
+    if (rowHashIndex != null) {
+      index = hashSearch(seekCell, seekBefore);
+    }
+    if (index == RowHashIndex.UNKNOWN) {
+      index = binarySearch(seekCell, seekBefore);
+    }
     if (index < 0) {
       return HConstants.INDEX_KEY_MAGIC; // using optimized index key
     } else {
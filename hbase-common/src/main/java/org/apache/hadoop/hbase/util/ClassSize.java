@@ -97,6 +97,9 @@ public class ClassSize {
   /** Overhead for Cell Array Entry */
   public static final int CELL_ARRAY_MAP_ENTRY;
 
+  /** Overhead for Cell BTree Map Entry */
+  public static final int CELL_BTREE_MAP_ENTRY;
+
   /** Overhead for ReentrantReadWriteLock */
   public static final int REENTRANT_LOCK;
 
@@ -304,6 +307,12 @@ public class ClassSize {
     // REFERENCE in the CellArrayMap all the rest is counted in KeyValue.heapSize()
     CELL_ARRAY_MAP_ENTRY = align(REFERENCE);
 
+    // REFERENCE in a leaf of the CellBTreeMap, plus the leaf object, its array and its entry in the
+    // skip list indexing the leaves, shared by the cells of a leaf, which holds up to 32 cells and
+    // which a split leaves at least half full
+    CELL_BTREE_MAP_ENTRY = align(REFERENCE
+      + (align(OBJECT + 3 * REFERENCE) + ARRAY + CONCURRENT_SKIPLISTMAP_ENTRY) / 16);
+
     // The Cell Representation in the CellChunkMap, the Cell object size shouldn't be counted
     // in KeyValue.heapSize()
     // each cell-representation requires three integers for chunkID (reference to the ByteBuffer),
@@ -206,6 +206,11 @@ public class ZstdCodec implements Configurable, CompressionCodec, ByteBuffDecomp
     return ByteBuffer.wrap(dictionary, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
   }
 
+  /** Returns the identifier of the given ZStandard dictionary, 0 for a raw content dictionary */
+  static int getDictionaryIdOrZero(byte[] dictionary) {
+    return dictionary.length >= 8 && isDictionary(dictionary) ? getDictionaryId(dictionary) : 0;
+  }
+
   private void init() {
     this.bufferSize = getBufferSize(conf);
     this.level = getLevel(conf);
@@ -22,6 +22,7 @@ import com.github.luben.zstd.ZstdCompressCtx;
 import com.github.luben.zstd.ZstdDictCompress;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.io.compress.CanReinit;
 import org.apache.hadoop.hbase.io.compress.CompressionUtil;
@@ -180,9 +181,17 @@ public class ZstdCompressor implements CanReinit, Compressor {
     }
   }
 
+  /**
+   * Sets the dictionary to compress with from now on, until the next
+   * {@link #reinit(Configuration)}. Accepts a ZStandard dictionary, or raw content to prime the
+   * compression with.
+   */
   @Override
   public void setDictionary(final byte[] b, final int off, final int len) {
-    throw new UnsupportedOperationException("setDictionary is not supported");
+    byte[] dictionary = Arrays.copyOfRange(b, off, off + len);
+    dictId = ZstdCodec.getDictionaryIdOrZero(dictionary);
+    dict = new ZstdDictCompress(dictionary, level);
+    ctx.loadDict(dict);
   }
 
   @Override
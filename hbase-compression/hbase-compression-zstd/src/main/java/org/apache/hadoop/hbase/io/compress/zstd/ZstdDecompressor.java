@@ -21,6 +21,7 @@ import com.github.luben.zstd.ZstdDecompressCtx;
 import com.github.luben.zstd.ZstdDictDecompress;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.io.compress.CanReinit;
 import org.apache.hadoop.hbase.io.compress.CompressionUtil;
@@ -121,9 +122,17 @@ public class ZstdDecompressor implements CanReinit, Decompressor {
     return (inBuf.position() == 0);
   }
 
+  /**
+   * Sets the dictionary to decompress with from now on, until the next
+   * {@link #reinit(Configuration)}. Accepts a ZStandard dictionary, or the raw content the
+   * compression was primed with.
+   */
   @Override
   public void setDictionary(final byte[] b, final int off, final int len) {
-    throw new UnsupportedOperationException("setDictionary is not supported");
+    byte[] dictionary = Arrays.copyOfRange(b, off, off + len);
+    dictId = ZstdCodec.getDictionaryIdOrZero(dictionary);
+    dict = new ZstdDictDecompress(dictionary);
+    ctx.loadDict(dict);
   }
 
   @Override
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.compress.zstd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellBuilderType;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.ExtendedCellBuilderFactory;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.RegionInfo;
+import org.apache.hadoop.hbase.client.RegionInfoBuilder;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.regionserver.MultiVersionConcurrencyControl;
+import org.apache.hadoop.hbase.regionserver.wal.CompressionContext;
+import org.apache.hadoop.hbase.regionserver.wal.WALValueDictionaryTrainer;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.wal.AbstractFSWALProvider;
+import org.apache.hadoop.hbase.wal.WAL;
+import org.apache.hadoop.hbase.wal.WALEdit;
+import org.apache.hadoop.hbase.wal.WALFactory;
+import org.apache.hadoop.hbase.wal.WALKeyImpl;
+import org.apache.hadoop.hbase.wal.WALStreamReader;
+import org.apache.hadoop.hbase.wal.WALTailingReader;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the WAL value compression with the dictionaries built from the values of the previous
+ * files of the WAL.
+ */
+@Category({ RegionServerTests.class, MediumTests.class })
+public class TestWALCompressionZstdDictionary {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestWALCompressionZstdDictionary.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+
+  private static final byte[] ROW = Bytes.toBytes("row");
+  private static final byte[] FAMILY = Bytes.toBytes("family");
+  private static final int ENTRIES = 500;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    Configuration conf = TEST_UTIL.getConfiguration();
+    conf.set(Compression.ZSTD_CODEC_CLASS_KEY, ZstdCodec.class.getCanonicalName());
+    Compression.Algorithm.ZSTD.reload(conf);
+    conf.setBoolean(HConstants.ENABLE_WAL_COMPRESSION, true);
+    conf.setBoolean(CompressionContext.ENABLE_WAL_VALUE_COMPRESSION, true);
+    conf.set(CompressionContext.WAL_VALUE_COMPRESSION_TYPE, Compression.Algorithm.ZSTD.getName());
+    conf.setBoolean(WALValueDictionaryTrainer.ENABLE_WAL_VALUE_COMPRESSION_DICTIONARY, true);
+    TEST_UTIL.startMiniDFSCluster(3);
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    TEST_UTIL.shutdownMiniCluster();
+  }
+
+  private static byte[] value(TableName tableName, int i) {
+    return Bytes.toBytes("{\"table\":\"" + tableName.getNameAsString() + "\",\"user\":\"user-" + i
+      + "\",\"status\":\"active\",\"plan\":\"premium\",\"region\":\"eu-west-" + (i % 3) + "\"}");
+  }
+
+  private static void append(WAL wal, RegionInfo regionInfo, MultiVersionConcurrencyControl mvcc,
+    int i) throws Exception {
+    TableName tableName = regionInfo.getTable();
+    NavigableMap<byte[], Integer> scopes = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    scopes.put(FAMILY, 0);
+    WALEdit edit = new WALEdit();
+    edit.add(ExtendedCellBuilderFactory.create(CellBuilderType.SHALLOW_COPY)
+      .setType(Cell.Type.Put).setRow(ROW).setFamily(FAMILY).setQualifier(Bytes.toBytes(i))
+      .setValue(value(tableName, i)).build());
+    wal.appendData(regionInfo, new WALKeyImpl(regionInfo.getEncodedNameAsBytes(), tableName,
+      System.currentTimeMillis(), mvcc, scopes), edit);
+  }
+
+  /** Writes to a file of the WAL the entries of the given tables in turn, and returns its path */
+  private static Path writeFile(WAL wal, RegionInfo[] regionInfos,
+    MultiVersionConcurrencyControl mvcc) throws Exception {
+    for (int i = 0; i < ENTRIES; i++) {
+      append(wal, regionInfos[i % regionInfos.length], mvcc, i);
+    }
+    wal.sync();
+    Path path = AbstractFSWALProvider.getCurrentFileName(wal);
+    wal.rollWriter(true);
+    return path;
+  }
+
+  private static void assertEntry(WAL.Entry entry, RegionInfo[] regionInfos, int i) {
+    TableName tableName = regionInfos[i % regionInfos.length].getTable();
+    assertEquals(tableName, entry.getKey().getTableName());
+    assertEquals(1, entry.getEdit().size());
+    assertArrayEquals(value(tableName, i), CellUtil.cloneValue(entry.getEdit().getCells().get(0)));
+  }
+
+  private static void assertStreamRead(WALFactory wals, Path path, RegionInfo[] regionInfos)
+    throws Exception {
+    try (WALStreamReader reader = wals.createStreamReader(TEST_UTIL.getTestFileSystem(), path)) {
+      int count = 0;
+      for (WAL.Entry entry; (entry = reader.next()) != null; count++) {
+        assertEntry(entry, regionInfos, count);
+      }
+      assertEquals(ENTRIES, count);
+    }
+  }
+
+  private static void assertTailingRead(Path path, RegionInfo[] regionInfos) throws Exception {
+    try (WALTailingReader reader = WALFactory.createTailingReader(TEST_UTIL.getTestFileSystem(),
+      path, TEST_UTIL.getConfiguration(), -1)) {
+      for (int i = 0; i < ENTRIES; i++) {
+        WALTailingReader.Result result = reader.next(-1);
+        assertEquals(WALTailingReader.State.NORMAL, result.getState());
+        assertNotNull(result.getEntry());
+        assertEntry(result.getEntry(), regionInfos, i);
+      }
+    }
+  }
+
+  @Test
+  public void testDictionaries() throws Exception {
+    String name = getClass().getSimpleName();
+    // The entries of three regions of a table and of a region of another one alternate.
+    RegionInfo[] regionInfos =
+      new RegionInfo[] { RegionInfoBuilder.newBuilder(TableName.valueOf(name + "_1")).build(),
+        RegionInfoBuilder.newBuilder(TableName.valueOf(name + "_1")).build(),
+        RegionInfoBuilder.newBuilder(TableName.valueOf(name + "_1")).build(),
+        RegionInfoBuilder.newBuilder(TableName.valueOf(name + "_2")).build() };
+    WALFactory wals = new WALFactory(TEST_UTIL.getConfiguration(), name);
+    try {
+      WAL wal = wals.getWAL(regionInfos[0]);
+      MultiVersionConcurrencyControl mvcc = new MultiVersionConcurrencyControl();
+      // The first file has no dictionary yet, the next ones are compressed with the ones built
+      // from the values of the previous file.
+      Path first = writeFile(wal, regionInfos, mvcc);
+      Path second = writeFile(wal, regionInfos, mvcc);
+      Path third = writeFile(wal, regionInfos, mvcc);
+      FileSystem fs = TEST_UTIL.getTestFileSystem();
+      long firstLength = fs.getFileStatus(first).getLen();
+      long secondLength = fs.getFileStatus(second).getLen();
+      assertTrue("Expected " + secondLength + " to be less than " + firstLength,
+        secondLength < firstLength * 3 / 4);
+      for (Path path : new Path[] { first, second, third }) {
+        assertStreamRead(wals, path, regionInfos);
+        assertTailingRead(path, regionInfos);
+      }
+    } finally {
+      wals.close();
+    }
+  }
+}
@@ -52,6 +52,13 @@ public interface MetricsIOSource extends BaseSource {
 
   String CHECKSUM_FAILURES_KEY = "fsChecksumFailureCount";
 
+  String COALESCED_BLOCK_READS_KEY = "fsCoalescedBlockReadsCount";
+  String COALESCED_BLOCK_READS_DESC =
+    "Number of HFile block reads which waited on a concurrent read of the same block";
+  String COALESCED_BLOCK_READS_WAIT_TIME_KEY = "fsCoalescedBlockReadsWaitTime";
+  String COALESCED_BLOCK_READS_WAIT_TIME_DESC =
+    "Time in milliseconds the HFile block reads spent waiting on a concurrent read of the block";
+
   String FS_READ_TIME_HISTO_DESC =
     "Latency of HFile's sequential reads on this region server in milliseconds";
   String FS_PREAD_TIME_HISTO_DESC =
@@ -81,4 +88,11 @@ public interface MetricsIOSource extends BaseSource {
   void updateFsWriteTime(long t);
 
   void incrSlowFsRead();
+
+  /**
+   * Update the coalesced block reads counters
+   * @param count       number of reads which waited on a concurrent read of the same block
+   * @param waitMillis  time the reads spent waiting, in milliseconds
+   */
+  void updateCoalescedBlockReads(long count, long waitMillis);
 }
@@ -34,6 +34,8 @@ public class MetricsIOSourceImpl extends BaseSourceImpl implements MetricsIOSour
   private final MetricHistogram fsPReadTimeHisto;
   private final MetricHistogram fsWriteTimeHisto;
   private final MutableFastCounter fsSlowReads;
+  private final MutableFastCounter coalescedBlockReads;
+  private final MutableFastCounter coalescedBlockReadsWaitTime;
 
   public MetricsIOSourceImpl(MetricsIOWrapper wrapper) {
     this(METRICS_NAME, METRICS_DESCRIPTION, METRICS_CONTEXT, METRICS_JMX_CONTEXT, wrapper);
@@ -52,6 +54,10 @@ public class MetricsIOSourceImpl extends BaseSourceImpl implements MetricsIOSour
     fsWriteTimeHisto =
       getMetricsRegistry().newTimeHistogram(FS_WRITE_HISTO_KEY, FS_WRITE_TIME_HISTO_DESC);
     fsSlowReads = getMetricsRegistry().newCounter(SLOW_FS_READS_KEY, SLOW_FS_READS_DESC, 0L);
+    coalescedBlockReads =
+      getMetricsRegistry().newCounter(COALESCED_BLOCK_READS_KEY, COALESCED_BLOCK_READS_DESC, 0L);
+    coalescedBlockReadsWaitTime = getMetricsRegistry().newCounter(
+      COALESCED_BLOCK_READS_WAIT_TIME_KEY, COALESCED_BLOCK_READS_WAIT_TIME_DESC, 0L);
   }
 
   @Override
@@ -74,6 +80,12 @@ public class MetricsIOSourceImpl extends BaseSourceImpl implements MetricsIOSour
     fsSlowReads.incr();
   }
 
+  @Override
+  public void updateCoalescedBlockReads(long count, long waitMillis) {
+    coalescedBlockReads.incr(count);
+    coalescedBlockReadsWaitTime.incr(waitMillis);
+  }
+
   @Override
   public void getMetrics(MetricsCollector metricsCollector, boolean all) {
     MetricsRecordBuilder mrb = metricsCollector.addRecord(metricsName);
@@ -432,6 +432,9 @@ public interface MetricsRegionServerSource extends BaseSource, JvmPauseMonitorSo
   String L2_CACHE_COUNT_DESC = "Count of blocks in the L2 cache";
   String L2_CACHE_EVICTION_COUNT = "l2CacheEvictionCount";
   String L2_CACHE_EVICTION_COUNT_DESC = "Count of blocks evicted from the L2 cache";
+  String L2_CACHE_ADMISSION_REJECTED_COUNT = "l2CacheAdmissionRejectedCount";
+  String L2_CACHE_ADMISSION_REJECTED_COUNT_DESC =
+    "Count of blocks the admission policy of the L2 cache did not let in";
   String L2_CACHE_HIT_COUNT = "l2CacheHitCount";
   String L2_CACHE_HIT_COUNT_DESC = "L2 cache hit count.";
   String L2_CACHE_HIT_CACHING_COUNT = "l2CacheHitCachingCount";
@@ -617,6 +617,9 @@ public class MetricsRegionServerSourceImpl extends BaseSourceImpl
       .addGauge(Interns.info(L2_CACHE_COUNT, L2_CACHE_COUNT_DESC), rsWrap.getL2CacheCount())
       .addCounter(Interns.info(L2_CACHE_EVICTION_COUNT, L2_CACHE_EVICTION_COUNT_DESC),
         rsWrap.getL2CacheEvictedCount())
+      .addCounter(
+        Interns.info(L2_CACHE_ADMISSION_REJECTED_COUNT, L2_CACHE_ADMISSION_REJECTED_COUNT_DESC),
+        rsWrap.getL2CacheAdmissionRejectedCount())
       .addGauge(Interns.info(L2_CACHE_HIT_COUNT, L2_CACHE_HIT_COUNT_DESC),
         rsWrap.getL2CacheHitCount())
       .addGauge(Interns.info(L2_CACHE_HIT_CACHING_COUNT, L2_CACHE_HIT_CACHING_COUNT_DESC),
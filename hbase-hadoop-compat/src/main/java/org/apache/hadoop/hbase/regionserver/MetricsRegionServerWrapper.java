@@ -429,6 +429,11 @@ public interface MetricsRegionServerWrapper {
    */
   long getL2CacheEvictedCount();
 
+  /**
+   * Number of blocks the admission policy of the L2 cache did not let in
+   */
+  long getL2CacheAdmissionRejectedCount();
+
   /**
    * Hit count of L2 cache.
    */
@@ -56,6 +56,8 @@ public interface MetricsRegionSource extends Comparable<MetricsRegionSource> {
   String ROW_READS_ONLY_ON_MEMSTORE_DESC = "Row reads happening completely out of memstore";
   String MIXED_ROW_READS = "mixedRowReadsCount";
   String MIXED_ROW_READS_ON_STORE_DESC = "Row reads happening out of files and memstore on store";
+  String STORE_FLUSH_TIME = "flushTime";
+  String STORE_FLUSH_TIME_DESC = "Time spent writing the flush files of the store, in milliseconds";
   String TABLE_DESCRIPTOR_HASH = "tableDescriptorHash";
   String TABLE_DESCRIPTOR_HASH_DESC = "The hash of the current table descriptor";
 
@@ -286,6 +286,8 @@ public class MetricsRegionSourceImpl implements MetricsRegionSource {
         MetricsRegionSource.ROW_READS_ONLY_ON_MEMSTORE_DESC);
       addCounter(mrb, this.regionWrapper.getMixedRowReadsCount(),
         MetricsRegionSource.MIXED_ROW_READS, MetricsRegionSource.MIXED_ROW_READS_ON_STORE_DESC);
+      addCounter(mrb, this.regionWrapper.getStoreFlushTime(), MetricsRegionSource.STORE_FLUSH_TIME,
+        MetricsRegionSource.STORE_FLUSH_TIME_DESC);
       mrb.add(Interns.tag(regionNamePrefix + MetricsRegionSource.TABLE_DESCRIPTOR_HASH,
         MetricsRegionSource.TABLE_DESCRIPTOR_HASH_DESC,
         this.regionWrapper.getTableDescriptorHash()));
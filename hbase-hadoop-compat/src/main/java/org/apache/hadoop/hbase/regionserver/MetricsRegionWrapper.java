@@ -166,6 +166,9 @@ public interface MetricsRegionWrapper {
   /** Returns the number of row reads on memstore and file per store */
   Map<String, Long> getMixedRowReadsCount();
 
+  /** Returns the total time spent writing flush files per store, in milliseconds */
+  Map<String, Long> getStoreFlushTime();
+
   /**
    * Returns a hash of the table descriptor that this region was opened with. This hash uniquely
    * identifies the table configuration (column families, compression, TTL, block size, etc.) and
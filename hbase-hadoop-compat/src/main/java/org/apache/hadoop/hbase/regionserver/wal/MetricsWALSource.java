@@ -57,6 +57,11 @@ public interface MetricsWALSource extends BaseSource {
   String SLOW_APPEND_COUNT_DESC = "Number of appends that were slow.";
   String SYNC_TIME = "syncTime";
   String SYNC_TIME_DESC = "The time it took to sync the WAL to HDFS.";
+  String SYNC_BATCH_SIZE = "syncBatchSize";
+  String SYNC_BATCH_SIZE_DESC = "Number of sync requests completed by a sync of the WAL.";
+  String SYNC_WAIT_TIME = "syncWaitTime";
+  String SYNC_WAIT_TIME_DESC =
+    "The time (in microseconds) the WAL waited before a sync to group more sync requests.";
   String ROLL_REQUESTED = "rollRequest";
   String ROLL_REQUESTED_DESC = "How many times a roll has been requested total";
   String ERROR_ROLL_REQUESTED = "errorRollRequest";
@@ -101,6 +106,16 @@ public interface MetricsWALSource extends BaseSource {
    */
   void incrementSyncTime(long time);
 
+  /**
+   * Add the number of sync requests completed by a sync of the wal.
+   */
+  void incrementSyncBatchSize(long size);
+
+  /**
+   * Add the time the wal waited before a sync.
+   */
+  void incrementSyncWaitTime(long time);
+
   void incrementLogRollRequested();
 
   void incrementErrorLogRoll();
@@ -238,6 +238,13 @@ public class TestMetricsRegionSourceImpl {
       return map;
     }
 
+    @Override
+    public Map<String, Long> getStoreFlushTime() {
+      Map<String, Long> map = new HashMap<String, Long>();
+      map.put("info", 0L);
+      return map;
+    }
+
     @Override
     public String getTableDescriptorHash() {
       return "testhash";
@@ -79,4 +79,8 @@ public class MetricsIO {
   public void incrSlowFsRead() {
     source.incrSlowFsRead();
   }
+
+  public void updateCoalescedBlockReads(long count, long waitMillis) {
+    source.updateCoalescedBlockReads(count, waitMillis);
+  }
 }
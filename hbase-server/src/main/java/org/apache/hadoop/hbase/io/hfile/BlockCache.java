@@ -17,7 +17,9 @@
  */
 package org.apache.hadoop.hbase.io.hfile;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import org.apache.hadoop.conf.Configuration;
@@ -87,6 +89,29 @@ public interface BlockCache extends Iterable<CachedBlock>, ConfigurationObserver
     return getBlock(cacheKey, caching, repeat, updateCacheMetrics);
   }
 
+  /**
+   * Fetch the unpacked form of a block the cache holds packed. Caches keeping the unpacked form of
+   * the hottest packed blocks, see
+   * {@link CacheConfig#CACHE_DATA_BLOCKS_COMPRESSED_HOT_TIER_FACTOR_KEY}, count the lookup towards
+   * keeping it. The default holds no unpacked block.
+   * @param cacheKey Block to fetch.
+   * @return the unpacked block, retained for the caller, or null if not held unpacked
+   */
+  default Cacheable getUnpackedBlock(BlockCacheKey cacheKey) {
+    return null;
+  }
+
+  /**
+   * Offer the unpacked form of a block the cache holds packed, after a hit had to unpack it. The
+   * cache keeps its own reference if the block is hot enough. The default ignores it.
+   * @param cacheKey Block the unpacked form belongs to.
+   * @param unpacked the unpacked block, still owned by the caller
+   * @return true if the unpacked block was kept
+   */
+  default boolean cacheUnpackedBlock(BlockCacheKey cacheKey, Cacheable unpacked) {
+    return false;
+  }
+
   /**
    * Evict block from cache.
    * @param cacheKey Block to evict
@@ -270,6 +295,22 @@ public interface BlockCache extends Iterable<CachedBlock>, ConfigurationObserver
     return Optional.empty();
   }
 
+  /**
+   * Returns the keys of the blocks of the given file which are in the cache. The default walks the
+   * whole cache, implementations which index their blocks by file should override it.
+   * @param hfileName The file for which the keys of the cached blocks are wanted.
+   * @return the keys of the cached blocks of the file, in no particular order.
+   */
+  default List<BlockCacheKey> getBlockKeysForFile(String hfileName) {
+    List<BlockCacheKey> keys = new ArrayList<>();
+    for (CachedBlock block : this) {
+      if (hfileName.equals(block.getFilename())) {
+        keys.add(new BlockCacheKey(hfileName, block.getOffset(), true, block.getBlockType()));
+      }
+    }
+    return keys;
+  }
+
   /**
    * Evict all blocks for the given file name between the passed offset values.
    * @param hfileName  The file for which blocks should be evicted.
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.hbase.io.MetricsIO;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Single-flight coalescing of the loads of a block of one file. The first reader missing the cache
+ * for a given offset becomes the owner of the load, every other reader of the same offset attaches
+ * to the owner's {@link CompletableFuture} instead of parking on a lock and re-reading the cache.
+ * <p>
+ * The owner must end the load with either {@link #complete(long, HFileBlock)} or
+ * {@link #abandon(long)}. On completion the block is retained once for every attached waiter, so
+ * each waiter gets its own reference and must release it as if it had read the block itself. An
+ * abandoned load completes its future exceptionally and waiters are expected to load the block on
+ * their own. As the future is handed out directly an asynchronous reader can chain on it rather
+ * than blocking, see {@link #joinOrStart(long)}.
+ */
+@InterfaceAudience.Private
+final class BlockLoadCoalescer {
+
+  private static final class InFlightLoad {
+    private final CompletableFuture<HFileBlock> future = new CompletableFuture<>();
+    // Only modified under the lock of the map bin, and only read once the load is removed.
+    private int waiters;
+  }
+
+  private final ConcurrentHashMap<Long, InFlightLoad> inFlight = new ConcurrentHashMap<>();
+
+  /**
+   * Attaches to the in-flight load of the given offset, or starts a new one.
+   * @return the future of the in-flight load the caller is now waiting on, or null if the caller
+   *         became the owner of a new load and must end it with {@link #complete(long, HFileBlock)}
+   *         or {@link #abandon(long)}
+   */
+  CompletableFuture<HFileBlock> joinOrStart(long offset) {
+    InFlightLoad[] started = new InFlightLoad[1];
+    InFlightLoad load = inFlight.compute(offset, (k, v) -> {
+      if (v == null) {
+        started[0] = new InFlightLoad();
+        return started[0];
+      }
+      v.waiters++;
+      return v;
+    });
+    return load == started[0] ? null : load.future;
+  }
+
+  /**
+   * Waits for the load a caller attached to with {@link #joinOrStart(long)}.
+   * @return the loaded block, or null if the owner abandoned the load
+   */
+  static HFileBlock await(CompletableFuture<HFileBlock> future) throws IOException {
+    long startNanos = System.nanoTime();
+    try {
+      HFileBlock block = future.get();
+      MetricsIO.getInstance().updateCoalescedBlockReads(1,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+      return block;
+    } catch (InterruptedException e) {
+      // A reference was taken for us, give it back once the load is done.
+      future.thenAccept(HFileBlock::release);
+      throw (InterruptedIOException) new InterruptedIOException().initCause(e);
+    } catch (ExecutionException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Ends the load of the given offset owned by the caller, handing the block to the waiters.
+   */
+  void complete(long offset, HFileBlock block) {
+    InFlightLoad load = inFlight.remove(offset);
+    for (int i = 0; i < load.waiters; i++) {
+      block.retain();
+    }
+    load.future.complete(block);
+  }
+
+  /**
+   * Ends the load of the given offset owned by the caller without a block, typically because it
+   * failed. Waiters will load the block on their own.
+   */
+  void abandon(long offset) {
+    inFlight.remove(offset).future
+      .completeExceptionally(new IOException("Load of block at " + offset + " was abandoned"));
+  }
+
+  /** Returns the number of loads currently in flight */
+  int getInFlightCount() {
+    return inFlight.size();
+  }
+}
@@ -67,6 +67,20 @@ public class CacheConfig implements PropagatingConfigurationObserver {
    */
   public static final String CACHE_DATA_BLOCKS_COMPRESSED_KEY = "hbase.block.data.cachecompressed";
 
+  /**
+   * Configuration key for the fraction of the on-heap block cache holding the unpacked form of the
+   * hottest data blocks when data blocks are cached compressed, 0 to unpack them on every hit.
+   */
+  public static final String CACHE_DATA_BLOCKS_COMPRESSED_HOT_TIER_FACTOR_KEY =
+    "hbase.block.data.cachecompressed.hot.tier.factor";
+
+  /**
+   * Configuration key for the number of recent hits of a compressed data block before its unpacked
+   * form is kept in the hot tier, between 1 and 15.
+   */
+  public static final String CACHE_DATA_BLOCKS_COMPRESSED_HOT_TIER_PROMOTE_KEY =
+    "hbase.block.data.cachecompressed.hot.tier.promote.hits";
+
   /**
    * Configuration key to evict all blocks of a given file from the block cache when the file is
    * closed.
@@ -122,6 +136,8 @@ public class CacheConfig implements PropagatingConfigurationObserver {
   public static final boolean DEFAULT_EVICT_ON_CLOSE = false;
   public static final boolean DEFAULT_EVICT_ON_SPLIT = true;
   public static final boolean DEFAULT_CACHE_DATA_COMPRESSED = false;
+  public static final float DEFAULT_CACHE_DATA_COMPRESSED_HOT_TIER_FACTOR = 0f;
+  public static final int DEFAULT_CACHE_DATA_COMPRESSED_HOT_TIER_PROMOTE = 3;
   public static final boolean DEFAULT_PREFETCH_ON_OPEN = false;
   public static final boolean DEFAULT_CACHE_COMPACTED_BLOCKS_ON_WRITE = false;
   public static final boolean DROP_BEHIND_CACHE_COMPACTION_DEFAULT = true;
@@ -18,7 +18,9 @@
 package org.apache.hadoop.hbase.io.hfile;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -544,6 +546,14 @@ public class CacheStats {
     return new AgeSnapshot(this.ageAtEviction);
   }
 
+  /**
+   * Returns the stats of the capacity partitions of the cache by partition name, empty if the
+   * cache is not partitioned.
+   */
+  public Map<String, CacheStats> getPartitionStats() {
+    return Collections.emptyMap();
+  }
+
   private static long sum(long[] counts) {
     return Arrays.stream(counts).sum();
   }
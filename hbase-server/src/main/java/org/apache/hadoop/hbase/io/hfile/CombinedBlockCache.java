@@ -17,7 +17,9 @@
  */
 package org.apache.hadoop.hbase.io.hfile;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import org.apache.commons.lang3.mutable.Mutable;
@@ -149,6 +151,16 @@ public class CombinedBlockCache implements ResizableBlockCache, HeapSize {
     }
   }
 
+  @Override
+  public Cacheable getUnpackedBlock(BlockCacheKey cacheKey) {
+    return l1Cache.getUnpackedBlock(cacheKey);
+  }
+
+  @Override
+  public boolean cacheUnpackedBlock(BlockCacheKey cacheKey, Cacheable unpacked) {
+    return l1Cache.cacheUnpackedBlock(cacheKey, unpacked);
+  }
+
   @Override
   public boolean evictBlock(BlockCacheKey cacheKey) {
     return l1Cache.evictBlock(cacheKey) || l2Cache.evictBlock(cacheKey);
@@ -384,6 +396,12 @@ public class CombinedBlockCache implements ResizableBlockCache, HeapSize {
       return lruCacheStats.getPrimaryEvictedCount() + bucketCacheStats.getPrimaryEvictedCount();
     }
 
+    @Override
+    public Map<String, CacheStats> getPartitionStats() {
+      // Data blocks, which the partitions are about, live in L2.
+      return bucketCacheStats.getPartitionStats();
+    }
+
     @Override
     public void rollMetricsPeriod() {
       lruCacheStats.rollMetricsPeriod();
@@ -520,6 +538,13 @@ public class CombinedBlockCache implements ResizableBlockCache, HeapSize {
     return l1Result.isPresent() ? l1Result : l2Cache.getBlockSize(key);
   }
 
+  @Override
+  public List<BlockCacheKey> getBlockKeysForFile(String hfileName) {
+    List<BlockCacheKey> keys = new ArrayList<>(l1Cache.getBlockKeysForFile(hfileName));
+    keys.addAll(l2Cache.getBlockKeysForFile(hfileName));
+    return keys;
+  }
+
   @Override
   public int evictBlocksRangeByHfileName(String hfileName, long initOffset, long endOffset) {
     return l1Cache.evictBlocksRangeByHfileName(hfileName, initOffset, endOffset)
@@ -47,6 +47,7 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase implements Bloo
 
   private int hashCount;
   private Hash hash;
+  private final boolean blocked;
 
   private long[] numQueriesPerChunk;
   private long[] numPositivesPerChunk;
@@ -60,8 +61,22 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase implements Bloo
    */
   public CompoundBloomFilter(DataInput meta, HFile.Reader reader, BloomFilterMetrics metrics)
     throws IOException {
+    this(meta, reader, metrics, false);
+  }
+
+  /**
+   * De-serialization for compound Bloom filter metadata. Must be consistent with what
+   * {@link CompoundBloomFilterWriter} does.
+   * @param meta    serialized Bloom filter metadata without any magic blocks
+   * @param reader  reader for hfile
+   * @param metrics for collecting bloom filter metrics. may be null
+   * @param blocked whether the chunks are blocked, as per the version of the metadata
+   */
+  public CompoundBloomFilter(DataInput meta, HFile.Reader reader, BloomFilterMetrics metrics,
+    boolean blocked) throws IOException {
     this.reader = reader;
     this.metrics = metrics;
+    this.blocked = blocked;
 
     totalByteSize = meta.readLong();
     hashCount = meta.readInt();
@@ -109,7 +124,8 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase implements Bloo
     try {
       ByteBuff bloomBuf = bloomBlock.getBufferReadOnly();
       result = BloomFilterUtil.contains(key, keyOffset, keyLength, bloomBuf,
-        bloomBlock.headerSize(), bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount);
+        bloomBlock.headerSize(), bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount,
+        blocked);
     } finally {
       // After the use, should release the block to deallocate byte buffers.
       bloomBlock.release();
@@ -159,7 +175,7 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase implements Bloo
     try {
       ByteBuff bloomBuf = bloomBlock.getBufferReadOnly();
       result = BloomFilterUtil.contains(keyCell, bloomBuf, bloomBlock.headerSize(),
-        bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount, type);
+        bloomBlock.getUncompressedSizeWithoutHeader(), hash, hashCount, type, blocked);
     } finally {
       // After the use, should release the block to deallocate the byte buffers.
       bloomBlock.release();
@@ -214,6 +230,7 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase implements Bloo
     StringBuilder sb = new StringBuilder();
     sb.append(BloomFilterUtil.formatStats(this));
     sb.append(BloomFilterUtil.STATS_RECORD_SEP + "Number of chunks: " + numChunks);
+    sb.append(BloomFilterUtil.STATS_RECORD_SEP + "Blocked: " + blocked);
     sb.append(BloomFilterUtil.STATS_RECORD_SEP + ((comparator != null)
       ? "Comparator: " + comparator.getClass().getSimpleName()
       : "Comparator: " + Bytes.BYTES_RAWCOMPARATOR.getClass().getSimpleName()));
@@ -230,6 +247,11 @@ public class CompoundBloomFilter extends CompoundBloomFilterBase implements Bloo
     return hashCount;
   }
 
+  @InterfaceAudience.LimitedPrivate(HBaseInterfaceAudience.UNITTEST)
+  public boolean isBlocked() {
+    return blocked;
+  }
+
   @InterfaceAudience.LimitedPrivate(HBaseInterfaceAudience.UNITTEST)
   public Hash getHash() {
     return hash;
@@ -35,6 +35,12 @@ public class CompoundBloomFilterBase implements BloomFilterBase {
    */
   public static final int VERSION = 3;
 
+  /**
+   * The version of Bloom filters with the same metadata as {@link #VERSION}, but blocked chunks,
+   * see {@link org.apache.hadoop.hbase.util.BloomFilterUtil#BLOCK_BYTES}.
+   */
+  public static final int BLOCKED_VERSION = 4;
+
   /** Target error rate for configuring the filter and for information */
   protected float errorRate;
 
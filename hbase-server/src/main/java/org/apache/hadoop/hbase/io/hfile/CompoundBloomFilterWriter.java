@@ -83,6 +83,9 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
 
   private BloomType bloomType;
 
+  /** Whether to write blocked chunks, see {@link BloomFilterUtil#BLOCK_BYTES} */
+  private final boolean blocked;
+
   /**
    * each chunk's size in bytes. The real chunk size might be different as required by the fold
    * factor. target false positive rate hash function type to use maximum degree of folding allowed
@@ -90,6 +93,13 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
    */
   public CompoundBloomFilterWriter(int chunkByteSizeHint, float errorRate, int hashType,
     int maxFold, boolean cacheOnWrite, CellComparator comparator, BloomType bloomType) {
+    this(chunkByteSizeHint, errorRate, hashType, maxFold, cacheOnWrite, comparator, bloomType,
+      false);
+  }
+
+  public CompoundBloomFilterWriter(int chunkByteSizeHint, float errorRate, int hashType,
+    int maxFold, boolean cacheOnWrite, CellComparator comparator, BloomType bloomType,
+    boolean blocked) {
     chunkByteSize = BloomFilterUtil.computeFoldableByteSize(chunkByteSizeHint * 8L, maxFold);
 
     this.errorRate = errorRate;
@@ -98,6 +108,7 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
     this.cacheOnWrite = cacheOnWrite;
     this.comparator = comparator;
     this.bloomType = bloomType;
+    this.blocked = blocked;
   }
 
   @Override
@@ -187,7 +198,8 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
   private void allocateNewChunk() {
     if (prevChunk == null) {
       // First chunk
-      chunk = BloomFilterUtil.createBySize(chunkByteSize, errorRate, hashType, maxFold, bloomType);
+      chunk = BloomFilterUtil.createBySize(chunkByteSize, errorRate, hashType, maxFold, bloomType,
+        blocked);
     } else {
       // Use the same parameters as the last chunk, but a new array and
       // a zero key count.
@@ -241,7 +253,7 @@ public class CompoundBloomFilterWriter extends CompoundBloomFilterBase
      */
     @Override
     public void write(DataOutput out) throws IOException {
-      out.writeInt(VERSION);
+      out.writeInt(blocked ? BLOCKED_VERSION : VERSION);
 
       out.writeLong(getByteSize());
       out.writeInt(prevChunk.getHashCount());
@@ -0,0 +1,539 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.ByteBufferExtendedCell;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.filter.BlockStats;
+import org.apache.hadoop.hbase.util.ByteBufferUtils;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Statistics of the data blocks of an HFile, a zone map: for every block, the range of its
+ * timestamps and qualifiers, whether it has delete markers, and the range of the values of every
+ * qualifier, as long as the block has no more than {@link #MAX_QUALIFIERS_KEY} distinct ones. A
+ * scanner given a data block filter, see {@link HFileScanner#setDataBlockFilter}, moves past the
+ * blocks the filter skips going by their statistics, without reading them.
+ * <p>
+ * The statistics are written in a meta block, so files written with them stay readable by readers
+ * unaware of them. Qualifiers and values are truncated to {@link #MAX_LENGTH} bytes, the upper
+ * bounds being rounded up, so that the statistics of a block stay small whatever its cells.
+ */
+@InterfaceAudience.Private
+public final class DataBlockStats {
+
+  /** Whether the HFiles are written with the statistics of their data blocks */
+  public static final String ENABLED_KEY = "hbase.hfile.block.stats.enabled";
+  public static final boolean DEFAULT_ENABLED = false;
+  /** Maximum number of distinct qualifiers of a block for which the value ranges are kept */
+  public static final String MAX_QUALIFIERS_KEY = "hbase.hfile.block.stats.max.qualifiers";
+  public static final int DEFAULT_MAX_QUALIFIERS = 16;
+
+  /** Name of the meta block holding the statistics */
+  public static final String META_BLOCK_NAME = "DATA_BLOCK_STATS";
+
+  /** Maximum length of the qualifiers and values kept as bounds */
+  static final int MAX_LENGTH = 64;
+
+  private static final byte VERSION = 1;
+  private static final byte HAS_DELETES = 1;
+  private static final byte ALL_VALUE_BOUNDS = 2;
+
+  static final DataBlockStats EMPTY = new DataBlockStats(new Entry[0]);
+
+  // Sorted by offset.
+  private final Entry[] entries;
+
+  private DataBlockStats(Entry[] entries) {
+    this.entries = entries;
+  }
+
+  /** Returns whether the configuration, usually the one of a store, enables the statistics. */
+  public static boolean isEnabled(Configuration conf) {
+    return conf.getBoolean(ENABLED_KEY, DEFAULT_ENABLED);
+  }
+
+  /** Parses the statistics written by {@link Writer}. */
+  public static DataBlockStats parseFrom(DataInput in) throws IOException {
+    byte version = in.readByte();
+    if (version != VERSION) {
+      throw new IOException("Unknown data block statistics version " + version);
+    }
+    int count = WritableUtils.readVInt(in);
+    if (count < 0) {
+      throw new IOException("Invalid data block statistics count " + count);
+    }
+    Entry[] entries = new Entry[count];
+    for (int i = 0; i < count; i++) {
+      entries[i] = Entry.read(in);
+    }
+    return new DataBlockStats(entries);
+  }
+
+  public int getEntryCount() {
+    return entries.length;
+  }
+
+  /** Returns the statistics of the first data block after the given offset, null if none. */
+  public Entry getEntryAfter(long offset) {
+    int low = 0;
+    int high = entries.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (entries[mid].offset <= offset) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low < entries.length ? entries[low] : null;
+  }
+
+  /**
+   * Returns the statistics of a block without the ones changing with the versions of a column,
+   * i.e. the timestamps and values, for scans reading a limited number of versions. Those scans
+   * count the versions of a column before filtering them, so skipping the newest versions of a
+   * column would surface older ones.
+   */
+  public static BlockStats withoutVersionStats(BlockStats stats) {
+    return new QualifierStats(stats);
+  }
+
+  private static byte[] readNullableBytes(DataInput in) throws IOException {
+    int length = WritableUtils.readVInt(in) - 1;
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  private static void writeNullableBytes(DataOutput out, byte[] bytes) throws IOException {
+    if (bytes == null) {
+      WritableUtils.writeVInt(out, 0);
+    } else {
+      WritableUtils.writeVInt(out, bytes.length + 1);
+      out.write(bytes);
+    }
+  }
+
+  /** Statistics of a single data block. */
+  public static final class Entry implements BlockStats {
+    private final long offset;
+    private final int onDiskSize;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    private final byte flags;
+    private final byte[] minQualifier;
+    private final byte[] maxQualifier;
+    private final List<byte[]> qualifiers;
+    private final List<byte[]> minValues;
+    private final List<byte[]> maxValues;
+
+    private Entry(long offset, int onDiskSize, long minTimestamp, long maxTimestamp, byte flags,
+      byte[] minQualifier, byte[] maxQualifier, List<byte[]> qualifiers, List<byte[]> minValues,
+      List<byte[]> maxValues) {
+      this.offset = offset;
+      this.onDiskSize = onDiskSize;
+      this.minTimestamp = minTimestamp;
+      this.maxTimestamp = maxTimestamp;
+      this.flags = flags;
+      this.minQualifier = minQualifier;
+      this.maxQualifier = maxQualifier;
+      this.qualifiers = qualifiers;
+      this.minValues = minValues;
+      this.maxValues = maxValues;
+    }
+
+    private static Entry read(DataInput in) throws IOException {
+      long offset = WritableUtils.readVLong(in);
+      int onDiskSize = WritableUtils.readVInt(in);
+      long minTimestamp = WritableUtils.readVLong(in);
+      long maxTimestamp = WritableUtils.readVLong(in);
+      byte flags = in.readByte();
+      byte[] minQualifier = readNullableBytes(in);
+      byte[] maxQualifier = readNullableBytes(in);
+      int count = WritableUtils.readVInt(in);
+      List<byte[]> qualifiers = new ArrayList<>(count);
+      List<byte[]> minValues = new ArrayList<>(count);
+      List<byte[]> maxValues = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        qualifiers.add(Bytes.readByteArray(in));
+        minValues.add(readNullableBytes(in));
+        maxValues.add(readNullableBytes(in));
+      }
+      return new Entry(offset, onDiskSize, minTimestamp, maxTimestamp, flags,
+        minQualifier != null ? minQualifier : HConstants.EMPTY_BYTE_ARRAY, maxQualifier,
+        Collections.unmodifiableList(qualifiers), minValues, maxValues);
+    }
+
+    public long getOffset() {
+      return offset;
+    }
+
+    public int getOnDiskSize() {
+      return onDiskSize;
+    }
+
+    /** Returns whether the block has delete markers, which a scan must never skip */
+    public boolean hasDeletes() {
+      return (flags & HAS_DELETES) != 0;
+    }
+
+    @Override
+    public long getMinTimestamp() {
+      return minTimestamp;
+    }
+
+    @Override
+    public long getMaxTimestamp() {
+      return maxTimestamp;
+    }
+
+    @Override
+    public byte[] getMinQualifier() {
+      return minQualifier;
+    }
+
+    @Override
+    public byte[] getMaxQualifier() {
+      return maxQualifier;
+    }
+
+    @Override
+    public boolean hasAllValueBounds() {
+      return (flags & ALL_VALUE_BOUNDS) != 0;
+    }
+
+    @Override
+    public Collection<byte[]> getQualifiers() {
+      return qualifiers;
+    }
+
+    @Override
+    public byte[] getMinValue(byte[] qualifier) {
+      int i = indexOf(qualifier);
+      return i < 0 ? null : minValues.get(i);
+    }
+
+    @Override
+    public byte[] getMaxValue(byte[] qualifier) {
+      int i = indexOf(qualifier);
+      return i < 0 ? null : maxValues.get(i);
+    }
+
+    private int indexOf(byte[] qualifier) {
+      for (int i = 0; i < qualifiers.size(); i++) {
+        if (Bytes.equals(qualifiers.get(i), qualifier)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+  }
+
+  /** The statistics of a block with no bound on the timestamps and values. */
+  private static final class QualifierStats implements BlockStats {
+    private final BlockStats stats;
+
+    QualifierStats(BlockStats stats) {
+      this.stats = stats;
+    }
+
+    @Override
+    public long getMinTimestamp() {
+      return Long.MIN_VALUE;
+    }
+
+    @Override
+    public long getMaxTimestamp() {
+      return Long.MAX_VALUE;
+    }
+
+    @Override
+    public byte[] getMinQualifier() {
+      return stats.getMinQualifier();
+    }
+
+    @Override
+    public byte[] getMaxQualifier() {
+      return stats.getMaxQualifier();
+    }
+
+    @Override
+    public boolean hasAllValueBounds() {
+      return false;
+    }
+
+    @Override
+    public Collection<byte[]> getQualifiers() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public byte[] getMinValue(byte[] qualifier) {
+      return null;
+    }
+
+    @Override
+    public byte[] getMaxValue(byte[] qualifier) {
+      return null;
+    }
+  }
+
+  /**
+   * The range of the qualifiers or values of the cells of a block, the lower bound truncated to
+   * {@link #MAX_LENGTH} bytes, and the upper bound rounded up once truncated, null if unbounded.
+   */
+  private static class Range {
+    private final boolean ofValues;
+    private boolean empty = true;
+    byte[] min;
+    byte[] max;
+
+    Range(boolean ofValues) {
+      this.ofValues = ofValues;
+    }
+
+    void add(Cell cell) {
+      int length = ofValues ? cell.getValueLength() : cell.getQualifierLength();
+      // A lower bound not above the cell stays so once the cell is truncated, as it is no longer
+      // than the truncated length.
+      if (empty || compare(cell, min) < 0) {
+        min = copy(cell, Math.min(length, MAX_LENGTH));
+      }
+      if (empty || (max != null && compare(cell, max) > 0)) {
+        max = length <= MAX_LENGTH ? copy(cell, length) : roundUp(copy(cell, MAX_LENGTH));
+      }
+      empty = false;
+    }
+
+    private int compare(Cell cell, byte[] bytes) {
+      if (!ofValues) {
+        return CellUtil.compareQualifiers(cell, bytes, 0, bytes.length);
+      }
+      if (cell instanceof ByteBufferExtendedCell) {
+        ByteBufferExtendedCell bbCell = (ByteBufferExtendedCell) cell;
+        return ByteBufferUtils.compareTo(bbCell.getValueByteBuffer(), bbCell.getValuePosition(),
+          cell.getValueLength(), bytes, 0, bytes.length);
+      }
+      return Bytes.compareTo(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength(),
+        bytes, 0, bytes.length);
+    }
+
+    private byte[] copy(Cell cell, int length) {
+      byte[] bytes = new byte[length];
+      if (cell instanceof ByteBufferExtendedCell) {
+        ByteBufferExtendedCell bbCell = (ByteBufferExtendedCell) cell;
+        if (ofValues) {
+          ByteBufferUtils.copyFromBufferToArray(bytes, bbCell.getValueByteBuffer(),
+            bbCell.getValuePosition(), 0, length);
+        } else {
+          ByteBufferUtils.copyFromBufferToArray(bytes, bbCell.getQualifierByteBuffer(),
+            bbCell.getQualifierPosition(), 0, length);
+        }
+      } else if (ofValues) {
+        System.arraycopy(cell.getValueArray(), cell.getValueOffset(), bytes, 0, length);
+      } else {
+        System.arraycopy(cell.getQualifierArray(), cell.getQualifierOffset(), bytes, 0, length);
+      }
+      return bytes;
+    }
+
+    /** Returns the lowest bytes above all the ones starting with the given prefix, null if none */
+    private static byte[] roundUp(byte[] prefix) {
+      for (int i = prefix.length - 1; i >= 0; i--) {
+        if (prefix[i] != (byte) 0xFF) {
+          byte[] bound = new byte[i + 1];
+          System.arraycopy(prefix, 0, bound, 0, i + 1);
+          bound[i]++;
+          return bound;
+        }
+      }
+      return null;
+    }
+  }
+
+  /** The range of the values of the cells of a block with a given qualifier. */
+  private static final class ValueRange extends Range {
+    private final byte[] qualifier;
+
+    ValueRange(byte[] qualifier) {
+      super(true);
+      this.qualifier = qualifier;
+    }
+  }
+
+  /**
+   * Collects the statistics of the data blocks of an HFile being written, its cells being appended
+   * in order, and writes them as a meta block.
+   */
+  public static final class Writer implements Writable {
+    private final int maxQualifiers;
+    // The statistics of the blocks written so far, serialized.
+    private final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+    private final DataOutputStream entriesOut = new DataOutputStream(entries);
+    private int count;
+
+    // The statistics of the block being written.
+    private int cells;
+    private long minTimestamp;
+    private long maxTimestamp;
+    private boolean hasDeletes;
+    private Range qualifierRange;
+    private boolean allValueBounds;
+    private final List<ValueRange> valueRanges = new ArrayList<>();
+    private ValueRange lastValueRange;
+
+    public Writer(Configuration conf) {
+      this(conf.getInt(MAX_QUALIFIERS_KEY, DEFAULT_MAX_QUALIFIERS));
+    }
+
+    Writer(int maxQualifiers) {
+      this.maxQualifiers = maxQualifiers;
+      reset();
+    }
+
+    private void reset() {
+      cells = 0;
+      minTimestamp = Long.MAX_VALUE;
+      maxTimestamp = Long.MIN_VALUE;
+      hasDeletes = false;
+      qualifierRange = new Range(false);
+      allValueBounds = true;
+      valueRanges.clear();
+      lastValueRange = null;
+    }
+
+    public void append(Cell cell) {
+      cells++;
+      long timestamp = cell.getTimestamp();
+      minTimestamp = Math.min(minTimestamp, timestamp);
+      maxTimestamp = Math.max(maxTimestamp, timestamp);
+      if (cell.getType() != Cell.Type.Put) {
+        hasDeletes = true;
+      }
+      qualifierRange.add(cell);
+      if (allValueBounds) {
+        ValueRange valueRange = getValueRange(cell);
+        if (valueRange != null) {
+          valueRange.add(cell);
+        }
+      }
+    }
+
+    private ValueRange getValueRange(Cell cell) {
+      // Cells of the same qualifier often follow each other, in tall tables.
+      if (lastValueRange != null && CellUtil.matchingQualifier(cell, lastValueRange.qualifier)) {
+        return lastValueRange;
+      }
+      for (ValueRange valueRange : valueRanges) {
+        if (CellUtil.matchingQualifier(cell, valueRange.qualifier)) {
+          lastValueRange = valueRange;
+          return valueRange;
+        }
+      }
+      if (valueRanges.size() >= maxQualifiers || cell.getQualifierLength() > MAX_LENGTH) {
+        allValueBounds = false;
+        valueRanges.clear();
+        lastValueRange = null;
+        return null;
+      }
+      lastValueRange = new ValueRange(CellUtil.cloneQualifier(cell));
+      valueRanges.add(lastValueRange);
+      return lastValueRange;
+    }
+
+    /** Records the statistics of the block just written, if any cell was appended to it. */
+    public void finishBlock(long offset, int onDiskSize) throws IOException {
+      addBlock(offset, onDiskSize, takeBlockStats());
+    }
+
+    /**
+     * Returns the statistics of the block just finished, null if no cell was appended to it, to be
+     * recorded by {@link #addBlock(long, int, byte[])} once the block is written. Blocks must be
+     * added in the order they were finished.
+     */
+    public byte[] takeBlockStats() throws IOException {
+      if (cells == 0) {
+        return null;
+      }
+      ByteArrayOutputStream stats = new ByteArrayOutputStream();
+      DataOutputStream statsOut = new DataOutputStream(stats);
+      WritableUtils.writeVLong(statsOut, minTimestamp);
+      WritableUtils.writeVLong(statsOut, maxTimestamp);
+      int flags = (hasDeletes ? HAS_DELETES : 0) | (allValueBounds ? ALL_VALUE_BOUNDS : 0);
+      statsOut.writeByte(flags);
+      writeNullableBytes(statsOut, qualifierRange.min);
+      writeNullableBytes(statsOut, qualifierRange.max);
+      WritableUtils.writeVInt(statsOut, valueRanges.size());
+      for (ValueRange valueRange : valueRanges) {
+        Bytes.writeByteArray(statsOut, valueRange.qualifier);
+        writeNullableBytes(statsOut, valueRange.min);
+        writeNullableBytes(statsOut, valueRange.max);
+      }
+      statsOut.flush();
+      reset();
+      return stats.toByteArray();
+    }
+
+    /** Records the statistics taken from a block, once written. */
+    public void addBlock(long offset, int onDiskSize, byte[] blockStats) throws IOException {
+      if (blockStats == null) {
+        return;
+      }
+      WritableUtils.writeVLong(entriesOut, offset);
+      WritableUtils.writeVInt(entriesOut, onDiskSize);
+      entriesOut.write(blockStats);
+      count++;
+    }
+
+    public int getEntryCount() {
+      return count;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+      out.writeByte(VERSION);
+      WritableUtils.writeVInt(out, count);
+      entriesOut.flush();
+      out.write(entries.toByteArray());
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+      throw new IOException("Cant read with this class.");
+    }
+  }
+}
@@ -447,6 +447,12 @@ public final class HFile {
      */
     DataInput getDeleteBloomFilterMetadata() throws IOException;
 
+    /**
+     * Returns the statistics of the data blocks, parsed from their meta block on first use and kept
+     * while memory allows, with no entry if the file was written without them.
+     */
+    DataBlockStats getDataBlockStats() throws IOException;
+
     Path getPath();
 
     /** Close method with optional evictOnClose */
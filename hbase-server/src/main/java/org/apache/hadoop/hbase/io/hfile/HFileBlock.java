@@ -30,10 +30,16 @@ import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -819,6 +825,12 @@ public class HFileBlock implements Cacheable {
 
     private final ByteBuffAllocator allocator;
 
+    private final Configuration conf;
+
+    /** Contexts compressing data blocks in the background, idle ones. */
+    private final Queue<HFileBlockDefaultEncodingContext> backgroundEncodingCtxs =
+      new ConcurrentLinkedQueue<>();
+
     @Override
     public void beforeShipped() {
       if (getEncodingState() != null) {
@@ -846,6 +858,7 @@ public class HFileBlock implements Cacheable {
           + fileContext.getBytesPerChecksum());
       }
       this.allocator = allocator;
+      this.conf = conf;
       this.dataBlockEncoder =
         dataBlockEncoder != null ? dataBlockEncoder : NoOpDataBlockEncoder.INSTANCE;
       this.dataBlockEncodingCtx = this.dataBlockEncoder.newDataBlockEncodingContext(conf,
@@ -996,6 +1009,11 @@ public class HFileBlock implements Cacheable {
      */
     private void putHeader(byte[] dest, int offset, int onDiskSize, int uncompressedSize,
       int onDiskDataSize) {
+      putHeader(dest, offset, blockType, prevOffset, onDiskSize, uncompressedSize, onDiskDataSize);
+    }
+
+    private void putHeader(byte[] dest, int offset, BlockType blockType, long prevOffset,
+      int onDiskSize, int uncompressedSize, int onDiskDataSize) {
       offset = blockType.put(dest, offset);
       offset = Bytes.putInt(dest, offset, onDiskSize - HConstants.HFILEBLOCK_HEADER_SIZE);
       offset = Bytes.putInt(dest, offset, uncompressedSize - HConstants.HFILEBLOCK_HEADER_SIZE);
@@ -1082,6 +1100,10 @@ public class HFileBlock implements Cacheable {
         defaultBlockEncodingCtx.close();
         defaultBlockEncodingCtx = null;
       }
+      HFileBlockDefaultEncodingContext ctx;
+      while ((ctx = backgroundEncodingCtxs.poll()) != null) {
+        ctx.close();
+      }
     }
 
     /**
@@ -1197,6 +1219,147 @@ public class HFileBlock implements Cacheable {
       writeHeaderAndData(out);
     }
 
+    /**
+     * Finishes the data block being written and compresses it on the given pool, leaving this
+     * writer ready to start the next block. Its header and checksums depend on the offset of the
+     * previous data block, so the block is then written by
+     * {@link #writePendingBlock(PendingBlock, FSDataOutputStream)}, in the order blocks were
+     * finished. Not for encrypted files, whose blocks chain their initialization vectors.
+     */
+    PendingBlock finishBlockInBackground(ExecutorService pool) throws IOException {
+      expectState(State.WRITING);
+      Preconditions.checkState(blockType == BlockType.DATA, "Not a data block: " + blockType);
+      this.dataBlockEncoder.endBlockEncoding(dataBlockEncodingCtx, userDataStream,
+        baosInMemory.getBuffer(), blockType);
+      BlockType encodedBlockType = dataBlockEncodingCtx.getBlockType();
+      userDataStream.flush();
+      int rawBlockSize = this.getEncodingState() != null ? encodedBlockSizeWritten() : 0;
+      byte[] uncompressedBytesWithHeader = baosInMemory.toByteArray();
+      // The next block starts from scratch, the offset of this one being recorded once written.
+      state = State.INIT;
+      Future<byte[]> compression = pool.submit(() -> {
+        HFileBlockDefaultEncodingContext ctx = backgroundEncodingCtxs.poll();
+        if (ctx == null) {
+          ctx = new HFileBlockDefaultEncodingContext(conf, null,
+            HConstants.HFILEBLOCK_DUMMY_HEADER, fileContext);
+        }
+        try {
+          Bytes compressed = ctx.compressAndEncrypt(uncompressedBytesWithHeader, 0,
+            uncompressedBytesWithHeader.length);
+          return compressed != null ? compressed.copyBytes() : uncompressedBytesWithHeader;
+        } finally {
+          backgroundEncodingCtxs.add(ctx);
+        }
+      });
+      return new PendingBlock(encodedBlockType, uncompressedBytesWithHeader, rawBlockSize,
+        compression);
+    }
+
+    /**
+     * Writes a data block finished by {@link #finishBlockInBackground(ExecutorService)}, waiting
+     * for its compression, after filling its header and computing its checksums.
+     */
+    void writePendingBlock(PendingBlock block, FSDataOutputStream out) throws IOException {
+      byte[] onDiskBytesWithHeader = block.waitForCompression();
+      block.offset = out.getPos();
+      block.prevOffset = prevOffsetByType[block.blockType.getId()];
+      int numBytes = (int) ChecksumUtil.numBytes(onDiskBytesWithHeader.length,
+        fileContext.getBytesPerChecksum());
+      putHeader(onDiskBytesWithHeader, 0, block.blockType, block.prevOffset,
+        onDiskBytesWithHeader.length + numBytes, block.uncompressedBytesWithHeader.length,
+        onDiskBytesWithHeader.length);
+      block.onDiskBytesWithHeader = onDiskBytesWithHeader;
+      block.onDiskChecksum = new byte[numBytes];
+      ChecksumUtil.generateChecksums(onDiskBytesWithHeader, 0, onDiskBytesWithHeader.length,
+        block.onDiskChecksum, 0, fileContext.getChecksumType(), fileContext.getBytesPerChecksum());
+      compressedSizePredicator.updateLatestBlockSizes(fileContext, block.rawBlockSize,
+        onDiskBytesWithHeader.length);
+      long startTime = EnvironmentEdgeManager.currentTime();
+      out.write(onDiskBytesWithHeader);
+      out.write(block.onDiskChecksum);
+      HFile.updateWriteLatency(EnvironmentEdgeManager.currentTime() - startTime);
+      prevOffsetByType[block.blockType.getId()] = block.offset;
+    }
+
+    /**
+     * Creates the HFileBlock of a data block written by
+     * {@link #writePendingBlock(PendingBlock, FSDataOutputStream)}, for caching, like
+     * {@link #getBlockForCaching(CacheConfig)}.
+     */
+    HFileBlock getBlockForCaching(PendingBlock block, CacheConfig cacheConf) {
+      byte[] onDiskBytesWithHeader = block.onDiskBytesWithHeader;
+      ByteBuff buff;
+      if (cacheConf.shouldCacheCompressed(block.blockType.getCategory())) {
+        buff = allocator.allocate(onDiskBytesWithHeader.length);
+        buff.put(onDiskBytesWithHeader);
+      } else {
+        buff = allocator.allocate(block.uncompressedBytesWithHeader.length);
+        buff.put(onDiskBytesWithHeader, 0, HConstants.HFILEBLOCK_HEADER_SIZE);
+        buff.put(block.uncompressedBytesWithHeader, HConstants.HFILEBLOCK_HEADER_SIZE,
+          block.uncompressedBytesWithHeader.length - HConstants.HFILEBLOCK_HEADER_SIZE);
+      }
+      buff.rewind();
+      int onDiskSizeWithHeader = block.getOnDiskSizeWithHeader();
+      return new HFileBlockBuilder().withBlockType(block.blockType)
+        .withOnDiskSizeWithoutHeader(onDiskSizeWithHeader - HConstants.HFILEBLOCK_HEADER_SIZE)
+        .withUncompressedSizeWithoutHeader(
+          block.uncompressedBytesWithHeader.length - HConstants.HFILEBLOCK_HEADER_SIZE)
+        .withPrevBlockOffset(block.prevOffset).withByteBuff(buff).withFillHeader(FILL_HEADER)
+        .withOffset(block.offset).withNextBlockOnDiskSize(UNSET)
+        .withOnDiskDataSizeWithHeader(onDiskSizeWithHeader)
+        .withHFileContext(BlockCacheUtil.cloneContext(fileContext))
+        .withByteBuffAllocator(cacheConf.getByteBuffAllocator()).withShared(!buff.hasArray())
+        .build();
+    }
+
+    /**
+     * A data block finished by {@link #finishBlockInBackground(ExecutorService)}, being compressed
+     * until written.
+     */
+    static final class PendingBlock {
+      private final BlockType blockType;
+      private final byte[] uncompressedBytesWithHeader;
+      private final int rawBlockSize;
+      private final Future<byte[]> compression;
+      // Set when written.
+      private long offset = UNSET;
+      private long prevOffset = UNSET;
+      private byte[] onDiskBytesWithHeader;
+      private byte[] onDiskChecksum;
+
+      private PendingBlock(BlockType blockType, byte[] uncompressedBytesWithHeader,
+        int rawBlockSize, Future<byte[]> compression) {
+        this.blockType = blockType;
+        this.uncompressedBytesWithHeader = uncompressedBytesWithHeader;
+        this.rawBlockSize = rawBlockSize;
+        this.compression = compression;
+      }
+
+      private byte[] waitForCompression() throws IOException {
+        try {
+          return compression.get();
+        } catch (InterruptedException e) {
+          throw (IOException) new InterruptedIOException().initCause(e);
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          }
+          throw new IOException(cause);
+        }
+      }
+
+      /** Returns the size of the block on disk, including header and checksums, once written */
+      int getOnDiskSizeWithHeader() {
+        Preconditions.checkState(onDiskBytesWithHeader != null, "Block not written");
+        return onDiskBytesWithHeader.length + onDiskChecksum.length;
+      }
+
+      int getUncompressedSizeWithHeader() {
+        return uncompressedBytesWithHeader.length;
+      }
+    }
+
     /**
      * Creates a new HFileBlock. Checksums have already been validated, so the byte buffer passed
      * into the constructor of this newly created block does not have checksum data even though the
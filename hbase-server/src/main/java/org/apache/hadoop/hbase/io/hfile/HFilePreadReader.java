@@ -107,6 +107,7 @@ public class HFilePreadReader extends HFileReaderImpl {
               HFileBlock block = prefetchStreamReader.readBlock(offset, onDiskSizeOfNextBlock,
                 /* cacheBlock= */true, /* pread= */false, false, false, null, null, true);
               try {
+                PrefetchExecutor.throttle(block.getOnDiskSizeWithHeader());
                 if (!cacheConf.isInMemory()) {
                   if (!cache.blockFitsIntoTheCache(block).orElse(true)) {
                     LOG.warn(
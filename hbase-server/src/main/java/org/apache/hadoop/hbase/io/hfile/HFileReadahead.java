@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hbase.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Readahead of the blocks following the one a scanner is consuming. Once a scanner moved to the
+ * next block a few times in a row, the reads of the next blocks are issued asynchronously, each
+ * one chained on the previous as the offset of a block is only known once the previous one is
+ * read. The number of blocks read ahead is sized so that reading them takes about as long as
+ * consuming the blocks in between, according to the observed read latency and consumption rate,
+ * and is capped by {@link #MAX_BLOCKS_KEY}.
+ * <p>
+ * Blocks read ahead are owned by this class until handed out by {@link #readNext(HFileBlock)}. Any
+ * seek, i.e. a call with a block which is not the last one handed out, drops them. Not thread
+ * safe, an instance belongs to a single scanner.
+ */
+@InterfaceAudience.Private
+public final class HFileReadahead {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HFileReadahead.class);
+
+  /**
+   * Maximum number of blocks a sequential scan reads ahead, 0 disables readahead. Can be set per
+   * column family, or per scan through an attribute of the same name holding an int.
+   */
+  public static final String MAX_BLOCKS_KEY = "hbase.hfile.readahead.max.blocks";
+  public static final int DEFAULT_MAX_BLOCKS = 0;
+
+  /** Number of consecutive reads of the next block before starting to read ahead */
+  static final int SEQUENTIAL_THRESHOLD = 2;
+
+  private static final double EWMA_WEIGHT = 0.25;
+
+  /** Executor pool shared among all scanners for readahead */
+  private static final ExecutorService readaheadPool;
+
+  static {
+    Configuration conf = HBaseConfiguration.create();
+    int threads = conf.getInt("hbase.hfile.thread.readahead", 8);
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+      new LinkedBlockingQueue<>(),
+      new ThreadFactoryBuilder().setNameFormat("hfile-readahead-%d").setDaemon(true).build());
+    pool.allowCoreThreadTimeOut(true);
+    readaheadPool = pool;
+  }
+
+  private final HFile.Reader reader;
+  private final boolean cacheBlocks;
+  private final boolean pread;
+  private final boolean isCompaction;
+  private final DataBlockEncoding expectedDataBlockEncoding;
+  private final int maxBlocks;
+
+  // Reads of the blocks following the last one handed out, in file order.
+  private final ArrayDeque<CompletableFuture<HFileBlock>> pending = new ArrayDeque<>();
+  // Offset of the block handed out last, to tell sequential reads from seeks.
+  private long lastOffset = -1;
+  private int sequentialReads;
+  private long lastReadNextNanos;
+  private double consumeNanos;
+  // Updated by readahead threads.
+  private volatile double readNanos;
+  // Bumped when dropping the pending reads, so that those not started yet are skipped.
+  private volatile int generation;
+
+  HFileReadahead(HFile.Reader reader, boolean cacheBlocks, boolean pread, boolean isCompaction,
+    DataBlockEncoding expectedDataBlockEncoding, int maxBlocks) {
+    this.reader = reader;
+    this.cacheBlocks = cacheBlocks;
+    this.pread = pread;
+    this.isCompaction = isCompaction;
+    this.expectedDataBlockEncoding = expectedDataBlockEncoding;
+    this.maxBlocks = maxBlocks;
+  }
+
+  /**
+   * Returns the block following the given one, from the blocks read ahead if possible, and reads
+   * ahead the blocks after it if the scan looks sequential.
+   */
+  HFileBlock readNext(HFileBlock prev) throws IOException {
+    long now = System.nanoTime();
+    long offset = prev.getOffset() + prev.getOnDiskSizeWithHeader();
+    if (prev.getOffset() == lastOffset) {
+      sequentialReads++;
+      consumeNanos = ewma(consumeNanos, now - lastReadNextNanos);
+    } else {
+      drain();
+      sequentialReads = 1;
+    }
+
+    HFileBlock block = null;
+    CompletableFuture<HFileBlock> head = pending.pollFirst();
+    if (head != null) {
+      block = await(head, offset);
+    }
+    if (block == null) {
+      drain();
+      long start = System.nanoTime();
+      block = reader.readBlock(offset, prev.getNextBlockOnDiskSize(), cacheBlocks, pread,
+        isCompaction, true, null, expectedDataBlockEncoding);
+      readNanos = ewma(readNanos, System.nanoTime() - start);
+    }
+    lastOffset = block.getOffset();
+    lastReadNextNanos = System.nanoTime();
+    if (sequentialReads >= SEQUENTIAL_THRESHOLD) {
+      readAhead(block);
+    }
+    return block;
+  }
+
+  private HFileBlock await(CompletableFuture<HFileBlock> head, long offset) {
+    HFileBlock block;
+    try {
+      block = head.join();
+    } catch (CompletionException e) {
+      LOG.debug("Readahead of block at {} in {} failed, reading it again", offset,
+        reader.getPath(), e.getCause());
+      return null;
+    }
+    if (block != null && block.getOffset() != offset) {
+      block.release();
+      return null;
+    }
+    return block;
+  }
+
+  private static double ewma(double average, long sample) {
+    return average == 0 ? sample : average + EWMA_WEIGHT * (sample - average);
+  }
+
+  /** Returns the number of blocks to keep in flight */
+  int getWindow() {
+    if (consumeNanos <= 0 || readNanos <= 0) {
+      return 1;
+    }
+    // Enough blocks to cover one read, plus one to absorb jitter.
+    double window = Math.ceil(readNanos / consumeNanos) + 1;
+    return (int) Math.max(1, Math.min(maxBlocks, window));
+  }
+
+  int getPendingCount() {
+    return pending.size();
+  }
+
+  private void readAhead(HFileBlock current) {
+    if (current.getOffset() >= reader.getTrailer().getLastDataBlockOffset()) {
+      return;
+    }
+    int window = getWindow();
+    int gen = generation;
+    while (pending.size() < window) {
+      // Each read is chained on the previous one, as the offset of a block is only known once the
+      // previous block is read. Only the fields describing the previous block are used, never its
+      // content, so it does not matter if it was released in the meantime.
+      CompletableFuture<HFileBlock> prev =
+        pending.isEmpty() ? CompletableFuture.completedFuture(current) : pending.peekLast();
+      pending.addLast(prev.thenApplyAsync(prevBlock -> read(prevBlock, gen), readaheadPool));
+    }
+  }
+
+  private HFileBlock read(HFileBlock prev, int gen) {
+    if (prev == null || gen != generation
+      || prev.getOffset() >= reader.getTrailer().getLastDataBlockOffset()) {
+      return null;
+    }
+    long start = System.nanoTime();
+    try {
+      HFileBlock block = reader.readBlock(prev.getOffset() + prev.getOnDiskSizeWithHeader(),
+        prev.getNextBlockOnDiskSize(), cacheBlocks, true, isCompaction, true, null,
+        expectedDataBlockEncoding);
+      readNanos = ewma(readNanos, System.nanoTime() - start);
+      return block;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Drops the blocks read ahead, releasing them once their read is done. */
+  void drain() {
+    if (pending.isEmpty()) {
+      return;
+    }
+    generation++;
+    for (CompletableFuture<HFileBlock> future : pending) {
+      future.thenAccept(block -> {
+        if (block != null) {
+          block.release();
+        }
+      });
+    }
+    pending.clear();
+  }
+}
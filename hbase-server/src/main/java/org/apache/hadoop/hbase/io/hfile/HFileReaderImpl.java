@@ -23,10 +23,13 @@ import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.trace.Span;
 import java.io.DataInput;
 import java.io.IOException;
+import java.lang.ref.SoftReference;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.IntConsumer;
+import java.util.function.Predicate;
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
@@ -43,6 +46,7 @@ import org.apache.hadoop.hbase.SizeCachedByteBufferKeyValue;
 import org.apache.hadoop.hbase.SizeCachedKeyValue;
 import org.apache.hadoop.hbase.SizeCachedNoTagsByteBufferKeyValue;
 import org.apache.hadoop.hbase.SizeCachedNoTagsKeyValue;
+import org.apache.hadoop.hbase.filter.BlockStats;
 import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.io.encoding.DataBlockEncoder;
 import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
@@ -52,7 +56,6 @@ import org.apache.hadoop.hbase.nio.ByteBuff;
 import org.apache.hadoop.hbase.regionserver.KeyValueScanner;
 import org.apache.hadoop.hbase.util.ByteBufferUtils;
 import org.apache.hadoop.hbase.util.Bytes;
-import org.apache.hadoop.hbase.util.IdLock;
 import org.apache.hadoop.hbase.util.ObjectIntPair;
 import org.apache.hadoop.io.WritableUtils;
 import org.apache.yetus.audience.InterfaceAudience;
@@ -107,11 +110,14 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
   protected HFileBlock.FSReader fsBlockReader;
 
   /**
-   * A "sparse lock" implementation allowing to lock on a particular block identified by offset. The
-   * purpose of this is to avoid two clients loading the same block, and have all but one client
-   * wait to get the block from the cache.
+   * Coalesces concurrent loads of a block identified by offset. The purpose of this is to avoid two
+   * clients loading the same block, all but one client wait for the block being loaded.
    */
-  private IdLock offsetLock = new IdLock();
+  private final BlockLoadCoalescer blockLoads = new BlockLoadCoalescer();
+
+  // The statistics of the data blocks once parsed, softly referenced so that the readers of the
+  // files no scan filters on do not keep them, null until first used.
+  private volatile SoftReference<DataBlockStats> dataBlockStats;
 
   /** Minimum minor version supported by this HFile format */
   static final int MIN_MINOR_VERSION = 0;
@@ -353,6 +359,15 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
     // Previous blocks that were used in the course of the read
     protected final ArrayList<HFileBlock> prevBlocks = new ArrayList<>();
 
+    // Reads the next blocks ahead of a sequential scan, null if disabled.
+    private HFileReadahead readahead;
+
+    // Tells the data blocks to move past, null if none.
+    private Predicate<BlockStats> dataBlockFilter;
+    // The statistics of the data blocks, taken from the reader by the first move past a block with
+    // a filter, and kept for the scan.
+    private DataBlockStats dataBlockStats;
+
     public HFileScannerImpl(final HFile.Reader reader, final boolean cacheBlocks,
       final boolean pread, final boolean isCompaction) {
       this.reader = reader;
@@ -421,8 +436,27 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
       return kvBufSize;
     }
 
+    @Override
+    public void setReadahead(int maxBlocks) {
+      if (readahead != null) {
+        readahead.drain();
+      }
+      readahead = maxBlocks > 0
+        ? new HFileReadahead(reader, cacheBlocks, pread, isCompaction,
+          getEffectiveDataBlockEncoding(), maxBlocks)
+        : null;
+    }
+
+    @Override
+    public void setDataBlockFilter(Predicate<BlockStats> filter) {
+      this.dataBlockFilter = filter;
+    }
+
     @Override
     public void close() {
+      if (readahead != null) {
+        readahead.drain();
+      }
       if (!pread) {
         // For seek + pread stream socket should be closed when the scanner is closed. HBASE-9393
         reader.unbufferStream();
@@ -752,6 +786,15 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
       if (curBlock == null) {
         return null;
       }
+      if (dataBlockFilter != null) {
+        if (dataBlockStats == null) {
+          dataBlockStats = reader.getDataBlockStats();
+        }
+        DataBlockStats.Entry next = dataBlockStats.getEntryAfter(curBlock.getOffset());
+        if (next != null && skipDataBlock(next)) {
+          return readDataBlockAfter(next);
+        }
+      }
       HFileBlock block = this.curBlock;
       do {
         if (block.getOffset() >= lastDataBlockOffset) {
@@ -764,9 +807,11 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
         }
         // We are reading the next block without block type validation, because
         // it might turn out to be a non-data block.
-        block = reader.readBlock(block.getOffset() + block.getOnDiskSizeWithHeader(),
-          block.getNextBlockOnDiskSize(), cacheBlocks, pread, isCompaction, true, null,
-          getEffectiveDataBlockEncoding());
+        block = readahead != null
+          ? readahead.readNext(block)
+          : reader.readBlock(block.getOffset() + block.getOnDiskSizeWithHeader(),
+            block.getNextBlockOnDiskSize(), cacheBlocks, pread, isCompaction, true, null,
+            getEffectiveDataBlockEncoding());
         if (block != null && !block.getBlockType().isData()) {
           // Whatever block we read we will be returning it unless
           // it is a datablock. Just in case the blocks are non data blocks
@@ -776,6 +821,30 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
       return block;
     }
 
+    private boolean skipDataBlock(DataBlockStats.Entry entry) {
+      return !entry.hasDeletes() && dataBlockFilter.test(entry);
+    }
+
+    /**
+     * Reads the first data block after the given skipped one that the data block filter does not
+     * skip, null if it skips them all.
+     */
+    private HFileBlock readDataBlockAfter(DataBlockStats.Entry skipped) throws IOException {
+      DataBlockStats.Entry entry = skipped;
+      do {
+        entry = dataBlockStats.getEntryAfter(entry.getOffset());
+      } while (entry != null && skipDataBlock(entry));
+      if (entry == null) {
+        return null;
+      }
+      if (readahead != null) {
+        // The blocks read ahead follow the skipped ones.
+        readahead.drain();
+      }
+      return reader.readBlock(entry.getOffset(), entry.getOnDiskSize(), cacheBlocks, pread,
+        isCompaction, true, null, getEffectiveDataBlockEncoding());
+    }
+
     public DataBlockEncoding getEffectiveDataBlockEncoding() {
       return this.reader.getEffectiveEncodingInCache(isCompaction);
     }
@@ -1115,7 +1184,15 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
         if (cachedBlock != null) {
           if (cacheConf.shouldCacheCompressed(cachedBlock.getBlockType().getCategory())) {
             HFileBlock compressedBlock = cachedBlock;
-            cachedBlock = compressedBlock.unpack(hfileContext, fsBlockReader);
+            // The cache may hold the unpacked form of the hottest blocks, see
+            // CacheConfig#CACHE_DATA_BLOCKS_COMPRESSED_HOT_TIER_FACTOR_KEY.
+            cachedBlock = (HFileBlock) cache.getUnpackedBlock(cacheKey);
+            if (cachedBlock == null) {
+              cachedBlock = compressedBlock.unpack(hfileContext, fsBlockReader);
+              if (compressedBlock != cachedBlock) {
+                cache.cacheUnpackedBlock(cacheKey, cachedBlock);
+              }
+            }
             // In case of compressed block after unpacking we can release the compressed block
             if (compressedBlock != cachedBlock) {
               compressedBlock.release();
@@ -1340,7 +1417,7 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
       new BlockCacheKey(path, dataBlockOffset, this.isPrimaryReplicaReader(), expectedBlockType);
 
     boolean useLock = false;
-    IdLock.Entry lockEntry = null;
+    boolean loadOwner = false;
     final Span span = Span.current();
     // BlockCacheKey#toString() is quite expensive to call, so if tracing isn't enabled, don't
     // record
@@ -1351,9 +1428,6 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
       while (true) {
         // Check cache for block. If found return.
         if (cacheConf.shouldReadBlockFromCache(expectedBlockType) && !cacheOnly) {
-          if (useLock) {
-            lockEntry = offsetLock.getLockEntry(dataBlockOffset);
-          }
           // Try and get the block from the block cache. If the useLock variable is true then this
           // is the second time through the loop and it should not be counted as a block cache miss.
           HFileBlock cachedBlock = getCachedBlock(cacheKey, cacheBlock, useLock, updateCacheMetrics,
@@ -1381,14 +1455,49 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
                   + dataBlockEncoder.getDataBlockEncoding() + "), path=" + path);
               }
             }
+            if (loadOwner) {
+              blockLoads.complete(dataBlockOffset, cachedBlock);
+              loadOwner = false;
+            }
             // Cache-hit. Return!
             return cachedBlock;
           }
 
           if (!useLock && cacheBlock && cacheConf.shouldLockOnCacheMiss(expectedBlockType)) {
-            // check cache again with lock
             useLock = true;
-            continue;
+            CompletableFuture<HFileBlock> inFlightLoad = blockLoads.joinOrStart(dataBlockOffset);
+            if (inFlightLoad == null) {
+              // We own the load now, check cache again in case a previous load just finished.
+              loadOwner = true;
+              continue;
+            }
+            HFileBlock loadedBlock = BlockLoadCoalescer.await(inFlightLoad);
+            if (loadedBlock != null) {
+              span.addEvent("block load coalesced", attributes);
+              try {
+                validateBlockType(loadedBlock, expectedBlockType);
+              } catch (IOException e) {
+                loadedBlock.release();
+                throw e;
+              }
+              if (loadedBlock.getBlockType().isData()) {
+                if (updateCacheMetrics) {
+                  HFile.DATABLOCK_READ_COUNT.increment();
+                }
+                // Validate encoding type for data blocks, as on a cache hit, the owner of the
+                // load may have got the block from the cache.
+                if (
+                  loadedBlock.getDataBlockEncoding() != dataBlockEncoder.getDataBlockEncoding()
+                ) {
+                  loadedBlock.release();
+                  throw new IOException("Coalesced block under key " + cacheKey + " "
+                    + "has wrong encoding: " + loadedBlock.getDataBlockEncoding()
+                    + " (expected: " + dataBlockEncoder.getDataBlockEncoding() + "), path=" + path);
+                }
+              }
+              return loadedBlock;
+            }
+            // The owner of the load gave up, load the block ourselves.
           }
           // Carry on, please load.
         }
@@ -1444,12 +1553,16 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
         if (updateCacheMetrics && hfileBlock.getBlockType().isData()) {
           HFile.DATABLOCK_READ_COUNT.increment();
         }
+        if (loadOwner) {
+          blockLoads.complete(dataBlockOffset, unpackedNoChecksum);
+          loadOwner = false;
+        }
 
         return unpackedNoChecksum;
       }
     } finally {
-      if (lockEntry != null) {
-        offsetLock.releaseLockEntry(lockEntry);
+      if (loadOwner) {
+        blockLoads.abandon(dataBlockOffset);
       }
     }
   }
@@ -1684,6 +1797,29 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
     return null;
   }
 
+  @Override
+  public DataBlockStats getDataBlockStats() throws IOException {
+    SoftReference<DataBlockStats> ref = dataBlockStats;
+    DataBlockStats stats = ref != null ? ref.get() : null;
+    if (stats != null) {
+      return stats;
+    }
+    // Read through the block cache, like the bloom blocks. Concurrent first uses may parse it more
+    // than once, keeping either.
+    HFileBlock block = getMetaBlock(DataBlockStats.META_BLOCK_NAME, true);
+    if (block == null) {
+      stats = DataBlockStats.EMPTY;
+    } else {
+      try {
+        stats = DataBlockStats.parseFrom(block.getByteStream());
+      } finally {
+        block.release();
+      }
+    }
+    dataBlockStats = new SoftReference<>(stats);
+    return stats;
+  }
+
   public boolean isFileInfoLoaded() {
     return true; // We load file info in constructor in version 2.
   }
@@ -21,7 +21,9 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.function.IntConsumer;
+import java.util.function.Predicate;
 import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.filter.BlockStats;
 import org.apache.hadoop.hbase.regionserver.Shipper;
 import org.apache.yetus.audience.InterfaceAudience;
 
@@ -131,4 +133,21 @@ public interface HFileScanner extends Shipper, Closeable {
    * @param blockSizeConsumer to be called with block size in bytes, once per block.
    */
   void recordBlockSize(IntConsumer blockSizeConsumer);
+
+  /**
+   * Read up to the given number of blocks ahead once the scanner moves through the file
+   * sequentially, 0 disables readahead.
+   * @param maxBlocks maximum number of blocks read ahead
+   */
+  default void setReadahead(int maxBlocks) {
+  }
+
+  /**
+   * Move past the data blocks matching the given filter once the scanner moves through the file
+   * sequentially, going by the statistics of the blocks, see {@link DataBlockStats}. Blocks with
+   * delete markers are never skipped. Null reads every block.
+   * @param filter returns true for the statistics of the blocks to skip
+   */
+  default void setDataBlockFilter(Predicate<BlockStats> filter) {
+  }
 }
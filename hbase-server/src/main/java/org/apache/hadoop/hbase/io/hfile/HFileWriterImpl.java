@@ -27,9 +27,14 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
@@ -65,6 +70,8 @@ import org.apache.yetus.audience.InterfaceAudience;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.hbase.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * Common functionality needed by all versions of {@link HFile} writers.
  */
@@ -81,6 +88,23 @@ public class HFileWriterImpl implements HFile.Writer {
   /** Block size limit after encoding, used to unify encoded block Cache entry size */
   private final int encodedBlockSizeLimit;
 
+  /**
+   * Number of threads compressing the data blocks of the HFiles being written, shared by all
+   * writers. With 0, the default, each writer compresses its blocks on the thread appending the
+   * cells. Otherwise the blocks of compressed, unencrypted files are compressed in the background
+   * while the next blocks are built, and written in order.
+   */
+  public static final String COMPRESSION_THREADS_KEY = "hbase.hfile.writer.compression.threads";
+  public static final int DEFAULT_COMPRESSION_THREADS = 0;
+
+  /** Maximum number of data blocks of a writer being compressed in the background */
+  public static final String MAX_PENDING_BLOCKS_KEY =
+    "hbase.hfile.writer.compression.max.pending.blocks";
+  public static final int DEFAULT_MAX_PENDING_BLOCKS = 8;
+
+  /** Executor pool shared among all writers compressing their blocks in the background */
+  private static ExecutorService compressionPool;
+
   /** The Cell previously appended. Becomes the last cell in the file. */
   protected ExtendedCell lastCell = null;
 
@@ -185,9 +209,41 @@ public class HFileWriterImpl implements HFile.Writer {
 
   protected long maxMemstoreTS = 0;
 
+  /** Statistics of the data blocks, null if not enabled. */
+  private final DataBlockStats.Writer dataBlockStats;
+
   private final TimeRangeTracker timeRangeTracker;
   private long earliestPutTs = HConstants.LATEST_TIMESTAMP;
 
+  /** Data blocks being compressed in the background, in file order, null if not enabled. */
+  private final ArrayDeque<PendingDataBlock> pendingDataBlocks;
+  private final int maxPendingBlocks;
+
+  /** A data block being compressed, with what is recorded of it once written. */
+  private static final class PendingDataBlock {
+    private final HFileBlock.Writer.PendingBlock block;
+    private final byte[] indexKey;
+    private final byte[] stats;
+
+    private PendingDataBlock(HFileBlock.Writer.PendingBlock block, byte[] indexKey,
+      byte[] stats) {
+      this.block = block;
+      this.indexKey = indexKey;
+      this.stats = stats;
+    }
+  }
+
+  private static synchronized ExecutorService getCompressionPool(int threads) {
+    if (compressionPool == null) {
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+          .setNameFormat("hfile-block-compression-%d").setDaemon(true).build());
+      pool.allowCoreThreadTimeOut(true);
+      compressionPool = pool;
+    }
+    return compressionPool;
+  }
+
   public HFileWriterImpl(final Configuration conf, CacheConfig cacheConf, Path path,
     FSDataOutputStream outputStream, HFileContext fileContext) {
     this.outputStream = outputStream;
@@ -212,8 +268,24 @@ public class HFileWriterImpl implements HFile.Writer {
     closeOutputStream = path != null;
     this.cacheConf = cacheConf;
     this.conf = conf;
+    this.dataBlockStats = DataBlockStats.isEnabled(conf) ? new DataBlockStats.Writer(conf) : null;
     float encodeBlockSizeRatio = conf.getFloat(UNIFIED_ENCODED_BLOCKSIZE_RATIO, 0f);
     this.encodedBlockSizeLimit = (int) (hFileContext.getBlocksize() * encodeBlockSizeRatio);
+    int compressionThreads = conf.getInt(COMPRESSION_THREADS_KEY, DEFAULT_COMPRESSION_THREADS);
+    // Encryption chains its initialization vector from one block to the next.
+    if (
+      compressionThreads > 0 && hFileContext.getCompression() != null
+        && hFileContext.getCompression() != Compression.Algorithm.NONE
+        && hFileContext.getEncryptionContext() == Encryption.Context.NONE
+    ) {
+      getCompressionPool(compressionThreads);
+      this.pendingDataBlocks = new ArrayDeque<>();
+      this.maxPendingBlocks =
+        Math.max(1, conf.getInt(MAX_PENDING_BLOCKS_KEY, DEFAULT_MAX_PENDING_BLOCKS));
+    } else {
+      this.pendingDataBlocks = null;
+      this.maxPendingBlocks = 0;
+    }
 
     finishInit(conf);
     if (LOG.isTraceEnabled()) {
@@ -373,6 +445,18 @@ public class HFileWriterImpl implements HFile.Writer {
     if (!blockWriter.isWriting() || blockWriter.blockSizeWritten() == 0) {
       return;
     }
+    ExtendedCell indexEntry =
+      getMidpoint(this.hFileContext.getCellComparator(), lastCellOfPreviousBlock, firstCellInBlock);
+    byte[] indexKey = PrivateCellUtil.getCellKeySerializedAsKeyValueKey(indexEntry);
+    if (pendingDataBlocks != null) {
+      pendingDataBlocks.add(
+        new PendingDataBlock(blockWriter.finishBlockInBackground(compressionPool), indexKey,
+          dataBlockStats != null ? dataBlockStats.takeBlockStats() : null));
+      while (pendingDataBlocks.size() > maxPendingBlocks) {
+        writePendingDataBlock();
+      }
+      return;
+    }
 
     // Update the first data block offset if UNSET; used scanning.
     if (firstDataBlockOffset == UNSET) {
@@ -382,16 +466,39 @@ public class HFileWriterImpl implements HFile.Writer {
     lastDataBlockOffset = outputStream.getPos();
     blockWriter.writeHeaderAndData(outputStream);
     int onDiskSize = blockWriter.getOnDiskSizeWithHeader();
-    ExtendedCell indexEntry =
-      getMidpoint(this.hFileContext.getCellComparator(), lastCellOfPreviousBlock, firstCellInBlock);
-    dataBlockIndexWriter.addEntry(PrivateCellUtil.getCellKeySerializedAsKeyValueKey(indexEntry),
-      lastDataBlockOffset, onDiskSize);
+    dataBlockIndexWriter.addEntry(indexKey, lastDataBlockOffset, onDiskSize);
+    if (dataBlockStats != null) {
+      dataBlockStats.finishBlock(lastDataBlockOffset, onDiskSize);
+    }
     totalUncompressedBytes += blockWriter.getUncompressedSizeWithHeader();
     if (cacheConf.shouldCacheDataOnWrite()) {
       doCacheOnWrite(lastDataBlockOffset);
     }
   }
 
+  /**
+   * Writes the oldest data block being compressed in the background, once compressed. Its index
+   * entry is added then, so that inline index blocks only refer to written blocks.
+   */
+  private void writePendingDataBlock() throws IOException {
+    PendingDataBlock pending = pendingDataBlocks.poll();
+    long offset = outputStream.getPos();
+    if (firstDataBlockOffset == UNSET) {
+      firstDataBlockOffset = offset;
+    }
+    lastDataBlockOffset = offset;
+    blockWriter.writePendingBlock(pending.block, outputStream);
+    int onDiskSize = pending.block.getOnDiskSizeWithHeader();
+    dataBlockIndexWriter.addEntry(pending.indexKey, offset, onDiskSize);
+    if (dataBlockStats != null) {
+      dataBlockStats.addBlock(offset, onDiskSize, pending.stats);
+    }
+    totalUncompressedBytes += pending.block.getUncompressedSizeWithHeader();
+    if (cacheConf.shouldCacheDataOnWrite()) {
+      doCacheOnWrite(offset, () -> blockWriter.getBlockForCaching(pending.block, cacheConf));
+    }
+  }
+
   /**
    * Try to return a Cell that falls between <code>left</code> and <code>right</code> but that is
    * shorter; i.e. takes up less space. This trick is used building HFile block index. Its an
@@ -575,8 +682,12 @@ public class HFileWriterImpl implements HFile.Writer {
    * @param offset the offset of the block we want to cache. Used to determine the cache key.
    */
   private void doCacheOnWrite(long offset) {
+    doCacheOnWrite(offset, () -> blockWriter.getBlockForCaching(cacheConf));
+  }
+
+  private void doCacheOnWrite(long offset, Supplier<HFileBlock> blockForCaching) {
     cacheConf.getBlockCache().ifPresent(cache -> {
-      HFileBlock cacheFormatBlock = blockWriter.getBlockForCaching(cacheConf);
+      HFileBlock cacheFormatBlock = blockForCaching.get();
       BlockCacheKey key = buildCacheBlockKey(offset, cacheFormatBlock.getBlockType());
       if (!shouldCacheBlock(cache, key)) {
         return;
@@ -650,7 +761,15 @@ public class HFileWriterImpl implements HFile.Writer {
     // followed by fileinfo, data block index and meta block index.
 
     finishBlock();
+    if (pendingDataBlocks != null) {
+      while (!pendingDataBlocks.isEmpty()) {
+        writePendingDataBlock();
+      }
+    }
     writeInlineBlocks(true);
+    if (dataBlockStats != null && dataBlockStats.getEntryCount() > 0) {
+      appendMetaBlock(DataBlockStats.META_BLOCK_NAME, dataBlockStats);
+    }
 
     FixedFileTrailer trailer = new FixedFileTrailer(getMajorVersion(), getMinorVersion());
 
@@ -783,6 +902,9 @@ public class HFileWriterImpl implements HFile.Writer {
     }
 
     blockWriter.write(cell);
+    if (dataBlockStats != null) {
+      dataBlockStats.append(cell);
+    }
 
     totalKeyLength += PrivateCellUtil.estimatedSerializedSizeOfKey(cell);
     totalValueLength += cell.getValueLength();
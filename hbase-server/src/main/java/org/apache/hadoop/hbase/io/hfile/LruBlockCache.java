@@ -240,6 +240,12 @@ public class LruBlockCache implements FirstLevelBlockCache {
    */
   private transient BlockCache victimHandler = null;
 
+  /**
+   * The unpacked form of the hottest data blocks, when they are cached packed. Its size is
+   * accounted in the size of this cache. Null if disabled.
+   */
+  private transient volatile UnpackedBlockTier unpackedTier;
+
   /**
    * Default constructor. Specify maximum size and expected average block size (approximation is
    * fine).
@@ -273,6 +279,22 @@ public class LruBlockCache implements FirstLevelBlockCache {
       conf.getFloat(LRU_HARD_CAPACITY_LIMIT_FACTOR_CONFIG_NAME, DEFAULT_HARD_CAPACITY_LIMIT_FACTOR),
       conf.getBoolean(LRU_IN_MEMORY_FORCE_MODE_CONFIG_NAME, DEFAULT_IN_MEMORY_FORCE_MODE),
       conf.getLong(LRU_MAX_BLOCK_SIZE, DEFAULT_MAX_BLOCK_SIZE));
+    float hotTierFactor =
+      conf.getFloat(CacheConfig.CACHE_DATA_BLOCKS_COMPRESSED_HOT_TIER_FACTOR_KEY,
+        CacheConfig.DEFAULT_CACHE_DATA_COMPRESSED_HOT_TIER_FACTOR);
+    if (
+      hotTierFactor > 0 && conf.getBoolean(CacheConfig.CACHE_DATA_BLOCKS_COMPRESSED_KEY,
+        CacheConfig.DEFAULT_CACHE_DATA_COMPRESSED)
+    ) {
+      if (hotTierFactor >= minFactor) {
+        throw new IllegalArgumentException("Hot tier factor must be smaller than minFactor");
+      }
+      this.unpackedTier = new UnpackedBlockTier((long) (maxSize * hotTierFactor),
+        (long) Math.ceil(1.2 * maxSize / blockSize),
+        conf.getInt(CacheConfig.CACHE_DATA_BLOCKS_COMPRESSED_HOT_TIER_PROMOTE_KEY,
+          CacheConfig.DEFAULT_CACHE_DATA_COMPRESSED_HOT_TIER_PROMOTE),
+        size::addAndGet);
+    }
   }
 
   public LruBlockCache(long maxSize, long blockSize, Configuration conf) {
@@ -551,6 +573,27 @@ public class LruBlockCache implements FirstLevelBlockCache {
     return cb.getBuffer();
   }
 
+  @Override
+  public Cacheable getUnpackedBlock(BlockCacheKey cacheKey) {
+    UnpackedBlockTier tier = unpackedTier;
+    return tier == null ? null : tier.getBlock(cacheKey);
+  }
+
+  @Override
+  public boolean cacheUnpackedBlock(BlockCacheKey cacheKey, Cacheable unpacked) {
+    UnpackedBlockTier tier = unpackedTier;
+    if (
+      tier == null || !(unpacked instanceof HFileBlock)
+        || !tier.cacheBlock(cacheKey, (HFileBlock) unpacked)
+    ) {
+      return false;
+    }
+    if (size.get() > acceptableSize() && !evictionInProgress) {
+      runEviction();
+    }
+    return true;
+  }
+
   /**
    * Whether the cache contains block with specified cacheKey
    * @return true if contains the block
@@ -563,7 +606,15 @@ public class LruBlockCache implements FirstLevelBlockCache {
   @Override
   public boolean evictBlock(BlockCacheKey cacheKey) {
     LruCachedBlock cb = map.get(cacheKey);
-    return cb != null && evictBlock(cb, false) > 0;
+    if (cb == null) {
+      // The unpacked form of a block held packed by the victim handler.
+      UnpackedBlockTier tier = unpackedTier;
+      if (tier != null) {
+        tier.evictBlock(cacheKey);
+      }
+      return false;
+    }
+    return evictBlock(cb, false) > 0;
   }
 
   /**
@@ -584,6 +635,10 @@ public class LruBlockCache implements FirstLevelBlockCache {
         }
       }
     }
+    UnpackedBlockTier tier = unpackedTier;
+    if (tier != null) {
+      tier.evictBlocksByHfileName(hfileName);
+    }
     if (victimHandler != null) {
       numEvicted += victimHandler.evictBlocksByHfileName(hfileName);
     }
@@ -617,6 +672,10 @@ public class LruBlockCache implements FirstLevelBlockCache {
     if (evicted.isFalse()) {
       return 0;
     }
+    UnpackedBlockTier tier = unpackedTier;
+    if (tier != null) {
+      tier.evictBlock(block.getCacheKey());
+    }
     // We evicted the block so update L1 statistics.
     updateSizeMetrics(block, true);
     long val = elements.decrementAndGet();
@@ -1033,6 +1092,13 @@ public class LruBlockCache implements FirstLevelBlockCache {
         : (StringUtils.formatPercent(stats.getHitCachingRatio(), 2) + ", "))
       + "evictions=" + stats.getEvictionCount() + ", " + "evicted=" + stats.getEvictedCount() + ", "
       + "evictedPerRun=" + stats.evictedPerEviction());
+    UnpackedBlockTier tier = unpackedTier;
+    if (tier != null) {
+      LruBlockCache.LOG.info("unpackedTier usedSize=" + StringUtils.byteDesc(tier.size())
+        + ", max=" + StringUtils.byteDesc(tier.getMaxSize()) + ", blockCount="
+        + tier.getBlockCount() + ", hits=" + tier.getHitCount() + ", promoted="
+        + tier.getPromotedCount());
+    }
   }
 
   /**
@@ -1195,6 +1261,10 @@ public class LruBlockCache implements FirstLevelBlockCache {
       List<Runnable> runnables = this.scheduleThreadPool.shutdownNow();
       LOG.debug("Still running " + runnables);
     }
+    UnpackedBlockTier tier = unpackedTier;
+    if (tier != null) {
+      tier.clear();
+    }
     this.evictionThread.shutdown();
   }
 
@@ -1202,6 +1272,14 @@ public class LruBlockCache implements FirstLevelBlockCache {
   public void clearCache() {
     this.map.clear();
     this.elements.set(0);
+    UnpackedBlockTier tier = unpackedTier;
+    if (tier != null) {
+      tier.clear();
+    }
+  }
+
+  UnpackedBlockTier getUnpackedTier() {
+    return unpackedTier;
   }
 
   /**
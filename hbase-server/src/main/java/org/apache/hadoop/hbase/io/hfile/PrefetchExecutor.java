@@ -18,9 +18,15 @@
 package org.apache.hadoop.hbase.io.hfile;
 
 import com.google.errorprone.annotations.RestrictedApi;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Delayed;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -29,6 +35,7 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ToLongFunction;
 import java.util.regex.Pattern;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
@@ -40,6 +47,15 @@ import org.apache.yetus.audience.InterfaceAudience;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.hbase.thirdparty.com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Runs the prefetches of the blocks of HFiles on open. A prefetch waits for a delay, then the
+ * prefetches whose delay has elapsed run the hottest first, as told by the {@link #addHeatSource
+ * heat sources} of the regions of their files, so that after a restart the files of the regions
+ * being read are cached before the ones of cold historical regions. The reads of all prefetches
+ * are capped to {@link #PREFETCH_BANDWIDTH} bytes per second.
+ */
 @InterfaceAudience.Private
 public final class PrefetchExecutor {
 
@@ -48,9 +64,23 @@ public final class PrefetchExecutor {
   public static final String PREFETCH_DELAY = "hbase.hfile.prefetch.delay";
   public static final String PREFETCH_DELAY_VARIATION = "hbase.hfile.prefetch.delay.variation";
   public static final float PREFETCH_DELAY_VARIATION_DEFAULT_VALUE = 0.2f;
+  /** Maximum bytes per second read by the prefetches of all files, 0 for no limit */
+  public static final String PREFETCH_BANDWIDTH = "hbase.hfile.prefetch.bytes.per.second";
+  public static final long PREFETCH_BANDWIDTH_DEFAULT = 0;
 
   /** Futures for tracking block prefetch activity */
   private static final Map<Path, Future<?>> prefetchFutures = new ConcurrentSkipListMap<>();
+  /** Prefetches whose delay has not elapsed yet, by the time it elapses */
+  private static final PriorityQueue<PrefetchTask> delayedTasks =
+    new PriorityQueue<>(Comparator.comparingLong(task -> task.dueTime));
+  /** Prefetches whose delay has elapsed, the hottest first */
+  private static final PriorityQueue<PrefetchTask> dueTasks = new PriorityQueue<>(
+    Comparator.<PrefetchTask> comparingLong(task -> -task.heat)
+      .thenComparingLong(task -> task.dueTime));
+  /** Sources of the read heat of the regions, by encoded region name */
+  private static final List<ToLongFunction<String>> heatSources = new CopyOnWriteArrayList<>();
+  /** Limits the reads of all the prefetches, null if not limited */
+  private static volatile RateLimiter rateLimiter;
   /** Runnables for resetting the prefetch activity */
   private static final Map<Path, Runnable> prefetchRunnable = new ConcurrentSkipListMap<>();
   /** Executor pool shared among all HFiles for block prefetch */
@@ -68,6 +98,7 @@ public final class PrefetchExecutor {
     prefetchDelayMillis = conf.getInt(PREFETCH_DELAY, 1000);
     prefetchDelayVariation =
       conf.getFloat(PREFETCH_DELAY_VARIATION, PREFETCH_DELAY_VARIATION_DEFAULT_VALUE);
+    loadBandwidth(conf);
     int prefetchThreads = conf.getInt("hbase.hfile.thread.prefetch", 4);
     prefetchExecutorPool = new ScheduledThreadPoolExecutor(prefetchThreads, new ThreadFactory() {
       @Override
@@ -98,15 +129,21 @@ public final class PrefetchExecutor {
       } else {
         delay = 0;
       }
+      LOG.debug("Prefetch requested for {}, delay={} ms", path, delay);
+      final Runnable tracedRunnable =
+        TraceUtil.tracedRunnable(runnable, "PrefetchExecutor.request");
+      PrefetchTask task = new PrefetchTask(path, tracedRunnable,
+        System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay));
+      synchronized (delayedTasks) {
+        delayedTasks.add(task);
+      }
+      prefetchFutures.put(path, task);
+      prefetchRunnable.put(path, runnable);
       try {
-        LOG.debug("Prefetch requested for {}, delay={} ms", path, delay);
-        final Runnable tracedRunnable =
-          TraceUtil.tracedRunnable(runnable, "PrefetchExecutor.request");
-        final Future<?> future =
-          prefetchExecutorPool.schedule(tracedRunnable, delay, TimeUnit.MILLISECONDS);
-        prefetchFutures.put(path, future);
-        prefetchRunnable.put(path, runnable);
+        // Every elapsed delay runs the hottest due prefetch, which may not be this one.
+        prefetchExecutorPool.schedule(PrefetchExecutor::runHottest, delay, TimeUnit.MILLISECONDS);
       } catch (RejectedExecutionException e) {
+        task.cancel(false);
         prefetchFutures.remove(path);
         prefetchRunnable.remove(path);
         LOG.warn("Prefetch request rejected for {}", path);
@@ -114,6 +151,85 @@ public final class PrefetchExecutor {
     }
   }
 
+  /**
+   * Runs the hottest prefetch whose delay has elapsed. As it is called once per prefetch, when the
+   * delay of the prefetch has elapsed, every prefetch runs, though not in the order of the delays.
+   */
+  private static void runHottest() {
+    PrefetchTask task;
+    synchronized (delayedTasks) {
+      long now = System.nanoTime();
+      while (!delayedTasks.isEmpty() && delayedTasks.peek().dueTime - now <= 0) {
+        PrefetchTask due = delayedTasks.poll();
+        if (!due.isDone()) {
+          due.heat = getHeat(due.path);
+          dueTasks.add(due);
+        }
+      }
+      do {
+        task = dueTasks.poll();
+      } while (task != null && task.isDone());
+    }
+    if (task != null) {
+      task.run();
+    }
+  }
+
+  private static long getHeat(Path path) {
+    String regionName = getRegionName(path);
+    long heat = 0;
+    for (ToLongFunction<String> source : heatSources) {
+      heat += source.applyAsLong(regionName);
+    }
+    return heat;
+  }
+
+  /**
+   * Get the region name for the given file path. A HFile is always kept under the <region>/<column
+   * family>/<hfile>.
+   */
+  private static String getRegionName(Path path) {
+    Path familyDir = path.getParent();
+    return familyDir == null || familyDir.getParent() == null
+      ? ""
+      : familyDir.getParent().getName();
+  }
+
+  /**
+   * Adds a source of the read heat of the regions, from their encoded names, which orders the
+   * prefetches of their files, the heat of a region summing the ones of all sources.
+   */
+  public static void addHeatSource(ToLongFunction<String> source) {
+    heatSources.add(source);
+  }
+
+  public static void removeHeatSource(ToLongFunction<String> source) {
+    heatSources.remove(source);
+  }
+
+  /**
+   * Waits for the prefetch bandwidth to allow to read the given bytes, called by the prefetches
+   * before reading a block.
+   */
+  public static void throttle(long bytes) {
+    RateLimiter limiter = rateLimiter;
+    if (limiter != null && bytes > 0) {
+      limiter.acquire((int) Math.min(bytes, Integer.MAX_VALUE));
+    }
+  }
+
+  private static void loadBandwidth(Configuration conf) {
+    long bandwidth = conf.getLong(PREFETCH_BANDWIDTH, PREFETCH_BANDWIDTH_DEFAULT);
+    RateLimiter limiter = rateLimiter;
+    if (bandwidth <= 0) {
+      rateLimiter = null;
+    } else if (limiter == null) {
+      rateLimiter = RateLimiter.create(bandwidth);
+    } else {
+      limiter.setRate(bandwidth);
+    }
+  }
+
   public static void complete(Path path) {
     prefetchFutures.remove(path);
     prefetchRunnable.remove(path);
@@ -133,6 +249,25 @@ public final class PrefetchExecutor {
     }
   }
 
+  /**
+   * Cancels the prefetches of the files of the given region, e.g. as it moves away from this
+   * server, so that they do not read for a region which is about to close.
+   * @return the number of prefetches cancelled.
+   */
+  public static int cancelRegion(String encodedRegionName) {
+    int cancelled = 0;
+    for (Path path : prefetchFutures.keySet()) {
+      if (encodedRegionName.equals(getRegionName(path))) {
+        cancel(path);
+        cancelled++;
+      }
+    }
+    if (cancelled > 0) {
+      LOG.debug("Cancelled {} prefetches of region {}", cancelled, encodedRegionName);
+    }
+    return cancelled;
+  }
+
   private PrefetchExecutor() {
   }
 
@@ -187,6 +322,7 @@ public final class PrefetchExecutor {
     prefetchDelayMillis = conf.getInt(PREFETCH_DELAY, 1000);
     prefetchDelayVariation =
       conf.getFloat(PREFETCH_DELAY_VARIATION, PREFETCH_DELAY_VARIATION_DEFAULT_VALUE);
+    loadBandwidth(conf);
     prefetchFutures.forEach((k, v) -> {
       ScheduledFuture sf = (ScheduledFuture) prefetchFutures.get(k);
       if (!(sf.getDelay(TimeUnit.MILLISECONDS) > 0)) {
@@ -207,4 +343,30 @@ public final class PrefetchExecutor {
         prefetchDelayMillis, prefetchDelayVariation);
     });
   }
+
+  /** A prefetch, scheduled once its delay has elapsed. */
+  private static final class PrefetchTask extends FutureTask<Void>
+    implements ScheduledFuture<Void> {
+    private final Path path;
+    /** When the delay elapses, as of {@link System#nanoTime()} */
+    private final long dueTime;
+    /** The heat of the region of the file, set once the delay has elapsed */
+    private long heat;
+
+    PrefetchTask(Path path, Runnable runnable, long dueTime) {
+      super(runnable, null);
+      this.path = path;
+      this.dueTime = dueTime;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(dueTime - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+  }
 }
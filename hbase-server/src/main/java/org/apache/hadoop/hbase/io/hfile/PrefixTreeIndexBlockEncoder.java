@@ -0,0 +1,633 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.apache.hadoop.hbase.io.hfile.HFileBlockIndex.MID_KEY_METADATA_SIZE;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HBaseInterfaceAudience;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.io.encoding.IndexBlockEncoding;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.regionserver.KeyValueScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Encodes root, intermediate and leaf index blocks as a flattened prefix tree. The key bytes shared
+ * by every entry of a block are stored once, and the remaining suffixes are front coded against
+ * the previous entry, with a full suffix written every {@link #RESTART_INTERVAL} entries. Lookups
+ * binary search the restart points and then walk at most one restart interval, rebuilding only the
+ * probed keys into a reusable buffer. The block is never expanded into a list of keys.
+ * <p>
+ * The layout of an encoded block is:
+ *
+ * <pre>
+ * int    numEntries
+ * int    restartInterval
+ * int    maxKeyLength
+ * int    prefixLength
+ * byte[] prefix             key bytes common to all entries of the block
+ * int    numRestarts
+ * int[]  restartOffsets     relative to the beginning of the entries section
+ * int    entriesLength
+ * entries, each one of
+ *   long   blockOffset
+ *   int    onDiskDataSize
+ *   vint   shared           bytes shared with the previous suffix, 0 on restart points
+ *   vint   unshared
+ *   byte[] unshared suffix bytes
+ * </pre>
+ *
+ * The root index block is followed by the same mid-key metadata as the unencoded format.
+ */
+@InterfaceAudience.Private
+public class PrefixTreeIndexBlockEncoder implements HFileIndexBlockEncoder {
+
+  public static final PrefixTreeIndexBlockEncoder INSTANCE = new PrefixTreeIndexBlockEncoder();
+
+  /** Number of entries between two fully written suffixes. */
+  static final int RESTART_INTERVAL = 16;
+
+  /** Size of the block offset and on-disk size preceding the key of every entry. */
+  private static final int ENTRY_OVERHEAD = Bytes.SIZEOF_LONG + Bytes.SIZEOF_INT;
+
+  /** Cannot be instantiated. Use {@link #INSTANCE} instead. */
+  private PrefixTreeIndexBlockEncoder() {
+  }
+
+  @Override
+  public void saveMetadata(HFile.Writer writer) throws IOException {
+    writer.appendFileInfo(INDEX_BLOCK_ENCODING, getIndexBlockEncoding().getNameInBytes());
+  }
+
+  @Override
+  public void encode(BlockIndexChunk blockIndexChunk, boolean rootIndexBlock, DataOutput out)
+    throws IOException {
+    // Root and non-root blocks share the same layout. The mid-key metadata of the root block is
+    // appended by the BlockIndexWriter after the encoded entries.
+    int numEntries = blockIndexChunk.getNumEntries();
+    byte[] firstKey =
+      numEntries > 0 ? blockIndexChunk.getBlockKey(0) : HConstants.EMPTY_BYTE_ARRAY;
+    int prefixLength = firstKey.length;
+    int maxKeyLength = 0;
+    for (int i = 0; i < numEntries; ++i) {
+      byte[] key = blockIndexChunk.getBlockKey(i);
+      prefixLength = Math.min(prefixLength,
+        Bytes.findCommonPrefix(firstKey, key, prefixLength, key.length, 0, 0));
+      maxKeyLength = Math.max(maxKeyLength, key.length);
+    }
+
+    int numRestarts = (numEntries + RESTART_INTERVAL - 1) / RESTART_INTERVAL;
+    int[] restartOffsets = new int[numRestarts];
+    ByteArrayOutputStream entries = new ByteArrayOutputStream();
+    DataOutputStream entriesOut = new DataOutputStream(entries);
+    byte[] prevKey = null;
+    for (int i = 0; i < numEntries; ++i) {
+      byte[] key = blockIndexChunk.getBlockKey(i);
+      int shared = 0;
+      if (i % RESTART_INTERVAL == 0) {
+        restartOffsets[i / RESTART_INTERVAL] = entriesOut.size();
+      } else {
+        shared = Bytes.findCommonPrefix(prevKey, key, prevKey.length - prefixLength,
+          key.length - prefixLength, prefixLength, prefixLength);
+      }
+      int unshared = key.length - prefixLength - shared;
+      entriesOut.writeLong(blockIndexChunk.getBlockOffset(i));
+      entriesOut.writeInt(blockIndexChunk.getOnDiskDataSize(i));
+      WritableUtils.writeVInt(entriesOut, shared);
+      WritableUtils.writeVInt(entriesOut, unshared);
+      entriesOut.write(key, prefixLength + shared, unshared);
+      prevKey = key;
+    }
+    entriesOut.flush();
+
+    out.writeInt(numEntries);
+    out.writeInt(RESTART_INTERVAL);
+    out.writeInt(maxKeyLength);
+    out.writeInt(prefixLength);
+    out.write(firstKey, 0, prefixLength);
+    out.writeInt(numRestarts);
+    for (int restartOffset : restartOffsets) {
+      out.writeInt(restartOffset);
+    }
+    out.writeInt(entries.size());
+    out.write(entries.toByteArray());
+  }
+
+  @Override
+  public IndexBlockEncoding getIndexBlockEncoding() {
+    return IndexBlockEncoding.PREFIX_TREE;
+  }
+
+  @Override
+  public EncodedSeeker createSeeker() {
+    return new PrefixTreeEncodedSeeker();
+  }
+
+  /**
+   * Read-only view over one encoded index block. Only absolute reads are done on the underlying
+   * buffer, so a single instance can be shared by concurrent readers as long as every reader uses
+   * its own {@link Cursor}.
+   */
+  static class EncodedIndexBlock {
+    private final ByteBuff buf;
+    private final int numEntries;
+    private final int restartInterval;
+    private final int maxKeyLength;
+    private final int prefixOffset;
+    private final int prefixLength;
+    private final int numRestarts;
+    private final int restartsOffset;
+    private final int entriesOffset;
+    private final int entriesLength;
+
+    EncodedIndexBlock(ByteBuff buf) {
+      this.buf = buf;
+      int pos = 0;
+      this.numEntries = buf.getInt(pos);
+      pos += Bytes.SIZEOF_INT;
+      this.restartInterval = buf.getInt(pos);
+      pos += Bytes.SIZEOF_INT;
+      this.maxKeyLength = buf.getInt(pos);
+      pos += Bytes.SIZEOF_INT;
+      this.prefixLength = buf.getInt(pos);
+      pos += Bytes.SIZEOF_INT;
+      this.prefixOffset = pos;
+      pos += prefixLength;
+      this.numRestarts = buf.getInt(pos);
+      pos += Bytes.SIZEOF_INT;
+      this.restartsOffset = pos;
+      pos += numRestarts * Bytes.SIZEOF_INT;
+      this.entriesLength = buf.getInt(pos);
+      pos += Bytes.SIZEOF_INT;
+      this.entriesOffset = pos;
+    }
+
+    int getNumEntries() {
+      return numEntries;
+    }
+
+    /** Returns the offset right after the last encoded entry. */
+    int getEndOffset() {
+      return entriesOffset + entriesLength;
+    }
+
+    Cursor newCursor() {
+      Cursor cursor = new Cursor(maxKeyLength);
+      buf.get(prefixOffset, cursor.key, 0, prefixLength);
+      return cursor;
+    }
+
+    long getBlockOffset(Cursor cursor) {
+      return buf.getLong(cursor.foundPos);
+    }
+
+    int getOnDiskDataSize(Cursor cursor) {
+      return buf.getInt(cursor.foundPos + Bytes.SIZEOF_LONG);
+    }
+
+    /**
+     * Binary search for the entry containing the given key.
+     * @return the index i in [0, numEntries - 1] such that keys[i] &lt;= key &lt; keys[i + 1], or
+     *         -1 if the key is before the first key of the block. On success the cursor remembers
+     *         the position of the entry so that its block offset and size can be read.
+     */
+    int search(Cell key, CellComparator comparator, Cursor cursor) {
+      // If we imagine that restartKeys[-1] = -Infinity and restartKeys[numRestarts] = Infinity,
+      // we keep the invariant restartKeys[low - 1] < key < restartKeys[high + 1].
+      int low = 0;
+      int high = numRestarts - 1;
+      while (low <= high) {
+        int mid = low + ((high - low) >> 1);
+        readRestart(cursor, mid);
+        int cmp = compare(key, comparator, cursor);
+        if (cmp > 0) {
+          low = mid + 1;
+        } else if (cmp < 0) {
+          high = mid - 1;
+        } else {
+          cursor.found(cursor.index, cursor.entryPos);
+          return cursor.index;
+        }
+      }
+      int restart = low - 1;
+      if (restart < 0) {
+        cursor.found(-1, -1);
+        return -1;
+      }
+      // Walk the restart interval, the answer is the last entry which is not after the key.
+      readRestart(cursor, restart);
+      int found = cursor.index;
+      int foundPos = cursor.entryPos;
+      int end = Math.min(numEntries, (restart + 1) * restartInterval);
+      while (cursor.index + 1 < end) {
+        readNext(cursor);
+        int cmp = compare(key, comparator, cursor);
+        if (cmp < 0) {
+          break;
+        }
+        found = cursor.index;
+        foundPos = cursor.entryPos;
+        if (cmp == 0) {
+          break;
+        }
+      }
+      cursor.found(found, foundPos);
+      return found;
+    }
+
+    /**
+     * Returns a copy of the key following the entry found by the last {@link #search}, or null if
+     * that entry is the last one of the block.
+     */
+    byte[] getKeyAfterFound(Cursor cursor) {
+      int next = cursor.foundIndex + 1;
+      if (next >= numEntries) {
+        return null;
+      }
+      // The walk of the restart interval usually stops right on the next entry.
+      if (cursor.index != next) {
+        position(cursor, next);
+      }
+      return Arrays.copyOf(cursor.key, cursor.keyLength);
+    }
+
+    /** Returns a copy of the key at the given position, or null if out of range. */
+    byte[] getKey(int i, Cursor cursor) {
+      if (i < 0 || i >= numEntries) {
+        return null;
+      }
+      position(cursor, i);
+      return Arrays.copyOf(cursor.key, cursor.keyLength);
+    }
+
+    /** Moves the cursor to the given entry and remembers it as the found entry. */
+    void position(Cursor cursor, int i) {
+      readRestart(cursor, i / restartInterval);
+      while (cursor.index < i) {
+        readNext(cursor);
+      }
+      cursor.found(cursor.index, cursor.entryPos);
+    }
+
+    private int compare(Cell key, CellComparator comparator, Cursor cursor) {
+      cursor.keyOnlyKV.setKey(cursor.key, 0, cursor.keyLength);
+      // we have to compare in this order, because the comparator order
+      // has special logic when the 'left side' is a special key.
+      return PrivateCellUtil.compareKeyIgnoresMvcc(comparator, key, cursor.keyOnlyKV);
+    }
+
+    private void readRestart(Cursor cursor, int restart) {
+      int pos = entriesOffset + buf.getInt(restartsOffset + restart * Bytes.SIZEOF_INT);
+      readEntry(cursor, restart * restartInterval, pos);
+    }
+
+    private void readNext(Cursor cursor) {
+      readEntry(cursor, cursor.index + 1, cursor.nextEntryPos);
+    }
+
+    private void readEntry(Cursor cursor, int index, int pos) {
+      int p = pos + ENTRY_OVERHEAD;
+      int shared = readVInt(buf, p);
+      p += WritableUtils.decodeVIntSize(buf.get(p));
+      int unshared = readVInt(buf, p);
+      p += WritableUtils.decodeVIntSize(buf.get(p));
+      buf.get(p, cursor.key, prefixLength + shared, unshared);
+      cursor.keyLength = prefixLength + shared + unshared;
+      cursor.index = index;
+      cursor.entryPos = pos;
+      cursor.nextEntryPos = p + unshared;
+    }
+
+    /**
+     * Similar to {@link WritableUtils#readVInt(java.io.DataInput)}, but reads at an absolute
+     * position and does not move the position of the buffer.
+     */
+    private static int readVInt(ByteBuff buf, int pos) {
+      byte firstByte = buf.get(pos);
+      int len = WritableUtils.decodeVIntSize(firstByte);
+      if (len == 1) {
+        return firstByte;
+      }
+      long i = 0;
+      for (int idx = 1; idx < len; idx++) {
+        i = (i << 8) | (buf.get(pos + idx) & 0xFF);
+      }
+      return (int) (WritableUtils.isNegativeVInt(firstByte) ? ~i : i);
+    }
+  }
+
+  /**
+   * Per-lookup state over an {@link EncodedIndexBlock}. Holds the key currently rebuilt from the
+   * prefix and the front coded suffixes, which is overwritten in place while walking entries.
+   */
+  static class Cursor {
+    private final byte[] key;
+    private final KeyValue.KeyOnlyKeyValue keyOnlyKV = new KeyValue.KeyOnlyKeyValue();
+    private int keyLength;
+    private int index = -1;
+    private int entryPos;
+    private int nextEntryPos;
+    private int foundIndex = -1;
+    private int foundPos = -1;
+
+    Cursor(int maxKeyLength) {
+      this.key = new byte[maxKeyLength];
+    }
+
+    private void found(int index, int pos) {
+      this.foundIndex = index;
+      this.foundPos = pos;
+    }
+  }
+
+  @InterfaceAudience.LimitedPrivate(HBaseInterfaceAudience.UNITTEST)
+  public static class PrefixTreeEncodedSeeker implements EncodedSeeker {
+
+    /** Encoded root index, copied out of the root block without the mid-key metadata. */
+    private byte[] rootBytes;
+    private EncodedIndexBlock root;
+    protected int rootCount = 0;
+
+    // Mid-key metadata.
+    protected long midLeafBlockOffset = -1;
+    protected int midLeafBlockOnDiskSize = -1;
+    protected int midKeyEntry = -1;
+
+    private CellComparator comparator;
+    protected int searchTreeLevel;
+
+    /** Pre-computed mid-key */
+    private AtomicReference<ExtendedCell> midKey = new AtomicReference<>();
+
+    @Override
+    public long heapSize() {
+      long heapSize = ClassSize.align(ClassSize.OBJECT);
+
+      // Mid-key metadata.
+      heapSize += MID_KEY_METADATA_SIZE;
+
+      if (rootBytes != null) {
+        heapSize += ClassSize.REFERENCE;
+        heapSize += ClassSize.align(ClassSize.ARRAY + rootBytes.length);
+        // The block view and its wrapping buffer
+        heapSize += ClassSize.REFERENCE;
+        heapSize += ClassSize.align(ClassSize.OBJECT + ClassSize.REFERENCE + 9 * Bytes.SIZEOF_INT);
+        heapSize += ClassSize.align(ClassSize.BYTE_BUFFER);
+      }
+      // Add comparator and the midkey atomicreference
+      heapSize += 2 * ClassSize.REFERENCE;
+      // Add rootCount and searchTreeLevel
+      heapSize += 2 * Bytes.SIZEOF_INT;
+
+      return ClassSize.align(heapSize);
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return rootCount == 0;
+    }
+
+    @Override
+    public ExtendedCell getRootBlockKey(int i) {
+      byte[] key = root.getKey(i, root.newCursor());
+      if (key == null) {
+        throw new ArrayIndexOutOfBoundsException(i);
+      }
+      return new KeyValue.KeyOnlyKeyValue(key, 0, key.length);
+    }
+
+    @Override
+    public int getRootBlockCount() {
+      return rootCount;
+    }
+
+    @Override
+    public void initRootIndex(HFileBlock blk, int numEntries, CellComparator comparator,
+      int treeLevel) throws IOException {
+      this.comparator = comparator;
+      this.searchTreeLevel = treeLevel;
+      ByteBuff buf = blk.getBufferWithoutHeader();
+      EncodedIndexBlock block = new EncodedIndexBlock(buf);
+      if (block.getNumEntries() != numEntries) {
+        throw new IOException("Root index block has " + block.getNumEntries()
+          + " entries but the trailer expects " + numEntries);
+      }
+      int endOffset = block.getEndOffset();
+      this.rootBytes = buf.toBytes(0, endOffset);
+      this.root = new EncodedIndexBlock(ByteBuff.wrap(ByteBuffer.wrap(rootBytes)));
+      this.rootCount = numEntries;
+      if (buf.limit() - endOffset < MID_KEY_METADATA_SIZE) {
+        // No mid-key metadata available.
+        return;
+      }
+      midLeafBlockOffset = buf.getLong(endOffset);
+      midLeafBlockOnDiskSize = buf.getInt(endOffset + Bytes.SIZEOF_LONG);
+      midKeyEntry = buf.getInt(endOffset + Bytes.SIZEOF_LONG + Bytes.SIZEOF_INT);
+    }
+
+    @Override
+    public ExtendedCell midkey(HFile.CachingBlockReader cachingBlockReader) throws IOException {
+      if (rootCount == 0) {
+        throw new IOException("HFile empty");
+      }
+
+      ExtendedCell targetMidKey = this.midKey.get();
+      if (targetMidKey != null) {
+        return targetMidKey;
+      }
+
+      if (midLeafBlockOffset >= 0) {
+        if (cachingBlockReader == null) {
+          throw new IOException(
+            "Have to read the middle leaf block but " + "no block reader available");
+        }
+
+        // Caching, using pread, assuming this is not a compaction.
+        HFileBlock midLeafBlock = cachingBlockReader.readBlock(midLeafBlockOffset,
+          midLeafBlockOnDiskSize, true, true, false, true, BlockType.LEAF_INDEX, null);
+        try {
+          EncodedIndexBlock leaf = new EncodedIndexBlock(midLeafBlock.getBufferWithoutHeader());
+          byte[] bytes = leaf.getKey(midKeyEntry, leaf.newCursor());
+          assert bytes != null;
+          targetMidKey = new KeyValue.KeyOnlyKeyValue(bytes, 0, bytes.length);
+        } finally {
+          midLeafBlock.release();
+        }
+      } else {
+        // The middle of the root-level index.
+        targetMidKey = getRootBlockKey(rootCount / 2);
+      }
+
+      this.midKey.set(targetMidKey);
+      return targetMidKey;
+    }
+
+    @Override
+    public BlockWithScanInfo loadDataBlockWithScanInfo(ExtendedCell key, HFileBlock currentBlock,
+      boolean cacheBlocks, boolean pread, boolean isCompaction,
+      DataBlockEncoding expectedDataBlockEncoding, HFile.CachingBlockReader cachingBlockReader)
+      throws IOException {
+      Cursor rootCursor = root.newCursor();
+      int rootLevelIndex = root.search(key, comparator, rootCursor);
+      if (rootLevelIndex < 0 || rootLevelIndex >= rootCount) {
+        return null;
+      }
+
+      // Read the next-level (intermediate or leaf) index block.
+      long currentOffset = root.getBlockOffset(rootCursor);
+      int currentOnDiskSize = root.getOnDiskDataSize(rootCursor);
+
+      // the next indexed key
+      ExtendedCell nextIndexedKey;
+      byte[] rootNextKey = root.getKeyAfterFound(rootCursor);
+      if (rootNextKey != null) {
+        nextIndexedKey = new KeyValue.KeyOnlyKeyValue(rootNextKey, 0, rootNextKey.length);
+      } else {
+        nextIndexedKey = KeyValueScanner.NO_NEXT_INDEXED_KEY;
+      }
+
+      int lookupLevel = 1; // How many levels deep we are in our lookup.
+      int index = -1;
+
+      HFileBlock block = null;
+      while (true) {
+        try {
+          // Must initialize it with null here, because if don't and once an exception happen in
+          // readBlock, then we'll release the previous assigned block twice in the finally block.
+          // (See HBASE-22422)
+          block = null;
+          if (currentBlock != null && currentBlock.getOffset() == currentOffset) {
+            // Avoid reading the same block again, even with caching turned off.
+            // This is crucial for compaction-type workload which might have
+            // caching turned off. This is like a one-block cache inside the
+            // scanner.
+            block = currentBlock;
+          } else {
+            // Call HFile's caching block reader API. We always cache index
+            // blocks, otherwise we might get terrible performance.
+            boolean shouldCache = cacheBlocks || (lookupLevel < searchTreeLevel);
+            BlockType expectedBlockType;
+            if (lookupLevel < searchTreeLevel - 1) {
+              expectedBlockType = BlockType.INTERMEDIATE_INDEX;
+            } else if (lookupLevel == searchTreeLevel - 1) {
+              expectedBlockType = BlockType.LEAF_INDEX;
+            } else {
+              // this also accounts for ENCODED_DATA
+              expectedBlockType = BlockType.DATA;
+            }
+            block = cachingBlockReader.readBlock(currentOffset, currentOnDiskSize, shouldCache,
+              pread, isCompaction, true, expectedBlockType, expectedDataBlockEncoding);
+          }
+
+          if (block == null) {
+            throw new IOException("Failed to read block at offset " + currentOffset
+              + ", onDiskSize=" + currentOnDiskSize);
+          }
+
+          // Found a data block, break the loop and check our level in the tree.
+          if (block.getBlockType().isData()) {
+            break;
+          }
+
+          // Not a data block. This must be a leaf-level or intermediate-level
+          // index block. We don't allow going deeper than searchTreeLevel.
+          if (++lookupLevel > searchTreeLevel) {
+            throw new IOException("Search Tree Level overflow: lookupLevel=" + lookupLevel
+              + ", searchTreeLevel=" + searchTreeLevel);
+          }
+
+          // Locate the entry corresponding to the given key in the non-root
+          // (leaf or intermediate-level) index block.
+          EncodedIndexBlock indexBlock = new EncodedIndexBlock(block.getBufferWithoutHeader());
+          Cursor cursor = indexBlock.newCursor();
+          index = indexBlock.search(key, comparator, cursor);
+          if (index == -1) {
+            throw new IOException("The key " + CellUtil.getCellKeyAsString(key) + " is before the"
+              + " first key of the non-root index block " + block);
+          }
+
+          currentOffset = indexBlock.getBlockOffset(cursor);
+          currentOnDiskSize = indexBlock.getOnDiskDataSize(cursor);
+
+          // Only update next indexed key if there is a next indexed key in the current level
+          byte[] nonRootIndexedKey = indexBlock.getKeyAfterFound(cursor);
+          if (nonRootIndexedKey != null) {
+            nextIndexedKey =
+              new KeyValue.KeyOnlyKeyValue(nonRootIndexedKey, 0, nonRootIndexedKey.length);
+          }
+        } finally {
+          if (block != null && !block.getBlockType().isData()) {
+            // Release the block immediately if it is not the data block
+            block.release();
+          }
+        }
+      }
+
+      if (lookupLevel != searchTreeLevel) {
+        assert block.getBlockType().isData();
+        // Though we have retrieved a data block we have found an issue
+        // in the retrieved data block. Hence returned the block so that
+        // the ref count can be decremented
+        if (block != null) {
+          block.release();
+        }
+        throw new IOException("Reached a data block at level " + lookupLevel
+          + " but the number of levels is " + searchTreeLevel);
+      }
+
+      // set the next indexed key for the current block.
+      return new BlockWithScanInfo(block, nextIndexedKey);
+    }
+
+    @Override
+    public int rootBlockContainingKey(Cell key) {
+      return root.search(key, comparator, root.newCursor());
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append("size=" + rootCount).append("\n");
+      Cursor cursor = root.newCursor();
+      for (int i = 0; i < rootCount; i++) {
+        byte[] key = root.getKey(i, cursor);
+        sb.append("key=").append(Bytes.toStringBinary(key)).append("\n  offset=")
+          .append(root.getBlockOffset(cursor)).append(", dataSize=")
+          .append(root.getOnDiskDataSize(cursor)).append("\n");
+      }
+      return sb.toString();
+    }
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import org.apache.hadoop.hbase.io.hfile.bucket.FrequencySketch;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A small tier of unpacked blocks in front of a cache holding data blocks packed, see
+ * {@link CacheConfig#CACHE_DATA_BLOCKS_COMPRESSED_HOT_TIER_FACTOR_KEY}. Keeping blocks packed
+ * multiplies the amount of data the cache holds, but every hit pays for decompressing the block.
+ * This tier keeps the unpacked form of the hottest blocks so that they are only decompressed once.
+ * <p>
+ * Every lookup is counted in a {@link FrequencySketch}, and an unpacked block is only kept once
+ * its block was looked up {@link CacheConfig#CACHE_DATA_BLOCKS_COMPRESSED_HOT_TIER_PROMOTE_KEY}
+ * times recently. When full, the least frequent of a few entries sampled at random is evicted to
+ * make room, unless it is at least as frequent as the promoted block, in which case the promotion
+ * is dropped. The size of a promoted block is reserved before it is inserted, so that concurrent
+ * promotions cannot overflow the tier.
+ * <p>
+ * Blocks are held on heap, with the same reference counting as in {@link LruBlockCache}: a block
+ * returned by {@link #getBlock(BlockCacheKey)} is retained for the caller, and evicting it only
+ * releases the reference of this tier.
+ */
+@InterfaceAudience.Private
+final class UnpackedBlockTier {
+
+  /** Number of entries looked at when searching for a victim */
+  static final int EVICTION_SAMPLE_SIZE = 8;
+
+  private final long maxSize;
+  private final int promoteFrequency;
+  private final FrequencySketch sketch;
+  // Notified of every change of the size, the tier being accounted in the size of its cache.
+  private final LongConsumer sizeListener;
+  private final ConcurrentHashMap<BlockCacheKey, HFileBlock> map = new ConcurrentHashMap<>();
+  // The keys of the map, in no particular order, to sample victims at random, and the position of
+  // every key. Guarded by keys, like the changes of the map.
+  private final List<BlockCacheKey> keys = new ArrayList<>();
+  private final Map<BlockCacheKey, Integer> positions = new HashMap<>();
+  private final AtomicLong size = new AtomicLong();
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder promotedCount = new LongAdder();
+
+  /**
+   * @param maxSize          maximum heap size of the unpacked blocks, in bytes
+   * @param capacity         expected number of packed blocks, the candidates for promotion
+   * @param promoteFrequency number of recent lookups of a block before it is kept unpacked
+   * @param sizeListener     notified of the changes of the size of the tier, in bytes
+   */
+  UnpackedBlockTier(long maxSize, long capacity, int promoteFrequency,
+    LongConsumer sizeListener) {
+    if (promoteFrequency < 1 || promoteFrequency > FrequencySketch.MAX_FREQUENCY) {
+      throw new IllegalArgumentException("Promote frequency must be between 1 and "
+        + FrequencySketch.MAX_FREQUENCY + ", got " + promoteFrequency);
+    }
+    this.maxSize = maxSize;
+    this.promoteFrequency = promoteFrequency;
+    this.sketch = new FrequencySketch(capacity);
+    this.sizeListener = sizeListener;
+  }
+
+  /**
+   * Looks up the unpacked form of a block, counting the lookup towards its promotion.
+   * @return the retained unpacked block, or null if not held by this tier
+   */
+  HFileBlock getBlock(BlockCacheKey cacheKey) {
+    sketch.increment(cacheKey.hashCode());
+    // Retain under the lock of the mapping, like LruBlockCache#getBlock, so that a concurrent
+    // eviction cannot release the block before it is referenced.
+    HFileBlock block = map.computeIfPresent(cacheKey, (k, v) -> v.retain());
+    if (block != null) {
+      hitCount.increment();
+    }
+    return block;
+  }
+
+  /**
+   * Keeps the unpacked form of a block if it was looked up often enough recently.
+   * @param cacheKey the key of the packed block
+   * @param unpacked the unpacked block, still owned by the caller
+   * @return true if the block was kept
+   */
+  boolean cacheBlock(BlockCacheKey cacheKey, HFileBlock unpacked) {
+    int frequency = sketch.frequency(cacheKey.hashCode());
+    if (frequency < promoteFrequency || map.containsKey(cacheKey)) {
+      return false;
+    }
+    HFileBlock block = unpacked.isSharedMem() ? HFileBlock.deepCloneOnHeap(unpacked)
+      : unpacked.retain();
+    long heapSize = block.heapSize();
+    if (heapSize > maxSize || !reserve(heapSize, frequency)) {
+      block.release();
+      return false;
+    }
+    synchronized (keys) {
+      if (map.putIfAbsent(cacheKey, block) != null) {
+        size.addAndGet(-heapSize);
+        block.release();
+        return false;
+      }
+      positions.put(cacheKey, keys.size());
+      keys.add(cacheKey);
+    }
+    sizeListener.accept(heapSize);
+    promotedCount.increment();
+    return true;
+  }
+
+  /**
+   * Reserves the given size, evicting less frequent blocks until it fits. Returns false if it
+   * cannot.
+   */
+  private boolean reserve(long heapSize, int frequency) {
+    for (;;) {
+      long current = size.get();
+      if (current + heapSize <= maxSize) {
+        if (size.compareAndSet(current, current + heapSize)) {
+          return true;
+        }
+        continue;
+      }
+      BlockCacheKey victim = sampleVictim();
+      if (victim == null || sketch.frequency(victim.hashCode()) >= frequency) {
+        return false;
+      }
+      evictBlock(victim);
+    }
+  }
+
+  /**
+   * Returns the least frequent of a few keys picked at random, or of all of them if there are not
+   * more, null if there are none.
+   */
+  private BlockCacheKey sampleVictim() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    BlockCacheKey victim = null;
+    int victimFrequency = Integer.MAX_VALUE;
+    synchronized (keys) {
+      int count = keys.size();
+      for (int i = 0; i < Math.min(count, EVICTION_SAMPLE_SIZE); i++) {
+        BlockCacheKey key = keys.get(count <= EVICTION_SAMPLE_SIZE ? i : random.nextInt(count));
+        int f = sketch.frequency(key.hashCode());
+        if (f < victimFrequency) {
+          victim = key;
+          victimFrequency = f;
+        }
+      }
+    }
+    return victim;
+  }
+
+  boolean evictBlock(BlockCacheKey cacheKey) {
+    HFileBlock block;
+    synchronized (keys) {
+      block = map.remove(cacheKey);
+      if (block == null) {
+        return false;
+      }
+      int position = positions.remove(cacheKey);
+      BlockCacheKey last = keys.remove(keys.size() - 1);
+      if (position < keys.size()) {
+        keys.set(position, last);
+        positions.put(last, position);
+      }
+    }
+    addSize(-block.heapSize());
+    block.release();
+    return true;
+  }
+
+  int evictBlocksByHfileName(String hfileName) {
+    int numEvicted = 0;
+    for (BlockCacheKey key : map.keySet()) {
+      if (key.getHfileName().equals(hfileName) && evictBlock(key)) {
+        numEvicted++;
+      }
+    }
+    return numEvicted;
+  }
+
+  void clear() {
+    for (BlockCacheKey key : map.keySet()) {
+      evictBlock(key);
+    }
+  }
+
+  private void addSize(long delta) {
+    size.addAndGet(delta);
+    sizeListener.accept(delta);
+  }
+
+  long getMaxSize() {
+    return maxSize;
+  }
+
+  long size() {
+    return size.get();
+  }
+
+  int getBlockCount() {
+    return map.size();
+  }
+
+  long getHitCount() {
+    return hitCount.sum();
+  }
+
+  long getPromotedCount() {
+    return promotedCount.sum();
+  }
+}
@@ -54,6 +54,8 @@ public final class BucketAllocator {
     private int itemCount;
     private int freeList[];
     private int freeCount, usedCount;
+    // Set while the blocks of this bucket are relocated, no new block is allocated in it meanwhile.
+    private boolean draining;
 
     public Bucket(long offset) {
       baseOffset = offset;
@@ -67,6 +69,7 @@ public final class BucketAllocator {
       itemCount = (int) (bucketCapacity / (long) itemAllocationSize);
       freeCount = itemCount;
       usedCount = 0;
+      draining = false;
       freeList = new int[itemCount];
       for (int i = 0; i < freeCount; ++i)
         freeList[i] = i;
@@ -254,7 +257,7 @@ public final class BucketAllocator {
       if (length < b.getItemAllocationSize()) {
         fragmentationBytes -= b.getItemAllocationSize() - length;
       }
-      if (!freeBuckets.containsKey(b)) freeBuckets.put(b, b);
+      if (!b.draining && !freeBuckets.containsKey(b)) freeBuckets.put(b, b);
       if (b.isCompletelyFree()) completelyFreeBuckets.put(b, b);
     }
 
@@ -319,6 +322,8 @@ public final class BucketAllocator {
   private BucketSizeInfo[] bucketSizeInfos;
   private final long totalSize;
   private transient long usedSize = 0;
+  // Sizes which failed an allocation since the last startDraining call.
+  private final boolean[] starvedSizes;
 
   BucketAllocator(long availableSpace, int[] bucketSizes) throws BucketAllocatorException {
     this.bucketSizes = bucketSizes == null ? DEFAULT_BUCKET_SIZES : bucketSizes;
@@ -330,6 +335,7 @@ public final class BucketAllocator {
       throw new BucketAllocatorException("Bucket allocator size too small (" + buckets.length
         + "); must have room for at least " + this.bucketSizes.length + " buckets");
     bucketSizeInfos = new BucketSizeInfo[this.bucketSizes.length];
+    starvedSizes = new boolean[this.bucketSizes.length];
     for (int i = 0; i < this.bucketSizes.length; ++i) {
       bucketSizeInfos[i] = new BucketSizeInfo(i);
     }
@@ -464,7 +470,10 @@ public final class BucketAllocator {
     long offset = bsi.allocateBlock(blockSize);
 
     // Ask caller to free up space and try again!
-    if (offset < 0) throw new CacheFullException(blockSize, bsi.sizeIndex());
+    if (offset < 0) {
+      starvedSizes[bsi.sizeIndex()] = true;
+      throw new CacheFullException(blockSize, bsi.sizeIndex());
+    }
     usedSize += bucketSizes[bsi.sizeIndex()];
     return offset;
   }
@@ -491,6 +500,74 @@ public final class BucketAllocator {
     return targetBucket.getItemAllocationSize();
   }
 
+  /**
+   * Picks a bucket to drain for online defragmentation, when some size failed an allocation since
+   * the last call while no completely free bucket is left. The bucket picked is the one with the
+   * fewest used bytes among those whose blocks fit in the free slots of the other buckets of their
+   * size, so that relocating them frees the whole bucket, which the starved sizes can then claim.
+   * No block is allocated in the bucket until {@link #stopDraining(int)} is called or it is
+   * reassigned.
+   * @return the index of the bucket to drain, or -1 if there is nothing to defragment
+   */
+  synchronized int startDraining() {
+    boolean starved = false;
+    for (int i = 0; i < starvedSizes.length; i++) {
+      starved |= starvedSizes[i];
+      starvedSizes[i] = false;
+    }
+    if (!starved) {
+      return -1;
+    }
+    for (BucketSizeInfo bsi : bucketSizeInfos) {
+      if (bsi.bucketList.size() > 1 && bsi.completelyFreeBuckets.size() > 0) {
+        // A completely free bucket is already there for the starved sizes to claim.
+        return -1;
+      }
+    }
+    Bucket candidate = null;
+    for (BucketSizeInfo bsi : bucketSizeInfos) {
+      if (bsi.bucketList.size() <= 1) {
+        continue;
+      }
+      long freeCount = 0;
+      for (Object obj : bsi.bucketList.keySet()) {
+        Bucket b = (Bucket) obj;
+        if (!b.draining) {
+          freeCount += b.freeCount();
+        }
+      }
+      for (Object obj : bsi.bucketList.keySet()) {
+        Bucket b = (Bucket) obj;
+        if (
+          !b.draining && b.usedCount() <= freeCount - b.freeCount()
+            && (candidate == null || b.getUsedBytes() < candidate.getUsedBytes())
+        ) {
+          candidate = b;
+        }
+      }
+    }
+    if (candidate == null) {
+      return -1;
+    }
+    candidate.draining = true;
+    bucketSizeInfos[candidate.sizeIndex()].freeBuckets.remove(candidate);
+    return getBucketIndex(candidate.getBaseOffset());
+  }
+
+  /**
+   * Ends the draining of a bucket started by {@link #startDraining()}, it can take new blocks
+   * again unless it was reassigned meanwhile.
+   */
+  synchronized void stopDraining(int bucketNo) {
+    Bucket b = buckets[bucketNo];
+    if (b.draining) {
+      b.draining = false;
+      if (b.hasFreeSpace()) {
+        bucketSizeInfos[b.sizeIndex()].freeBuckets.put(b, b);
+      }
+    }
+  }
+
   public int sizeIndexOfAllocation(long offset) {
     int bucketNo = (int) (offset / bucketCapacity);
     assert bucketNo >= 0 && bucketNo < buckets.length;
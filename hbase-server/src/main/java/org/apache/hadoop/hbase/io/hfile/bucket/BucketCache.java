@@ -28,14 +28,17 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.NavigableSet;
 import java.util.Optional;
 import java.util.PriorityQueue;
@@ -144,6 +147,27 @@ public class BucketCache implements BlockCache, HeapSize {
 
   static final long BLOCK_ORPHAN_GRACE_PERIOD_DEFAULT = 24 * 60 * 60 * 1000L;
 
+  /**
+   * Keep the backingMap keys packed in primitive arrays, see {@link PackedBackingMap}. Saves the
+   * per block key and map node objects, which matters for caches holding hundreds of millions of
+   * blocks.
+   */
+  static final String PACKED_BACKING_MAP_KEY = "hbase.bucketcache.backingmap.packed";
+  static final boolean DEFAULT_PACKED_BACKING_MAP = false;
+
+  /**
+   * Admission and eviction policy. With the default, "lru", every block is admitted and eviction
+   * picks the least recently accessed blocks of each priority group. With "tinylfu" the accesses
+   * are recorded in a {@link FrequencySketch}: once the cache is full a new block is only admitted
+   * if it was accessed more often than the blocks eviction had to drop, and eviction drops the
+   * least frequently accessed blocks first, recency breaking ties. One-off scans and compactions
+   * then cannot flush frequently read blocks.
+   */
+  static final String EVICTION_POLICY_KEY = "hbase.bucketcache.eviction.policy";
+  static final String EVICTION_POLICY_LRU = "lru";
+  static final String EVICTION_POLICY_TINYLFU = "tinylfu";
+  static final String DEFAULT_EVICTION_POLICY = EVICTION_POLICY_LRU;
+
   /** Priority buckets */
   static final float DEFAULT_SINGLE_FACTOR = 0.25f;
   static final float DEFAULT_MULTI_FACTOR = 0.50f;
@@ -189,6 +213,10 @@ public class BucketCache implements BlockCache, HeapSize {
 
   private transient BucketCachePersister cachePersister;
 
+  private transient BucketCacheDefragmenter defragmenter;
+  // Log of the changes of the backing map since the last snapshot, if enabled, or null.
+  private transient volatile BucketCachePersistenceLog persistenceLog;
+
   /**
    * Enum to represent the state of cache
    */
@@ -229,6 +257,19 @@ public class BucketCache implements BlockCache, HeapSize {
   /** Cache access count (sequential ID) */
   private final AtomicLong accessCount = new AtomicLong();
 
+  /** Recent access frequencies, null unless the tinylfu eviction policy is in use */
+  private final FrequencySketch frequencySketch;
+
+  /**
+   * The most frequently accessed of the blocks evicted by the last freeSpace run. A new block must
+   * have been accessed more often than it, as currently estimated by the sketch, to be admitted
+   * while the cache is full, so the bar ages along with the sketch.
+   */
+  volatile BlockCacheKey victim;
+
+  /** Capacity partitions per namespace or table, null if none is configured */
+  private final BucketCachePartitions partitions;
+
   private static final int DEFAULT_CACHE_WAIT_TIME = 50;
 
   private final BucketCacheStats cacheStats;
@@ -376,11 +417,36 @@ public class BucketCache implements BlockCache, HeapSize {
     assert writerQueues.size() == writerThreads.length;
     this.ramCache = new RAMCache();
 
-    this.backingMap = new ConcurrentHashMap<>((int) blockNumCapacity);
+    if (conf.getBoolean(PACKED_BACKING_MAP_KEY, DEFAULT_PACKED_BACKING_MAP)) {
+      this.backingMap = new PackedBackingMap();
+    } else {
+      this.backingMap = new ConcurrentHashMap<>((int) blockNumCapacity);
+    }
+    String evictionPolicy = conf.get(EVICTION_POLICY_KEY, DEFAULT_EVICTION_POLICY);
+    if (EVICTION_POLICY_TINYLFU.equalsIgnoreCase(evictionPolicy)) {
+      this.frequencySketch = new FrequencySketch(blockNumCapacity);
+    } else if (EVICTION_POLICY_LRU.equalsIgnoreCase(evictionPolicy)) {
+      this.frequencySketch = null;
+    } else {
+      throw new IllegalArgumentException("Unknown " + EVICTION_POLICY_KEY + " '" + evictionPolicy
+        + "', expected " + EVICTION_POLICY_LRU + " or " + EVICTION_POLICY_TINYLFU);
+    }
+    this.partitions = BucketCachePartitions.create(conf, onlineRegions);
+    if (partitions != null) {
+      cacheStats.setPartitionStats(partitions.getStats());
+    }
     instantiateWriterThreads();
 
     if (isCachePersistent()) {
       if (ioEngine instanceof FileIOEngine) {
+        if (
+          conf.getBoolean(BucketCachePersistenceLog.ENABLED_KEY,
+            BucketCachePersistenceLog.DEFAULT_ENABLED)
+        ) {
+          persistenceLog = new BucketCachePersistenceLog(this, persistencePath,
+            conf.getLong(BucketCachePersistenceLog.COMPACTION_SIZE_KEY,
+              BucketCachePersistenceLog.DEFAULT_COMPACTION_SIZE));
+        }
         startBucketCachePersisterThread();
       }
       startPersistenceRetriever(bucketSizes, capacity);
@@ -395,6 +461,16 @@ public class BucketCache implements BlockCache, HeapSize {
     // every five minutes.
     this.scheduleThreadPool.scheduleAtFixedRate(new StatisticsThread(this), statThreadPeriod,
       statThreadPeriod, TimeUnit.SECONDS);
+    if (
+      conf.getBoolean(BucketCacheDefragmenter.ENABLED_KEY, BucketCacheDefragmenter.DEFAULT_ENABLED)
+    ) {
+      defragmenter = new BucketCacheDefragmenter(this,
+        conf.getLong(BucketCacheDefragmenter.INTERVAL_KEY,
+          BucketCacheDefragmenter.DEFAULT_INTERVAL),
+        conf.getLong(BucketCacheDefragmenter.BYTES_PER_SECOND_KEY,
+          BucketCacheDefragmenter.DEFAULT_BYTES_PER_SECOND));
+      defragmenter.start();
+    }
     LOG.info("Started bucket cache; ioengine=" + ioEngineName + ", capacity="
       + StringUtils.byteDesc(capacity) + ", blockSize=" + StringUtils.byteDesc(blockSize)
       + ", writerThreadNum=" + writerThreadNum + ", writerQLen=" + writerQLen + ", persistencePath="
@@ -413,12 +489,27 @@ public class BucketCache implements BlockCache, HeapSize {
         fullyCachedFiles.clear();
         backingMapValidated.set(true);
         regionCachedSize.clear();
+        if (persistenceLog != null) {
+          // Neither the snapshot nor the logs match the cache anymore.
+          persistenceLog.deleteLogs(Long.MAX_VALUE);
+          if (!new File(persistencePath).delete()) {
+            LOG.warn("Failed to delete the persistence file {}", persistencePath);
+          }
+        }
         try {
           bucketAllocator = new BucketAllocator(capacity, bucketSizes);
         } catch (BucketAllocatorException allocatorException) {
           LOG.error("Exception during Bucket Allocation", allocatorException);
         }
       } finally {
+        if (persistenceLog != null) {
+          try {
+            persistenceLog.open();
+          } catch (IOException e) {
+            LOG.warn("Failed to open the persistence log, falling back to full snapshots", e);
+            persistenceLog = null;
+          }
+        }
         this.cacheState = CacheState.ENABLED;
         startWriterThreads();
       }
@@ -598,6 +689,11 @@ public class BucketCache implements BlockCache, HeapSize {
     if (cacheKey.getBlockType() == null && cachedItem.getBlockType() != null) {
       cacheKey.setBlockType(cachedItem.getBlockType());
     }
+    if (!admit(cacheKey, inMemory)) {
+      LOG.debug("Not admitting block {}, not accessed more often than evicted blocks", cacheKey);
+      cacheStats.admissionRejected();
+      return;
+    }
     LOG.debug("Caching key={}, item={}, key heap size={}", cacheKey, cachedItem,
       cacheKey.heapSize());
     // Stuff the entry into the RAM cache so it can get drained to the persistent store
@@ -636,6 +732,24 @@ public class BucketCache implements BlockCache, HeapSize {
     }
   }
 
+  /**
+   * Returns whether a new block may enter the cache. Always true with the lru policy. With the
+   * tinylfu policy, once the cache is filled past the size freeSpace frees it down to, only blocks
+   * accessed more often than the most frequently accessed block of the last eviction, as currently
+   * estimated, are admitted. In-memory blocks are always admitted.
+   */
+  private boolean admit(BlockCacheKey cacheKey, boolean inMemory) {
+    BlockCacheKey victim = this.victim;
+    if (
+      frequencySketch == null || inMemory || victim == null
+        || bucketAllocator.getUsedSize() < (long) (bucketAllocator.getTotalSize() * minFactor)
+    ) {
+      return true;
+    }
+    return frequencySketch.frequency(cacheKey.hashCode())
+        > frequencySketch.frequency(victim.hashCode());
+  }
+
   /**
    * If the passed cache key relates to a reference (&lt;hfile&gt;.&lt;parentEncRegion&gt;), this
    * method looks for the block from the referred file, in the cache. If present in the cache, the
@@ -676,10 +790,17 @@ public class BucketCache implements BlockCache, HeapSize {
       cacheStats.miss(caching, key.isPrimary(), key.getBlockType());
       return null;
     }
+    if (frequencySketch != null && !repeat) {
+      // Misses count too, the block is about to be cached and competes for admission.
+      frequencySketch.increment(key.hashCode());
+    }
     RAMQueueEntry re = ramCache.get(key);
     if (re != null) {
       if (updateCacheMetrics) {
         cacheStats.hit(caching, key.isPrimary(), key.getBlockType());
+        if (partitions != null) {
+          partitions.hit(key, caching);
+        }
       }
       re.access(accessCount.incrementAndGet());
       return re.getData();
@@ -714,6 +835,9 @@ public class BucketCache implements BlockCache, HeapSize {
           if (updateCacheMetrics) {
             cacheStats.hit(caching, key.isPrimary(), key.getBlockType());
             cacheStats.ioHit(System.nanoTime() - start);
+            if (partitions != null) {
+              partitions.hit(key, caching);
+            }
           }
           bucketEntry.access(accessCount.incrementAndGet());
           if (this.ioErrorStartTime > 0) {
@@ -727,6 +851,9 @@ public class BucketCache implements BlockCache, HeapSize {
         // we should remove the cache key entry from the backing map
         backingMap.remove(key);
         fileNotFullyCached(key, bucketEntry);
+        if (persistenceLog != null) {
+          persistenceLog.evicted(key, bucketEntry);
+        }
         LOG.debug("Failed to fetch block for cache key: {}.", key, hioex);
       } catch (IOException ioex) {
         LOG.error("Failed reading block " + key + " from bucket cache", ioex);
@@ -737,6 +864,9 @@ public class BucketCache implements BlockCache, HeapSize {
     }
     if (!repeat && updateCacheMetrics) {
       cacheStats.miss(caching, key.isPrimary(), key.getBlockType());
+      if (partitions != null) {
+        partitions.miss(key, caching);
+      }
     }
     return null;
   }
@@ -746,8 +876,14 @@ public class BucketCache implements BlockCache, HeapSize {
    */
   void blockEvicted(BlockCacheKey cacheKey, BucketEntry bucketEntry, boolean decrementBlockNumber,
     boolean evictedByEvictionProcess) {
+    // Logged before the slot is freed, so before the insert of a block reusing it.
+    if (persistenceLog != null) {
+      persistenceLog.evicted(cacheKey, bucketEntry);
+    }
     bucketEntry.markAsEvicted();
-    blocksByHFile.remove(cacheKey);
+    if (!isBackingMapPacked()) {
+      blocksByHFile.remove(cacheKey);
+    }
     if (decrementBlockNumber) {
       this.blockNumber.decrement();
       if (ioEngine.isPersistent()) {
@@ -756,6 +892,9 @@ public class BucketCache implements BlockCache, HeapSize {
     }
     if (evictedByEvictionProcess) {
       cacheStats.evicted(bucketEntry.getCachedTime(), cacheKey.isPrimary());
+      if (partitions != null) {
+        partitions.evicted(cacheKey, bucketEntry);
+      }
     }
     if (ioEngine.isPersistent()) {
       setCacheInconsistent(true);
@@ -896,6 +1035,73 @@ public class BucketCache implements BlockCache, HeapSize {
     return evictBucketEntryIfNoRpcReferenced(blockCacheKey, bucketEntry);
   }
 
+  /**
+   * Moves a block to another slot of its size, for the online defragmentation of the allocator.
+   * The block is copied under the write lock of its offset, so it can't be read or evicted
+   * meanwhile, and it is left in place if an RPC references it. The old slot is freed once the
+   * block is switched to its new entry.
+   * @return the new entry of the block, or null if it was not moved
+   */
+  BucketEntry relocateBlock(BlockCacheKey key, BucketEntry entry) throws IOException {
+    if (entry.isRpcRef()) {
+      return null;
+    }
+    ReentrantReadWriteLock lock = offsetLock.getLock(entry.offset());
+    lock.writeLock().lock();
+    try {
+      // Readers retain the block under the read lock, so its reference count can't grow now.
+      if (!isCacheEnabled() || entry.isRpcRef() || !entry.equals(backingMap.get(key))) {
+        return null;
+      }
+      Cacheable block = ioEngine.read(entry);
+      BucketEntry relocated;
+      try {
+        RAMQueueEntry re = new RAMQueueEntry(key, block, entry.getAccessCounter(),
+          entry.getPriority() == BlockPriority.MEMORY,
+          isCachePersistent() && ioEngine instanceof FileIOEngine, false);
+        relocated = re.writeToCache(ioEngine, bucketAllocator, realCacheSize,
+          this::createRecycler, ByteBuffer.allocate(HFileBlock.BLOCK_METADATA_SPACE),
+          Long.MAX_VALUE);
+      } catch (CacheFullException e) {
+        return null;
+      } finally {
+        if (!ioEngine.usesSharedMemory()) {
+          // Otherwise the block shares the reference count of the entry and wasn't retained.
+          block.release();
+        }
+      }
+      if (relocated == null) {
+        return null;
+      }
+      if (entry.getPriority() == BlockPriority.MULTI) {
+        relocated.access(entry.getAccessCounter());
+      }
+      // Under the lock of the new slot too, so that the new entry can't be evicted, and its
+      // eviction logged, before the relocation is logged, as a single insert replacing the entry.
+      ReentrantReadWriteLock relocatedLock = offsetLock.getLock(relocated.offset());
+      relocatedLock.writeLock().lock();
+      try {
+        if (!backingMap.replace(key, entry, relocated)) {
+          relocated.markAsEvicted();
+          return null;
+        }
+        if (persistenceLog != null) {
+          persistenceLog.inserted(key, relocated);
+        }
+      } finally {
+        relocatedLock.writeLock().unlock();
+      }
+      // Not referenced by any RPC, so this frees the old slot right away.
+      entry.markAsEvicted();
+      if (ioEngine.isPersistent()) {
+        setCacheInconsistent(true);
+      }
+      return relocated;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
   /**
    * Evict {@link BlockCacheKey} and its corresponding {@link BucketEntry} only if
    * {@link BucketEntry#isRpcRef} is false. <br/>
@@ -953,6 +1159,10 @@ public class BucketCache implements BlockCache, HeapSize {
     });
   }
 
+  BucketCachePersistenceLog getPersistenceLog() {
+    return persistenceLog;
+  }
+
   public boolean isCacheInconsistent() {
     return isCacheInconsistent.get();
   }
@@ -1140,14 +1350,30 @@ public class BucketCache implements BlockCache, HeapSize {
       }
       long bytesToFreeWithExtra =
         (long) Math.floor(bytesToFreeWithoutExtra * (1 + extraFreeFactor));
-      // Instantiate priority buckets
+      // Instantiate priority buckets. With tinylfu single and multi access blocks compete on
+      // frequency in the multi group, the single group stays empty.
       BucketEntryGroup bucketSingle =
         new BucketEntryGroup(bytesToFreeWithExtra, blockSize, getPartitionSize(singleFactor));
-      BucketEntryGroup bucketMulti =
-        new BucketEntryGroup(bytesToFreeWithExtra, blockSize, getPartitionSize(multiFactor));
+      BucketEntryGroup bucketMulti = new BucketEntryGroup(bytesToFreeWithExtra, blockSize,
+        getPartitionSize(frequencySketch == null ? multiFactor : singleFactor + multiFactor));
       BucketEntryGroup bucketMemory =
         new BucketEntryGroup(bytesToFreeWithExtra, blockSize, getPartitionSize(memoryFactor));
 
+      // Partitions above their maximum share are trimmed down to it first, from their own blocks
+      // only. Partitions below their minimum share are left alone.
+      Map<BucketCachePartitions.Partition, BucketEntryGroup> partitionExcess = null;
+      if (partitions != null) {
+        partitions.updateUsage(backingMap);
+        partitionExcess = new HashMap<>();
+        for (BucketCachePartitions.Partition partition : partitions.getPartitions()) {
+          long excess = partition.getExcess(totalSize);
+          if (excess > 0) {
+            partitionExcess.put(partition,
+              new BucketEntryGroup(excess, blockSize, partition.getMaxSize(totalSize)));
+          }
+        }
+      }
+
       Set<String> allValidFiles = null;
       // We need the region/stores/files tree, in order to figure out if a block is "orphan" or not.
       // See further comments below for more details.
@@ -1208,9 +1434,27 @@ public class BucketCache implements BlockCache, HeapSize {
           continue;
         }
 
+        if (partitions != null) {
+          BucketCachePartitions.Partition partition = partitions.getPartition(key);
+          if (partition != null) {
+            BucketEntryGroup excess = partitionExcess.get(partition);
+            if (excess != null) {
+              excess.add(bucketEntryWithKey);
+              continue;
+            }
+            if (partition.isProtected(totalSize)) {
+              continue;
+            }
+          }
+        }
+
         switch (entry.getPriority()) {
           case SINGLE: {
-            bucketSingle.add(bucketEntryWithKey);
+            if (frequencySketch == null) {
+              bucketSingle.add(bucketEntryWithKey);
+            } else {
+              bucketMulti.add(bucketEntryWithKey);
+            }
             break;
           }
           case MULTI: {
@@ -1224,6 +1468,12 @@ public class BucketCache implements BlockCache, HeapSize {
         }
       }
 
+      if (partitionExcess != null) {
+        for (BucketEntryGroup excess : partitionExcess.values()) {
+          bytesFreed += excess.free(excess.overflow());
+        }
+      }
+
       // Check if the cold file eviction is sufficient to create enough space.
       bytesToFreeWithExtra -= bytesFreed;
       if (bytesToFreeWithExtra <= 0) {
@@ -1278,6 +1528,16 @@ public class BucketCache implements BlockCache, HeapSize {
       // of the buckets, we do this by evicting the buckets that are least fulled
       freeEntireBuckets(DEFAULT_FREE_ENTIRE_BLOCK_FACTOR * bucketSizesAboveThresholdCount(1.0f));
 
+      if (frequencySketch != null) {
+        // Not from the in-memory group, whose blocks skip the admission: its hot blocks would set
+        // a bar the other blocks cannot reach until the sketch ages.
+        BucketEntryGroup mostFrequent =
+          bucketMulti.evictedFrequency > bucketSingle.evictedFrequency ? bucketMulti : bucketSingle;
+        if (mostFrequent.evicted != null) {
+          victim = mostFrequent.evicted;
+        }
+      }
+
       if (LOG.isDebugEnabled()) {
         long single = bucketSingle.totalSize();
         long multi = bucketMulti.totalSize();
@@ -1353,8 +1613,13 @@ public class BucketCache implements BlockCache, HeapSize {
    * @param bucketEntry Bucket entry to put into backingMap.
    */
   protected void putIntoBackingMap(BlockCacheKey key, BucketEntry bucketEntry) {
+    if (persistenceLog != null) {
+      persistenceLog.inserted(key, bucketEntry);
+    }
     BucketEntry previousEntry = backingMap.put(key, bucketEntry);
-    blocksByHFile.add(key);
+    if (!isBackingMapPacked()) {
+      blocksByHFile.add(key);
+    }
     updateRegionCachedSize(key, bucketEntry.getLength());
     if (previousEntry != null && previousEntry != bucketEntry) {
       previousEntry.withWriteLock(offsetLock, () -> {
@@ -1603,6 +1868,7 @@ public class BucketCache implements BlockCache, HeapSize {
     if (!persistenceFile.exists()) {
       LOG.warn("Persistence file missing! "
         + "It's ok if it's first run after enabling persistent cache.");
+      replayPersistenceLogs();
       bucketAllocator = new BucketAllocator(cacheCapacity, bucketSizes, backingMap, realCacheSize);
       blockNumber.add(backingMap.size());
       backingMapValidated.set(true);
@@ -1628,12 +1894,66 @@ public class BucketCache implements BlockCache, HeapSize {
         throw new IOException(
           "Persistence file does not start with protobuf magic number. " + persistencePath);
       }
+      replayPersistenceLogs();
       bucketAllocator = new BucketAllocator(cacheCapacity, bucketSizes, backingMap, realCacheSize);
       blockNumber.add(backingMap.size());
       LOG.info("Bucket cache retrieved from file successfully with size: {}", backingMap.size());
     }
   }
 
+  private void replayPersistenceLogs() throws IOException {
+    if (persistenceLog != null) {
+      long records = persistenceLog.replay();
+      updateRegionSizeMapWhileRetrievingFromFile();
+      LOG.info("Replayed {} records of the persistence log, backing map size: {}", records,
+        backingMap.size());
+    }
+  }
+
+  /**
+   * Applies a record of the persistence log to the backing map, while retrieving it from file.
+   * An insert drops the entries it overlaps, older than it, and an eviction only removes the entry
+   * of the key if it is still at the same offset.
+   * @param offsets the keys of the backing map by offset, kept up to date
+   */
+  void replayPersistenceLog(boolean inserted, BlockCacheKey key, BucketEntry entry,
+    NavigableMap<Long, BlockCacheKey> offsets) {
+    BucketEntry existing = backingMap.get(key);
+    if (inserted) {
+      if (existing != null) {
+        offsets.remove(existing.offset(), key);
+      }
+      long end = entry.offset() + entry.getLength();
+      for (Map.Entry<Long, BlockCacheKey> lower; (lower = offsets.lowerEntry(end)) != null;) {
+        BucketEntry overlapped = backingMap.get(lower.getValue());
+        if (overlapped.offset() + overlapped.getLength() <= entry.offset()) {
+          break;
+        }
+        LOG.debug("Replayed block {} overlaps block {}, dropping the latter", key,
+          lower.getValue());
+        offsets.remove(lower.getKey());
+        removeReplayed(lower.getValue(), overlapped);
+      }
+      backingMap.put(key, entry);
+      offsets.put(entry.offset(), key);
+      if (!isBackingMapPacked()) {
+        blocksByHFile.add(key);
+      }
+    } else if (existing != null && existing.offset() == entry.offset()) {
+      offsets.remove(existing.offset(), key);
+      removeReplayed(key, existing);
+    }
+  }
+
+  private void removeReplayed(BlockCacheKey key, BucketEntry entry) {
+    if (backingMap.remove(key, entry)) {
+      if (!isBackingMapPacked()) {
+        blocksByHFile.remove(key);
+      }
+      fullyCachedFiles.remove(key.getHfileName());
+    }
+  }
+
   private void updateRegionSizeMapWhileRetrievingFromFile() {
     // Update the regionCachedSize with the region size while restarting the region server
     if (LOG.isDebugEnabled()) {
@@ -1657,7 +1977,7 @@ public class BucketCache implements BlockCache, HeapSize {
     }
   }
 
-  private void verifyCapacityAndClasses(long capacitySize, String ioclass, String mapclass)
+  void verifyCapacityAndClasses(long capacitySize, String ioclass, String mapclass)
     throws IOException {
     if (capacitySize != cacheCapacity) {
       throw new IOException("Mismatched cache capacity:" + StringUtils.byteDesc(capacitySize)
@@ -1674,6 +1994,13 @@ public class BucketCache implements BlockCache, HeapSize {
   }
 
   private void verifyFileIntegrity(BucketCacheProtos.BucketCacheEntry proto) {
+    if (persistenceLog != null) {
+      // The cache file changed since the snapshot as the logged blocks were written, so its
+      // checksum can't match. Rather than checking every block in the background, the cached time
+      // of a block is checked when it is read, evicting it on mismatch.
+      backingMapValidated.set(true);
+      return;
+    }
     try {
       if (proto.hasChecksum()) {
         ((PersistentIOEngine) ioEngine).verifyFileIntegrity(proto.getChecksum().toByteArray(),
@@ -1720,15 +2047,22 @@ public class BucketCache implements BlockCache, HeapSize {
     Pair<ConcurrentHashMap<BlockCacheKey, BucketEntry>, NavigableSet<BlockCacheKey>> pair2 =
       BucketProtoUtils.fromPB(deserializer, chunk, this::createRecycler);
     backingMap.putAll(pair2.getFirst());
-    blocksByHFile.addAll(pair2.getSecond());
+    if (!isBackingMapPacked()) {
+      blocksByHFile.addAll(pair2.getSecond());
+    }
   }
 
   private void parsePB(BucketCacheProtos.BucketCacheEntry proto) throws IOException {
     Pair<ConcurrentHashMap<BlockCacheKey, BucketEntry>, NavigableSet<BlockCacheKey>> pair =
       BucketProtoUtils.fromPB(proto.getDeserializersMap(), proto.getBackingMap(),
         this::createRecycler);
-    backingMap = pair.getFirst();
-    blocksByHFile = pair.getSecond();
+    if (isBackingMapPacked()) {
+      backingMap.clear();
+      backingMap.putAll(pair.getFirst());
+    } else {
+      backingMap = pair.getFirst();
+      blocksByHFile = pair.getSecond();
+    }
     fullyCachedFiles.clear();
     fullyCachedFiles.putAll(BucketProtoUtils.fromPB(proto.getCachedFilesMap()));
 
@@ -1809,6 +2143,9 @@ public class BucketCache implements BlockCache, HeapSize {
     cacheState = CacheState.DISABLED;
     ioEngine.shutdown();
     this.scheduleThreadPool.shutdown();
+    if (defragmenter != null) {
+      defragmenter.shutdown();
+    }
     for (int i = 0; i < writerThreads.length; ++i)
       writerThreads[i].interrupt();
     this.ramCache.clear();
@@ -1845,7 +2182,11 @@ public class BucketCache implements BlockCache, HeapSize {
               Thread.sleep(10);
             }
           }
-          persistToFile();
+          if (persistenceLog != null) {
+            persistenceLog.close();
+          } else {
+            persistToFile();
+          }
         } catch (IOException ex) {
           LOG.error("Unable to persist data on exit: " + ex.toString(), ex);
         } catch (InterruptedException e) {
@@ -1947,12 +2288,48 @@ public class BucketCache implements BlockCache, HeapSize {
     return numEvicted;
   }
 
+  @Override
+  public List<BlockCacheKey> getBlockKeysForFile(String hfileName) {
+    return new ArrayList<>(getAllCacheKeysForFile(hfileName, 0, Long.MAX_VALUE));
+  }
+
+  private boolean isBackingMapPacked() {
+    return backingMap instanceof PackedBackingMap;
+  }
+
   private Set<BlockCacheKey> getAllCacheKeysForFile(String hfileName, long init, long end) {
+    if (isBackingMapPacked()) {
+      return ((PackedBackingMap) backingMap).keysOfFile(hfileName, init, end);
+    }
     // These keys are just for comparison and are short lived, so we need only file name and offset
     return blocksByHFile.subSet(new BlockCacheKey(hfileName, init), true,
       new BlockCacheKey(hfileName, end), true);
   }
 
+  /**
+   * An entry with the frequency of its key when added to a group, so that the order of the entries
+   * does not change with the accesses made while the group is built and freed.
+   */
+  private static final class FrequencyEntry
+    extends AbstractMap.SimpleImmutableEntry<BlockCacheKey, BucketEntry> {
+    private final int frequency;
+
+    FrequencyEntry(Map.Entry<BlockCacheKey, BucketEntry> entry, int frequency) {
+      super(entry);
+      this.frequency = frequency;
+    }
+  }
+
+  /**
+   * Orders entries for eviction with the tinylfu policy, the less frequently accessed last so that
+   * they are evicted first, recency breaking ties.
+   */
+  private static int compareByFrequency(Map.Entry<BlockCacheKey, BucketEntry> a,
+    Map.Entry<BlockCacheKey, BucketEntry> b) {
+    int cmp = Integer.compare(((FrequencyEntry) b).frequency, ((FrequencyEntry) a).frequency);
+    return cmp != 0 ? cmp : BucketEntry.COMPARATOR.compare(a.getValue(), b.getValue());
+  }
+
   /**
    * Used to group bucket entries into priority buckets. There will be a BucketEntryGroup for each
    * priority (single, multi, memory). Once bucketed, the eviction algorithm takes the appropriate
@@ -1963,16 +2340,24 @@ public class BucketCache implements BlockCache, HeapSize {
     private CachedEntryQueue queue;
     private long totalSize = 0;
     private long bucketSize;
+    // The most frequently accessed of the evicted entries and its frequency, only tracked with the
+    // tinylfu policy.
+    private BlockCacheKey evicted;
+    private int evictedFrequency = -1;
 
     public BucketEntryGroup(long bytesToFree, long blockSize, long bucketSize) {
       this.bucketSize = bucketSize;
-      queue = new CachedEntryQueue(bytesToFree, blockSize);
+      queue = frequencySketch == null
+        ? new CachedEntryQueue(bytesToFree, blockSize)
+        : new CachedEntryQueue(bytesToFree, blockSize, BucketCache::compareByFrequency);
       totalSize = 0;
     }
 
     public void add(Map.Entry<BlockCacheKey, BucketEntry> block) {
       totalSize += block.getValue().getLength();
-      queue.add(block);
+      queue.add(frequencySketch == null
+        ? block
+        : new FrequencyEntry(block, frequencySketch.frequency(block.getKey().hashCode())));
     }
 
     public long free(long toFree) {
@@ -1985,6 +2370,13 @@ public class BucketCache implements BlockCache, HeapSize {
         BucketEntry be = entry.getValue();
         if (evictBucketEntryIfNoRpcReferenced(blockCacheKey, be)) {
           freedBytes += be.getLength();
+          if (frequencySketch != null) {
+            int frequency = ((FrequencyEntry) entry).frequency;
+            if (frequency > evictedFrequency) {
+              evicted = blockCacheKey;
+              evictedFrequency = frequency;
+            }
+          }
         }
         if (freedBytes >= toFree) {
           return freedBytes;
@@ -2135,7 +2527,9 @@ public class BucketCache implements BlockCache, HeapSize {
 
       @Override
       public CachedBlock next() {
-        final Map.Entry<BlockCacheKey, BucketEntry> e = i.next();
+        // Copied, the entries of the packed backing map are reused by its iterator.
+        final Map.Entry<BlockCacheKey, BucketEntry> e =
+          new AbstractMap.SimpleImmutableEntry<>(i.next());
         return new CachedBlock() {
           @Override
           public String toString() {
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Online defragmentation of the {@link BucketAllocator}. Buckets are assigned to a size when
+ * first used and only go back to the common pool once completely free, so when the mix of block
+ * sizes changes some sizes run out of buckets and evict early while free slots sit stranded in
+ * the buckets of other sizes. Periodically, if a size failed an allocation, this thread relocates
+ * the blocks of the least used bucket that can be emptied into the other buckets of its size, so
+ * the freed bucket can be claimed by the starved size.
+ * <p>
+ * Blocks still referenced by an RPC are left in place, see {@link BucketCache#relocateBlock}.
+ * Relocation is throttled to {@link #BYTES_PER_SECOND_KEY} so it doesn't compete with the
+ * foreground reads for the IO engine.
+ */
+@InterfaceAudience.Private
+class BucketCacheDefragmenter extends Thread {
+  private static final Logger LOG = LoggerFactory.getLogger(BucketCacheDefragmenter.class);
+
+  static final String ENABLED_KEY = "hbase.bucketcache.defrag.enabled";
+  static final boolean DEFAULT_ENABLED = false;
+  static final String INTERVAL_KEY = "hbase.bucketcache.defrag.interval.ms";
+  static final long DEFAULT_INTERVAL = 60 * 1000;
+  /** Maximum number of bytes relocated per second */
+  static final String BYTES_PER_SECOND_KEY = "hbase.bucketcache.defrag.bytes.per.second";
+  static final long DEFAULT_BYTES_PER_SECOND = 16 * 1024 * 1024;
+
+  private final BucketCache cache;
+  private final long intervalMillis;
+  private final long bytesPerSecond;
+
+  private volatile boolean shutdown = false;
+
+  BucketCacheDefragmenter(BucketCache cache, long intervalMillis, long bytesPerSecond) {
+    super("bucket-cache-defragmenter");
+    this.cache = cache;
+    this.intervalMillis = intervalMillis;
+    this.bytesPerSecond = bytesPerSecond;
+    setDaemon(true);
+    LOG.info("BucketCacheDefragmenter started with interval: {}ms, budget: {}/s", intervalMillis,
+      StringUtils.byteDesc(bytesPerSecond));
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (!shutdown) {
+        Thread.sleep(intervalMillis);
+        try {
+          defragment();
+        } catch (IOException e) {
+          LOG.warn("Failed defragmenting the bucket cache", e);
+        }
+      }
+    } catch (InterruptedException e) {
+      LOG.debug("Interrupting BucketCacheDefragmenter thread.");
+    }
+    LOG.info("Finishing bucket cache defragmenter thread.");
+  }
+
+  /**
+   * Empties one bucket if some size is starved.
+   * @return the number of bytes relocated
+   */
+  long defragment() throws IOException, InterruptedException {
+    if (!cache.isCacheEnabled()) {
+      return 0;
+    }
+    BucketAllocator allocator = cache.getAllocator();
+    int bucketNo = allocator.startDraining();
+    if (bucketNo < 0) {
+      return 0;
+    }
+    long start = System.nanoTime();
+    long relocatedBytes = 0;
+    int relocated = 0;
+    int left = 0;
+    try {
+      for (Map.Entry<BlockCacheKey, BucketEntry> e : cache.backingMap.entrySet()) {
+        BucketEntry entry = e.getValue();
+        if (allocator.getBucketIndex(entry.offset()) != bucketNo) {
+          continue;
+        }
+        if (shutdown || !cache.isCacheEnabled()) {
+          return relocatedBytes;
+        }
+        if (cache.relocateBlock(e.getKey(), entry) == null) {
+          left++;
+          continue;
+        }
+        relocated++;
+        relocatedBytes += entry.getLength();
+        throttle(relocatedBytes, start);
+      }
+    } finally {
+      allocator.stopDraining(bucketNo);
+    }
+    LOG.info("Defragmented bucket {}: relocated {} blocks ({}) in {}ms, {} blocks left", bucketNo,
+      relocated, StringUtils.byteDesc(relocatedBytes),
+      TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), left);
+    return relocatedBytes;
+  }
+
+  private void throttle(long bytes, long startNanos) throws InterruptedException {
+    long budgetMillis = bytes * 1000 / bytesPerSecond;
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    if (budgetMillis > elapsedMillis) {
+      Thread.sleep(budgetMillis - elapsedMillis);
+    }
+  }
+
+  void shutdown() {
+    shutdown = true;
+    interrupt();
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.CacheStats;
+import org.apache.hadoop.hbase.regionserver.HRegion;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Capacity partitions of the {@link BucketCache} per namespace or table, so that a tenant scanning
+ * a large table cannot flush the working set of the others. Every partition has a minimum and a
+ * maximum share of the cache capacity. When the cache frees space, the blocks of a partition using
+ * more than its maximum share are evicted first, in the order of the eviction policy, down to that
+ * share, and the blocks of a partition using less than its minimum share are not evicted at all.
+ * As long as the cache is not full partitions grow freely, borrowing the capacity reserved for idle
+ * ones. Blocks of tables without a partition, of a table or a namespace, are evicted as usual.
+ * <p>
+ * A block belongs to the partition of the table of its region, found through the online regions.
+ * The blocks of regions which are not online, e.g. recovered from a persistent cache for regions
+ * since moved away, belong to no partition. The usage of a partition is only computed when freeing
+ * space, as it needs a full scan of the cache.
+ */
+@InterfaceAudience.Private
+final class BucketCachePartitions {
+
+  /**
+   * Comma separated namespaces and tables, as namespace:table, which get their own partition. The
+   * shares of a partition are configured with {@link #PARTITION_KEY_PREFIX}name.min and .max, as
+   * fractions of the cache capacity, e.g. hbase.bucketcache.partition.ns:table.max=0.2.
+   */
+  static final String PARTITIONS_KEY = "hbase.bucketcache.partitions";
+  static final String PARTITION_KEY_PREFIX = "hbase.bucketcache.partition.";
+  static final float DEFAULT_MIN_FACTOR = 0f;
+  static final float DEFAULT_MAX_FACTOR = 1f;
+
+  // Marks the regions of tables without partition in regionPartitions.
+  private static final Partition NONE = new Partition("", 0, 1);
+
+  private final Map<String, Partition> partitions;
+  private final Map<String, HRegion> onlineRegions;
+  // Partition of a region by encoded name, the table of a region never changes.
+  private final Map<String, Partition> regionPartitions = new ConcurrentHashMap<>();
+
+  private BucketCachePartitions(Map<String, Partition> partitions,
+    Map<String, HRegion> onlineRegions) {
+    this.partitions = partitions;
+    this.onlineRegions = onlineRegions;
+  }
+
+  /**
+   * Returns the partitions configured, or null if none is, or if there is no online regions to
+   * tell the table of a block.
+   */
+  static BucketCachePartitions create(Configuration conf, Map<String, HRegion> onlineRegions) {
+    String[] names = conf.getTrimmedStrings(PARTITIONS_KEY);
+    if (names.length == 0 || onlineRegions == null) {
+      return null;
+    }
+    Map<String, Partition> partitions = new LinkedHashMap<>();
+    float totalMin = 0;
+    for (String name : names) {
+      float min = conf.getFloat(PARTITION_KEY_PREFIX + name + ".min", DEFAULT_MIN_FACTOR);
+      float max = conf.getFloat(PARTITION_KEY_PREFIX + name + ".max", DEFAULT_MAX_FACTOR);
+      if (min < 0 || max > 1 || min > max) {
+        throw new IllegalArgumentException("Invalid shares for bucket cache partition " + name
+          + ", expected 0 <= min <= max <= 1, got min=" + min + ", max=" + max);
+      }
+      totalMin += min;
+      // A name with a colon is a table, anything else a namespace.
+      String key =
+        name.indexOf(':') >= 0 ? TableName.valueOf(name).getNameWithNamespaceInclAsString() : name;
+      partitions.put(key, new Partition(name, min, max));
+    }
+    if (totalMin > 1) {
+      throw new IllegalArgumentException(
+        "The minimum shares of the bucket cache partitions add up to more than 1: " + totalMin);
+    }
+    return new BucketCachePartitions(partitions, onlineRegions);
+  }
+
+  /** Returns the partition of the block, or null if it belongs to none */
+  Partition getPartition(BlockCacheKey key) {
+    String regionName = key.getRegionName();
+    if (regionName == null) {
+      return null;
+    }
+    Partition partition = regionPartitions.get(regionName);
+    if (partition == null) {
+      HRegion region = onlineRegions.get(regionName);
+      if (region == null) {
+        return null;
+      }
+      TableName table = region.getTableDescriptor().getTableName();
+      partition = partitions.get(table.getNameWithNamespaceInclAsString());
+      if (partition == null) {
+        partition = partitions.getOrDefault(table.getNamespaceAsString(), NONE);
+      }
+      regionPartitions.put(regionName, partition);
+    }
+    return partition == NONE ? null : partition;
+  }
+
+  void hit(BlockCacheKey key, boolean caching) {
+    Partition partition = getPartition(key);
+    if (partition != null) {
+      partition.stats.hit(caching, key.isPrimary(), key.getBlockType());
+    }
+  }
+
+  void miss(BlockCacheKey key, boolean caching) {
+    Partition partition = getPartition(key);
+    if (partition != null) {
+      partition.stats.miss(caching, key.isPrimary(), key.getBlockType());
+    }
+  }
+
+  void evicted(BlockCacheKey key, BucketEntry entry) {
+    Partition partition = getPartition(key);
+    if (partition != null) {
+      partition.stats.evicted(entry.getCachedTime(), key.isPrimary());
+    }
+  }
+
+  /** Recomputes the usage of every partition, called when freeing space. */
+  void updateUsage(Map<BlockCacheKey, BucketEntry> backingMap) {
+    // Forget the regions which went away, their partition is looked up again if they come back.
+    regionPartitions.keySet().retainAll(onlineRegions.keySet());
+    for (Partition partition : partitions.values()) {
+      partition.scanSize = 0;
+    }
+    for (Map.Entry<BlockCacheKey, BucketEntry> e : backingMap.entrySet()) {
+      Partition partition = getPartition(e.getKey());
+      if (partition != null) {
+        partition.scanSize += e.getValue().getLength();
+      }
+    }
+    for (Partition partition : partitions.values()) {
+      partition.usedSize = partition.scanSize;
+    }
+  }
+
+  Iterable<Partition> getPartitions() {
+    return partitions.values();
+  }
+
+  /** Returns the stats of every partition by name */
+  Map<String, CacheStats> getStats() {
+    Map<String, CacheStats> stats = new LinkedHashMap<>();
+    for (Partition partition : partitions.values()) {
+      stats.put(partition.name, partition.stats);
+    }
+    return Collections.unmodifiableMap(stats);
+  }
+
+  static final class Partition {
+    private final String name;
+    private final float minFactor;
+    private final float maxFactor;
+    private final CacheStats stats;
+    // Usage as of the last free space run, in bytes.
+    private volatile long usedSize;
+    // Only used by updateUsage, under the free space lock.
+    private long scanSize;
+
+    private Partition(String name, float minFactor, float maxFactor) {
+      this.name = name;
+      this.minFactor = minFactor;
+      this.maxFactor = maxFactor;
+      this.stats = new CacheStats(name);
+    }
+
+    String getName() {
+      return name;
+    }
+
+    long getMinSize(long capacity) {
+      return (long) (capacity * minFactor);
+    }
+
+    long getMaxSize(long capacity) {
+      return (long) (capacity * maxFactor);
+    }
+
+    long getUsedSize() {
+      return usedSize;
+    }
+
+    CacheStats getStats() {
+      return stats;
+    }
+
+    /** Returns the number of bytes above the maximum share, as of the last usage update */
+    long getExcess(long capacity) {
+      return usedSize - getMaxSize(capacity);
+    }
+
+    /** Whether the partition uses no more than its minimum share and must not be evicted */
+    boolean isProtected(long capacity) {
+      return usedSize <= getMinSize(capacity);
+    }
+  }
+}
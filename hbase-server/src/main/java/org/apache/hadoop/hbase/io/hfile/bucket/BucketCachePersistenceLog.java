@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.util.Pair;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hbase.thirdparty.com.google.protobuf.CodedOutputStream;
+
+import org.apache.hadoop.hbase.shaded.protobuf.generated.BucketCacheProtos;
+
+/**
+ * Log of the changes of the backing map of a persistent {@link BucketCache} since its last
+ * snapshot. Persisting the whole backing map takes time and I/O proportional to the number of
+ * cached blocks, however few of them changed, so with this log the cache only appends a record
+ * for every block cached or evicted, and the {@link BucketCachePersister} only writes a new
+ * snapshot, compacting the log, once the log grew past
+ * {@link #COMPACTION_SIZE_KEY}. On restart, the logs are replayed on top of the snapshot.
+ * <p>
+ * The log is made of files named after the persistence path, followed by .log. and a sequence
+ * number. A file starts with {@link #LOG_MAGIC} and a header giving the capacity, classes and
+ * deserializers of the cache, followed by records made of a type byte and a delimited backing
+ * map entry. The threads changing the cache only queue their records, which the persister writes
+ * and flushes, so a crash loses the last ones, like it loses the changes since the last snapshot
+ * without a log. A torn record ends the replay of its file. An eviction is logged before its slot
+ * is freed, so before the insert of any block reusing it, and a replayed insert still drops the
+ * entries it overlaps, if any, as they can only be older.
+ * <p>
+ * As the cache file changes after every snapshot, its checksum no longer validates the
+ * snapshot, and instead of checking every recovered block before serving it, the cached time of
+ * every block is checked when it is read, see {@link FileIOEngine}.
+ */
+@InterfaceAudience.Private
+final class BucketCachePersistenceLog {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BucketCachePersistenceLog.class);
+
+  static final String ENABLED_KEY = "hbase.bucketcache.persistence.log.enabled";
+  static final boolean DEFAULT_ENABLED = false;
+  /** Size of the log, in bytes, past which a new snapshot is written and the log truncated */
+  static final String COMPACTION_SIZE_KEY = "hbase.bucketcache.persistence.log.compaction.size";
+  static final long DEFAULT_COMPACTION_SIZE = 64L * 1024 * 1024;
+
+  static final byte[] LOG_MAGIC = new byte[] { 'B', 'C', 'L', '1' };
+  private static final int INSERT = 0;
+  private static final int EVICT = 1;
+
+  private final BucketCache cache;
+  private final File dir;
+  private final String prefix;
+  private final long compactionSize;
+
+  // The records appended and not written yet, in order.
+  private final Queue<byte[]> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicLong size = new AtomicLong();
+
+  // Guarded by this.
+  private volatile OutputStream out;
+  private long seqId;
+  // Set when a record could not be written, the next snapshot makes up for the lost ones.
+  private volatile boolean failed;
+
+  BucketCachePersistenceLog(BucketCache cache, String persistencePath, long compactionSize) {
+    File path = new File(persistencePath).getAbsoluteFile();
+    this.cache = cache;
+    this.dir = path.getParentFile();
+    this.prefix = path.getName() + ".log.";
+    this.compactionSize = compactionSize;
+  }
+
+  /** Returns the log files by sequence number */
+  private TreeMap<Long, File> listLogs() {
+    TreeMap<Long, File> logs = new TreeMap<>();
+    File[] files = dir.listFiles((d, name) -> name.startsWith(prefix));
+    if (files != null) {
+      for (File file : files) {
+        try {
+          logs.put(Long.parseLong(file.getName().substring(prefix.length())), file);
+        } catch (NumberFormatException e) {
+          LOG.debug("Ignoring {}, not a bucket cache persistence log", file);
+        }
+      }
+    }
+    return logs;
+  }
+
+  /**
+   * Replays the logs, in order, into the backing map of the cache, on top of the snapshot it was
+   * recovered from.
+   * @return the number of records replayed
+   */
+  long replay() throws IOException {
+    long records = 0;
+    // The keys of the backing map by offset, to find the entries a replayed insert overlaps.
+    NavigableMap<Long, BlockCacheKey> offsets = new TreeMap<>();
+    cache.backingMap.forEach((key, entry) -> offsets.put(entry.offset(), key));
+    for (File file : listLogs().values()) {
+      try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+        byte[] magic = new byte[LOG_MAGIC.length];
+        IOUtils.readFully(in, magic, 0, magic.length);
+        if (!Arrays.equals(magic, LOG_MAGIC)) {
+          throw new IOException("Bucket cache persistence log does not start with magic "
+            + Arrays.toString(LOG_MAGIC) + ": " + file);
+        }
+        BucketCacheProtos.BucketCacheEntry header =
+          BucketCacheProtos.BucketCacheEntry.parseDelimitedFrom(in);
+        cache.verifyCapacityAndClasses(header.getCacheCapacity(), header.getIoClass(),
+          header.getMapClass());
+        Map<Integer, String> deserializers = header.getDeserializersMap();
+        for (int type; (type = in.read()) >= 0; records++) {
+          BucketCacheProtos.BackingMapEntry entry;
+          try {
+            entry = BucketCacheProtos.BackingMapEntry.parseDelimitedFrom(in);
+          } catch (IOException e) {
+            LOG.warn("Torn record at the end of {}, skipping it", file, e);
+            break;
+          }
+          if (entry == null || (type != INSERT && type != EVICT)) {
+            LOG.warn("Torn record at the end of {}, skipping it", file);
+            break;
+          }
+          Pair<BlockCacheKey, BucketEntry> pair =
+            BucketProtoUtils.fromPB(deserializers, entry, cache::createRecycler);
+          cache.replayPersistenceLog(type == INSERT, pair.getFirst(), pair.getSecond(), offsets);
+        }
+      }
+    }
+    return records;
+  }
+
+  /** Starts a new log file, after the ones left by a previous run. */
+  synchronized void open() throws IOException {
+    TreeMap<Long, File> logs = listLogs();
+    seqId = logs.isEmpty() ? 0 : logs.lastKey();
+    roll();
+  }
+
+  private void roll() throws IOException {
+    if (out != null) {
+      drain();
+      out.close();
+      out = null;
+    }
+    seqId++;
+    File file = new File(dir, prefix + seqId);
+    OutputStream os = new BufferedOutputStream(new FileOutputStream(file, false));
+    try {
+      os.write(LOG_MAGIC);
+      BucketProtoUtils.toLogHeaderPB(cache).writeDelimitedTo(os);
+    } catch (IOException e) {
+      os.close();
+      throw e;
+    }
+    out = os;
+    size.set(0);
+    failed = false;
+  }
+
+  void inserted(BlockCacheKey key, BucketEntry entry) {
+    append(INSERT, key, entry);
+  }
+
+  void evicted(BlockCacheKey key, BucketEntry entry) {
+    append(EVICT, key, entry);
+  }
+
+  /**
+   * Queues a record, serialized by the calling thread, for the persister to write, so that the
+   * threads changing the cache never wait for each other nor for the log file.
+   */
+  private void append(int type, BlockCacheKey key, BucketEntry entry) {
+    if (out == null || failed) {
+      return;
+    }
+    BucketCacheProtos.BackingMapEntry record = BucketProtoUtils.toPB(key, entry);
+    int serializedSize = record.getSerializedSize();
+    byte[] bytes =
+      new byte[1 + CodedOutputStream.computeUInt32SizeNoTag(serializedSize) + serializedSize];
+    try {
+      CodedOutputStream cos = CodedOutputStream.newInstance(bytes);
+      cos.writeRawByte(type);
+      cos.writeUInt32NoTag(serializedSize);
+      record.writeTo(cos);
+      cos.checkNoSpaceLeft();
+    } catch (IOException e) {
+      LOG.warn("Failed to serialize a bucket cache persistence log record, it will be compacted",
+        e);
+      failed = true;
+      return;
+    }
+    pending.add(bytes);
+    size.addAndGet(bytes.length);
+  }
+
+  /** Writes the queued records to the log file, the only writer of the file. */
+  private void drain() {
+    for (byte[] record; (record = pending.poll()) != null;) {
+      if (failed) {
+        continue;
+      }
+      try {
+        out.write(record);
+      } catch (IOException e) {
+        LOG.warn("Failed to append to the bucket cache persistence log, it will be compacted", e);
+        failed = true;
+      }
+    }
+  }
+
+  /** Writes the queued records to the log file and flushes it. */
+  synchronized void sync() throws IOException {
+    if (out != null) {
+      drain();
+      if (!failed) {
+        out.flush();
+      }
+    }
+  }
+
+  boolean needsCompaction() {
+    return out != null && (failed || size.get() >= compactionSize);
+  }
+
+  /**
+   * Writes a new snapshot of the cache and deletes the logs it makes obsolete. The records
+   * appended while the snapshot is written go to a new log file, which is kept: replaying the
+   * changes already in the snapshot makes no difference.
+   */
+  void compact() throws IOException {
+    long firstKept;
+    synchronized (this) {
+      roll();
+      firstKept = seqId;
+    }
+    cache.persistToFile();
+    deleteLogs(firstKept);
+  }
+
+  /** Closes the log after a last snapshot of the cache, which makes all the logs obsolete. */
+  void close() throws IOException {
+    synchronized (this) {
+      if (out != null) {
+        drain();
+        out.close();
+        out = null;
+      }
+      pending.clear();
+    }
+    cache.persistToFile();
+    deleteLogs(Long.MAX_VALUE);
+  }
+
+  /** Deletes the logs with a sequence number lower than the given one. */
+  void deleteLogs(long before) {
+    for (File file : listLogs().headMap(before).values()) {
+      if (!file.delete()) {
+        LOG.warn("Failed to delete bucket cache persistence log {}", file);
+      }
+    }
+  }
+
+  long getSize() {
+    return size.get();
+  }
+}
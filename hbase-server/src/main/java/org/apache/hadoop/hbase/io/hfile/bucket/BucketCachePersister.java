@@ -43,7 +43,15 @@ public class BucketCachePersister extends Thread {
       while (true) {
         try {
           Thread.sleep(intervalMillis);
-          if (cache.isCacheInconsistent()) {
+          BucketCachePersistenceLog log = cache.getPersistenceLog();
+          if (log != null) {
+            log.sync();
+            if (log.needsCompaction()) {
+              LOG.debug("Persistence log is {} bytes, compacting it", log.getSize());
+              log.compact();
+              cache.setCacheInconsistent(false);
+            }
+          } else if (cache.isCacheInconsistent()) {
             LOG.debug("Cache is inconsistent, persisting to disk");
             cache.persistToFile();
             cache.setCacheInconsistent(false);
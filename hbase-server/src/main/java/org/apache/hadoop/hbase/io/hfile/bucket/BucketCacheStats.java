@@ -17,6 +17,8 @@
  */
 package org.apache.hadoop.hbase.io.hfile.bucket;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.LongAdder;
 import org.apache.hadoop.hbase.io.hfile.CacheStats;
@@ -36,6 +38,11 @@ public class BucketCacheStats extends CacheStats {
   /* Tracing failed Bucket Cache allocations. */
   private LongAdder allocationFailCount = new LongAdder();
 
+  /* Blocks the admission policy kept out of the cache. */
+  private final LongAdder admissionRejectedCount = new LongAdder();
+
+  private Map<String, CacheStats> partitionStats = Collections.emptyMap();
+
   BucketCacheStats(int numPeriodsInWindow, int periodTimeInMinutes) {
     super("BucketCache", numPeriodsInWindow, periodTimeInMinutes);
     allocationFailCount.reset();
@@ -44,7 +51,8 @@ public class BucketCacheStats extends CacheStats {
   @Override
   public String toString() {
     return super.toString() + ", ioHitsPerSecond=" + getIOHitsPerSecond() + ", ioTimePerHit="
-      + getIOTimePerHit() + ", allocationFailCount=" + getAllocationFailCount();
+      + getIOTimePerHit() + ", allocationFailCount=" + getAllocationFailCount()
+      + ", admissionRejectedCount=" + getAdmissionRejectedCount();
   }
 
   public void ioHit(long time) {
@@ -69,6 +77,16 @@ public class BucketCacheStats extends CacheStats {
     ioHitCount.reset();
     ioHitTime.reset();
     allocationFailCount.reset();
+    admissionRejectedCount.reset();
+  }
+
+  @Override
+  public Map<String, CacheStats> getPartitionStats() {
+    return partitionStats;
+  }
+
+  void setPartitionStats(Map<String, CacheStats> partitionStats) {
+    this.partitionStats = partitionStats;
   }
 
   public long getAllocationFailCount() {
@@ -78,4 +96,12 @@ public class BucketCacheStats extends CacheStats {
   public void allocationFailed() {
     allocationFailCount.increment();
   }
+
+  public long getAdmissionRejectedCount() {
+    return admissionRejectedCount.sum();
+  }
+
+  public void admissionRejected() {
+    admissionRejectedCount.increment();
+  }
 }
@@ -62,6 +62,18 @@ final class BucketProtoUtils {
       .build();
   }
 
+  /**
+   * Returns the header of a persistence log, the metadata of a snapshot without its entries, see
+   * {@link BucketCachePersistenceLog}.
+   */
+  static BucketCacheProtos.BucketCacheEntry toLogHeaderPB(BucketCache cache) {
+    return BucketCacheProtos.BucketCacheEntry.newBuilder().setCacheCapacity(cache.getMaxSize())
+      .setIoClass(cache.ioEngine.getClass().getName())
+      .setMapClass(cache.backingMap.getClass().getName())
+      .putAllDeserializers(CacheableDeserializerIdManager.save())
+      .setBackingMap(BucketCacheProtos.BackingMap.getDefaultInstance()).build();
+  }
+
   public static void serializeAsPB(BucketCache cache, FileOutputStream fos, long chunkSize)
     throws IOException {
     // Write the new version of magic number.
@@ -99,6 +111,11 @@ final class BucketProtoUtils {
     builder.addEntry(entryBuilder.build());
   }
 
+  static BucketCacheProtos.BackingMapEntry toPB(BlockCacheKey key, BucketEntry entry) {
+    return BucketCacheProtos.BackingMapEntry.newBuilder().setKey(toPB(key)).setValue(toPB(entry))
+      .build();
+  }
+
   private static BucketCacheProtos.BlockCacheKey toPB(BlockCacheKey key) {
     return BucketCacheProtos.BlockCacheKey.newBuilder().setHfilename(key.getHfileName())
       .setOffset(key.getOffset()).setPrimaryReplicaBlock(key.isPrimary())
@@ -164,39 +181,46 @@ final class BucketProtoUtils {
     NavigableSet<BlockCacheKey> resultSet = new ConcurrentSkipListSet<>(Comparator
       .comparing(BlockCacheKey::getHfileName).thenComparingLong(BlockCacheKey::getOffset));
     for (BucketCacheProtos.BackingMapEntry entry : backingMap.getEntryList()) {
-      BucketCacheProtos.BlockCacheKey protoKey = entry.getKey();
-      BlockCacheKey key = new BlockCacheKey(protoKey.getHfilename(), protoKey.getFamilyName(),
-        protoKey.getRegionName(), protoKey.getOffset(), protoKey.getPrimaryReplicaBlock(),
-        fromPb(protoKey.getBlockType()), protoKey.getArchived());
-      BucketCacheProtos.BucketEntry protoValue = entry.getValue();
-      // TODO:We use ByteBuffAllocator.HEAP here, because we could not get the ByteBuffAllocator
-      // which created by RpcServer elegantly.
-      BucketEntry value = new BucketEntry(protoValue.getOffset(), protoValue.getLength(),
-        protoValue.getDiskSizeWithHeader(), protoValue.getAccessCounter(),
-        protoValue.getCachedTime(),
-        protoValue.getPriority() == BucketCacheProtos.BlockPriority.memory, createRecycler,
-        ByteBuffAllocator.HEAP);
-      // This is the deserializer that we stored
-      int oldIndex = protoValue.getDeserialiserIndex();
-      String deserializerClass = deserializers.get(oldIndex);
-      if (deserializerClass == null) {
-        throw new IOException("Found deserializer index without matching entry.");
-      }
-      // Convert it to the identifier for the deserializer that we have in this runtime
-      if (deserializerClass.equals(HFileBlock.BlockDeserializer.class.getName())) {
-        int actualIndex = HFileBlock.BLOCK_DESERIALIZER.getDeserializerIdentifier();
-        value.deserializerIndex = (byte) actualIndex;
-      } else {
-        // We could make this more plugable, but right now HFileBlock is the only implementation
-        // of Cacheable outside of tests, so this might not ever matter.
-        throw new IOException("Unknown deserializer class found: " + deserializerClass);
-      }
-      result.put(key, value);
-      resultSet.add(key);
+      Pair<BlockCacheKey, BucketEntry> pair = fromPB(deserializers, entry, createRecycler);
+      result.put(pair.getFirst(), pair.getSecond());
+      resultSet.add(pair.getFirst());
     }
     return new Pair<>(result, resultSet);
   }
 
+  static Pair<BlockCacheKey, BucketEntry> fromPB(Map<Integer, String> deserializers,
+    BucketCacheProtos.BackingMapEntry entry, Function<BucketEntry, Recycler> createRecycler)
+    throws IOException {
+    BucketCacheProtos.BlockCacheKey protoKey = entry.getKey();
+    BlockCacheKey key = new BlockCacheKey(protoKey.getHfilename(), protoKey.getFamilyName(),
+      protoKey.getRegionName(), protoKey.getOffset(), protoKey.getPrimaryReplicaBlock(),
+      fromPb(protoKey.getBlockType()), protoKey.getArchived());
+    BucketCacheProtos.BucketEntry protoValue = entry.getValue();
+    // TODO:We use ByteBuffAllocator.HEAP here, because we could not get the ByteBuffAllocator
+    // which created by RpcServer elegantly.
+    BucketEntry value = new BucketEntry(protoValue.getOffset(), protoValue.getLength(),
+      protoValue.getDiskSizeWithHeader(), protoValue.getAccessCounter(),
+      protoValue.getCachedTime(),
+      protoValue.getPriority() == BucketCacheProtos.BlockPriority.memory, createRecycler,
+      ByteBuffAllocator.HEAP);
+    // This is the deserializer that we stored
+    int oldIndex = protoValue.getDeserialiserIndex();
+    String deserializerClass = deserializers.get(oldIndex);
+    if (deserializerClass == null) {
+      throw new IOException("Found deserializer index without matching entry.");
+    }
+    // Convert it to the identifier for the deserializer that we have in this runtime
+    if (deserializerClass.equals(HFileBlock.BlockDeserializer.class.getName())) {
+      int actualIndex = HFileBlock.BLOCK_DESERIALIZER.getDeserializerIdentifier();
+      value.deserializerIndex = (byte) actualIndex;
+    } else {
+      // We could make this more plugable, but right now HFileBlock is the only implementation
+      // of Cacheable outside of tests, so this might not ever matter.
+      throw new IOException("Unknown deserializer class found: " + deserializerClass);
+    }
+    return new Pair<>(key, value);
+  }
+
   private static BlockType fromPb(BucketCacheProtos.BlockType blockType) {
     switch (blockType) {
       case data:
@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.hbase.io.hfile.bucket;
 
+import java.util.AbstractMap;
 import java.util.Comparator;
 import java.util.Map;
 import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
@@ -40,6 +41,7 @@ public class CachedEntryQueue {
   private static final Comparator<Map.Entry<BlockCacheKey, BucketEntry>> COMPARATOR =
     (a, b) -> BucketEntry.COMPARATOR.compare(a.getValue(), b.getValue());
 
+  private final Comparator<Map.Entry<BlockCacheKey, BucketEntry>> comparator;
   private MinMaxPriorityQueue<Map.Entry<BlockCacheKey, BucketEntry>> queue;
 
   private long cacheSize;
@@ -50,13 +52,24 @@ public class CachedEntryQueue {
    * @param blockSize expected average size of blocks
    */
   public CachedEntryQueue(long maxSize, long blockSize) {
+    this(maxSize, blockSize, COMPARATOR);
+  }
+
+  /**
+   * @param maxSize    the target size of elements in the queue
+   * @param blockSize  expected average size of blocks
+   * @param comparator ordering of the entries, the last ones being evicted first
+   */
+  public CachedEntryQueue(long maxSize, long blockSize,
+    Comparator<Map.Entry<BlockCacheKey, BucketEntry>> comparator) {
     Preconditions.checkArgument(blockSize > 0, "negative blockSize %s", blockSize);
     Preconditions.checkArgument(maxSize > 0, "negative maxSize %s", maxSize);
     int initialSize = (int) (maxSize / blockSize);
     if (initialSize == 0) {
       initialSize++;
     }
-    queue = MinMaxPriorityQueue.orderedBy(COMPARATOR).expectedSize(initialSize).create();
+    this.comparator = comparator;
+    queue = MinMaxPriorityQueue.orderedBy(comparator).expectedSize(initialSize).create();
     cacheSize = 0;
     this.maxSize = maxSize;
   }
@@ -66,7 +79,7 @@ public class CachedEntryQueue {
    * <p>
    * If the queue is smaller than the max size, or if the specified element is ordered after the
    * smallest element in the queue, the element will be added to the queue. Otherwise, there is no
-   * side effect of this call.
+   * side effect of this call. A mutable entry is copied if added, so that the caller can reuse it.
    * @param entry a bucket entry with key to try to add to the queue
    */
   @edu.umd.cs.findbugs.annotations.SuppressWarnings(
@@ -75,11 +88,12 @@ public class CachedEntryQueue {
         + " which means we have something in the queue")
   public void add(Map.Entry<BlockCacheKey, BucketEntry> entry) {
     if (cacheSize < maxSize) {
-      queue.add(entry);
+      queue.add(copy(entry));
       cacheSize += entry.getValue().getLength();
     } else {
-      BucketEntry head = queue.peek().getValue();
-      if (BucketEntry.COMPARATOR.compare(entry.getValue(), head) > 0) {
+      Map.Entry<BlockCacheKey, BucketEntry> headEntry = queue.peek();
+      BucketEntry head = headEntry.getValue();
+      if (comparator.compare(entry, headEntry) > 0) {
         cacheSize += entry.getValue().getLength();
         cacheSize -= head.getLength();
         if (cacheSize > maxSize) {
@@ -87,11 +101,18 @@ public class CachedEntryQueue {
         } else {
           cacheSize += head.getLength();
         }
-        queue.add(entry);
+        queue.add(copy(entry));
       }
     }
   }
 
+  private static Map.Entry<BlockCacheKey, BucketEntry>
+    copy(Map.Entry<BlockCacheKey, BucketEntry> entry) {
+    return entry instanceof AbstractMap.SimpleImmutableEntry
+      ? entry
+      : new AbstractMap.SimpleImmutableEntry<>(entry);
+  }
+
   /** Returns The next element in this queue, or {@code null} if the queue is empty. */
   public Map.Entry<BlockCacheKey, BucketEntry> poll() {
     return queue.poll();
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A count-min sketch estimating how often an item was accessed recently, as used by the TinyLFU
+ * admission policy. Counters are 4 bits wide, packed 16 to a long, and every item maps to one
+ * counter in each of four rows, its frequency being the smallest of them. Once the number of
+ * increments reaches ten times the capacity all the counters are halved, so the estimates are
+ * over a sliding window of recent history and items which stopped being accessed age out.
+ * <p>
+ * Updates are lossy under contention: an increment racing with another update of the same long is
+ * dropped rather than retried. This only makes the estimates slightly lower, which is fine for an
+ * admission heuristic, and keeps the read path free of retries.
+ */
+@InterfaceAudience.Private
+public final class FrequencySketch {
+
+  /** Largest value of a counter */
+  public static final int MAX_FREQUENCY = 15;
+
+  private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+    0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+  /** Keeps the low 3 bits of every counter once shifted right by one */
+  private static final long RESET_MASK = 0x7777777777777777L;
+
+  private final AtomicLongArray table;
+  private final int tableMask;
+  private final int sampleSize;
+  private final AtomicInteger additions = new AtomicInteger();
+
+  /**
+   * @param capacity the expected maximum number of distinct items, typically the number of blocks
+   *                 the cache can hold
+   */
+  public FrequencySketch(long capacity) {
+    int length = (int) Math.min(1 << 30, Math.max(16, Long.highestOneBit(capacity - 1) << 1));
+    this.table = new AtomicLongArray(length);
+    this.tableMask = length - 1;
+    this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * Math.max(16, capacity));
+  }
+
+  /** Returns the estimated number of recent occurrences of the item, at most 15 */
+  public int frequency(int item) {
+    int hash = spread(item);
+    int frequency = MAX_FREQUENCY;
+    for (int i = 0; i < SEEDS.length; i++) {
+      long h = indexHash(hash, i);
+      long value = table.get(index(h));
+      frequency = Math.min(frequency, (int) ((value >>> shift(h)) & 0xfL));
+    }
+    return frequency;
+  }
+
+  /** Records an occurrence of the item, aging all the counters when the sample is full. */
+  public void increment(int item) {
+    int hash = spread(item);
+    boolean added = false;
+    for (int i = 0; i < SEEDS.length; i++) {
+      long h = indexHash(hash, i);
+      int index = index(h);
+      int shift = shift(h);
+      long value = table.get(index);
+      if (((value >>> shift) & 0xfL) < MAX_FREQUENCY) {
+        added |= table.compareAndSet(index, value, value + (1L << shift));
+      }
+    }
+    if (added && additions.incrementAndGet() == sampleSize) {
+      reset();
+    }
+  }
+
+  /** Halves all the counters. Only called by the thread completing the sample. */
+  private void reset() {
+    for (int i = 0; i < table.length(); i++) {
+      long value;
+      do {
+        value = table.get(i);
+      } while (!table.compareAndSet(i, value, (value >>> 1) & RESET_MASK));
+    }
+    additions.addAndGet(-sampleSize / 2);
+  }
+
+  int getSampleSize() {
+    return sampleSize;
+  }
+
+  private static int spread(int x) {
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    return (x >>> 16) ^ x;
+  }
+
+  private static long indexHash(int item, int i) {
+    long hash = (item + SEEDS[i]) * SEEDS[i];
+    return hash + (hash >>> 32);
+  }
+
+  private int index(long hash) {
+    return (int) (hash >>> 4) & tableMask;
+  }
+
+  private static int shift(long hash) {
+    return ((int) hash & 15) << 2;
+  }
+}
@@ -0,0 +1,714 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.BlockType;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A {@link ConcurrentMap} from {@link BlockCacheKey} to {@link BucketEntry} which does not keep any
+ * per-entry key object. The blocks of each file live in a table of their own, an open-addressing
+ * table using linear probing with backward shift deletion, where each key is packed into three
+ * longs of a primitive array. Region and column family names are interned to int ids. The keys of
+ * a file can be listed from its table alone, which is what {@link BucketCache#blocksByHFile} is
+ * used for with the default map.
+ * <p>
+ * Lookups do not lock: they read the table of the file optimistically, and only retry under its
+ * read lock if a writer changed the table meanwhile. Updates lock the table of their file.
+ * <p>
+ * Keys returned by iteration are rebuilt on the fly, they are equal to, but not the same instances
+ * as the keys passed to {@link #put(BlockCacheKey, BucketEntry)}. The entry returned by the
+ * iterator is reused by the next call to the iterator, callers keeping entries must copy them.
+ */
+@InterfaceAudience.Private
+public class PackedBackingMap extends AbstractMap<BlockCacheKey, BucketEntry>
+  implements ConcurrentMap<BlockCacheKey, BucketEntry> {
+
+  private static final int INITIAL_FILE_CAPACITY = 16;
+
+  /** Number of longs used by one packed key: offset, region and cf ids, flags. */
+  private static final int KEY_LONGS = 3;
+
+  private static final int FLAG_PRIMARY = 1;
+  private static final int FLAG_ARCHIVED = 2;
+  private static final int BLOCK_TYPE_SHIFT = 8;
+  private static final int NO_BLOCK_TYPE = 0xFF;
+
+  private static final BlockType[] BLOCK_TYPES = BlockType.values();
+
+  private static final long STAMPED_LOCK_SIZE =
+    ClassSize.align(ClassSize.OBJECT + Bytes.SIZEOF_LONG + 5 * ClassSize.REFERENCE);
+
+  private final ConcurrentHashMap<String, FileTable> files = new ConcurrentHashMap<>();
+  private final NameDictionary regionNames = new NameDictionary();
+  private final NameDictionary cfNames = new NameDictionary();
+  private final LongAdder size = new LongAdder();
+
+  private static int mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb34fe2a7ed53L;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+
+  @Override
+  public int size() {
+    return (int) Math.min(Integer.MAX_VALUE, size.sum());
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size.sum() == 0;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  private FileTable tableOf(BlockCacheKey key) {
+    return key.getHfileName() == null ? null : files.get(key.getHfileName());
+  }
+
+  @Override
+  public BucketEntry get(Object key) {
+    if (!(key instanceof BlockCacheKey)) {
+      return null;
+    }
+    BlockCacheKey k = (BlockCacheKey) key;
+    FileTable table = tableOf(k);
+    return table == null ? null : table.get(k.getOffset());
+  }
+
+  @Override
+  public BucketEntry put(BlockCacheKey key, BucketEntry value) {
+    return doPut(key, value, false);
+  }
+
+  @Override
+  public BucketEntry putIfAbsent(BlockCacheKey key, BucketEntry value) {
+    return doPut(key, value, true);
+  }
+
+  private BucketEntry doPut(BlockCacheKey key, BucketEntry value, boolean onlyIfAbsent) {
+    if (value == null) {
+      throw new NullPointerException();
+    }
+    // Take a reference on the names up front, it is given back if the key was already present.
+    int regionId = regionNames.acquire(key.getRegionName());
+    int cfId = cfNames.acquire(key.getCfName());
+    BucketEntry previous;
+    for (;;) {
+      FileTable table = files.computeIfAbsent(key.getHfileName(), FileTable::new);
+      long stamp = table.lock.writeLock();
+      try {
+        if (table.removed) {
+          // Emptied and dropped meanwhile, retry with a new table for the file.
+          continue;
+        }
+        int slot = table.find(key.getOffset());
+        if (slot >= 0) {
+          previous = table.values[slot];
+          if (!onlyIfAbsent) {
+            table.values[slot] = value;
+          }
+        } else {
+          previous = null;
+          table.insert(key.getOffset(), regionId, cfId, flags(key), value);
+          size.increment();
+        }
+        break;
+      } finally {
+        table.lock.unlockWrite(stamp);
+      }
+    }
+    if (previous != null) {
+      regionNames.release(regionId);
+      cfNames.release(cfId);
+    }
+    return previous;
+  }
+
+  @Override
+  public BucketEntry remove(Object key) {
+    return doRemove(key, null);
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    return value != null && doRemove(key, value) != null;
+  }
+
+  /**
+   * Removes the mapping of the given key, only if it is mapped to expected when expected is not
+   * null. Returns the removed entry or null.
+   */
+  private BucketEntry doRemove(Object key, Object expected) {
+    if (!(key instanceof BlockCacheKey)) {
+      return null;
+    }
+    BlockCacheKey k = (BlockCacheKey) key;
+    FileTable table = tableOf(k);
+    if (table == null) {
+      return null;
+    }
+    BucketEntry removed;
+    long ids;
+    long stamp = table.lock.writeLock();
+    try {
+      int slot = table.find(k.getOffset());
+      if (slot < 0) {
+        return null;
+      }
+      removed = table.values[slot];
+      if (expected != null && !removed.equals(expected)) {
+        return null;
+      }
+      ids = table.keys[slot * KEY_LONGS + 1];
+      table.delete(slot);
+      size.decrement();
+      if (table.size == 0) {
+        table.removed = true;
+        files.remove(table.hfileName, table);
+      }
+    } finally {
+      table.lock.unlockWrite(stamp);
+    }
+    regionNames.release((int) (ids >>> 32));
+    cfNames.release((int) ids);
+    return removed;
+  }
+
+  @Override
+  public boolean replace(BlockCacheKey key, BucketEntry oldValue, BucketEntry newValue) {
+    if (oldValue == null || newValue == null) {
+      throw new NullPointerException();
+    }
+    FileTable table = tableOf(key);
+    if (table == null) {
+      return false;
+    }
+    long stamp = table.lock.writeLock();
+    try {
+      int slot = table.find(key.getOffset());
+      if (slot < 0 || !table.values[slot].equals(oldValue)) {
+        return false;
+      }
+      table.values[slot] = newValue;
+      return true;
+    } finally {
+      table.lock.unlockWrite(stamp);
+    }
+  }
+
+  @Override
+  public BucketEntry replace(BlockCacheKey key, BucketEntry value) {
+    if (value == null) {
+      throw new NullPointerException();
+    }
+    FileTable table = tableOf(key);
+    if (table == null) {
+      return null;
+    }
+    long stamp = table.lock.writeLock();
+    try {
+      int slot = table.find(key.getOffset());
+      if (slot < 0) {
+        return null;
+      }
+      BucketEntry previous = table.values[slot];
+      table.values[slot] = value;
+      return previous;
+    } finally {
+      table.lock.unlockWrite(stamp);
+    }
+  }
+
+  @Override
+  public void clear() {
+    for (FileTable table : files.values()) {
+      long stamp = table.lock.writeLock();
+      try {
+        for (int slot = 0; slot < table.values.length; slot++) {
+          if (table.values[slot] != null) {
+            long ids = table.keys[slot * KEY_LONGS + 1];
+            regionNames.release((int) (ids >>> 32));
+            cfNames.release((int) ids);
+          }
+        }
+        size.add(-table.size);
+        table.reset(INITIAL_FILE_CAPACITY);
+        table.removed = true;
+        files.remove(table.hfileName, table);
+      } finally {
+        table.lock.unlockWrite(stamp);
+      }
+    }
+  }
+
+  /**
+   * Returns the keys of the given file whose offsets are within [init, end]. Only the table of the
+   * file is visited.
+   */
+  Set<BlockCacheKey> keysOfFile(String hfileName, long init, long end) {
+    Set<BlockCacheKey> keys = new HashSet<>();
+    FileTable table = hfileName == null ? null : files.get(hfileName);
+    if (table == null) {
+      return keys;
+    }
+    long stamp = table.lock.readLock();
+    try {
+      for (int slot = 0; slot < table.values.length; slot++) {
+        if (table.values[slot] != null) {
+          int base = slot * KEY_LONGS;
+          long offset = table.keys[base];
+          if (offset >= init && offset <= end) {
+            long ids = table.keys[base + 1];
+            keys.add(toKey(hfileName, offset, regionNames.nameOf((int) (ids >>> 32)),
+              cfNames.nameOf((int) ids), (int) table.keys[base + 2]));
+          }
+        }
+      }
+    } finally {
+      table.lock.unlockRead(stamp);
+    }
+    return keys;
+  }
+
+  /**
+   * Estimated heap used by this map, excluding the {@link BucketEntry} values it references.
+   */
+  long heapSize() {
+    long heapSize = ClassSize.align(ClassSize.OBJECT + 4 * ClassSize.REFERENCE)
+      + ClassSize.CONCURRENT_HASHMAP;
+    for (FileTable table : files.values()) {
+      heapSize += ClassSize.CONCURRENT_HASHMAP_ENTRY
+        + ClassSize.align(ClassSize.OBJECT + 4 * ClassSize.REFERENCE + 2 * Bytes.SIZEOF_INT
+          + Bytes.SIZEOF_BOOLEAN)
+        + STAMPED_LOCK_SIZE
+        + ClassSize.align(ClassSize.ARRAY + (long) table.keys.length * Bytes.SIZEOF_LONG)
+        + ClassSize.align(ClassSize.ARRAY + (long) table.values.length * ClassSize.REFERENCE);
+    }
+    return heapSize;
+  }
+
+  private static long flags(BlockCacheKey key) {
+    int flags = (key.isPrimary() ? FLAG_PRIMARY : 0) | (key.isArchived() ? FLAG_ARCHIVED : 0);
+    int blockType = key.getBlockType() == null ? NO_BLOCK_TYPE : key.getBlockType().ordinal();
+    return flags | (blockType << BLOCK_TYPE_SHIFT);
+  }
+
+  private static BlockCacheKey toKey(String hfileName, long offset, String regionName,
+    String cfName, int flags) {
+    int blockType = (flags >>> BLOCK_TYPE_SHIFT) & 0xFF;
+    return new BlockCacheKey(hfileName, cfName, regionName, offset, (flags & FLAG_PRIMARY) != 0,
+      blockType == NO_BLOCK_TYPE ? null : BLOCK_TYPES[blockType], (flags & FLAG_ARCHIVED) != 0);
+  }
+
+  @Override
+  public Set<Map.Entry<BlockCacheKey, BucketEntry>> entrySet() {
+    return new AbstractSet<Map.Entry<BlockCacheKey, BucketEntry>>() {
+      @Override
+      public Iterator<Map.Entry<BlockCacheKey, BucketEntry>> iterator() {
+        return new EntryIterator();
+      }
+
+      @Override
+      public int size() {
+        return PackedBackingMap.this.size();
+      }
+
+      @Override
+      public void clear() {
+        PackedBackingMap.this.clear();
+      }
+    };
+  }
+
+  /**
+   * Weakly consistent iterator. The entries of every file are copied under the read lock of its
+   * table when the iteration reaches it, into buffers reused from one file to the next, so entries
+   * added or removed in a file already visited are not reflected. The keys are only built when
+   * asked for.
+   */
+  private final class EntryIterator implements Iterator<Map.Entry<BlockCacheKey, BucketEntry>>,
+    Map.Entry<BlockCacheKey, BucketEntry> {
+    private final Iterator<FileTable> tables = files.values().iterator();
+    private String hfileName;
+    private long[] offsets = new long[INITIAL_FILE_CAPACITY];
+    private int[] flags = new int[INITIAL_FILE_CAPACITY];
+    private String[] regions = new String[INITIAL_FILE_CAPACITY];
+    private String[] cfs = new String[INITIAL_FILE_CAPACITY];
+    private BucketEntry[] values = new BucketEntry[INITIAL_FILE_CAPACITY];
+    private int count = 0;
+    private int index = -1;
+    private BlockCacheKey key;
+    private boolean removable;
+    // The key of the last returned entry, once the iteration moved past its file.
+    private BlockCacheKey lastKey;
+
+    @Override
+    public boolean hasNext() {
+      while (index + 1 >= count && tables.hasNext()) {
+        if (removable && lastKey == null) {
+          lastKey = getKey();
+        }
+        copy(tables.next());
+      }
+      return index + 1 < count;
+    }
+
+    @Override
+    public Map.Entry<BlockCacheKey, BucketEntry> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      index++;
+      key = null;
+      lastKey = null;
+      removable = true;
+      return this;
+    }
+
+    @Override
+    public void remove() {
+      if (!removable) {
+        throw new IllegalStateException();
+      }
+      PackedBackingMap.this.remove(lastKey != null ? lastKey : getKey());
+      lastKey = null;
+      removable = false;
+    }
+
+    @Override
+    public BlockCacheKey getKey() {
+      if (key == null) {
+        key = toKey(hfileName, offsets[index], regions[index], cfs[index], flags[index]);
+      }
+      return key;
+    }
+
+    @Override
+    public BucketEntry getValue() {
+      return values[index];
+    }
+
+    @Override
+    public BucketEntry setValue(BucketEntry value) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+      return Objects.equals(getKey(), e.getKey()) && Objects.equals(getValue(), e.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+    }
+
+    @Override
+    public String toString() {
+      return getKey() + "=" + getValue();
+    }
+
+    private void copy(FileTable table) {
+      long stamp = table.lock.readLock();
+      try {
+        if (values.length < table.size) {
+          int capacity = table.values.length;
+          offsets = new long[capacity];
+          flags = new int[capacity];
+          regions = new String[capacity];
+          cfs = new String[capacity];
+          values = new BucketEntry[capacity];
+        }
+        hfileName = table.hfileName;
+        count = 0;
+        for (int slot = 0; slot < table.values.length; slot++) {
+          BucketEntry value = table.values[slot];
+          if (value != null) {
+            int base = slot * KEY_LONGS;
+            long ids = table.keys[base + 1];
+            offsets[count] = table.keys[base];
+            flags[count] = (int) table.keys[base + 2];
+            regions[count] = regionNames.nameOf((int) (ids >>> 32));
+            cfs[count] = cfNames.nameOf((int) ids);
+            values[count] = value;
+            count++;
+          }
+        }
+      } finally {
+        table.lock.unlockRead(stamp);
+      }
+      // Drop the references to the entries of the previous file.
+      Arrays.fill(values, count, values.length, null);
+      index = -1;
+      key = null;
+    }
+  }
+
+  /**
+   * The open-addressing table of the blocks of one file. A slot is free when its value is null.
+   * Keys are laid out as [offset, regionId &lt;&lt; 32 | cfId, flags].
+   */
+  private static final class FileTable {
+    final String hfileName;
+    final StampedLock lock = new StampedLock();
+    long[] keys;
+    BucketEntry[] values;
+    int size;
+    int mask;
+    // Set when the table is emptied and dropped from the map, under the write lock.
+    boolean removed;
+
+    FileTable(String hfileName) {
+      this.hfileName = hfileName;
+      reset(INITIAL_FILE_CAPACITY);
+    }
+
+    void reset(int capacity) {
+      keys = new long[capacity * KEY_LONGS];
+      values = new BucketEntry[capacity];
+      size = 0;
+      mask = capacity - 1;
+    }
+
+    /**
+     * Returns the entry of the given offset, or null. Reads without locking unless a writer changed
+     * the table meanwhile.
+     */
+    BucketEntry get(long offset) {
+      long stamp = lock.tryOptimisticRead();
+      if (stamp != 0) {
+        BucketEntry value = find(keys, values, offset);
+        if (lock.validate(stamp)) {
+          return value;
+        }
+      }
+      stamp = lock.readLock();
+      try {
+        return find(keys, values, offset);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+
+    /**
+     * Returns the entry of the given offset in the given arrays, or null. The arrays may be changed
+     * by a writer meanwhile, in which case the caller discards the result, so this only has to stay
+     * within their bounds and to terminate.
+     */
+    private static BucketEntry find(long[] keys, BucketEntry[] values, long offset) {
+      int capacity = values.length;
+      if (keys.length != capacity * KEY_LONGS) {
+        // Read in the middle of a resize.
+        return null;
+      }
+      int mask = capacity - 1;
+      int slot = mix(offset) & mask;
+      for (int i = 0; i < capacity; i++, slot = (slot + 1) & mask) {
+        BucketEntry value = values[slot];
+        if (value == null) {
+          return null;
+        }
+        if (keys[slot * KEY_LONGS] == offset) {
+          return value;
+        }
+      }
+      return null;
+    }
+
+    /** Returns the slot of the given offset, or -1. Caller must hold the lock. */
+    int find(long offset) {
+      for (int slot = mix(offset) & mask;; slot = (slot + 1) & mask) {
+        if (values[slot] == null) {
+          return -1;
+        }
+        if (keys[slot * KEY_LONGS] == offset) {
+          return slot;
+        }
+      }
+    }
+
+    /** Inserts an offset which is known to be absent. Caller must hold the write lock. */
+    void insert(long offset, int regionId, int cfId, long flags, BucketEntry value) {
+      if ((size + 1) * 4L > values.length * 3L) {
+        resize(values.length << 1);
+      }
+      int slot = mix(offset) & mask;
+      while (values[slot] != null) {
+        slot = (slot + 1) & mask;
+      }
+      int base = slot * KEY_LONGS;
+      keys[base] = offset;
+      keys[base + 1] = ((long) regionId << 32) | (cfId & 0xFFFFFFFFL);
+      keys[base + 2] = flags;
+      values[slot] = value;
+      size++;
+    }
+
+    /** Removes the given slot shifting back the following entries of its cluster. */
+    void delete(int slot) {
+      int hole = slot;
+      for (int next = (hole + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+        int base = next * KEY_LONGS;
+        int h = mix(keys[base]) & mask;
+        // Move the entry into the hole if its home is not cyclically within (hole, next].
+        boolean movable = hole <= next ? (h <= hole || h > next) : (h <= hole && h > next);
+        if (movable) {
+          System.arraycopy(keys, base, keys, hole * KEY_LONGS, KEY_LONGS);
+          values[hole] = values[next];
+          hole = next;
+        }
+      }
+      Arrays.fill(keys, hole * KEY_LONGS, hole * KEY_LONGS + KEY_LONGS, 0L);
+      values[hole] = null;
+      size--;
+    }
+
+    private void resize(int capacity) {
+      long[] oldKeys = keys;
+      BucketEntry[] oldValues = values;
+      reset(capacity);
+      for (int slot = 0; slot < oldValues.length; slot++) {
+        if (oldValues[slot] != null) {
+          int base = slot * KEY_LONGS;
+          long ids = oldKeys[base + 1];
+          insert(oldKeys[base], (int) (ids >>> 32), (int) ids, oldKeys[base + 2],
+            oldValues[slot]);
+        }
+      }
+    }
+  }
+
+  /** A name of a dictionary, with the number of references to its id */
+  private static final class Name {
+    final String name;
+    final int id;
+    // Negative once the name is dropped from the dictionary.
+    final AtomicInteger refCount = new AtomicInteger(1);
+
+    Name(String name, int id) {
+      this.name = name;
+      this.id = id;
+    }
+
+    /** Takes a reference, unless the name was dropped from the dictionary */
+    boolean tryAcquire() {
+      for (;;) {
+        int refs = refCount.get();
+        if (refs < 0) {
+          return false;
+        }
+        if (refCount.compareAndSet(refs, refs + 1)) {
+          return true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Bidirectional, reference counted mapping between names and int ids. Id 0 stands for a null
+   * name, ids of names no longer referenced by any entry are reused. Referenced names are acquired
+   * and released without locking, the dictionary is only locked to add or drop a name.
+   */
+  private static final class NameDictionary {
+    private final ConcurrentHashMap<String, Name> ids = new ConcurrentHashMap<>();
+    private volatile Name[] names = new Name[16];
+    // Guarded by the dictionary.
+    private int nextId = 1;
+    private final List<Integer> freeIds = new ArrayList<>();
+
+    String nameOf(int id) {
+      if (id == 0) {
+        return null;
+      }
+      Name name = names[id];
+      return name == null ? null : name.name;
+    }
+
+    int acquire(String name) {
+      if (name == null) {
+        return 0;
+      }
+      Name existing = ids.get(name);
+      if (existing != null && existing.tryAcquire()) {
+        return existing.id;
+      }
+      synchronized (this) {
+        // A name is dropped under the lock, so one still present can be acquired.
+        existing = ids.get(name);
+        if (existing != null && existing.tryAcquire()) {
+          return existing.id;
+        }
+        int id = freeIds.isEmpty() ? nextId++ : freeIds.remove(freeIds.size() - 1);
+        if (id >= names.length) {
+          names = Arrays.copyOf(names, names.length << 1);
+        }
+        Name added = new Name(name, id);
+        names[id] = added;
+        ids.put(name, added);
+        return id;
+      }
+    }
+
+    void release(int id) {
+      if (id == 0) {
+        return;
+      }
+      Name name = names[id];
+      if (name.refCount.decrementAndGet() == 0) {
+        synchronized (this) {
+          // Unless acquired again meanwhile.
+          if (name.refCount.compareAndSet(0, -1)) {
+            ids.remove(name.name, name);
+            names[id] = null;
+            freeIds.add(id);
+          }
+        }
+      }
+    }
+  }
+}
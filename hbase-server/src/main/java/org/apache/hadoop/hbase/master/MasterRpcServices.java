@@ -151,6 +151,8 @@ import org.apache.hadoop.hbase.shaded.protobuf.generated.AccessControlProtos.Per
 import org.apache.hadoop.hbase.shaded.protobuf.generated.AccessControlProtos.RevokeRequest;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.AccessControlProtos.RevokeResponse;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos.AdminService;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos.CacheBlocksRequest;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos.CacheBlocksResponse;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos.ClearCompactionQueuesRequest;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos.ClearCompactionQueuesResponse;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos.ClearRegionBlockCacheRequest;
@@ -3646,6 +3648,12 @@ public class MasterRpcServices extends HBaseRpcServicesBase<HMaster>
     throw new ServiceException(new DoNotRetryIOException("Unsupported method on master"));
   }
 
+  @Override
+  public CacheBlocksResponse cacheBlocks(RpcController controller, CacheBlocksRequest request)
+    throws ServiceException {
+    throw new ServiceException(new DoNotRetryIOException("Unsupported method on master"));
+  }
+
   @Override
   public GetLiveRegionServersResponse getLiveRegionServers(RpcController controller,
     GetLiveRegionServersRequest request) throws ServiceException {
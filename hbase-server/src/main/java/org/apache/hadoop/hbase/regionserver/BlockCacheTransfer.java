@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.client.RegionReplicaUtil;
+import org.apache.hadoop.hbase.io.ByteBuffAllocator;
+import org.apache.hadoop.hbase.io.hfile.BlockCache;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.Cacheable;
+import org.apache.hadoop.hbase.io.hfile.HFileBlock;
+import org.apache.hadoop.hbase.nio.SingleByteBuff;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.hbase.util.FutureUtils;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hbase.thirdparty.com.google.common.util.concurrent.RateLimiter;
+import org.apache.hbase.thirdparty.com.google.protobuf.ByteString;
+import org.apache.hbase.thirdparty.com.google.protobuf.UnsafeByteOperations;
+
+import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos.CacheBlocksRequest;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos.TransferredBlock;
+
+/**
+ * Sends the cached blocks of the store files of a region to the server the region moves to, before
+ * the region is closed, so that the region does not open with a cold block cache there. This
+ * covers the moves the cache aware balancer can not avoid, like the ones of rolling restarts and
+ * decommissions.
+ * <p>
+ * The transfer is capped to {@link #BANDWIDTH_KEY} bytes per second, shared by all the regions
+ * moving away from the server, and to {@link #MAX_TIME_KEY} per region, as it delays the close.
+ * The transfer is best effort: a failure is logged and the region is closed as usual.
+ */
+@InterfaceAudience.Private
+public class BlockCacheTransfer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BlockCacheTransfer.class);
+
+  /** Whether the cached blocks of a region are sent to the server the region moves to */
+  public static final String ENABLED_KEY = "hbase.regionserver.region.move.cache.transfer.enabled";
+  public static final boolean DEFAULT_ENABLED = false;
+
+  /** Maximum bytes per second sent, for all the regions moving away from the server */
+  public static final String BANDWIDTH_KEY =
+    "hbase.regionserver.region.move.cache.transfer.bytes.per.second";
+  public static final long DEFAULT_BANDWIDTH = 64L * 1024 * 1024;
+
+  /** Maximum time spent sending the blocks of a region, in milliseconds */
+  public static final String MAX_TIME_KEY =
+    "hbase.regionserver.region.move.cache.transfer.max.time.ms";
+  public static final long DEFAULT_MAX_TIME = 30000;
+
+  /** Bytes of blocks sent in a single request */
+  public static final String BATCH_SIZE_KEY =
+    "hbase.regionserver.region.move.cache.transfer.batch.size";
+  public static final int DEFAULT_BATCH_SIZE = 4 * 1024 * 1024;
+
+  private final HRegionServer server;
+  private final boolean enabled;
+  private final long maxTime;
+  private final int batchSize;
+  private final RateLimiter rateLimiter;
+
+  BlockCacheTransfer(HRegionServer server, Configuration conf) {
+    this.server = server;
+    this.enabled = conf.getBoolean(ENABLED_KEY, DEFAULT_ENABLED);
+    this.maxTime = conf.getLong(MAX_TIME_KEY, DEFAULT_MAX_TIME);
+    this.batchSize = conf.getInt(BATCH_SIZE_KEY, DEFAULT_BATCH_SIZE);
+    this.rateLimiter = RateLimiter.create(conf.getLong(BANDWIDTH_KEY, DEFAULT_BANDWIDTH));
+  }
+
+  /**
+   * Sends the cached blocks of the store files of the given region to the given server, if enabled.
+   * @return the number of blocks the destination cached.
+   */
+  public int transfer(HRegion region, ServerName destination) {
+    BlockCache cache = server.getBlockCache().orElse(null);
+    if (
+      !enabled || cache == null || destination.equals(server.getServerName())
+        || !RegionReplicaUtil.isDefaultReplica(region.getRegionInfo())
+    ) {
+      return 0;
+    }
+    String encodedName = region.getRegionInfo().getEncodedName();
+    long startTime = EnvironmentEdgeManager.currentTime();
+    Batch batch = new Batch(destination, encodedName);
+    try {
+      for (HStore store : region.getStores()) {
+        for (HStoreFile file : store.getStorefiles()) {
+          StoreFileReader reader = file.getReader();
+          if (reader == null) {
+            continue;
+          }
+          String hfileName = reader.getHFileReader().getName();
+          for (BlockCacheKey key : cache.getBlockKeysForFile(hfileName)) {
+            if (EnvironmentEdgeManager.currentTime() - startTime > maxTime) {
+              LOG.info("Stop sending the cached blocks of {} to {} after {} ms", encodedName,
+                destination, maxTime);
+              batch.send();
+              return batch.cachedBlocks;
+            }
+            ByteString block = serialize(cache, key);
+            if (block != null) {
+              rateLimiter.acquire(block.size());
+              batch.add(TransferredBlock.newBuilder().setFamily(store.getColumnFamilyName())
+                .setHfileName(hfileName).setOffset(key.getOffset()).setBlock(block).build());
+            }
+          }
+        }
+      }
+      batch.send();
+    } catch (IOException e) {
+      LOG.warn("Failed to send the cached blocks of {} to {}", encodedName, destination, e);
+    }
+    LOG.info("Sent {} cached blocks of {} to {}, {} cached there, in {} ms", batch.sentBlocks,
+      encodedName, destination, batch.cachedBlocks,
+      EnvironmentEdgeManager.currentTime() - startTime);
+    return batch.cachedBlocks;
+  }
+
+  /** Returns the block of the given key as serialized in the cache, or null if not cached. */
+  private static ByteString serialize(BlockCache cache, BlockCacheKey key) {
+    Cacheable cached = cache.getBlock(key, false, false, false);
+    if (cached == null) {
+      return null;
+    }
+    try {
+      if (!(cached instanceof HFileBlock)) {
+        return null;
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(cached.getSerializedLength());
+      cached.serialize(buffer, true);
+      return UnsafeByteOperations.unsafeWrap(buffer);
+    } finally {
+      cached.release();
+    }
+  }
+
+  /**
+   * Caches the blocks of the given request, sent by the server the region moves away from.
+   * @return the number of blocks cached.
+   */
+  static int cacheBlocks(BlockCache cache, CacheBlocksRequest request) throws IOException {
+    int cachedBlocks = 0;
+    for (TransferredBlock transferred : request.getBlockList()) {
+      HFileBlock block = (HFileBlock) HFileBlock.BLOCK_DESERIALIZER.deserialize(
+        new SingleByteBuff(ByteBuffer.wrap(transferred.getBlock().toByteArray())),
+        ByteBuffAllocator.HEAP);
+      try {
+        BlockCacheKey key = new BlockCacheKey(transferred.getHfileName(), transferred.getFamily(),
+          request.getEncodedRegionName(), transferred.getOffset(), true, block.getBlockType(),
+          false);
+        if (!cache.isAlreadyCached(key).orElse(false)) {
+          cache.cacheBlock(key, block);
+          cachedBlocks++;
+        }
+      } finally {
+        block.release();
+      }
+    }
+    return cachedBlocks;
+  }
+
+  /** The blocks sent in a single request. */
+  private final class Batch {
+    private final ServerName destination;
+    private final String encodedName;
+    private CacheBlocksRequest.Builder request;
+    private long size;
+    private int sentBlocks;
+    private int cachedBlocks;
+
+    Batch(ServerName destination, String encodedName) {
+      this.destination = destination;
+      this.encodedName = encodedName;
+    }
+
+    void add(TransferredBlock block) throws IOException {
+      if (request == null) {
+        request = CacheBlocksRequest.newBuilder().setEncodedRegionName(encodedName);
+      }
+      request.addBlock(block);
+      size += block.getBlock().size();
+      if (size >= batchSize) {
+        send();
+      }
+    }
+
+    void send() throws IOException {
+      if (request == null) {
+        return;
+      }
+      int count = request.getBlockCount();
+      cachedBlocks += FutureUtils.get(server.getAsyncClusterConnection()
+        .getRegionServerAdmin(destination).cacheBlocks(request.build())).getCachedBlocks();
+      sentBlocks += count;
+      request = null;
+      size = 0;
+    }
+  }
+}
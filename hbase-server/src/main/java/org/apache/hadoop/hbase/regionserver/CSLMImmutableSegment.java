@@ -23,7 +23,8 @@ import org.apache.yetus.audience.InterfaceAudience;
 /**
  * CSLMImmutableSegment is an abstract class that extends the API supported by a {@link Segment},
  * and {@link ImmutableSegment}. This immutable segment is working with CellSet with
- * ConcurrentSkipListMap (CSLM) delegatee.
+ * ConcurrentSkipListMap (CSLM) delegatee, or with the {@link CellBTreeMap} delegatee of the active
+ * segment it was.
  */
 @InterfaceAudience.Private
 public class CSLMImmutableSegment extends ImmutableSegment {
@@ -47,7 +48,7 @@ public class CSLMImmutableSegment extends ImmutableSegment {
 
   @Override
   protected long indexEntrySize() {
-    return ClassSize.CONCURRENT_SKIPLISTMAP_ENTRY;
+    return MutableSegment.indexEntrySize(getCellSet());
   }
 
   @Override
@@ -66,8 +66,7 @@ public class CellArrayImmutableSegment extends ImmutableSegment {
       action);
     // arrange the meta-data size, decrease all meta-data sizes related to SkipList;
     // add sizes of CellArrayMap entry (reinitializeCellSet doesn't take the care for the sizes)
-    long newSegmentSizeDelta =
-      numOfCells * (indexEntrySize() - ClassSize.CONCURRENT_SKIPLISTMAP_ENTRY);
+    long newSegmentSizeDelta = numOfCells * (indexEntrySize() - segment.indexEntrySize());
     incMemStoreSize(0, newSegmentSizeDelta, 0, 0);
     mss.incMemStoreSize(0, newSegmentSizeDelta, 0, 0);
   }
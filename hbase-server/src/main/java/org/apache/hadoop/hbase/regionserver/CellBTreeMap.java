@@ -0,0 +1,775 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * CellBTreeMap is a concurrent sorted map of cells, an alternative to the
+ * {@link ConcurrentSkipListMap} indexing the active segment of the memstore. The cells are kept in
+ * sorted arrays of up to {@link #LEAF_CAPACITY} cells, the leaves of a B-link tree: each leaf links
+ * to the next one, and a skip list with an entry per leaf, rather than per cell, finds the leaf of
+ * a key. A cell then costs a reference in a leaf instead of a node and index nodes of the skip
+ * list, and most comparisons of a lookup run on the contiguous array of a leaf.
+ * <p>
+ * Readers take no lock. The array of a leaf is never modified once published: a writer locks the
+ * leaf and replaces its array with an updated copy. A full leaf splits by linking a new right
+ * sibling before shrinking its own array, so that a reader finding its key beyond the new array
+ * moves right, and so that an iterator may see a cell both in the old array and in the sibling, in
+ * which case it skips the cells up to the last one it read. Leaves are never merged. Iterators are
+ * weakly consistent, as the ones of {@link ConcurrentSkipListMap}.
+ * <p>
+ * As in {@link CellSet}, the value of a cell is the cell itself. As in {@link CellFlatMap}, the key
+ * and entry sets are not supported.
+ */
+@InterfaceAudience.Private
+public class CellBTreeMap<T extends Cell> implements NavigableMap<T, T> {
+
+  /** Maximum number of cells in a leaf */
+  static final int LEAF_CAPACITY = 32;
+
+  private static final Cell[] EMPTY = new Cell[0];
+
+  private final Tree<T> tree;
+  // The bounds of this map, null when not bounded, in the ascending order of the cells
+  private final T lo;
+  private final boolean loInclusive;
+  private final T hi;
+  private final boolean hiInclusive;
+  private final boolean descending;
+
+  public CellBTreeMap(Comparator<? super T> comparator) {
+    this(new Tree<>(comparator), null, false, null, false, false);
+  }
+
+  private CellBTreeMap(Tree<T> tree, T lo, boolean loInclusive, T hi, boolean hiInclusive,
+    boolean descending) {
+    this.tree = tree;
+    this.lo = lo;
+    this.loInclusive = loInclusive;
+    this.hi = hi;
+    this.hiInclusive = hiInclusive;
+    this.descending = descending;
+  }
+
+  /** A leaf of the tree, holding the cells from its lowest key to the one of the next leaf. */
+  private static final class Leaf<T extends Cell> {
+    /** The lowest key of the leaf, null for the first leaf, never changes */
+    private final T low;
+    /** The sorted cells of the leaf, replaced but never modified */
+    private volatile Cell[] cells;
+    private volatile Leaf<T> next;
+
+    Leaf(T low, Cell[] cells, Leaf<T> next) {
+      this.low = low;
+      this.cells = cells;
+      this.next = next;
+    }
+  }
+
+  /** The leaves, shared by a map and its sub maps. */
+  private static final class Tree<T extends Cell> {
+    private final Comparator<? super T> comparator;
+    private final Leaf<T> head = new Leaf<>(null, EMPTY, null);
+    /** The leaves but the first one, by their lowest key */
+    private final ConcurrentSkipListMap<T, Leaf<T>> leaves;
+
+    Tree(Comparator<? super T> comparator) {
+      this.comparator = comparator;
+      this.leaves = new ConcurrentSkipListMap<>(comparator);
+    }
+
+    int compare(T a, T b) {
+      return comparator.compare(a, b);
+    }
+
+    /**
+     * Binary search for a given key in the given cells, with the same return value as
+     * Arrays.binarySearch.
+     */
+    @SuppressWarnings("unchecked")
+    int search(Cell[] cells, T key) {
+      int begin = 0;
+      int end = cells.length - 1;
+      while (begin <= end) {
+        int mid = (begin + end) >>> 1;
+        int result = comparator.compare((T) cells[mid], key);
+        if (result < 0) {
+          begin = mid + 1;
+        } else if (result > 0) {
+          end = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -(begin + 1);
+    }
+
+    /** Returns the index of the first cell after, or at if inclusive, the given key */
+    @SuppressWarnings("unchecked")
+    int ceilingIndex(Cell[] cells, T key, boolean inclusive) {
+      if (key == null || cells.length == 0 || compare((T) cells[0], key) > 0) {
+        return 0;
+      }
+      int index = search(cells, key);
+      return index >= 0 ? (inclusive ? index : index + 1) : -(index + 1);
+    }
+
+    /** Returns the index of the last cell before, or at if inclusive, the given key */
+    int floorIndex(Cell[] cells, T key, boolean inclusive) {
+      if (key == null) {
+        return cells.length - 1;
+      }
+      int index = search(cells, key);
+      return index >= 0 ? (inclusive ? index : index - 1) : -(index + 1) - 1;
+    }
+
+    /**
+     * Returns the leaf holding the given key, or the first one for a null key. The leaf may split
+     * once returned, the callers moving right if the key turns out to be beyond the leaf.
+     */
+    Leaf<T> findLeaf(T key) {
+      if (key == null) {
+        return head;
+      }
+      Map.Entry<T, Leaf<T>> entry = leaves.floorEntry(key);
+      Leaf<T> leaf = entry == null ? head : entry.getValue();
+      return moveRight(leaf, key);
+    }
+
+    Leaf<T> moveRight(Leaf<T> leaf, T key) {
+      for (Leaf<T> next = leaf.next; next != null && compare(key, next.low) >= 0;) {
+        leaf = next;
+        next = leaf.next;
+      }
+      return leaf;
+    }
+
+    Leaf<T> lastLeaf() {
+      Map.Entry<T, Leaf<T>> entry = leaves.lastEntry();
+      Leaf<T> leaf = entry == null ? head : entry.getValue();
+      for (Leaf<T> next = leaf.next; next != null; next = leaf.next) {
+        leaf = next;
+      }
+      return leaf;
+    }
+
+    /** Returns the leaf linking to the given one, which must not be the first one */
+    Leaf<T> leafBefore(Leaf<T> leaf) {
+      Map.Entry<T, Leaf<T>> entry = leaves.lowerEntry(leaf.low);
+      Leaf<T> before = entry == null ? head : entry.getValue();
+      for (Leaf<T> next = before.next; next != null && next != leaf
+        && compare(next.low, leaf.low) < 0;) {
+        before = next;
+        next = before.next;
+      }
+      return before;
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(T key) {
+      Leaf<T> leaf = findLeaf(key);
+      while (true) {
+        // The cells are read before the next leaf, which is linked before the cells shrink.
+        Cell[] cells = leaf.cells;
+        Leaf<T> next = leaf.next;
+        if (next != null && compare(key, next.low) >= 0) {
+          leaf = next;
+          continue;
+        }
+        int index = search(cells, key);
+        return index >= 0 ? (T) cells[index] : null;
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    T put(T cell) {
+      Leaf<T> leaf = findLeaf(cell);
+      while (true) {
+        synchronized (leaf) {
+          Leaf<T> next = leaf.next;
+          if (next != null && compare(cell, next.low) >= 0) {
+            leaf = next;
+            continue;
+          }
+          Cell[] cells = leaf.cells;
+          int index = search(cells, cell);
+          if (index >= 0) {
+            Cell[] copy = cells.clone();
+            copy[index] = cell;
+            leaf.cells = copy;
+            return (T) cells[index];
+          }
+          insert(leaf, cells, -(index + 1), cell);
+          return null;
+        }
+      }
+    }
+
+    /** Inserts the given cell at the given index of the given leaf, locked by the caller. */
+    @SuppressWarnings("unchecked")
+    private void insert(Leaf<T> leaf, Cell[] cells, int index, T cell) {
+      int length = cells.length;
+      if (length < LEAF_CAPACITY) {
+        leaf.cells = insert(cells, index, cell);
+        return;
+      }
+      Leaf<T> right;
+      if (index == length) {
+        // Appending, as for increasing keys, the leaf stays full rather than half empty.
+        right = new Leaf<>(cell, new Cell[] { cell }, leaf.next);
+        leaf.next = right;
+      } else {
+        Cell[] all = insert(cells, index, cell);
+        int half = all.length / 2;
+        right =
+          new Leaf<>((T) all[half], Arrays.copyOfRange(all, half, all.length), leaf.next);
+        // Linked before the leaf shrinks, for the readers of the shrunk leaf to find the moved
+        // cells.
+        leaf.next = right;
+        leaf.cells = Arrays.copyOfRange(all, 0, half);
+      }
+      leaves.put(right.low, right);
+    }
+
+    private static Cell[] insert(Cell[] cells, int index, Cell cell) {
+      Cell[] copy = new Cell[cells.length + 1];
+      System.arraycopy(cells, 0, copy, 0, index);
+      copy[index] = cell;
+      System.arraycopy(cells, index, copy, index + 1, cells.length - index);
+      return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    T remove(T key) {
+      Leaf<T> leaf = findLeaf(key);
+      while (true) {
+        synchronized (leaf) {
+          Leaf<T> next = leaf.next;
+          if (next != null && compare(key, next.low) >= 0) {
+            leaf = next;
+            continue;
+          }
+          Cell[] cells = leaf.cells;
+          int index = search(cells, key);
+          if (index < 0) {
+            return null;
+          }
+          Cell[] copy = new Cell[cells.length - 1];
+          System.arraycopy(cells, 0, copy, 0, index);
+          System.arraycopy(cells, index + 1, copy, index, copy.length - index);
+          leaf.cells = copy;
+          return (T) cells[index];
+        }
+      }
+    }
+  }
+
+  private boolean tooLow(T key) {
+    if (lo == null) {
+      return false;
+    }
+    int result = tree.compare(key, lo);
+    return result < 0 || (result == 0 && !loInclusive);
+  }
+
+  private boolean tooHigh(T key) {
+    if (hi == null) {
+      return false;
+    }
+    int result = tree.compare(key, hi);
+    return result > 0 || (result == 0 && !hiInclusive);
+  }
+
+  private boolean inRange(T key) {
+    return !tooLow(key) && !tooHigh(key);
+  }
+
+  /** Returns the lowest cell of this map after, or at if inclusive, the given key, if any */
+  private T absHigher(T key, boolean inclusive) {
+    AscendingIterator iterator = key == null || tooLow(key)
+      ? new AscendingIterator(lo, loInclusive)
+      : new AscendingIterator(key, inclusive);
+    return iterator.next;
+  }
+
+  /** Returns the highest cell of this map before, or at if inclusive, the given key, if any */
+  private T absLower(T key, boolean inclusive) {
+    DescendingIterator iterator = key == null || tooHigh(key)
+      ? new DescendingIterator(hi, hiInclusive)
+      : new DescendingIterator(key, inclusive);
+    return iterator.next;
+  }
+
+  private static <T> Entry<T, T> entry(T cell) {
+    return cell == null ? null : new AbstractMap.SimpleImmutableEntry<>(cell, cell);
+  }
+
+  private static <T> T key(T cell) {
+    if (cell == null) {
+      throw new NoSuchElementException();
+    }
+    return cell;
+  }
+
+  @Override
+  public Comparator<? super T> comparator() {
+    return descending ? Collections.reverseOrder(tree.comparator) : tree.comparator;
+  }
+
+  /** Counts the cells, going through all of them. */
+  @Override
+  public int size() {
+    int size = 0;
+    for (Iterator<T> iterator = values().iterator(); iterator.hasNext(); iterator.next()) {
+      size++;
+    }
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return absHigher(null, true) == null;
+  }
+
+  // ---------------- Sub-Maps ----------------
+  /** Returns a sub map of this map, with the given bounds in the ascending order of the cells. */
+  private NavigableMap<T, T> subMap(T from, boolean fromInclusive, T to, boolean toInclusive,
+    boolean descending) {
+    if (from == null) {
+      from = lo;
+      fromInclusive = loInclusive;
+    } else if (lo != null) {
+      int result = tree.compare(from, lo);
+      if (result < 0 || (result == 0 && !loInclusive && fromInclusive)) {
+        throw new IllegalArgumentException("key out of range");
+      }
+    }
+    if (to == null) {
+      to = hi;
+      toInclusive = hiInclusive;
+    } else if (hi != null) {
+      int result = tree.compare(to, hi);
+      if (result > 0 || (result == 0 && !hiInclusive && toInclusive)) {
+        throw new IllegalArgumentException("key out of range");
+      }
+    }
+    if (from != null && to != null && tree.compare(from, to) > 0) {
+      throw new IllegalArgumentException("inconsistent range");
+    }
+    return new CellBTreeMap<>(tree, from, fromInclusive, to, toInclusive, descending);
+  }
+
+  @Override
+  public NavigableMap<T, T> subMap(T fromKey, boolean fromInclusive, T toKey, boolean toInclusive) {
+    Objects.requireNonNull(fromKey);
+    Objects.requireNonNull(toKey);
+    return descending
+      ? subMap(toKey, toInclusive, fromKey, fromInclusive, true)
+      : subMap(fromKey, fromInclusive, toKey, toInclusive, false);
+  }
+
+  @Override
+  public NavigableMap<T, T> headMap(T toKey, boolean inclusive) {
+    Objects.requireNonNull(toKey);
+    return descending
+      ? subMap(toKey, inclusive, null, false, true)
+      : subMap(null, false, toKey, inclusive, false);
+  }
+
+  @Override
+  public NavigableMap<T, T> tailMap(T fromKey, boolean inclusive) {
+    Objects.requireNonNull(fromKey);
+    return descending
+      ? subMap(null, false, fromKey, inclusive, true)
+      : subMap(fromKey, inclusive, null, false, false);
+  }
+
+  @Override
+  public NavigableMap<T, T> descendingMap() {
+    return new CellBTreeMap<>(tree, lo, loInclusive, hi, hiInclusive, !descending);
+  }
+
+  @Override
+  public NavigableMap<T, T> subMap(T fromKey, T toKey) {
+    return subMap(fromKey, true, toKey, false);
+  }
+
+  @Override
+  public NavigableMap<T, T> headMap(T toKey) {
+    return headMap(toKey, false);
+  }
+
+  @Override
+  public NavigableMap<T, T> tailMap(T fromKey) {
+    return tailMap(fromKey, true);
+  }
+
+  // -------------------------------- Key's getters --------------------------------
+  @Override
+  public T firstKey() {
+    return key(descending ? absLower(null, true) : absHigher(null, true));
+  }
+
+  @Override
+  public T lastKey() {
+    return key(descending ? absHigher(null, true) : absLower(null, true));
+  }
+
+  @Override
+  public T lowerKey(T key) {
+    return descending ? absHigher(key, false) : absLower(key, false);
+  }
+
+  @Override
+  public T floorKey(T key) {
+    return descending ? absHigher(key, true) : absLower(key, true);
+  }
+
+  @Override
+  public T ceilingKey(T key) {
+    return descending ? absLower(key, true) : absHigher(key, true);
+  }
+
+  @Override
+  public T higherKey(T key) {
+    return descending ? absLower(key, false) : absHigher(key, false);
+  }
+
+  @Override
+  public boolean containsKey(Object o) {
+    return get(o) != null;
+  }
+
+  @Override
+  public boolean containsValue(Object o) { // use containsKey(Object o) instead
+    throw new UnsupportedOperationException("Use containsKey(Object o) instead");
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public T get(Object o) {
+    T key = (T) o;
+    return inRange(key) ? tree.get(key) : null;
+  }
+
+  // -------------------------------- Entry's getters --------------------------------
+  @Override
+  public Entry<T, T> lowerEntry(T key) {
+    return entry(lowerKey(key));
+  }
+
+  @Override
+  public Entry<T, T> floorEntry(T key) {
+    return entry(floorKey(key));
+  }
+
+  @Override
+  public Entry<T, T> ceilingEntry(T key) {
+    return entry(ceilingKey(key));
+  }
+
+  @Override
+  public Entry<T, T> higherEntry(T key) {
+    return entry(higherKey(key));
+  }
+
+  @Override
+  public Entry<T, T> firstEntry() {
+    return entry(descending ? absLower(null, true) : absHigher(null, true));
+  }
+
+  @Override
+  public Entry<T, T> lastEntry() {
+    return entry(descending ? absHigher(null, true) : absLower(null, true));
+  }
+
+  @Override
+  public Entry<T, T> pollFirstEntry() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Entry<T, T> pollLastEntry() {
+    throw new UnsupportedOperationException();
+  }
+
+  // -------------------------------- Updates --------------------------------
+  /** Adds the given cell, or replaces the equal one, the value having to be the cell itself. */
+  @Override
+  public T put(T key, T value) {
+    if (key != value) {
+      throw new IllegalArgumentException("The value must be the key");
+    }
+    if (!inRange(key)) {
+      throw new IllegalArgumentException("key out of range");
+    }
+    return tree.put(key);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public T remove(Object o) {
+    T key = (T) o;
+    return inRange(key) ? tree.remove(key) : null;
+  }
+
+  @Override
+  public void clear() {
+    for (Iterator<T> iterator = values().iterator(); iterator.hasNext();) {
+      iterator.next();
+      iterator.remove();
+    }
+  }
+
+  @Override
+  public void putAll(Map<? extends T, ? extends T> map) {
+    throw new UnsupportedOperationException();
+  }
+
+  // -------------------------------- Sub-Sets --------------------------------
+  @Override
+  public NavigableSet<T> navigableKeySet() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public NavigableSet<T> descendingKeySet() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public NavigableSet<T> keySet() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Collection<T> values() {
+    return new Values();
+  }
+
+  @Override
+  public Set<Entry<T, T>> entrySet() {
+    throw new UnsupportedOperationException();
+  }
+
+  // -------------------------------- Iterators --------------------------------
+  /** Iterates the cells of this map after, or at if inclusive, the given key. */
+  private final class AscendingIterator implements Iterator<T> {
+    private Leaf<T> leaf;
+    private Cell[] cells;
+    private int index;
+    // the cell to skip the cells up to, and whether it is included, when moving to the next leaf
+    private T after;
+    private boolean afterInclusive;
+    private T next;
+    private T lastReturned;
+
+    AscendingIterator(T from, boolean fromInclusive) {
+      leaf = tree.findLeaf(from);
+      while (true) {
+        cells = leaf.cells;
+        Leaf<T> nextLeaf = leaf.next;
+        if (from == null || nextLeaf == null || tree.compare(from, nextLeaf.low) < 0) {
+          break;
+        }
+        leaf = nextLeaf;
+      }
+      after = from;
+      afterInclusive = fromInclusive;
+      index = tree.ceilingIndex(cells, after, afterInclusive);
+      advance();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void advance() {
+      while (index >= cells.length) {
+        leaf = leaf.next;
+        if (leaf == null) {
+          next = null;
+          return;
+        }
+        cells = leaf.cells;
+        index = tree.ceilingIndex(cells, after, afterInclusive);
+      }
+      T cell = (T) cells[index++];
+      if (tooHigh(cell)) {
+        next = null;
+        return;
+      }
+      next = cell;
+      after = cell;
+      afterInclusive = false;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public T next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      lastReturned = next;
+      advance();
+      return lastReturned;
+    }
+
+    @Override
+    public void remove() {
+      if (lastReturned == null) {
+        throw new IllegalStateException();
+      }
+      tree.remove(lastReturned);
+      lastReturned = null;
+    }
+  }
+
+  /** Iterates the cells of this map before, or at if inclusive, the given key. */
+  private final class DescendingIterator implements Iterator<T> {
+    private Leaf<T> leaf;
+    private Cell[] cells;
+    private int index;
+    // the cell to skip the cells down to, and whether it is included, when moving to the
+    // previous leaf
+    private T before;
+    private boolean beforeInclusive;
+    private T next;
+    private T lastReturned;
+
+    DescendingIterator(T from, boolean fromInclusive) {
+      leaf = from == null ? tree.lastLeaf() : tree.findLeaf(from);
+      while (true) {
+        cells = leaf.cells;
+        Leaf<T> nextLeaf = leaf.next;
+        if (nextLeaf == null || (from != null && tree.compare(from, nextLeaf.low) < 0)) {
+          break;
+        }
+        leaf = nextLeaf;
+      }
+      before = from;
+      beforeInclusive = fromInclusive;
+      index = tree.floorIndex(cells, before, beforeInclusive);
+      advance();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void advance() {
+      while (index < 0) {
+        if (leaf.low == null) {
+          next = null;
+          return;
+        }
+        Leaf<T> previous = tree.leafBefore(leaf);
+        while (true) {
+          // A split of the previous leaf after it was found moves cells to a leaf before this one.
+          cells = previous.cells;
+          Leaf<T> nextLeaf = previous.next;
+          if (
+            nextLeaf == null || nextLeaf == leaf || tree.compare(nextLeaf.low, leaf.low) >= 0
+          ) {
+            break;
+          }
+          previous = nextLeaf;
+        }
+        leaf = previous;
+        index = tree.floorIndex(cells, before, beforeInclusive);
+      }
+      T cell = (T) cells[index--];
+      if (tooLow(cell)) {
+        next = null;
+        return;
+      }
+      next = cell;
+      before = cell;
+      beforeInclusive = false;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public T next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      lastReturned = next;
+      advance();
+      return lastReturned;
+    }
+
+    @Override
+    public void remove() {
+      if (lastReturned == null) {
+        throw new IllegalStateException();
+      }
+      tree.remove(lastReturned);
+      lastReturned = null;
+    }
+  }
+
+  // -------------------------------- Collection --------------------------------
+  private final class Values extends AbstractCollection<T> {
+
+    @Override
+    public Iterator<T> iterator() {
+      return descending
+        ? new DescendingIterator(hi, hiInclusive)
+        : new AscendingIterator(lo, loInclusive);
+    }
+
+    @Override
+    public int size() {
+      return CellBTreeMap.this.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return CellBTreeMap.this.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return containsKey(o);
+    }
+
+    @Override
+    public void clear() {
+      CellBTreeMap.this.clear();
+    }
+  }
+}
@@ -89,8 +89,7 @@ public class CellChunkImmutableSegment extends ImmutableSegment {
     // arrange the meta-data size, decrease all meta-data sizes related to SkipList;
     // add sizes of CellChunkMap entry, decrease also Cell object sizes
     // (reinitializeCellSet doesn't take the care for the sizes)
-    long newSegmentSizeDelta =
-      numOfCells * (indexEntrySize() - ClassSize.CONCURRENT_SKIPLISTMAP_ENTRY);
+    long newSegmentSizeDelta = numOfCells * (indexEntrySize() - segment.indexEntrySize());
     if (onHeap) {
       incMemStoreSize(0, newSegmentSizeDelta, 0, 0);
       memstoreSizing.incMemStoreSize(0, newSegmentSizeDelta, 0, 0);
@@ -213,6 +213,9 @@ public class CellSet<T extends Cell> implements NavigableSet<T> {
     if (delegatee instanceof ConcurrentSkipListMap) {
       throw new UnsupportedOperationException("ConcurrentSkipListMap.size() is time-consuming");
     }
+    if (delegatee instanceof CellBTreeMap) {
+      throw new UnsupportedOperationException("CellBTreeMap.size() is time-consuming");
+    }
     return this.delegatee.size();
   }
 
@@ -65,6 +65,7 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -336,6 +337,9 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
   // - the row itself
   private final ConcurrentHashMap<HashedBytes, RowLockContext> lockedRows =
     new ConcurrentHashMap<>();
+  // Fixed table of the locked rows by hash, used instead of lockedRows when ROWLOCK_STRIPED_KEY is
+  // set, so that locking a row allocates nothing. Null otherwise.
+  private final RowLockStripe[] rowLockStripes;
 
   protected final Map<byte[], HStore> stores =
     new ConcurrentSkipListMap<>(Bytes.BYTES_RAWCOMPARATOR);
@@ -376,13 +380,34 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
 
   private BlockCache blockCache;
   private MobFileCache mobFileCache;
-  private final WAL wal;
+  private volatile WAL wal;
+  // The WAL the region wrote to before a flush moved it to its current WAL, until a flush of all
+  // its stores persists the edits it left there. Only touched by the flushes, which do not overlap.
+  private WAL movedFromWAL;
   private final HRegionFileSystem fs;
   protected final Configuration conf;
   private final Configuration baseConf;
   private final int rowLockWaitDuration;
   static final int DEFAULT_ROWLOCK_WAIT_DURATION = 30000;
 
+  /**
+   * Maximum number of stores of a region writing their flush files concurrently. 1 writes them one
+   * after the other.
+   */
+  public static final String FLUSH_STORES_THREADS_MAX_KEY =
+    "hbase.hregion.flush.stores.threads.max";
+  public static final int DEFAULT_FLUSH_STORES_THREADS_MAX = 1;
+
+  /** Applies concurrent increments to a same row in batches, null if not enabled */
+  private final IncrementCoalescer incrementCoalescer;
+
+  /** Whether to keep the locked rows in a fixed table of stripes instead of a map */
+  public static final String ROWLOCK_STRIPED_KEY = "hbase.rowlock.striped";
+  public static final boolean DEFAULT_ROWLOCK_STRIPED = false;
+  /** Number of stripes of the striped row locks, rounded up to a power of two */
+  public static final String ROWLOCK_STRIPES_KEY = "hbase.rowlock.stripes";
+  public static final int DEFAULT_ROWLOCK_STRIPES = 256;
+
   private Path regionWalDir;
   private FileSystem walFS;
 
@@ -468,6 +493,28 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
 
   private final int minBlockSizeBytes;
 
+  // The timestamp of the last delta written to a counter, see nextCounterTimestamp.
+  private final AtomicLong lastCounterTimestamp = new AtomicLong();
+
+  /**
+   * Returns the timestamp of a delta to write to a counter, unique in the region so that no delta
+   * of a column hides another: the current time, or one more than the previous one if not later.
+   */
+  long nextCounterTimestamp(long now) {
+    return lastCounterTimestamp.accumulateAndGet(now, (last, time) -> Math.max(last + 1, time));
+  }
+
+  /**
+   * Moves the clock of the counters to the given timestamp of a cell of a store of delta counters,
+   * if later, so that the deltas written after the region opens do not reuse the timestamps of the
+   * deltas written ahead of the time before.
+   */
+  private void advanceCounterTimestamp(long timestamp) {
+    if (timestamp != HConstants.LATEST_TIMESTAMP) {
+      lastCounterTimestamp.accumulateAndGet(timestamp, Math::max);
+    }
+  }
+
   /**
    * @return The smallest mvcc readPoint across all the scanners in this region. Writes older than
    *         this readPoint, are included in every read operation.
@@ -826,6 +873,16 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       tmpRowLockDuration = 1;
     }
     this.rowLockWaitDuration = tmpRowLockDuration;
+    if (conf.getBoolean(ROWLOCK_STRIPED_KEY, DEFAULT_ROWLOCK_STRIPED)) {
+      int stripes = Integer.highestOneBit(
+        Math.max(1, conf.getInt(ROWLOCK_STRIPES_KEY, DEFAULT_ROWLOCK_STRIPES) * 2 - 1));
+      this.rowLockStripes = new RowLockStripe[stripes];
+      for (int i = 0; i < stripes; i++) {
+        this.rowLockStripes[i] = new RowLockStripe();
+      }
+    } else {
+      this.rowLockStripes = null;
+    }
 
     this.smallestReadPointCalcLock = new ReadPointCalculationLock(conf);
 
@@ -913,6 +970,7 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     this.maxCellSize = conf.getLong(HBASE_MAX_CELL_SIZE_KEY, DEFAULT_MAX_CELL_SIZE);
     this.miniBatchSize =
       conf.getInt(HBASE_REGIONSERVER_MINIBATCH_SIZE, DEFAULT_HBASE_REGIONSERVER_MINIBATCH_SIZE);
+    this.incrementCoalescer = IncrementCoalescer.create(this, htd, this.miniBatchSize);
 
     // recover the metrics of read and write requests count if they were retained
     if (rsServices != null && rsServices.getRegionServerAccounting() != null) {
@@ -1054,6 +1112,14 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       }
     }
     this.lastReplayedOpenRegionSeqId = maxSeqId;
+    // The replayed edits are advanced in restoreEdit.
+    for (HStore store : stores.values()) {
+      if (store.getScanInfo().isDeltaCounters()) {
+        for (HStoreFile sf : store.getStorefiles()) {
+          sf.getMaximumTimestamp().ifPresent(this::advanceCounterTimestamp);
+        }
+      }
+    }
 
     this.writestate.setReadOnly(ServerRegionReplicaUtil.isReadOnly(this));
     this.writestate.flushRequested = false;
@@ -2094,6 +2160,47 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       });
   }
 
+  /**
+   * Writes the snapshots of the stores to their flush files, on up to
+   * {@link #FLUSH_STORES_THREADS_MAX_KEY} threads. The files are committed afterwards, together.
+   */
+  private void flushStores(Collection<StoreFlushContext> flushes, MonitoredTask status)
+    throws IOException {
+    int maxThreads = Math.min(flushes.size(),
+      conf.getInt(FLUSH_STORES_THREADS_MAX_KEY, DEFAULT_FLUSH_STORES_THREADS_MAX));
+    if (maxThreads <= 1) {
+      for (StoreFlushContext flush : flushes) {
+        flush.flushCache(status);
+      }
+      return;
+    }
+    ThreadPoolExecutor storeFlusherThreadPool =
+      getOpenAndCloseThreadPool(maxThreads, "StoreFlusher-" + getRegionInfo().getEncodedName());
+    CompletionService<Void> completionService =
+      new ExecutorCompletionService<>(storeFlusherThreadPool);
+    for (StoreFlushContext flush : flushes) {
+      completionService.submit(() -> {
+        flush.flushCache(status);
+        return null;
+      });
+    }
+    try {
+      for (int i = 0; i < flushes.size(); i++) {
+        completionService.take().get();
+      }
+    } catch (InterruptedException e) {
+      throw throwOnInterrupt(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    } finally {
+      storeFlusherThreadPool.shutdownNow();
+    }
+  }
+
   /** Returns True if its worth doing a flush before we put up the close flag. */
   private boolean worthPreFlushing() {
     return this.memStoreSizing.getDataSize()
@@ -2842,6 +2949,12 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
             mvcc.completeAndWait(writeEntry);
             // Set to null so we don't complete it again down in finally block.
             writeEntry = null;
+            // Nothing left to persist on the current WAL, so the region can move right away.
+            WAL movedWAL = getMovedWAL(wal, storesToFlush);
+            if (movedWAL != null) {
+              moveToWAL(movedWAL);
+              wal.regionMovedOut(getRegionInfo().getEncodedNameAsBytes());
+            }
             return new PrepareFlushResult(flushResult, myseqid);
           } else {
             return new PrepareFlushResult(new FlushResultImpl(
@@ -2858,6 +2971,7 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       }
     }
     logFatLineOnFlush(storesToFlush, myseqid);
+    WAL movedWAL = getMovedWAL(wal, storesToFlush);
     // Stop updates while we snapshot the memstore of all of these regions' stores. We only have
     // to do this for a moment. It is quick. We also set the memstore size to zero here before we
     // allow updates again so its value will represent the size of the updates received
@@ -2931,6 +3045,12 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
         totalSizeOfFlushableStores.incMemStoreSize(snapshotSize);
         storeFlushableSize.put(name, snapshotSize);
       });
+      if (movedWAL != null) {
+        // The edits appended after the snapshot go to the new WAL. The old one keeps accounting for
+        // the snapshot until it is flushed, which the sync below makes it aware of.
+        moveToWAL(movedWAL);
+        movedFromWAL = wal;
+      }
     } catch (IOException ex) {
       doAbortFlushToWAL(wal, flushOpSeqId, committedFiles);
       throw ex;
@@ -3011,6 +3131,37 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     return families == null || this.stores.size() == families.size();
   }
 
+  /**
+   * Returns the WAL the region server now wants the region to write to, if the flush of the given
+   * stores can move the region there from the given WAL, else null. Only a flush of all the stores
+   * can, as the edits left on the old WAL must all be persisted by the flush for it to let go of
+   * the region. Replicated tables stay on their WAL, so that their edits ship in order.
+   */
+  private WAL getMovedWAL(WAL wal, Collection<HStore> storesToFlush) {
+    if (
+      wal == null || wal != this.wal || movedFromWAL != null || rsServices == null
+        || writestate.readOnly || !isAllFamilies(storesToFlush)
+        || !RegionReplicaUtil.isDefaultReplica(getRegionInfo())
+        || htableDescriptor.hasGlobalReplicationScope()
+    ) {
+      return null;
+    }
+    WAL movedWAL;
+    try {
+      movedWAL = rsServices.getWAL(getRegionInfo());
+    } catch (IOException e) {
+      LOG.warn("Failed to get the wal of {}, staying on {}", this, wal, e);
+      return null;
+    }
+    return movedWAL != wal ? movedWAL : null;
+  }
+
+  // Must be called while holding the updates write lock.
+  private void moveToWAL(WAL movedWAL) {
+    LOG.info("Moving {} from wal {} to wal {}", this, this.wal, movedWAL);
+    this.wal = movedWAL;
+  }
+
   /**
    * This method is only used when we flush but the memstore is empty,if writeFlushWalMarker is
    * true,we write the {@link FlushAction#CANNOT_FLUSH} flush marker to WAL when the memstore is
@@ -3092,9 +3243,7 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       // just-made new flush store file. The new flushed file is still in the
       // tmp directory.
 
-      for (StoreFlushContext flush : storeFlushCtxs.values()) {
-        flush.flushCache(status);
-      }
+      flushStores(storeFlushCtxs.values(), status);
 
       // Switch snapshot (in memstore) -> new hfile (thus causing
       // all the store scanners to reset/reseek).
@@ -3180,6 +3329,11 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     if (wal != null) {
       wal.completeCacheFlush(this.getRegionInfo().getEncodedNameAsBytes(), flushedSeqId);
     }
+    if (movedFromWAL != null && isAllFamilies(storesToFlush)) {
+      // The edits the region left on the WAL it moved from are all persisted now.
+      movedFromWAL.regionMovedOut(this.getRegionInfo().getEncodedNameAsBytes());
+      movedFromWAL = null;
+    }
 
     // Record latest flush time
     for (HStore store : storesToFlush) {
@@ -3324,6 +3478,11 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       byte[] family = e.getKey();
       List<ExtendedCell> cells = e.getValue();
       assert cells instanceof RandomAccess;
+      // The deltas of counters may be ahead of the time, the deletes go past them.
+      HStore store = stores.get(family);
+      byte[] familyNow = store != null && store.getScanInfo().isDeltaCounters()
+        ? Bytes.toBytes(nextCounterTimestamp(Bytes.toLong(byteNow)))
+        : byteNow;
 
       Map<byte[], Integer> kvCount = new TreeMap<>(Bytes.BYTES_COMPARATOR);
       int listSize = cells.size();
@@ -3357,7 +3516,7 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
             updateDeleteLatestVersionTimestamp(cell, get, count, byteNow);
           }
         } else {
-          PrivateCellUtil.updateLatestStamp(cell, byteNow);
+          PrivateCellUtil.updateLatestStamp(cell, familyNow);
         }
       }
     }
@@ -3882,6 +4041,13 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     private long nonce;
     protected boolean canProceed;
     private boolean regionReplicateEnable;
+    // The cells reckoned by the increments and appends of an atomic mini batch, with the index of
+    // their mutation, by row and column, so that those to a same column apply on top of each other.
+    private NavigableMap<ExtendedCell, Pair<ExtendedCell, Integer>> reckonedCells;
+    // The indexes of the mutations whose reckoned cells others of the mini batch apply on top of.
+    private Set<Integer> reckonedSources;
+    // The sums of the deltas written to the counters by the mini batch, by row and column.
+    private NavigableMap<ExtendedCell, Long> counterDeltas;
 
     public MutationBatchOperation(final HRegion region, Mutation[] operations, boolean atomic,
       long nonceGroup, long nonce) {
@@ -3897,6 +4063,13 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       return this.operations[index];
     }
 
+    @Override
+    protected void checkAndPrepareMutation(Mutation mutation, final long timestamp)
+      throws IOException {
+      super.checkAndPrepareMutation(mutation, timestamp);
+      region.checkDeltaCounters(mutation);
+    }
+
     @Override
     public long getNonceGroup(int index) {
       return nonceGroup;
@@ -3998,6 +4171,9 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       long timestamp, final List<RowLock> acquiredRowLocks) throws IOException {
       // For nonce operations
       canProceed = startNonceOperation();
+      reckonedCells = null;
+      reckonedSources = null;
+      counterDeltas = null;
 
       visitBatchOperations(true, miniBatchOp.getLastIndexExclusive(), (int index) -> {
         Mutation mutation = getMutation(index);
@@ -4044,7 +4220,7 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
           }
 
           List<ExtendedCell> results = returnResults ? new ArrayList<>(mutation.size()) : null;
-          familyCellMaps[index] = reckonDeltas(mutation, results, timestamp);
+          familyCellMaps[index] = reckonDeltas(mutation, index, results, timestamp);
           this.results[index] = results != null ? Result.create(results) : Result.EMPTY_RESULT;
 
           if (mutation instanceof Increment) {
@@ -4073,6 +4249,15 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
         // calling the pre CP hook for batch mutation
         region.coprocessorHost.preBatchMutate(miniBatchOp);
         checkAndMergeCPMutations(miniBatchOp, acquiredRowLocks, timestamp);
+        if (reckonedSources != null) {
+          for (int source : reckonedSources) {
+            if (!isOperationPending(source)) {
+              // fail, atomic means all or none
+              throw new DoNotRetryIOException("Mutation " + source + " of the atomic batch, which "
+                + "others apply on top of, is not applied anymore in region " + this);
+            }
+          }
+        }
       }
     }
 
@@ -4133,7 +4318,7 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       return get;
     }
 
-    private Map<byte[], List<ExtendedCell>> reckonDeltas(Mutation mutation,
+    private Map<byte[], List<ExtendedCell>> reckonDeltas(Mutation mutation, int index,
       List<ExtendedCell> results, long now) throws IOException {
       assert mutation instanceof Increment || mutation instanceof Append;
       Map<byte[], List<ExtendedCell>> ret = new TreeMap<>(Bytes.BYTES_COMPARATOR);
@@ -4143,8 +4328,10 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
         final byte[] columnFamilyName = entry.getKey();
         List<ExtendedCell> deltas = entry.getValue();
         // Reckon for the Store what to apply to WAL and MemStore.
-        List<ExtendedCell> toApply =
-          reckonDeltasByStore(region.stores.get(columnFamilyName), mutation, now, deltas, results);
+        HStore deltaStore = region.stores.get(columnFamilyName);
+        List<ExtendedCell> toApply = deltaStore.getScanInfo().isDeltaCounters()
+          ? reckonCounterDeltasByStore(deltaStore, mutation, now, deltas, results)
+          : reckonDeltasByStore(deltaStore, mutation, index, now, deltas, results);
         if (!toApply.isEmpty()) {
           for (ExtendedCell cell : toApply) {
             HStore store = region.getStore(cell);
@@ -4165,14 +4352,15 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
      * family/Store. Does Get of current value and then adds passed in deltas for this Store
      * returning the result.
      * @param mutation The encompassing Mutation object
+     * @param index    The index of the mutation in the batch
      * @param deltas   Changes to apply to this Store; either increment amount or data to append
      * @param results  In here we accumulate all the Cells we are to return to the client. If null,
      *                 client doesn't want results returned.
      * @return Resulting Cells after <code>deltas</code> have been applied to current values. Side
      *         effect is our filling out of the <code>results</code> List.
      */
-    private List<ExtendedCell> reckonDeltasByStore(HStore store, Mutation mutation, long now,
-      List<ExtendedCell> deltas, List<ExtendedCell> results) throws IOException {
+    private List<ExtendedCell> reckonDeltasByStore(HStore store, Mutation mutation, int index,
+      long now, List<ExtendedCell> deltas, List<ExtendedCell> results) throws IOException {
       assert mutation instanceof Increment || mutation instanceof Append;
       byte[] columnFamily = store.getColumnFamilyDescriptor().getName();
       List<Pair<ExtendedCell, ExtendedCell>> cellPairs = new ArrayList<>(deltas.size());
@@ -4218,6 +4406,22 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
               currentValuesIndex++;
             }
           }
+          if (reckonedCells != null) {
+            // Not in the memstore yet, reckoned by a previous mutation of the mini batch which is
+            // still to be applied.
+            Pair<ExtendedCell, Integer> reckoned = reckonedCells.get(PrivateCellUtil
+              .createFirstOnRow(mutation.getRow(), columnFamily, CellUtil.cloneQualifier(delta)));
+            if (
+              reckoned != null && isOperationPending(reckoned.getSecond())
+                && (tr == null || tr.withinTimeRange(reckoned.getFirst().getTimestamp()))
+            ) {
+              currentValue = reckoned.getFirst();
+              if (reckonedSources == null) {
+                reckonedSources = new HashSet<>();
+              }
+              reckonedSources.add(reckoned.getSecond());
+            }
+          }
           // Switch on whether this an increment or an append building the new Cell to apply.
           ExtendedCell newCell;
           if (mutation instanceof Increment) {
@@ -4257,6 +4461,80 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
             : region.coprocessorHost.postAppendBeforeWAL(mutation, (List) cellPairs);
         }
       }
+      if (isAtomic()) {
+        // Only the mutations of an atomic batch are all applied or none.
+        if (reckonedCells == null) {
+          reckonedCells = new TreeMap<>(region.getCellComparator());
+        }
+        for (Pair<ExtendedCell, ExtendedCell> cellPair : cellPairs) {
+          ExtendedCell cell = cellPair.getSecond();
+          reckonedCells.put(PrivateCellUtil.createFirstOnRow(mutation.getRow(), columnFamily,
+            CellUtil.cloneQualifier(cell)), new Pair<>(cell, index));
+        }
+      }
+      return cellPairs.stream().map(Pair::getSecond).collect(Collectors.toList());
+    }
+
+    /**
+     * Reckon the Cells to apply to WAL and memstore in a store of delta counters: the deltas
+     * themselves, with timestamps unique in the region. Reads the current values of the counters
+     * only if the client wants results returned.
+     * @param mutation The encompassing Increment
+     * @param deltas   Increment amounts to apply to this Store
+     * @param results  In here we accumulate all the Cells we are to return to the client. If null,
+     *                 client doesn't want results returned.
+     * @return The delta Cells to apply.
+     */
+    private List<ExtendedCell> reckonCounterDeltasByStore(HStore store, Mutation mutation,
+      long now, List<ExtendedCell> deltas, List<ExtendedCell> results) throws IOException {
+      byte[] columnFamily = store.getColumnFamilyDescriptor().getName();
+      if (!(mutation instanceof Increment)) {
+        throw new DoNotRetryIOException(
+          "Appends are not supported on the delta counters of " + Bytes.toString(columnFamily));
+      }
+      Map<byte[], Long> currentValues = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+      if (results != null) {
+        Get get = new Get(mutation.getRow());
+        for (ExtendedCell cell : deltas) {
+          get.addColumn(columnFamily, CellUtil.cloneQualifier(cell));
+        }
+        TimeRange tr = ((Increment) mutation).getTimeRange();
+        if (tr != null) {
+          get.setTimeRange(tr.getMin(), tr.getMax());
+        }
+        try (RegionScanner scanner = region.getScanner(new Scan(get))) {
+          // The store scanner sums the deltas of each counter.
+          List<ExtendedCell> cells = new ArrayList<>();
+          scanner.next(cells);
+          for (ExtendedCell cell : cells) {
+            currentValues.put(CellUtil.cloneQualifier(cell), getLongValue(cell));
+          }
+        }
+      }
+      if (counterDeltas == null) {
+        counterDeltas = new TreeMap<>(region.getCellComparator());
+      }
+      List<Pair<ExtendedCell, ExtendedCell>> cellPairs = new ArrayList<>(deltas.size());
+      for (ExtendedCell delta : deltas) {
+        long amount = getLongValue(delta);
+        PrivateCellUtil.setTimestamp(delta, region.nextCounterTimestamp(now));
+        ExtendedCell newCell = reckonDelta(delta, null, columnFamily, now, mutation, null);
+        cellPairs.add(new Pair<>(null, newCell));
+        // Not in the memstore yet, the deltas of the mini batch add to the current value.
+        byte[] qualifier = CellUtil.cloneQualifier(delta);
+        long batchAmount = counterDeltas.merge(
+          PrivateCellUtil.createFirstOnRow(mutation.getRow(), columnFamily, qualifier), amount,
+          Long::sum);
+        if (results != null) {
+          long newValue = currentValues.getOrDefault(qualifier, 0L) + batchAmount;
+          results.add(new KeyValue(mutation.getRow(), columnFamily, qualifier,
+            newCell.getTimestamp(), KeyValue.Type.Put, Bytes.toBytes(newValue)));
+        }
+      }
+      // Give coprocessors a chance to update the new cells before apply to WAL or memstore
+      if (region.coprocessorHost != null) {
+        cellPairs = region.coprocessorHost.postIncrementBeforeWAL(mutation, (List) cellPairs);
+      }
       return cellPairs.stream().map(Pair::getSecond).collect(Collectors.toList());
     }
 
@@ -5414,7 +5692,8 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
   private void applyToMemStore(HStore store, List<ExtendedCell> cells, boolean delta,
     MemStoreSizing memstoreAccounting) {
     // Any change in how we update Store/MemStore needs to also be done in other applyToMemStore!!!!
-    boolean upsert = delta && store.getColumnFamilyDescriptor().getMaxVersions() == 1;
+    boolean upsert = delta && store.getColumnFamilyDescriptor().getMaxVersions() == 1
+      && !store.getScanInfo().isDeltaCounters();
     if (upsert) {
       store.upsert(cells, getSmallestReadPoint(), memstoreAccounting);
     } else {
@@ -5476,6 +5755,37 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     }
   }
 
+  /**
+   * Checks the puts and deletes to the stores of delta counters. A put would be summed as a delta
+   * instead of replacing the counter, unless it is replicated as a delta from another cluster. A
+   * delete of a given version would delete one delta, or the sum of the deltas folded together.
+   */
+  private void checkDeltaCounters(Mutation mutation) throws FailedSanityCheckException {
+    if (!(mutation instanceof Put) && !(mutation instanceof Delete)) {
+      return;
+    }
+    for (Map.Entry<byte[], List<Cell>> entry : mutation.getFamilyCellMap().entrySet()) {
+      HStore store = stores.get(entry.getKey());
+      if (store == null || !store.getScanInfo().isDeltaCounters()) {
+        continue;
+      }
+      if (mutation instanceof Put) {
+        if (mutation.getClusterIds().isEmpty()) {
+          throw new FailedSanityCheckException("Puts are not supported on the delta counters of "
+            + Bytes.toString(entry.getKey()) + ", increment or delete the counters instead");
+        }
+        continue;
+      }
+      for (Cell cell : entry.getValue()) {
+        if (cell.getType() == Cell.Type.Delete || cell.getType() == Cell.Type.DeleteFamilyVersion) {
+          throw new FailedSanityCheckException(
+            "Deletes of given versions are not supported on the delta counters of "
+              + Bytes.toString(entry.getKey()) + ", delete all the versions instead");
+        }
+      }
+    }
+  }
+
   /*
    * @return True if size is over the flush threshold
    */
@@ -6981,6 +7291,9 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
    * @param cell Cell to add.
    */
   protected void restoreEdit(HStore s, ExtendedCell cell, MemStoreSizing memstoreAccounting) {
+    if (s.getScanInfo().isDeltaCounters()) {
+      advanceCounterTimestamp(cell.getTimestamp());
+    }
     s.add(cell, memstoreAccounting);
   }
 
@@ -7093,8 +7406,8 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
   // will be override in tests
   protected RowLock getRowLockInternal(byte[] row, boolean readLock, RowLock prevRowLock)
     throws IOException {
-    // create an object to use a a key in the row lock map
-    HashedBytes rowKey = new HashedBytes(row);
+    // create an object to use a a key in the row lock map, unless the locks are striped
+    HashedBytes rowKey = rowLockStripes == null ? new HashedBytes(row) : null;
 
     RowLockContext rowLockContext = null;
     RowLockImpl result = null;
@@ -7104,7 +7417,9 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       // Keep trying until we have a lock or error out.
       // TODO: do we need to add a time component here?
       while (result == null) {
-        rowLockContext = computeIfAbsent(lockedRows, rowKey, () -> new RowLockContext(rowKey));
+        rowLockContext = rowKey == null
+          ? lockStripedRow(row)
+          : computeIfAbsent(lockedRows, rowKey, () -> new RowLockContext(rowKey));
         // Now try an get the lock.
         // This can fail as
         if (readLock) {
@@ -7115,6 +7430,10 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
             (prevRowLockImpl != null)
               && (prevRowLockImpl.getLock() == rowLockContext.readWriteLock.readLock())
           ) {
+            if (rowKey == null) {
+              // Unlike lockedRows, the stripes counted us when looking the row up.
+              rowLockContext.cleanUp();
+            }
             success = true;
             return prevRowLock;
           }
@@ -7139,7 +7458,8 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       }
 
       if (timeout <= 0 || !result.getLock().tryLock(timeout, TimeUnit.MILLISECONDS)) {
-        String message = "Timed out waiting for lock for row: " + rowKey + " in region "
+        String message = "Timed out waiting for lock for row: " + Bytes.toStringBinary(row)
+          + " in region "
           + getRegionInfo().getEncodedName();
         if (reachDeadlineFirst) {
           throw new TimeoutIOException(message);
@@ -7153,8 +7473,8 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       return result;
     } catch (InterruptedException ie) {
       if (LOG.isDebugEnabled()) {
-        LOG.debug("Thread interrupted waiting for lock on row: {}, in region {}", rowKey,
-          getRegionInfo().getRegionNameAsString());
+        LOG.debug("Thread interrupted waiting for lock on row: {}, in region {}",
+          Bytes.toStringBinary(row), getRegionInfo().getRegionNameAsString());
       }
       throw throwOnInterrupt(ie);
     } catch (Error error) {
@@ -7196,6 +7516,52 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     return lockedRows;
   }
 
+  /** Returns the contexts of the locked rows, whether the row locks are striped or not. */
+  public List<RowLockContext> getRowLockContexts() {
+    if (rowLockStripes == null) {
+      return new ArrayList<>(lockedRows.values());
+    }
+    List<RowLockContext> contexts = new ArrayList<>();
+    for (RowLockStripe stripe : rowLockStripes) {
+      synchronized (stripe) {
+        for (StripedRowLockContext c = stripe.locked; c != null; c = c.next) {
+          contexts.add(c);
+        }
+      }
+    }
+    return contexts;
+  }
+
+  /**
+   * Returns the context of the given row in its stripe, taking a pooled one if the row is not
+   * locked yet, counted as if a lock was taken.
+   */
+  private StripedRowLockContext lockStripedRow(byte[] row) {
+    int hash = Bytes.hashCode(row);
+    RowLockStripe stripe = rowLockStripes[(hash ^ (hash >>> 16)) & (rowLockStripes.length - 1)];
+    synchronized (stripe) {
+      StripedRowLockContext context = stripe.locked;
+      while (context != null && (context.hash != hash || !Bytes.equals(context.row, row))) {
+        context = context.next;
+      }
+      if (context == null) {
+        context = stripe.pooled;
+        if (context != null) {
+          stripe.pooled = context.next;
+          stripe.pooledCount--;
+        } else {
+          context = new StripedRowLockContext(stripe);
+        }
+        context.row = row;
+        context.hash = hash;
+        context.next = stripe.locked;
+        stripe.locked = context;
+      }
+      context.count.incrementAndGet();
+      return context;
+    }
+  }
+
   class RowLockContext {
     private final HashedBytes row;
     final ReadWriteLock readWriteLock = new ReentrantReadWriteLock(true);
@@ -7253,6 +7619,84 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     }
   }
 
+  /**
+   * A stripe of the striped row locks: the chained contexts of the locked rows whose hash falls in
+   * it, usually one, and a few released ones kept for reuse. Guarded by its own monitor.
+   */
+  private static final class RowLockStripe {
+    private static final int MAX_POOLED_CONTEXTS = 2;
+
+    private StripedRowLockContext locked;
+    private StripedRowLockContext pooled;
+    private int pooledCount;
+  }
+
+  /**
+   * The context of a row of the striped row locks. It is taken from the pool of its stripe when the
+   * row gets locked, and goes back to it with its row locks when the last holder releases the row.
+   */
+  class StripedRowLockContext extends RowLockContext {
+    private final RowLockStripe stripe;
+    private final RowLockImpl readRowLock = new RowLockImpl(this, readWriteLock.readLock());
+    private final RowLockImpl writeRowLock = new RowLockImpl(this, readWriteLock.writeLock());
+    private byte[] row;
+    private int hash;
+    private StripedRowLockContext next;
+
+    StripedRowLockContext(RowLockStripe stripe) {
+      super(null);
+      this.stripe = stripe;
+    }
+
+    // Counted when looked up. A lock the thread already holds gets its own RowLockImpl, as the
+    // batches tell new row locks from the previous one by identity.
+    @Override
+    RowLockImpl newWriteLock() {
+      return ((ReentrantReadWriteLock) readWriteLock).isWriteLockedByCurrentThread()
+        ? new RowLockImpl(this, writeRowLock.getLock())
+        : writeRowLock;
+    }
+
+    @Override
+    RowLockImpl newReadLock() {
+      return ((ReentrantReadWriteLock) readWriteLock).getReadHoldCount() > 0
+        ? new RowLockImpl(this, readRowLock.getLock())
+        : readRowLock;
+    }
+
+    @Override
+    void cleanUp() {
+      synchronized (stripe) {
+        if (count.decrementAndGet() > 0) {
+          return;
+        }
+        if (stripe.locked == this) {
+          stripe.locked = next;
+        } else {
+          StripedRowLockContext previous = stripe.locked;
+          while (previous.next != this) {
+            previous = previous.next;
+          }
+          previous.next = next;
+        }
+        row = null;
+        next = null;
+        if (stripe.pooledCount < RowLockStripe.MAX_POOLED_CONTEXTS) {
+          next = stripe.pooled;
+          stripe.pooled = this;
+          stripe.pooledCount++;
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      byte[] r = row;
+      return "StripedRowLockContext{" + "row=" + (r == null ? null : Bytes.toStringBinary(r))
+        + ", readWriteLock=" + readWriteLock + ", count=" + count + '}';
+    }
+  }
+
   /**
    * Class used to represent a lock on a row.
    */
@@ -8186,6 +8630,9 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       checkResources();
       startRegionOperation(Operation.INCREMENT);
       try {
+        if (incrementCoalescer != null && incrementCoalescer.canCoalesce(increment, nonce)) {
+          return incrementCoalescer.increment(increment);
+        }
         // All edits for the given row (across all column families) must happen atomically.
         return mutate(increment, true, nonceGroup, nonce).getResult();
       } finally {
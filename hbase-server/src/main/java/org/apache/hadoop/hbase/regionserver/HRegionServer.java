@@ -66,6 +66,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 import javax.management.MalformedObjectNameException;
 import javax.servlet.http.HttpServlet;
@@ -112,6 +113,7 @@ import org.apache.hadoop.hbase.io.hfile.BlockCache;
 import org.apache.hadoop.hbase.io.hfile.BlockCacheFactory;
 import org.apache.hadoop.hbase.io.hfile.CombinedBlockCache;
 import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.io.hfile.PrefetchExecutor;
 import org.apache.hadoop.hbase.io.hfile.bucket.BucketCache;
 import org.apache.hadoop.hbase.io.util.MemorySizeUtil;
 import org.apache.hadoop.hbase.ipc.CoprocessorRpcUtils;
@@ -387,6 +389,9 @@ public class HRegionServer extends HBaseServerBase<RSRpcServices>
 
   private final RegionServerAccounting regionServerAccounting;
 
+  // Sends the cached blocks of the regions moving away to their destination
+  private final BlockCacheTransfer blockCacheTransfer;
+
   private NamedQueueServiceChore namedQueueServiceChore = null;
 
   // Block cache
@@ -498,6 +503,9 @@ public class HRegionServer extends HBaseServerBase<RSRpcServices>
   // A timer submit requests to the PrefetchExecutor
   private PrefetchExecutorNotifier prefetchExecutorNotifier;
 
+  // The read heat of the regions, ordering the prefetches of their files
+  private final ToLongFunction<String> prefetchHeat = this::getPrefetchHeat;
+
   /**
    * Starts a HRegionServer at the default location.
    * <p/>
@@ -534,6 +542,7 @@ public class HRegionServer extends HBaseServerBase<RSRpcServices>
       regionServerAccounting = new RegionServerAccounting(conf);
 
       blockCache = BlockCacheFactory.createBlockCache(conf);
+      blockCacheTransfer = new BlockCacheTransfer(this, conf);
       // The call below, instantiates the DataTieringManager only when
       // the configuration "hbase.regionserver.datatiering.enable" is set to true.
       DataTieringManager.instantiate(conf, onlineRegions);
@@ -636,8 +645,9 @@ public class HRegionServer extends HBaseServerBase<RSRpcServices>
   public void dumpRowLocks(final PrintWriter out) {
     StringBuilder sb = new StringBuilder();
     for (HRegion region : getRegions()) {
-      if (region.getLockedRows().size() > 0) {
-        for (HRegion.RowLockContext rowLockContext : region.getLockedRows().values()) {
+      List<HRegion.RowLockContext> rowLockContexts = region.getRowLockContexts();
+      if (rowLockContexts.size() > 0) {
+        for (HRegion.RowLockContext rowLockContext : rowLockContexts) {
           sb.setLength(0);
           sb.append(region.getTableDescriptor().getTableName()).append(",")
             .append(region.getRegionInfo().getEncodedName()).append(",");
@@ -1525,6 +1535,23 @@ public class HRegionServer extends HBaseServerBase<RSRpcServices>
     return regionServerAccounting;
   }
 
+  public BlockCacheTransfer getBlockCacheTransfer() {
+    return blockCacheTransfer;
+  }
+
+  /**
+   * Returns the read heat of the given region, for the order of the prefetches of its files: the
+   * read requests it served since it opened here, plus its blocks in the cache, which tell which
+   * regions were read before a restart when the cache is persistent.
+   */
+  private long getPrefetchHeat(String encodedRegionName) {
+    HRegion region = getRegion(encodedRegionName);
+    long heat = region != null ? region.getReadRequestsCount() : 0;
+    long cachedBytes = getBlockCache().flatMap(BlockCache::getRegionCachedInfo)
+      .map(cached -> cached.getOrDefault(encodedRegionName, 0L)).orElse(0L);
+    return heat + cachedBytes / HConstants.DEFAULT_BLOCKSIZE;
+  }
+
   // Round the size with KB or MB.
   // A trick here is that if the sizeInBytes is less than sizeUnit, we will round the size to 1
   // instead of 0 if it is not 0, to avoid some schedulers think the region has no data. See
@@ -2056,6 +2083,7 @@ public class HRegionServer extends HBaseServerBase<RSRpcServices>
 
     // Prefetch Notifier
     this.prefetchExecutorNotifier = new PrefetchExecutorNotifier(conf);
+    PrefetchExecutor.addHeatSource(prefetchHeat);
 
     // Background thread to check for compactions; needed if region has not gotten updates
     // in a while. It will take care of not checking too frequently on store-by-store basis.
@@ -2525,6 +2553,7 @@ public class HRegionServer extends HBaseServerBase<RSRpcServices>
   protected void stopServiceThreads() {
     // clean up the scheduled chores
     stopChoreService();
+    PrefetchExecutor.removeHeatSource(prefetchHeat);
     if (bootstrapNodeManager != null) {
       bootstrapNodeManager.stop();
     }
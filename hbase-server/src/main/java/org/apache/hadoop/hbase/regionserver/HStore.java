@@ -144,6 +144,16 @@ public class HStore
   public static final String DEFAULT_BLOCK_STORAGE_POLICY = "NONE";
   public static final int DEFAULT_COMPACTCHECKER_INTERVAL_MULTIPLIER = 1000;
   public static final int DEFAULT_BLOCKING_STOREFILE_COUNT = 16;
+  /**
+   * Whether the columns of the store are delta counters, usually set as a column family attribute.
+   * The increments of a counter write their amounts as deltas, without reading the current value
+   * unless the client wants results back, and the deltas are summed when read and folded into one
+   * cell by flushes and compactions. Appends and Puts, which would be summed as deltas, are
+   * rejected. Deletes reset the counters, but deletes of given versions are rejected, as deltas
+   * folded together share the version of the latest one.
+   */
+  public static final String DELTA_COUNTERS_KEY = "hbase.hstore.delta.counters";
+  public static final boolean DEFAULT_DELTA_COUNTERS = false;
 
   // HBASE-24428 : Update compaction priority for recently split daughter regions
   // so as to prioritize their compaction.
@@ -213,6 +223,7 @@ public class HStore
   private AtomicLong majorCompactedCellsCount = new AtomicLong();
   private AtomicLong flushedCellsSize = new AtomicLong();
   private AtomicLong flushedOutputFileSize = new AtomicLong();
+  private AtomicLong flushTime = new AtomicLong();
   private AtomicLong compactedCellsSize = new AtomicLong();
   private AtomicLong majorCompactedCellsSize = new AtomicLong();
 
@@ -1983,8 +1994,10 @@ public class HStore
       if (writerCreationTracker != null) {
         HStore.this.storeFileWriterCreationTrackers.add(writerCreationTracker);
       }
+      long start = EnvironmentEdgeManager.currentTime();
       tempFiles = HStore.this.flushCache(cacheFlushSeqNum, snapshot, status, throughputController,
         tracker, writerCreationTracker);
+      flushTime.addAndGet(EnvironmentEdgeManager.currentTime() - start);
     }
 
     @Override
@@ -2147,6 +2160,11 @@ public class HStore
     return flushedOutputFileSize.get();
   }
 
+  /** Returns the total time spent writing the flush files of this store, in milliseconds. */
+  public long getFlushTime() {
+    return flushTime.get();
+  }
+
   @Override
   public long getCompactedCellsCount() {
     return compactedCellsCount.get();
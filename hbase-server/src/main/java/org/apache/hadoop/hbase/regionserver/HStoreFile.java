@@ -101,6 +101,9 @@ public class HStoreFile implements StoreFile {
   /** Last Bloom filter key in FileInfo */
   public static final byte[] LAST_BLOOM_KEY = Bytes.toBytes("LAST_BLOOM_KEY");
 
+  /** Row range filter in FileInfo, see {@link RowRangeFilter} */
+  public static final byte[] ROW_RANGE_FILTER_KEY = Bytes.toBytes("ROW_RANGE_FILTER");
+
   /** Key for Timerange information in metadata */
   public static final byte[] TIMERANGE_KEY = Bytes.toBytes("TIMERANGE");
 
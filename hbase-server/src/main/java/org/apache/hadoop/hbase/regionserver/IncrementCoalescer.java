@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HConstants.OperationStatusCode;
+import org.apache.hadoop.hbase.RegionTooBusyException;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptor;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.exceptions.FailedSanityCheckException;
+import org.apache.hadoop.hbase.security.access.AccessController;
+import org.apache.hadoop.hbase.security.visibility.VisibilityController;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.HashedBytes;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the increments of a region to a same row concurrently in batches. The first caller
+ * finding no batch in progress on the row applies, as one atomic batch, all the increments queued
+ * on the row: under one row lock acquisition, WAL append and MVCC transaction. The others wait,
+ * and one of those left queued applies the next batch. Within a batch the increments of a same
+ * column apply on top of each other, so that each caller gets its own post-increment values.
+ * <p>
+ * Enabled by {@link #INCREMENT_COALESCING_KEY} for the increments without a nonce whose families
+ * all enable it. A batch is written to the WAL as one entry, which cannot carry the nonces of its
+ * increments, so that an increment with a nonce is applied on its own to stay applied once when
+ * retried after a crash of the server. The coprocessors of a batch see the request user of the
+ * caller applying it, so the increments are not coalesced while the region loads the
+ * {@link AccessController} or the {@link VisibilityController}, which check the permissions and
+ * labels of the request user.
+ */
+@InterfaceAudience.Private
+class IncrementCoalescer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(IncrementCoalescer.class);
+
+  /**
+   * Whether to coalesce the concurrent increments to a same row. Can be set in the configuration,
+   * or as a table or column family attribute. Only applies to the increments sent without a nonce,
+   * see {@code hbase.client.nonces.enabled}. Ignored while the region loads the AccessController
+   * or the VisibilityController.
+   */
+  static final String INCREMENT_COALESCING_KEY = "hbase.region.increment.coalescing";
+  static final boolean DEFAULT_INCREMENT_COALESCING = false;
+
+  private final HRegion region;
+  private final Set<byte[]> families;
+  private final int maxBatchSize;
+  private final ConcurrentHashMap<HashedBytes, RowQueue> rows = new ConcurrentHashMap<>();
+  private volatile CheckedHost checkedHost;
+
+  /** An increment waiting for, or being applied in, a batch */
+  private static final class PendingIncrement {
+    private final Increment increment;
+    // Guarded by the row queue.
+    private boolean applying;
+    private boolean done;
+    private Result result;
+    private IOException error;
+
+    private PendingIncrement(Increment increment) {
+      this.increment = increment;
+    }
+  }
+
+  /** Whether a coprocessor host of the region loads a coprocessor checking the request user */
+  private static final class CheckedHost {
+    private final RegionCoprocessorHost host;
+    private final boolean checksUser;
+
+    private CheckedHost(RegionCoprocessorHost host, boolean checksUser) {
+      this.host = host;
+      this.checksUser = checksUser;
+    }
+  }
+
+  /** The increments queued on a row */
+  private static final class RowQueue {
+    private final ArrayDeque<PendingIncrement> pending = new ArrayDeque<>();
+    private boolean applying;
+    private boolean removed;
+  }
+
+  private IncrementCoalescer(HRegion region, Set<byte[]> families, int maxBatchSize) {
+    this.region = region;
+    this.families = families;
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /** Returns a coalescer for the families enabling it, null if none does */
+  static IncrementCoalescer create(HRegion region, TableDescriptor htd, int maxBatchSize) {
+    Set<byte[]> families = new TreeSet<>(Bytes.BYTES_COMPARATOR);
+    for (ColumnFamilyDescriptor family : htd.getColumnFamilies()) {
+      if (
+        StoreUtils.createStoreConfiguration(region.getBaseConf(), htd, family)
+          .getBoolean(INCREMENT_COALESCING_KEY, DEFAULT_INCREMENT_COALESCING)
+      ) {
+        families.add(family.getName());
+      }
+    }
+    return families.isEmpty() ? null : new IncrementCoalescer(region, families, maxBatchSize);
+  }
+
+  /** Returns whether the given increment, sent with the given nonce, can be applied with others */
+  boolean canCoalesce(Increment increment, long nonce) {
+    if (
+      nonce != HConstants.NO_NONCE || increment.getFamilyCellMap().isEmpty() || checksRequestUser()
+    ) {
+      return false;
+    }
+    for (byte[] family : increment.getFamilyCellMap().keySet()) {
+      if (!families.contains(family)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns whether the coprocessor host of the region, which is replaced when the configuration
+   * changes, loads a coprocessor checking the request user.
+   */
+  private boolean checksRequestUser() {
+    RegionCoprocessorHost host = region.getCoprocessorHost();
+    if (host == null) {
+      return false;
+    }
+    CheckedHost checked = checkedHost;
+    if (checked == null || checked.host != host) {
+      checked = new CheckedHost(host, host.findCoprocessor(AccessController.class) != null
+        || host.findCoprocessor(VisibilityController.class) != null);
+      if (checked.checksUser) {
+        LOG.warn("Not coalescing the increments of {}, the AccessController or the "
+          + "VisibilityController is loaded", region.getRegionInfo().getEncodedName());
+      }
+      checkedHost = checked;
+    }
+    return checked.checksUser;
+  }
+
+  /**
+   * Applies the given increment, possibly along with other increments to its row, and returns its
+   * result.
+   */
+  Result increment(Increment increment) throws IOException {
+    HashedBytes row = new HashedBytes(increment.getRow());
+    PendingIncrement pending = new PendingIncrement(increment);
+    RowQueue queue;
+    for (;;) {
+      queue = rows.computeIfAbsent(row, k -> new RowQueue());
+      synchronized (queue) {
+        if (!queue.removed) {
+          queue.pending.add(pending);
+          break;
+        }
+      }
+    }
+    for (;;) {
+      List<PendingIncrement> batch;
+      synchronized (queue) {
+        try {
+          while (!pending.done && queue.applying) {
+            queue.wait();
+          }
+        } catch (InterruptedException e) {
+          if (!pending.applying) {
+            queue.pending.remove(pending);
+            if (queue.pending.isEmpty() && !queue.applying) {
+              queue.removed = true;
+              rows.remove(row, queue);
+            }
+            throw (IOException) new InterruptedIOException().initCause(e);
+          }
+          // Already being applied by another caller, wait for the outcome.
+          awaitUninterruptibly(queue, pending);
+          Thread.currentThread().interrupt();
+        }
+        if (pending.done) {
+          break;
+        }
+        queue.applying = true;
+        batch = new ArrayList<>(Math.min(queue.pending.size(), maxBatchSize));
+        while (!queue.pending.isEmpty() && batch.size() < maxBatchSize) {
+          PendingIncrement next = queue.pending.poll();
+          next.applying = true;
+          batch.add(next);
+        }
+      }
+      apply(row, queue, batch);
+    }
+    if (pending.error != null) {
+      throw pending.error;
+    }
+    return pending.result;
+  }
+
+  private static void awaitUninterruptibly(RowQueue queue, PendingIncrement pending) {
+    while (!pending.done) {
+      try {
+        queue.wait();
+      } catch (InterruptedException e) {
+        // Keep waiting, the increment is being applied.
+      }
+    }
+  }
+
+  private void apply(HashedBytes row, RowQueue queue, List<PendingIncrement> batch) {
+    try {
+      applyBatch(batch);
+    } catch (Throwable t) {
+      IOException error = t instanceof IOException ? (IOException) t : new IOException(t);
+      for (PendingIncrement pending : batch) {
+        if (pending.result == null && pending.error == null) {
+          pending.error = error;
+        }
+      }
+    } finally {
+      synchronized (queue) {
+        for (PendingIncrement pending : batch) {
+          pending.done = true;
+        }
+        queue.applying = false;
+        if (queue.pending.isEmpty()) {
+          queue.removed = true;
+          rows.remove(row, queue);
+        }
+        queue.notifyAll();
+      }
+    }
+  }
+
+  private void applyBatch(List<PendingIncrement> batch) throws IOException {
+    if (batch.size() > 1) {
+      Mutation[] mutations = new Mutation[batch.size()];
+      for (int i = 0; i < mutations.length; i++) {
+        mutations[i] = batch.get(i).increment;
+      }
+      OperationStatus[] statuses;
+      try {
+        statuses = region.batchMutate(mutations, true);
+      } catch (DoNotRetryIOException e) {
+        // An increment was rejected before anything was applied, apply them one by one so that
+        // only that one fails.
+        statuses = null;
+      }
+      if (statuses != null) {
+        for (int i = 0; i < statuses.length; i++) {
+          setOutcome(batch.get(i), statuses[i]);
+        }
+        return;
+      }
+    }
+    for (PendingIncrement pending : batch) {
+      try {
+        setOutcome(pending, region.batchMutate(new Mutation[] { pending.increment }, true)[0]);
+      } catch (IOException e) {
+        pending.error = e;
+      }
+    }
+  }
+
+  private static void setOutcome(PendingIncrement pending, OperationStatus status) {
+    OperationStatusCode code = status.getOperationStatusCode();
+    if (code == OperationStatusCode.SUCCESS) {
+      pending.result = status.getResult();
+    } else if (code == OperationStatusCode.SANITY_CHECK_FAILURE) {
+      pending.error = new FailedSanityCheckException(status.getExceptionMsg());
+    } else if (code == OperationStatusCode.BAD_FAMILY) {
+      pending.error = new NoSuchColumnFamilyException(status.getExceptionMsg());
+    } else if (code == OperationStatusCode.STORE_TOO_BUSY) {
+      pending.error = new RegionTooBusyException(status.getExceptionMsg());
+    } else {
+      pending.error = new IOException("Increment failed: " + status.getExceptionMsg());
+    }
+  }
+}
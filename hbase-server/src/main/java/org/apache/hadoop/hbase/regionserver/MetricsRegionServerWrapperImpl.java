@@ -40,6 +40,7 @@ import org.apache.hadoop.hbase.io.asyncfs.monitor.ExcludeDatanodeManager;
 import org.apache.hadoop.hbase.io.hfile.BlockCache;
 import org.apache.hadoop.hbase.io.hfile.CacheStats;
 import org.apache.hadoop.hbase.io.hfile.CombinedBlockCache;
+import org.apache.hadoop.hbase.io.hfile.bucket.BucketCacheStats;
 import org.apache.hadoop.hbase.mob.MobFileCache;
 import org.apache.hadoop.hbase.regionserver.wal.MetricsWALSource;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
@@ -368,6 +369,13 @@ class MetricsRegionServerWrapperImpl implements MetricsRegionServerWrapper {
     return this.l2Stats != null ? this.l2Stats.getEvictedCount() : 0L;
   }
 
+  @Override
+  public long getL2CacheAdmissionRejectedCount() {
+    return this.l2Stats instanceof BucketCacheStats
+      ? ((BucketCacheStats) this.l2Stats).getAdmissionRejectedCount()
+      : 0L;
+  }
+
   @Override
   public long getL1CacheHitCount() {
     return this.l1Stats != null ? this.l1Stats.getHitCount() : 0L;
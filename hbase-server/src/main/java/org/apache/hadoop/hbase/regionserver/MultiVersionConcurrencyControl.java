@@ -17,9 +17,13 @@
  */
 package org.apache.hadoop.hbase.regionserver;
 
-import java.util.LinkedList;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.ClassSize;
 import org.apache.yetus.audience.InterfaceAudience;
@@ -33,28 +37,41 @@ import org.apache.hbase.thirdparty.com.google.common.base.MoreObjects.ToStringHe
  * Manages the read/write consistency. This provides an interface for readers to determine what
  * entries to ignore, and a mechanism for writers to obtain new write numbers, then "commit" the new
  * writes for readers to read (thus forming atomic transactions).
+ * <p>
+ * Writers do not share a lock. The pending writes are kept in a ring of slots indexed by their
+ * write number, and the read point is advanced by whichever completer closes the gap before it, one
+ * completer at a time so that the completion actions run in the order of the write numbers. Only
+ * {@link #begin(Runnable)} serializes its callers, to run their actions in the same order.
  */
 @InterfaceAudience.Private
 public class MultiVersionConcurrencyControl {
   private static final Logger LOG = LoggerFactory.getLogger(MultiVersionConcurrencyControl.class);
   private static final long READPOINT_ADVANCE_WAIT_TIME = 10L;
+  private static final int READPOINT_ADVANCE_YIELDS = 16;
+  // Number of slots of the pending writes. A write whose slot is still taken by an older pending
+  // write goes to the overflow map, so this only needs to cover the usual number of handlers.
+  private static final int PENDING_SLOTS = 256;
 
   final String regionName;
   final AtomicLong readPoint = new AtomicLong(0);
   final AtomicLong writePoint = new AtomicLong(0);
   private final Object readWaiters = new Object();
+  // Number of threads waiting on readWaiters, so that completers only notify when there are some.
+  private final AtomicInteger readWaiterCount = new AtomicInteger();
   /**
    * Represents no value, or not set.
    */
   public static final long NONE = -1;
 
-  // This is the pending queue of writes.
-  //
-  // TODO(eclark): Should this be an array of fixed size to
-  // reduce the number of allocations on the write path?
-  // This could be equal to the number of handlers + a small number.
-  // TODO: St.Ack 20150903 Sounds good to me.
-  private final LinkedList<WriteEntry> writeQueue = new LinkedList<>();
+  // The pending writes, in the slot of their write number modulo PENDING_SLOTS, or in the overflow
+  // map when that slot is taken. Entries are removed when the read point advances past them.
+  private final AtomicReferenceArray<WriteEntry> pendingSlots =
+    new AtomicReferenceArray<>(PENDING_SLOTS);
+  private final ConcurrentMap<Long, WriteEntry> pendingOverflow = new ConcurrentHashMap<>();
+  // Held by the single thread advancing the read point.
+  private final AtomicBoolean advancing = new AtomicBoolean(false);
+  // Orders the actions passed to begin as their write numbers.
+  private final Object beginLock = new Object();
 
   public MultiVersionConcurrencyControl() {
     this(null);
@@ -96,7 +113,11 @@ public class MultiVersionConcurrencyControl {
    *         <code>readPoint</code>
    */
   boolean tryAdvanceTo(long newStartPoint, long expected) {
-    synchronized (writeQueue) {
+    // Keeps the completers from moving the read point meanwhile.
+    while (!advancing.compareAndSet(false, true)) {
+      Thread.yield();
+    }
+    try {
       long currentRead = this.readPoint.get();
       long currentWrite = this.writePoint.get();
       if (currentRead != currentWrite) {
@@ -111,18 +132,29 @@ public class MultiVersionConcurrencyControl {
         return false;
       }
 
+      if (!writePoint.compareAndSet(currentWrite, newStartPoint)) {
+        throw new RuntimeException("Already used this mvcc; currentRead=" + currentRead
+          + ", currentWrite=" + writePoint.get() + "; too late to tryAdvanceTo");
+      }
       readPoint.set(newStartPoint);
-      writePoint.set(newStartPoint);
+    } finally {
+      advancing.set(false);
+      // Completes the writes which could not advance the read point while we held it.
+      advanceReadPoint();
     }
     return true;
   }
 
   /**
-   * Call {@link #begin(Runnable)} with an empty {@link Runnable}.
+   * Start a write transaction, like {@link #begin(Runnable)} but without action, so without
+   * waiting for the other writers.
    */
   public WriteEntry begin() {
-    return begin(() -> {
-    });
+    WriteEntry e = new WriteEntry(writePoint.incrementAndGet());
+    if (!pendingSlots.compareAndSet(slot(e.getWriteNumber()), null, e)) {
+      pendingOverflow.put(e.getWriteNumber(), e);
+    }
+    return e;
   }
 
   /**
@@ -138,15 +170,29 @@ public class MultiVersionConcurrencyControl {
    * @see #completeAndWait(WriteEntry)
    */
   public WriteEntry begin(Runnable action) {
-    synchronized (writeQueue) {
-      long nextWriteNumber = writePoint.incrementAndGet();
-      WriteEntry e = new WriteEntry(nextWriteNumber);
-      writeQueue.add(e);
+    synchronized (beginLock) {
+      WriteEntry e = begin();
       action.run();
       return e;
     }
   }
 
+  private static int slot(long writeNumber) {
+    return (int) (writeNumber & (PENDING_SLOTS - 1));
+  }
+
+  /** Returns the pending entry of the given write number, or null if not begun yet or retired. */
+  private WriteEntry getPending(long writeNumber) {
+    WriteEntry e = pendingSlots.get(slot(writeNumber));
+    return e != null && e.getWriteNumber() == writeNumber ? e : pendingOverflow.get(writeNumber);
+  }
+
+  private void removePending(WriteEntry e) {
+    if (!pendingSlots.compareAndSet(slot(e.getWriteNumber()), e, null)) {
+      pendingOverflow.remove(e.getWriteNumber());
+    }
+  }
+
   /**
    * Wait until the read point catches up to the write point; i.e. wait on all outstanding mvccs to
    * complete.
@@ -177,41 +223,39 @@ public class MultiVersionConcurrencyControl {
    * @return true if e is visible to MVCC readers (that is, readpoint >= e.writeNumber)
    */
   public boolean complete(WriteEntry writeEntry) {
-    synchronized (writeQueue) {
-      writeEntry.markCompleted();
-      long nextReadValue = NONE;
-      boolean ranOnce = false;
-      while (!writeQueue.isEmpty()) {
-        ranOnce = true;
-        WriteEntry queueFirst = writeQueue.getFirst();
-
-        if (nextReadValue > 0) {
-          if (nextReadValue + 1 != queueFirst.getWriteNumber()) {
-            throw new RuntimeException("Invariant in complete violated, nextReadValue="
-              + nextReadValue + ", writeNumber=" + queueFirst.getWriteNumber());
-          }
-        }
+    writeEntry.markCompleted();
+    advanceReadPoint();
+    return readPoint.get() >= writeEntry.getWriteNumber();
+  }
 
-        if (queueFirst.isCompleted()) {
-          nextReadValue = queueFirst.getWriteNumber();
-          writeQueue.removeFirst();
-          queueFirst.runCompletionAction();
-        } else {
-          break;
+  /**
+   * Advance the read point over the completed writes following it, running their completion
+   * actions, unless another thread is doing so. In that case, that thread sees our completed write
+   * when it checks again after releasing {@link #advancing}, as we marked it before trying.
+   */
+  private void advanceReadPoint() {
+    while (advancing.compareAndSet(false, true)) {
+      boolean advanced = false;
+      try {
+        long current = readPoint.get();
+        for (WriteEntry e; (e = getPending(current + 1)) != null && e.isCompleted(); current++) {
+          e.runCompletionAction();
+          removePending(e);
+          readPoint.set(current + 1);
+          advanced = true;
         }
+      } finally {
+        advancing.set(false);
       }
-
-      if (!ranOnce) {
-        throw new RuntimeException("There is no first!");
-      }
-
-      if (nextReadValue > 0) {
+      if (advanced && readWaiterCount.get() > 0) {
         synchronized (readWaiters) {
-          readPoint.set(nextReadValue);
           readWaiters.notifyAll();
         }
       }
-      return readPoint.get() >= writeEntry.getWriteNumber();
+      WriteEntry next = getPending(readPoint.get() + 1);
+      if (next == null || !next.isCompleted()) {
+        return;
+      }
     }
   }
 
@@ -219,23 +263,38 @@ public class MultiVersionConcurrencyControl {
    * Wait for the global readPoint to advance up to the passed in write entry number.
    */
   void waitForRead(WriteEntry e) {
+    // The write is usually made visible by the completer of a preceding write within a few
+    // microseconds, so give it a chance before blocking.
+    for (int i = 0; i < READPOINT_ADVANCE_YIELDS; i++) {
+      if (readPoint.get() >= e.getWriteNumber()) {
+        return;
+      }
+      Thread.yield();
+    }
     boolean interrupted = false;
     int count = 0;
-    synchronized (readWaiters) {
-      while (readPoint.get() < e.getWriteNumber()) {
-        if (count % 100 == 0 && count > 0) {
-          long totalWaitTillNow = READPOINT_ADVANCE_WAIT_TIME * count;
-          LOG.warn("STUCK for : " + totalWaitTillNow + " millis. " + this);
-        }
-        count++;
-        try {
-          readWaiters.wait(READPOINT_ADVANCE_WAIT_TIME);
-        } catch (InterruptedException ie) {
-          // We were interrupted... finish the loop -- i.e. cleanup --and then
-          // on our way out, reset the interrupt flag.
-          interrupted = true;
+    // Counted before checking the read point, so that the completer advancing it after our check
+    // sees us and notifies.
+    readWaiterCount.incrementAndGet();
+    try {
+      synchronized (readWaiters) {
+        while (readPoint.get() < e.getWriteNumber()) {
+          if (count % 100 == 0 && count > 0) {
+            long totalWaitTillNow = READPOINT_ADVANCE_WAIT_TIME * count;
+            LOG.warn("STUCK for : " + totalWaitTillNow + " millis. " + this);
+          }
+          count++;
+          try {
+            readWaiters.wait(READPOINT_ADVANCE_WAIT_TIME);
+          } catch (InterruptedException ie) {
+            // We were interrupted... finish the loop -- i.e. cleanup --and then
+            // on our way out, reset the interrupt flag.
+            interrupted = true;
+          }
         }
       }
+    } finally {
+      readWaiterCount.decrementAndGet();
     }
     if (interrupted) {
       Thread.currentThread().interrupt();
@@ -267,10 +326,10 @@ public class MultiVersionConcurrencyControl {
   @InterfaceAudience.Private
   public static final class WriteEntry {
     private final long writeNumber;
-    private boolean completed = false;
+    private volatile boolean completed = false;
     /**
-     * Will be called after completion, i.e, when being removed from the
-     * {@link MultiVersionConcurrencyControl#writeQueue}.
+     * Will be called after completion, i.e, when the read point advances to this write, in the
+     * order of the write numbers.
      */
     private Optional<Runnable> completionAction = Optional.empty();
 
@@ -310,5 +369,6 @@ public class MultiVersionConcurrencyControl {
   }
 
   public static final long FIXED_SIZE =
-    ClassSize.align(ClassSize.OBJECT + 2 * Bytes.SIZEOF_LONG + 2 * ClassSize.REFERENCE);
+    ClassSize.align(ClassSize.OBJECT + 2 * Bytes.SIZEOF_LONG + 2 * ClassSize.REFERENCE)
+      + ClassSize.align(ClassSize.ARRAY + PENDING_SLOTS * ClassSize.REFERENCE);
 }
@@ -20,6 +20,7 @@ package org.apache.hadoop.hbase.regionserver;
 import java.util.Iterator;
 import java.util.SortedSet;
 import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.CellComparator;
 import org.apache.hadoop.hbase.CellUtil;
 import org.apache.hadoop.hbase.ExtendedCell;
@@ -35,6 +36,21 @@ import org.apache.yetus.audience.InterfaceAudience;
 @InterfaceAudience.Private
 public class MutableSegment extends Segment {
 
+  /**
+   * The index of the cells of the active segment, one of {@link IndexType}. Can be set per column
+   * family.
+   */
+  public static final String INDEX_TYPE_KEY = "hbase.hregion.memstore.active.index";
+  public static final IndexType INDEX_TYPE_DEFAULT = IndexType.CSLM_MAP;
+
+  /**
+   * Types of indexes of the active segment.
+   */
+  public enum IndexType {
+    CSLM_MAP, // ConcurrentSkipListMap
+    BTREE_MAP // CellBTreeMap, with less heap per cell
+  }
+
   private final AtomicBoolean flushed = new AtomicBoolean(false);
 
   public final static long DEEP_OVERHEAD =
@@ -125,6 +141,17 @@ public class MutableSegment extends Segment {
 
   @Override
   protected long indexEntrySize() {
-    return ClassSize.CONCURRENT_SKIPLISTMAP_ENTRY;
+    return indexEntrySize(getCellSet());
+  }
+
+  static IndexType getIndexType(Configuration conf) {
+    return conf.getEnum(INDEX_TYPE_KEY, INDEX_TYPE_DEFAULT);
+  }
+
+  /** Returns the heap size of an entry of the given cell set of an active segment */
+  static long indexEntrySize(CellSet<ExtendedCell> cellSet) {
+    return cellSet.getDelegatee() instanceof CellBTreeMap
+      ? ClassSize.CELL_BTREE_MAP_ENTRY
+      : ClassSize.CONCURRENT_SKIPLISTMAP_ENTRY;
   }
 }
@@ -160,6 +160,8 @@ import org.apache.hadoop.hbase.shaded.protobuf.ProtobufUtil;
 import org.apache.hadoop.hbase.shaded.protobuf.RequestConverter;
 import org.apache.hadoop.hbase.shaded.protobuf.ResponseConverter;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos.AdminService;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos.CacheBlocksRequest;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos.CacheBlocksResponse;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos.ClearCompactionQueuesRequest;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos.ClearCompactionQueuesResponse;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos.ClearRegionBlockCacheRequest;
@@ -4058,6 +4060,23 @@ public class RSRpcServices extends HBaseRpcServicesBase<HRegionServer>
     return responseBuilder.addAllCachedFiles(fullyCachedFiles).build();
   }
 
+  @Override
+  public CacheBlocksResponse cacheBlocks(RpcController controller, CacheBlocksRequest request)
+    throws ServiceException {
+    rpcPreCheck("cacheBlocks");
+    requestCount.increment();
+    int cachedBlocks = 0;
+    BlockCache blockCache = server.getBlockCache().orElse(null);
+    if (blockCache != null) {
+      try {
+        cachedBlocks = BlockCacheTransfer.cacheBlocks(blockCache, request);
+      } catch (IOException e) {
+        throw new ServiceException(e);
+      }
+    }
+    return CacheBlocksResponse.newBuilder().setCachedBlocks(cachedBlocks).build();
+  }
+
   RegionScannerContext checkQuotaAndGetRegionScannerContext(ScanRequest request,
     ScanResponse.Builder builder) throws IOException {
     if (request.hasScannerId()) {
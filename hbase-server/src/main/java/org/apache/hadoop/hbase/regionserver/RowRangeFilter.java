@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A succinct filter of the row ranges of a store file, which tells whether the file may have rows
+ * in the range of a scan. Row Bloom filters only answer point lookups, and the first and last keys
+ * of a file only exclude the ranges outside of them, so without this filter a short scan opens and
+ * seeks every file of the store overlapping its range, e.g. every file of a time series table.
+ * <p>
+ * Like the base variant of SuRF, the filter is the set of the distinct prefixes of the rows of the
+ * file, truncated to a maximum length: a range may have rows in the file only if a prefix lies
+ * between the truncated bounds of the range. There is no false negative, and false positives come
+ * from the truncation only. The prefixes are sorted, as the rows are, so they are front coded, and
+ * the filter keeps them sorted in a single array, binary searched. To bound the size of the filter,
+ * the writer shortens the prefixes by one byte every time there are more than
+ * {@link #MAX_ENTRIES_KEY} of them, and gives up when they are down to nothing.
+ */
+@InterfaceAudience.Private
+public final class RowRangeFilter {
+
+  /** Whether the store files are written with a row range filter, also settable per family */
+  public static final String ENABLED_KEY = "hbase.hstore.row.range.filter.enabled";
+  public static final boolean DEFAULT_ENABLED = false;
+  /** Maximum length of the row prefixes kept by the filter */
+  public static final String PREFIX_LENGTH_KEY = "hbase.hstore.row.range.filter.prefix.length";
+  public static final int DEFAULT_PREFIX_LENGTH = 16;
+  /** Maximum number of row prefixes kept by the filter */
+  public static final String MAX_ENTRIES_KEY = "hbase.hstore.row.range.filter.max.entries";
+  public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+  private final int prefixLength;
+  // The prefixes, concatenated in order, the i-th one spanning offsets[i] to offsets[i + 1].
+  private final byte[] prefixes;
+  private final int[] offsets;
+
+  private RowRangeFilter(int prefixLength, byte[] prefixes, int[] offsets) {
+    this.prefixLength = prefixLength;
+    this.prefixes = prefixes;
+    this.offsets = offsets;
+  }
+
+  /** Parses a filter written by {@link Builder#toBytes()}. */
+  public static RowRangeFilter parseFrom(byte[] bytes) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    int prefixLength = WritableUtils.readVInt(in);
+    int count = WritableUtils.readVInt(in);
+    if (prefixLength <= 0 || count < 0) {
+      throw new IOException(
+        "Invalid row range filter, prefix length " + prefixLength + ", count " + count);
+    }
+    ByteArrayOutputStream prefixes = new ByteArrayOutputStream();
+    int[] offsets = new int[count + 1];
+    byte[] previous = new byte[0];
+    for (int i = 0; i < count; i++) {
+      int shared = WritableUtils.readVInt(in);
+      int suffixLength = WritableUtils.readVInt(in);
+      if (shared < 0 || shared > previous.length || suffixLength < 0) {
+        throw new IOException("Invalid row range filter entry " + i);
+      }
+      byte[] prefix = Arrays.copyOf(previous, shared + suffixLength);
+      in.readFully(prefix, shared, suffixLength);
+      prefixes.write(prefix);
+      offsets[i + 1] = prefixes.size();
+      previous = prefix;
+    }
+    return new RowRangeFilter(prefixLength, prefixes.toByteArray(), offsets);
+  }
+
+  int getPrefixLength() {
+    return prefixLength;
+  }
+
+  int getCount() {
+    return offsets.length - 1;
+  }
+
+  /**
+   * Returns whether the file may have rows in the range of the scan, in either direction. Only
+   * the inclusiveness of the upper bound is taken into account, an exclusive lower bound making
+   * no difference once truncated.
+   */
+  public boolean mayContain(Scan scan) {
+    if (scan.isReversed()) {
+      return mayContain(scan.getStopRow(), scan.getStartRow(), scan.includeStartRow());
+    }
+    return mayContain(scan.getStartRow(), scan.getStopRow(), scan.includeStopRow());
+  }
+
+  /**
+   * Returns whether the file may have rows between the given ones.
+   * @param lowerRow       the lowest row, inclusive, or empty for no lower bound
+   * @param upperRow       the highest row, or empty for no upper bound
+   * @param upperInclusive whether the highest row is part of the range
+   */
+  boolean mayContain(byte[] lowerRow, byte[] upperRow, boolean upperInclusive) {
+    // The first prefix not lower than the truncated lower row.
+    int low = 0;
+    int high = getCount();
+    int lowerLength = Math.min(lowerRow.length, prefixLength);
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (compare(mid, lowerRow, lowerLength) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    if (low == getCount()) {
+      return false;
+    }
+    if (upperRow.length == 0) {
+      return true;
+    }
+    int cmp = compare(low, upperRow, Math.min(upperRow.length, prefixLength));
+    if (cmp != 0) {
+      return cmp < 0;
+    }
+    // Rows with a prefix equal to the upper row itself are not lower than it.
+    return upperInclusive || upperRow.length > prefixLength;
+  }
+
+  private int compare(int index, byte[] row, int length) {
+    return Bytes.compareTo(prefixes, offsets[index], offsets[index + 1] - offsets[index], row, 0,
+      length);
+  }
+
+  /** Returns whether the configuration, usually the one of a store, enables the filter. */
+  public static boolean isEnabled(Configuration conf) {
+    return conf.getBoolean(ENABLED_KEY, DEFAULT_ENABLED);
+  }
+
+  /**
+   * Collects the row prefixes of a store file being written, its cells being appended in order.
+   */
+  public static final class Builder {
+    private final int maxEntries;
+    private int prefixLength;
+    private final List<byte[]> prefixes = new ArrayList<>();
+    // The full row of the last cell, to only look at the first cell of every row.
+    private byte[] lastRow;
+
+    public Builder(Configuration conf) {
+      this(conf.getInt(PREFIX_LENGTH_KEY, DEFAULT_PREFIX_LENGTH),
+        conf.getInt(MAX_ENTRIES_KEY, DEFAULT_MAX_ENTRIES));
+    }
+
+    Builder(int prefixLength, int maxEntries) {
+      this.prefixLength = prefixLength;
+      this.maxEntries = maxEntries;
+    }
+
+    public void append(Cell cell) {
+      if (prefixLength <= 0 || (lastRow != null && CellUtil.matchingRows(cell, lastRow))) {
+        return;
+      }
+      lastRow = CellUtil.copyRow(cell);
+      add(lastRow.length > prefixLength ? Arrays.copyOf(lastRow, prefixLength) : lastRow);
+    }
+
+    private void add(byte[] prefix) {
+      if (!prefixes.isEmpty() && Bytes.equals(prefixes.get(prefixes.size() - 1), prefix)) {
+        return;
+      }
+      prefixes.add(prefix);
+      while (prefixes.size() > maxEntries && prefixLength > 0) {
+        shorten();
+      }
+    }
+
+    /** Drops the last byte of the longest prefixes, the shortened prefixes staying in order. */
+    private void shorten() {
+      prefixLength--;
+      List<byte[]> shortened = new ArrayList<>(prefixes.size());
+      for (byte[] prefix : prefixes) {
+        if (prefix.length > prefixLength) {
+          prefix = Arrays.copyOf(prefix, prefixLength);
+        }
+        if (shortened.isEmpty() || !Bytes.equals(shortened.get(shortened.size() - 1), prefix)) {
+          shortened.add(prefix);
+        }
+      }
+      prefixes.clear();
+      if (prefixLength > 0) {
+        prefixes.addAll(shortened);
+      }
+    }
+
+    /** Returns the serialized filter, or null if the rows are too many to be filtered at all */
+    public byte[] toBytes() throws IOException {
+      if (prefixLength <= 0 || prefixes.isEmpty()) {
+        return null;
+      }
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      WritableUtils.writeVInt(out, prefixLength);
+      WritableUtils.writeVInt(out, prefixes.size());
+      byte[] previous = new byte[0];
+      for (byte[] prefix : prefixes) {
+        int shared = 0;
+        int maxShared = Math.min(previous.length, prefix.length);
+        while (shared < maxShared && previous[shared] == prefix[shared]) {
+          shared++;
+        }
+        WritableUtils.writeVInt(out, shared);
+        WritableUtils.writeVInt(out, prefix.length - shared);
+        out.write(prefix, shared, prefix.length - shared);
+        previous = prefix;
+      }
+      out.flush();
+      return bytes.toByteArray();
+    }
+  }
+}
@@ -47,10 +47,11 @@ public class ScanInfo {
   private boolean parallelSeekEnabled;
   private final long preadMaxBytes;
   private final boolean newVersionBehavior;
+  private final boolean deltaCounters;
 
   public static final long FIXED_OVERHEAD =
     ClassSize.align(ClassSize.OBJECT + (2 * ClassSize.REFERENCE) + (2 * Bytes.SIZEOF_INT)
-      + (4 * Bytes.SIZEOF_LONG) + (4 * Bytes.SIZEOF_BOOLEAN));
+      + (4 * Bytes.SIZEOF_LONG) + (5 * Bytes.SIZEOF_BOOLEAN));
 
   /**
    * @param family             {@link ColumnFamilyDescriptor} describing the column family
@@ -88,17 +89,24 @@ public class ScanInfo {
   public ScanInfo(Configuration conf, byte[] family, int minVersions, int maxVersions, long ttl,
     KeepDeletedCells keepDeletedCells, long blockSize, long timeToPurgeDeletes,
     CellComparator comparator, boolean newVersionBehavior) {
-    this(family, minVersions, maxVersions, ttl, keepDeletedCells, timeToPurgeDeletes, comparator,
+    // All the deltas of a counter are kept, until folded together.
+    this(family, minVersions, isDeltaCounters(conf) ? Integer.MAX_VALUE : maxVersions, ttl,
+      keepDeletedCells, timeToPurgeDeletes, comparator,
       conf.getLong(HConstants.TABLE_MAX_ROWSIZE_KEY, HConstants.TABLE_MAX_ROWSIZE_DEFAULT),
       conf.getBoolean("hbase.storescanner.use.pread", false), getCellsPerTimeoutCheck(conf),
       conf.getBoolean(StoreScanner.STORESCANNER_PARALLEL_SEEK_ENABLE, false),
-      conf.getLong(StoreScanner.STORESCANNER_PREAD_MAX_BYTES, 4 * blockSize), newVersionBehavior);
+      conf.getLong(StoreScanner.STORESCANNER_PREAD_MAX_BYTES, 4 * blockSize), newVersionBehavior,
+      isDeltaCounters(conf));
+  }
+
+  private static boolean isDeltaCounters(Configuration conf) {
+    return conf.getBoolean(HStore.DELTA_COUNTERS_KEY, HStore.DEFAULT_DELTA_COUNTERS);
   }
 
   private ScanInfo(byte[] family, int minVersions, int maxVersions, long ttl,
     KeepDeletedCells keepDeletedCells, long timeToPurgeDeletes, CellComparator comparator,
     long tableMaxRowSize, boolean usePread, long cellsPerTimeoutCheck, boolean parallelSeekEnabled,
-    long preadMaxBytes, boolean newVersionBehavior) {
+    long preadMaxBytes, boolean newVersionBehavior, boolean deltaCounters) {
     this.family = family;
     this.minVersions = minVersions;
     this.maxVersions = maxVersions;
@@ -112,6 +120,7 @@ public class ScanInfo {
     this.parallelSeekEnabled = parallelSeekEnabled;
     this.preadMaxBytes = preadMaxBytes;
     this.newVersionBehavior = newVersionBehavior;
+    this.deltaCounters = deltaCounters;
   }
 
   long getTableMaxRowSize() {
@@ -166,6 +175,11 @@ public class ScanInfo {
     return newVersionBehavior;
   }
 
+  /** Returns whether the columns of the store are delta counters, summed when read */
+  public boolean isDeltaCounters() {
+    return deltaCounters;
+  }
+
   /**
    * Used by CP users for customizing max versions, ttl and keepDeletedCells.
    */
@@ -181,7 +195,7 @@ public class ScanInfo {
     long timeToPurgeDeletes) {
     return new ScanInfo(family, minVersions, maxVersions, ttl, keepDeletedCells, timeToPurgeDeletes,
       comparator, tableMaxRowSize, usePread, cellsPerTimeoutCheck, parallelSeekEnabled,
-      preadMaxBytes, newVersionBehavior);
+      preadMaxBytes, newVersionBehavior, deltaCounters);
   }
 
   @Override
@@ -192,6 +206,7 @@ public class ScanInfo {
       .append("tableMaxRowSize", tableMaxRowSize).append("usePread", usePread)
       .append("cellsPerTimeoutCheck", cellsPerTimeoutCheck)
       .append("parallelSeekEnabled", parallelSeekEnabled).append("preadMaxBytes", preadMaxBytes)
-      .append("newVersionBehavior", newVersionBehavior).toString();
+      .append("newVersionBehavior", newVersionBehavior).append("deltaCounters", deltaCounters)
+      .toString();
   }
 }
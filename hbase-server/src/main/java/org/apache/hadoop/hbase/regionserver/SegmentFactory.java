@@ -139,8 +139,12 @@ public final class SegmentFactory {
 
   private MutableSegment generateMutableSegment(final Configuration conf, CellComparator comparator,
     MemStoreLAB memStoreLAB, MemStoreSizing memstoreSizing) {
-    // TBD use configuration to set type of segment
-    CellSet<ExtendedCell> set = new CellSet<>(comparator);
+    CellSet<ExtendedCell> set;
+    if (conf != null && MutableSegment.getIndexType(conf) == MutableSegment.IndexType.BTREE_MAP) {
+      set = new CellSet<>(new CellBTreeMap<>(comparator.getSimpleComparator()));
+    } else {
+      set = new CellSet<>(comparator);
+    }
     return new MutableSegment(set, comparator, memStoreLAB, memstoreSizing);
   }
 
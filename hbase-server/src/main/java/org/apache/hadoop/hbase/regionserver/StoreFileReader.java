@@ -21,6 +21,7 @@ import static org.apache.hadoop.hbase.regionserver.HStoreFile.BLOOM_FILTER_PARAM
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.BLOOM_FILTER_TYPE_KEY;
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.DELETE_FAMILY_COUNT;
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.LAST_BLOOM_KEY;
+import static org.apache.hadoop.hbase.regionserver.HStoreFile.ROW_RANGE_FILTER_KEY;
 
 import com.google.errorprone.annotations.RestrictedApi;
 import java.io.DataInput;
@@ -78,6 +79,7 @@ public class StoreFileReader {
   private KeyValue.KeyOnlyKeyValue lastBloomKeyOnlyKV = null;
   private boolean skipResetSeqId = true;
   private int prefixLength = -1;
+  private RowRangeFilter rowRangeFilter = null;
   protected Configuration conf;
 
   /**
@@ -114,6 +116,7 @@ public class StoreFileReader {
     this.lastBloomKeyOnlyKV = storeFileReader.lastBloomKeyOnlyKV;
     this.skipResetSeqId = storeFileReader.skipResetSeqId;
     this.prefixLength = storeFileReader.prefixLength;
+    this.rowRangeFilter = storeFileReader.rowRangeFilter;
   }
 
   public boolean isPrimaryReplicaReader() {
@@ -455,6 +458,16 @@ public class StoreFileReader {
     return !nonOverLapping;
   }
 
+  /**
+   * Checks whether the file may have rows in the rowkey range of the scan, according to its row
+   * range filter, if it has one.
+   * @param scan the scan specification. Used to determine the rowkey range.
+   * @return false if the file has no row in the range, true if it may have some
+   */
+  boolean passesRowRangeFilter(Scan scan) {
+    return rowRangeFilter == null || rowRangeFilter.mayContain(scan);
+  }
+
   public Map<byte[], byte[]> loadFileInfo() throws IOException {
     Map<byte[], byte[]> fi = reader.getHFileInfo();
 
@@ -477,6 +490,15 @@ public class StoreFileReader {
       deleteFamilyCnt = Bytes.toLong(cnt);
     }
 
+    byte[] rowRange = fi.get(ROW_RANGE_FILTER_KEY);
+    if (rowRange != null) {
+      try {
+        rowRangeFilter = RowRangeFilter.parseFrom(rowRange);
+      } catch (IOException e) {
+        LOG.error("Bad row range filter for " + reader.getName() + " -- proceeding without", e);
+      }
+    }
+
     return fi;
   }
 
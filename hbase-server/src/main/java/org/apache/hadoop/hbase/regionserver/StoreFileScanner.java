@@ -27,6 +27,7 @@ import java.util.Optional;
 import java.util.PriorityQueue;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.IntConsumer;
+import java.util.function.Predicate;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.CellComparator;
@@ -35,6 +36,7 @@ import org.apache.hadoop.hbase.HBaseInterfaceAudience;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.PrivateCellUtil;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.BlockStats;
 import org.apache.hadoop.hbase.io.TimeRange;
 import org.apache.hadoop.hbase.io.hfile.HFileScanner;
 import org.apache.hadoop.hbase.regionserver.querymatcher.ScanQueryMatcher;
@@ -475,6 +477,22 @@ public class StoreFileScanner implements KeyValueScanner {
     hfs.recordBlockSize(blockSizeConsumer);
   }
 
+  /**
+   * Read up to the given number of blocks ahead once this scanner moves through the file
+   * sequentially, 0 disables readahead.
+   */
+  void setReadahead(int maxBlocks) {
+    hfs.setReadahead(maxBlocks);
+  }
+
+  /**
+   * Move past the data blocks matching the given filter once this scanner moves through the file
+   * sequentially, null reads every block.
+   */
+  void setDataBlockFilter(Predicate<BlockStats> filter) {
+    hfs.setDataBlockFilter(filter);
+  }
+
   @Override
   public Path getFilePath() {
     return reader.getHFileReader().getPath();
@@ -498,7 +516,7 @@ public class StoreFileScanner implements KeyValueScanner {
       timeRange = scan.getTimeRange();
     }
     return reader.passesTimerangeFilter(timeRange, oldestUnexpiredTS)
-      && reader.passesKeyRangeFilter(scan)
+      && reader.passesKeyRangeFilter(scan) && reader.passesRowRangeFilter(scan)
       && reader.passesBloomFilter(scan, scan.getFamilyMap().get(cf));
   }
 
@@ -27,6 +27,7 @@ import static org.apache.hadoop.hbase.regionserver.HStoreFile.MAJOR_COMPACTION_K
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.MAX_SEQ_ID_KEY;
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.MOB_CELLS_COUNT;
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.MOB_FILE_REFS;
+import static org.apache.hadoop.hbase.regionserver.HStoreFile.ROW_RANGE_FILTER_KEY;
 import static org.apache.hadoop.hbase.regionserver.StoreEngine.STORE_ENGINE_CLASS_KEY;
 
 import java.io.IOException;
@@ -506,6 +507,7 @@ public class StoreFileWriter implements CellSink, ShipperListener {
     private long deleteFamilyCnt = 0;
     private BloomContext bloomContext = null;
     private BloomContext deleteFamilyBloomContext = null;
+    private final RowRangeFilter.Builder rowRangeFilterBuilder;
     private final Supplier<Collection<HStoreFile>> compactedFilesSupplier;
 
     private HFile.Writer writer;
@@ -583,6 +585,8 @@ public class StoreFileWriter implements CellSink, ShipperListener {
         LOG.trace("Delete Family Bloom filter type for " + path + ": "
           + deleteFamilyBloomFilterWriter.getClass().getSimpleName());
       }
+      rowRangeFilterBuilder =
+        RowRangeFilter.isEnabled(conf) ? new RowRangeFilter.Builder(conf) : null;
     }
 
     private long getPos() throws IOException {
@@ -705,6 +709,9 @@ public class StoreFileWriter implements CellSink, ShipperListener {
     private void append(final ExtendedCell cell) throws IOException {
       appendGeneralBloomfilter(cell);
       appendDeleteFamilyBloomFilter(cell);
+      if (rowRangeFilterBuilder != null) {
+        rowRangeFilterBuilder.append(cell);
+      }
       writer.append(cell);
     }
 
@@ -777,6 +784,12 @@ public class StoreFileWriter implements CellSink, ShipperListener {
     private void close() throws IOException {
       boolean hasGeneralBloom = this.closeGeneralBloomFilter();
       boolean hasDeleteFamilyBloom = this.closeDeleteFamilyBloomFilter();
+      if (rowRangeFilterBuilder != null) {
+        byte[] rowRangeFilter = rowRangeFilterBuilder.toBytes();
+        if (rowRangeFilter != null) {
+          writer.appendFileInfo(ROW_RANGE_FILTER_KEY, rowRangeFilter);
+        }
+      }
 
       writer.close();
 
@@ -27,6 +27,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.IntConsumer;
+import java.util.function.Predicate;
 import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.CellComparator;
 import org.apache.hadoop.hbase.CellUtil;
@@ -42,7 +43,11 @@ import org.apache.hadoop.hbase.client.IsolationLevel;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.conf.ConfigKey;
 import org.apache.hadoop.hbase.executor.ExecutorService;
+import org.apache.hadoop.hbase.filter.BlockStats;
 import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.io.TimeRange;
+import org.apache.hadoop.hbase.io.hfile.DataBlockStats;
+import org.apache.hadoop.hbase.io.hfile.HFileReadahead;
 import org.apache.hadoop.hbase.ipc.RpcCall;
 import org.apache.hadoop.hbase.ipc.RpcServer;
 import org.apache.hadoop.hbase.regionserver.ScannerContext.LimitScope;
@@ -51,6 +56,7 @@ import org.apache.hadoop.hbase.regionserver.handler.ParallelSeekHandler;
 import org.apache.hadoop.hbase.regionserver.querymatcher.CompactionScanQueryMatcher;
 import org.apache.hadoop.hbase.regionserver.querymatcher.ScanQueryMatcher;
 import org.apache.hadoop.hbase.regionserver.querymatcher.UserScanQueryMatcher;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.yetus.audience.InterfaceAudience;
 import org.slf4j.Logger;
@@ -150,6 +156,17 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
 
   private final Scan.ReadType readType;
 
+  // Maximum number of blocks the store file scanners read ahead, 0 if disabled.
+  private final int readaheadBlocks;
+
+  // Tells the store file scanners the data blocks to move past, null if none.
+  private final Predicate<BlockStats> dataBlockFilter;
+
+  // Whether to sum the deltas of the counters of the store, and the highest sequence id of the
+  // deltas to sum. Flushes and compactions fold only the deltas all the readers see.
+  private final boolean deltaCounters;
+  private long maxCounterSequenceId = Long.MAX_VALUE;
+
   // A flag whether use pread for scan
   // it maybe changed if we use Scan.ReadType.DEFAULT and we have read lots of data.
   private boolean scanUsePread;
@@ -219,6 +236,12 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
       // readType is default if the scan keeps running for a long time.
       this.scanUsePread = this.readType != Scan.ReadType.STREAM;
     }
+    this.readaheadBlocks =
+      !get && scanType == ScanType.USER_SCAN && store != null ? getReadaheadBlocks(store, scan) : 0;
+    this.dataBlockFilter = !get && scanType == ScanType.USER_SCAN && !scan.isRaw()
+      ? createDataBlockFilter(scan, scanInfo)
+      : null;
+    this.deltaCounters = scanInfo.isDeltaCounters() && !scan.isRaw();
     this.cellsPerHeartbeatCheck = scanInfo.getCellsPerTimeoutCheck();
     // Parallel seeking is on if the config allows and more there is more than one store file.
     if (store != null && store.getStorefilesCount() > 1) {
@@ -230,6 +253,73 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
     }
   }
 
+  /**
+   * Returns the maximum number of blocks to read ahead, the scan attribute taking precedence over
+   * the store configuration, which includes the column family settings.
+   */
+  private static int getReadaheadBlocks(HStore store, Scan scan) {
+    byte[] attr = scan.getAttribute(HFileReadahead.MAX_BLOCKS_KEY);
+    if (attr != null && attr.length == Bytes.SIZEOF_INT) {
+      return Bytes.toInt(attr);
+    }
+    return store.getReadOnlyConfiguration().getInt(HFileReadahead.MAX_BLOCKS_KEY,
+      HFileReadahead.DEFAULT_MAX_BLOCKS);
+  }
+
+  private void setReadahead(List<? extends KeyValueScanner> scanners) {
+    if (readaheadBlocks <= 0) {
+      return;
+    }
+    for (KeyValueScanner scanner : scanners) {
+      if (scanner instanceof StoreFileScanner) {
+        ((StoreFileScanner) scanner).setReadahead(readaheadBlocks);
+      }
+    }
+  }
+
+  /**
+   * Returns the filter of the data blocks no cell of which can make it into the results, going by
+   * the time range and the filter of the scan, null if there is nothing to filter on.
+   */
+  private static Predicate<BlockStats> createDataBlockFilter(Scan scan, ScanInfo scanInfo) {
+    TimeRange timeRange =
+      scan.getColumnFamilyTimeRange().getOrDefault(scanInfo.getFamily(), scan.getTimeRange());
+    Filter filter = scan.getFilter();
+    if (timeRange.isAllTime() && filter == null) {
+      return null;
+    }
+    // The cells outside of the time range are dropped before counting versions, but not the ones
+    // the filter rejects.
+    boolean allVersions =
+      scan.getMaxVersions() == Integer.MAX_VALUE && scanInfo.getMaxVersions() == Integer.MAX_VALUE;
+    return stats -> {
+      if (
+        stats.getMaxTimestamp() < timeRange.getMin()
+          || stats.getMinTimestamp() >= timeRange.getMax()
+      ) {
+        return true;
+      }
+      try {
+        return filter != null && filter.canSkipBlock(
+          allVersions ? stats : DataBlockStats.withoutVersionStats(stats));
+      } catch (IOException e) {
+        LOG.debug("Failed to check whether {} can skip a data block, reading it", filter, e);
+        return false;
+      }
+    };
+  }
+
+  private void setDataBlockFilter(List<? extends KeyValueScanner> scanners) {
+    if (dataBlockFilter == null) {
+      return;
+    }
+    for (KeyValueScanner scanner : scanners) {
+      if (scanner instanceof StoreFileScanner) {
+        ((StoreFileScanner) scanner).setDataBlockFilter(dataBlockFilter);
+      }
+    }
+  }
+
   private void addCurrentScanners(List<? extends KeyValueScanner> scanners) {
     this.currentScanners.addAll(scanners);
   }
@@ -265,7 +355,9 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
       scanners = selectScannersFrom(store,
         store.getScanners(cacheBlocks, scanUsePread, false, matcher, scan.getStartRow(),
           scan.includeStartRow(), scan.getStopRow(), scan.includeStopRow(), this.readPt,
-          isOnlyLatestVersionScan(scan)));
+          !deltaCounters && isOnlyLatestVersionScan(scan)));
+      setReadahead(scanners);
+      setDataBlockFilter(scanners);
 
       // Seek all scanners to the start of the Row (or if the exact matching row
       // key does not exist, then to the start of the next matching Row).
@@ -330,6 +422,7 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
     this(store, SCAN_FOR_COMPACTION, scanInfo, 0,
       store.getHRegion().getReadPoint(IsolationLevel.READ_COMMITTED), false, scanType);
     assert scanType != ScanType.USER_SCAN;
+    this.maxCounterSequenceId = smallestReadPoint;
     matcher =
       CompactionScanQueryMatcher.create(scanInfo, scanType, smallestReadPoint, earliestPutTs,
         oldestUnexpiredTS, now, dropDeletesFromRow, dropDeletesToRow, store.getCoprocessorHost());
@@ -669,6 +762,15 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
                 }
               }
             }
+            boolean summed = false;
+            if (
+              deltaCounters && qcode == ScanQueryMatcher.MatchCode.INCLUDE && isCounterDelta(cell)
+            ) {
+              // Moves the heap past the deltas of the counter.
+              onlyFromMemstore = onlyFromMemstore && heap.isLatestCellFromMemstore();
+              cell = sumCounterDeltas(cell);
+              summed = true;
+            }
             this.countPerRow++;
 
             // add to results only if we have skipped #storeOffset kvs
@@ -684,7 +786,7 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
                * Increment the metric if all the cells are from memstore. If not we will account it
                * for mixed reads
                */
-              onlyFromMemstore = onlyFromMemstore && heap.isLatestCellFromMemstore();
+              onlyFromMemstore = onlyFromMemstore && (summed || heap.isLatestCellFromMemstore());
               // Update the progress of the scanner context
               scannerContext.incrementSizeProgress(cellSize, cell.heapSize());
               scannerContext.incrementBatchProgress(1);
@@ -720,7 +822,7 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
               seekOrSkipToNextRow(cell);
             } else if (qcode == ScanQueryMatcher.MatchCode.INCLUDE_AND_SEEK_NEXT_COL) {
               seekOrSkipToNextColumn(cell);
-            } else {
+            } else if (!summed) {
               this.heap.next();
             }
 
@@ -859,6 +961,54 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
     seekToNextRow(cell);
   }
 
+  private boolean isCounterDelta(ExtendedCell cell) {
+    return cell.getTypeByte() == KeyValue.Type.Put.getCode()
+      && cell.getValueLength() == Bytes.SIZEOF_LONG && cell.getSequenceId() <= maxCounterSequenceId;
+  }
+
+  /**
+   * Sums the given delta of a counter with the following ones the matcher includes, moving the heap
+   * past them. The sum keeps the key and the tags of the latest delta.
+   */
+  private ExtendedCell sumCounterDeltas(ExtendedCell cell) throws IOException {
+    long sum = PrivateCellUtil.getValueAsLong(cell);
+    boolean summed = false;
+    this.heap.next();
+    LOOP: for (ExtendedCell next; (next = this.heap.peek()) != null
+      && CellUtil.matchingRowColumn(cell, next) && isCounterDelta(next);) {
+      switch (matcher.match(next)) {
+        case INCLUDE:
+          sum += PrivateCellUtil.getValueAsLong(next);
+          summed = true;
+          this.heap.next();
+          break;
+        case SKIP:
+          this.heap.next();
+          break;
+        case INCLUDE_AND_SEEK_NEXT_COL:
+        case INCLUDE_AND_SEEK_NEXT_ROW:
+          sum += PrivateCellUtil.getValueAsLong(next);
+          summed = true;
+          seekOrSkipToNextColumn(next);
+          break LOOP;
+        case SEEK_NEXT_COL:
+          seekOrSkipToNextColumn(next);
+          break LOOP;
+        default:
+          // Left for the matcher to move to the next row or to stop.
+          break LOOP;
+      }
+    }
+    if (!summed) {
+      return cell;
+    }
+    KeyValue sumCell = new KeyValue(CellUtil.cloneRow(cell), CellUtil.cloneFamily(cell),
+      CellUtil.cloneQualifier(cell), cell.getTimestamp(), KeyValue.Type.Put, Bytes.toBytes(sum),
+      PrivateCellUtil.getTags(cell));
+    sumCell.setSequenceId(cell.getSequenceId());
+    return sumCell;
+  }
+
   private void seekOrSkipToNextColumn(ExtendedCell cell) throws IOException {
     if (!trySkipToNextColumn(cell)) {
       seekAsDirection(matcher.getKeyForNextColumn(cell));
@@ -1027,7 +1177,10 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
       // penalty because in scans (that uses stream scanners) the next() call is bound to happen.
       List<KeyValueScanner> scanners =
         store.getScanners(sfs, cacheBlocks, get, usePread, isCompaction, matcher,
-          scan.getStartRow(), scan.getStopRow(), this.readPt, false, isOnlyLatestVersionScan(scan));
+          scan.getStartRow(), scan.getStopRow(), this.readPt, false,
+          !deltaCounters && isOnlyLatestVersionScan(scan));
+      setReadahead(scanners);
+      setDataBlockFilter(scanners);
       flushedstoreFileScanners.addAll(scanners);
       if (!CollectionUtils.isEmpty(memStoreScanners)) {
         clearAndClose(memStoreScannersAfterFlush);
@@ -1174,6 +1327,8 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
       if (fileScanners == null) {
         return;
       }
+      setReadahead(fileScanners);
+      setDataBlockFilter(fileScanners);
       seekScanners(fileScanners, lastTop, false, parallelSeekEnabled);
       newCurrentScanners = new ArrayList<>(fileScanners.size() + memstoreScanners.size());
       newCurrentScanners.addAll(fileScanners);
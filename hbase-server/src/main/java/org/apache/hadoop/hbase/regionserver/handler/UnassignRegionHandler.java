@@ -29,6 +29,7 @@ import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.ServerName;
 import org.apache.hadoop.hbase.executor.EventHandler;
 import org.apache.hadoop.hbase.executor.EventType;
+import org.apache.hadoop.hbase.io.hfile.PrefetchExecutor;
 import org.apache.hadoop.hbase.regionserver.HRegion;
 import org.apache.hadoop.hbase.regionserver.HRegionServer;
 import org.apache.hadoop.hbase.regionserver.Region;
@@ -120,6 +121,8 @@ public class UnassignRegionHandler extends EventHandler {
     }
     String regionName = region.getRegionInfo().getEncodedName();
     LOG.info("Close {}", regionName);
+    // No need to keep reading blocks for a region about to close.
+    PrefetchExecutor.cancelRegion(regionName);
     if (region.getCoprocessorHost() != null) {
       // XXX: The behavior is a bit broken. At master side there is no FAILED_CLOSE state, so if
       // there are exception thrown from the CP, we can not report the error to master, and if
@@ -136,6 +139,11 @@ public class UnassignRegionHandler extends EventHandler {
     LOG.debug("Unassign region: split region: {}: evictCache: {}", isSplit, evictCacheOnClose);
     region.getStores().forEach(s -> s.getCacheConfig().setEvictOnClose(evictCacheOnClose));
 
+    // Warm up the cache of the destination of a move while the region is still online here.
+    if (destination != null && !isSplit) {
+      rs.getBlockCacheTransfer().transfer(region, destination);
+    }
+
     if (region.close(abort) == null) {
       // XXX: Is this still possible? The old comment says about split, but now split is done at
       // master side, so...
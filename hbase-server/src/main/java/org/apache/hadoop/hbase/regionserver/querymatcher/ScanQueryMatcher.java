@@ -361,6 +361,10 @@ public abstract class ScanQueryMatcher implements ShipperListener {
       if (userScan.isRaw()) {
         resultMaxVersion = userScan.getMaxVersions();
         maxVersionToCheck = userScan.hasFilter() ? Integer.MAX_VALUE : resultMaxVersion;
+      } else if (scanInfo.isDeltaCounters()) {
+        // All the deltas of a counter are read, to be summed by the store scanner.
+        resultMaxVersion = scanInfo.getMaxVersions();
+        maxVersionToCheck = resultMaxVersion;
       } else {
         resultMaxVersion = Math.min(userScan.getMaxVersions(), scanInfo.getMaxVersions());
         maxVersionToCheck = userScan.hasFilter() ? scanInfo.getMaxVersions() : resultMaxVersion;
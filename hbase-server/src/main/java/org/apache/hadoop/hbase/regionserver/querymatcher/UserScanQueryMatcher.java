@@ -75,8 +75,8 @@ public abstract class UserScanQueryMatcher extends ScanQueryMatcher {
     this.hasNullColumn = hasNullColumn;
     this.filter = scan.getFilter();
     if (this.filter != null) {
-      this.versionsAfterFilter = scan.isRaw()
-        ? scan.getMaxVersions()
+      this.versionsAfterFilter = scan.isRaw() ? scan.getMaxVersions()
+        : scanInfo.isDeltaCounters() ? scanInfo.getMaxVersions()
         : Math.min(scan.getMaxVersions(), scanInfo.getMaxVersions());
     } else {
       this.versionsAfterFilter = 0;
@@ -61,6 +61,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -433,6 +434,17 @@ public abstract class AbstractFSWAL<W extends WriterBase> implements WAL {
 
   private final long batchSize;
 
+  // decides the batch size and the waits before a sync, null if the group commit is disabled
+  private final GroupCommitController groupCommit;
+
+  // the timer scheduling the consumer at the end of the wait before a sync, and when it fires, only
+  // accessed by the consumer
+  private ScheduledFuture<?> syncDelayTimer;
+  private long syncDelayTimerDeadlineNs;
+
+  // builds the dictionaries the values are compressed with in the next files, null if disabled
+  protected final WALValueDictionaryTrainer valueDictionaryTrainer;
+
   protected final Deque<FSWALEntry> toWriteAppends = new ArrayDeque<>();
 
   protected final Deque<FSWALEntry> unackedAppends = new ArrayDeque<>();
@@ -643,6 +655,8 @@ public abstract class AbstractFSWAL<W extends WriterBase> implements WAL {
     waitingConsumePayloadsGatingSequence.set(waitingConsumePayloads.getCursor());
 
     batchSize = conf.getLong(WAL_BATCH_SIZE, DEFAULT_WAL_BATCH_SIZE);
+    groupCommit = GroupCommitController.create(conf, batchSize);
+    valueDictionaryTrainer = WALValueDictionaryTrainer.create(conf);
   }
 
   /**
@@ -688,6 +702,11 @@ public abstract class AbstractFSWAL<W extends WriterBase> implements WAL {
     this.sequenceIdAccounting.abortCacheFlush(encodedRegionName);
   }
 
+  @Override
+  public void regionMovedOut(byte[] encodedRegionName) {
+    this.sequenceIdAccounting.onRegionMovedOut(encodedRegionName);
+  }
+
   @Override
   public long getEarliestMemStoreSeqNum(byte[] encodedRegionName, byte[] familyName) {
     // This method is used by tests and for figuring if we should flush or not because our
@@ -1093,6 +1112,10 @@ public abstract class AbstractFSWAL<W extends WriterBase> implements WAL {
       try {
         Path oldPath = getOldPath();
         Path newPath = getNewPath();
+        if (valueDictionaryTrainer != null) {
+          // the new file compresses the values with dictionaries built from the old ones
+          valueDictionaryTrainer.build();
+        }
         // Any exception from here on is catastrophic, non-recoverable, so we currently abort.
         W nextWriter = this.createWriterInstance(fs, newPath);
         if (remoteFs != null) {
@@ -1329,6 +1352,9 @@ public abstract class AbstractFSWAL<W extends WriterBase> implements WAL {
       }
     }
     doAppend(writer, entry);
+    if (valueDictionaryTrainer != null) {
+      valueDictionaryTrainer.sample(entry.getKey().getTableName(), entry.getEdit());
+    }
     assert highestUnsyncedTxid < entry.getTxid();
     highestUnsyncedTxid = entry.getTxid();
     if (entry.isCloseRegion()) {
@@ -1580,7 +1606,11 @@ public abstract class AbstractFSWAL<W extends WriterBase> implements WAL {
         break;
       }
     }
-    postSync(System.nanoTime() - startTimeNs, finishSync());
+    long timeInNanos = System.nanoTime() - startTimeNs;
+    if (groupCommit != null) {
+      groupCommit.syncCompleted(timeInNanos);
+    }
+    postSync(timeInNanos, finishSync());
     /**
      * This method is used to be compatible with the original logic of {@link FSHLog}.
      */
@@ -1617,6 +1647,12 @@ public abstract class AbstractFSWAL<W extends WriterBase> implements WAL {
   }
 
   private void sync(W writer) {
+    if (groupCommit != null) {
+      long waitedNs = groupCommit.syncIssued(System.nanoTime());
+      for (WALActionsListener listener : listeners) {
+        listener.preSync(waitedNs);
+      }
+    }
     fileLengthAtLastSync = writer.getLength();
     long currentHighestProcessedAppendTxid = highestProcessedAppendTxid;
     boolean shouldUseHsync =
@@ -1741,7 +1777,7 @@ public abstract class AbstractFSWAL<W extends WriterBase> implements WAL {
         // it will break the assumption and then (may) lead to a big refactoring. So here let's use
         // this way to fix first, can optimize later.
         if (
-          writer.getLength() - fileLengthAtLastSync >= batchSize
+          writer.getLength() - fileLengthAtLastSync >= getBatchSize()
             && (addedToUnackedAppends || entry.getTxid() >= getLastTxid(unackedAppends))
         ) {
           break;
@@ -1756,7 +1792,7 @@ public abstract class AbstractFSWAL<W extends WriterBase> implements WAL {
       newHighestProcessedAppendTxid = highestProcessedAppendTxid;
     }
 
-    if (writer.getLength() - fileLengthAtLastSync >= batchSize) {
+    if (writer.getLength() - fileLengthAtLastSync >= getBatchSize()) {
       // sync because buffer size limit.
       sync(writer);
       return;
@@ -1812,6 +1848,9 @@ public abstract class AbstractFSWAL<W extends WriterBase> implements WAL {
           break;
         case SYNC:
           syncFutures.add(truck.unloadSync());
+          if (groupCommit != null) {
+            groupCommit.syncRequested(System.nanoTime());
+          }
           break;
         default:
           LOG.warn("RingBufferTruck with unexpected type: " + truck.type());
@@ -1856,7 +1895,19 @@ public abstract class AbstractFSWAL<W extends WriterBase> implements WAL {
               && syncFutures.last().getTxid() > highestProcessedAppendTxidAtLastSync
           ) {
             // no new data in the ringbuffer and we have at least one sync request
-            sync(writer);
+            long nowNs = System.nanoTime();
+            long delayNs = groupCommit != null ? groupCommit.getSyncDelayNs(nowNs) : 0;
+            if (delayNs > 0) {
+              // wait for more sync requests to group them in the sync, a new entry or the
+              // expiration of the wait will schedule the consumer again.
+              scheduleConsumeAfterSyncDelay(nowNs + delayNs);
+            } else {
+              if (syncDelayTimer != null) {
+                syncDelayTimer.cancel(false);
+                syncDelayTimer = null;
+              }
+              sync(writer);
+            }
           }
           return;
         } else {
@@ -1871,6 +1922,30 @@ public abstract class AbstractFSWAL<W extends WriterBase> implements WAL {
     consumeExecutor.execute(consumer);
   }
 
+  // keeps at most one timer pending, the consumer runs again during a wait when new entries arrive
+  private void scheduleConsumeAfterSyncDelay(long deadlineNs) {
+    if (syncDelayTimer != null && !syncDelayTimer.isDone()) {
+      if (deadlineNs - syncDelayTimerDeadlineNs >= 0) {
+        return;
+      }
+      // the wait got shorter
+      syncDelayTimer.cancel(false);
+    }
+    syncDelayTimer = GroupCommitController.schedule(this::consumeAfterSyncDelay,
+      deadlineNs - System.nanoTime());
+    syncDelayTimerDeadlineNs = deadlineNs;
+  }
+
+  private void consumeAfterSyncDelay() {
+    if (shouldScheduleConsumer()) {
+      consumeExecutor.execute(consumer);
+    }
+  }
+
+  private long getBatchSize() {
+    return groupCommit != null ? groupCommit.getBatchSize() : batchSize;
+  }
+
   private boolean shouldScheduleConsumer() {
     int currentEpochAndState = epochAndState;
     if (writerBroken(currentEpochAndState) || waitingRoll(currentEpochAndState)) {
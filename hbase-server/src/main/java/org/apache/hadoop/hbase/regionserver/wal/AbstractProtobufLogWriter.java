@@ -27,11 +27,13 @@ import static org.apache.hadoop.hbase.regionserver.wal.AbstractProtobufWALReader
 import java.io.IOException;
 import java.io.OutputStream;
 import java.security.Key;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.codec.Codec;
 import org.apache.hadoop.hbase.io.asyncfs.monitor.StreamSlowMonitor;
 import org.apache.hadoop.hbase.io.compress.Compression;
@@ -52,6 +54,7 @@ import org.apache.hbase.thirdparty.com.google.protobuf.UnsafeByteOperations;
 
 import org.apache.hadoop.hbase.shaded.protobuf.generated.WALProtos.WALHeader;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.WALProtos.WALTrailer;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.WALProtos.WALValueCompressionDictionary;
 
 /**
  * Base class for Protobuf log writer.
@@ -71,6 +74,8 @@ public abstract class AbstractProtobufLogWriter {
   // maximum size of the wal Trailer in bytes. If a user writes/reads a trailer with size larger
   // than this size, it is written/read respectively, with a WARN message in the log.
   protected int trailerWarnSize;
+  // builds the dictionaries the values are compressed with, if any
+  private WALValueDictionaryTrainer valueDictionaryTrainer;
 
   protected AtomicLong length = new AtomicLong();
 
@@ -180,7 +185,11 @@ public abstract class AbstractProtobufLogWriter {
         headerBuilder.setValueCompressionAlgorithm(
           CompressionContext.getValueCompressionAlgorithm(conf).ordinal());
       }
-      if (conf.getBoolean(HConstants.ENABLE_WAL_ENCRYPTION, false)) {
+      boolean doEncrypt = conf.getBoolean(HConstants.ENABLE_WAL_ENCRYPTION, false);
+      if (doValueCompress && !doEncrypt && valueDictionaryTrainer != null) {
+        setValueCompressionDictionaries(headerBuilder, valueDictionaryTrainer.getDictionaries());
+      }
+      if (doEncrypt) {
         length.set(writeMagicAndWALHeader(PB_WAL_MAGIC, buildSecureWALHeader(conf, headerBuilder)));
         secureInitAfterHeader(doCompress, encryptor);
       } else {
@@ -202,6 +211,23 @@ public abstract class AbstractProtobufLogWriter {
     }
   }
 
+  /**
+   * Sets the dictionaries which will be used for compressing the values of their tables. They are
+   * written in the header, before any entry, so that the readers of the WAL have them.
+   */
+  private void setValueCompressionDictionaries(WALHeader.Builder headerBuilder,
+    Map<TableName, byte[]> dictionaries) {
+    if (dictionaries.isEmpty()) {
+      return;
+    }
+    for (Map.Entry<TableName, byte[]> entry : dictionaries.entrySet()) {
+      headerBuilder.addValueCompressionDictionaries(WALValueCompressionDictionary.newBuilder()
+        .setTableName(UnsafeByteOperations.unsafeWrap(entry.getKey().getName()))
+        .setDictionary(UnsafeByteOperations.unsafeWrap(entry.getValue())));
+    }
+    compressionContext.setValueCompressionDictionaries(dictionaries);
+  }
+
   private void initAfterHeader(boolean doCompress) throws IOException {
     WALCellCodec codec = getCodec(conf, this.compressionContext);
     this.cellEncoder = codec.getEncoder(getOutputStreamForCellEncoder());
@@ -224,6 +250,21 @@ public abstract class AbstractProtobufLogWriter {
     }
   }
 
+  /**
+   * Sets the trainer of the dictionaries to compress the values with. Must be called before
+   * {@link #init(FileSystem, Path, Configuration, boolean, long, StreamSlowMonitor)}.
+   */
+  public void setValueDictionaryTrainer(WALValueDictionaryTrainer valueDictionaryTrainer) {
+    this.valueDictionaryTrainer = valueDictionaryTrainer;
+  }
+
+  /** Selects the value compressor for the cells of the entry of the given table to append */
+  protected final void selectValueCompressor(TableName tableName) {
+    if (compressionContext != null) {
+      compressionContext.selectValueCompressor(tableName);
+    }
+  }
+
   void setWALTrailer(WALTrailer walTrailer) {
     this.trailer = walTrailer;
   }
@@ -26,7 +26,9 @@ import java.nio.ByteBuffer;
 import java.security.Key;
 import java.security.KeyException;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
@@ -34,6 +36,7 @@ import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.codec.Codec;
 import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.io.crypto.Cipher;
@@ -59,6 +62,7 @@ import org.apache.hbase.thirdparty.com.google.protobuf.InvalidProtocolBufferExce
 import org.apache.hadoop.hbase.shaded.protobuf.ProtobufUtil;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.WALProtos;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.WALProtos.WALTrailer;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.WALProtos.WALValueCompressionDictionary;
 
 /**
  * Base class for reading protobuf based wal reader
@@ -331,6 +335,17 @@ public abstract class AbstractProtobufWALReader
     } catch (Exception e) {
       throw new IOException("Failed to initialize CompressionContext", e);
     }
+    if (hasValueCompression && header.getValueCompressionDictionariesCount() > 0) {
+      Map<TableName, byte[]> dictionaries = new HashMap<>();
+      for (WALValueCompressionDictionary dictionary : header
+        .getValueCompressionDictionariesList()) {
+        dictionaries.put(TableName.valueOf(dictionary.getTableName().toByteArray()),
+          dictionary.getDictionary().toByteArray());
+      }
+      LOG.debug("Loaded value compression dictionaries of tables {} for {}", dictionaries.keySet(),
+        path);
+      compressionCtx.setValueCompressionDictionaries(dictionaries);
+    }
   }
 
   private WALCellCodec getCodec(Configuration conf, String cellCodecClsName,
@@ -138,6 +138,7 @@ public class AsyncProtobufLogWriter extends AbstractProtobufLogWriter
     } catch (IOException e) {
       throw new AssertionError("should not happen", e);
     }
+    selectValueCompressor(entry.getKey().getTableName());
     try {
       for (Cell cell : entry.getEdit().getCells()) {
         cellEncoder.write((ExtendedCell) cell);
@@ -24,11 +24,14 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.Map;
 import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HBaseInterfaceAudience;
+import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.io.TagCompressionContext;
 import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.io.util.Dictionary;
@@ -75,6 +78,8 @@ public class CompressionContext {
     static final int IO_BUFFER_SIZE = 64 * 1024; // bigger buffer improves large edit compress ratio
 
     private final Compression.Algorithm algorithm;
+    // The dictionary to prime the compression with, if any.
+    private final byte[] dictionary;
     private Compressor compressor;
     private Decompressor decompressor;
     private WALDecompressionBoundedDelegatingInputStream lowerIn;
@@ -83,7 +88,12 @@ public class CompressionContext {
     private OutputStream compressedOut;
 
     public ValueCompressor(Compression.Algorithm algorithm) {
+      this(algorithm, null);
+    }
+
+    public ValueCompressor(Compression.Algorithm algorithm, byte[] dictionary) {
       this.algorithm = algorithm;
+      this.dictionary = dictionary;
     }
 
     public Compression.Algorithm getAlgorithm() {
@@ -96,6 +106,13 @@ public class CompressionContext {
         lowerOut = new ByteArrayOutputStream();
         if (compressor == null) {
           compressor = algorithm.getCompressor();
+          if (dictionary != null) {
+            try {
+              compressor.setDictionary(dictionary, 0, dictionary.length);
+            } catch (UnsupportedOperationException e) {
+              throw new IOException(algorithm + " does not support dictionaries", e);
+            }
+          }
         }
         compressedOut = algorithm.createCompressionStream(lowerOut, compressor, IO_BUFFER_SIZE);
       }
@@ -117,6 +134,13 @@ public class CompressionContext {
         lowerIn = new WALDecompressionBoundedDelegatingInputStream();
         if (decompressor == null) {
           decompressor = algorithm.getDecompressor();
+          if (dictionary != null) {
+            try {
+              decompressor.setDictionary(dictionary, 0, dictionary.length);
+            } catch (UnsupportedOperationException e) {
+              throw new IOException(algorithm + " does not support dictionaries", e);
+            }
+          }
         }
         compressedIn = algorithm.createDecompressionStream(lowerIn, decompressor, IO_BUFFER_SIZE);
       }
@@ -200,6 +224,10 @@ public class CompressionContext {
   // Context used for compressing tags
   TagCompressionContext tagCompressionContext = null;
   ValueCompressor valueCompressor = null;
+  // The value compressors of the tables whose values are compressed with a dictionary, and the one
+  // of the table of the entry being written or read.
+  private Map<TableName, ValueCompressor> tableValueCompressors = Collections.emptyMap();
+  private ValueCompressor currentValueCompressor = null;
 
   public CompressionContext(Class<? extends Dictionary> dictType, boolean recoveredEdits,
     boolean hasTagCompression, boolean hasValueCompression,
@@ -227,6 +255,7 @@ public class CompressionContext {
     }
     if (hasValueCompression && valueCompressionType != null) {
       valueCompressor = new ValueCompressor(valueCompressionType);
+      currentValueCompressor = valueCompressor;
     }
   }
 
@@ -249,7 +278,29 @@ public class CompressionContext {
   }
 
   public ValueCompressor getValueCompressor() {
-    return valueCompressor;
+    return currentValueCompressor;
+  }
+
+  /**
+   * Sets the dictionaries the values of the given tables are compressed with, the values of the
+   * other tables being compressed without.
+   */
+  void setValueCompressionDictionaries(Map<TableName, byte[]> dictionaries) {
+    if (valueCompressor == null) {
+      throw new IllegalStateException("Value compression is not enabled");
+    }
+    Map<TableName, ValueCompressor> compressors = new HashMap<>();
+    dictionaries.forEach((tableName, dictionary) -> compressors.put(tableName,
+      new ValueCompressor(valueCompressor.getAlgorithm(), dictionary)));
+    tableValueCompressors = compressors;
+    currentValueCompressor = valueCompressor;
+  }
+
+  /** Selects the value compressor for the cells of the entry of the given table written or read */
+  void selectValueCompressor(TableName tableName) {
+    if (!tableValueCompressors.isEmpty()) {
+      currentValueCompressor = tableValueCompressors.getOrDefault(tableName, valueCompressor);
+    }
   }
 
   void clear() {
@@ -262,6 +313,9 @@ public class CompressionContext {
     if (valueCompressor != null) {
       valueCompressor.clear();
     }
+    for (ValueCompressor tableValueCompressor : tableValueCompressors.values()) {
+      tableValueCompressor.clear();
+    }
   }
 
   public static Compression.Algorithm getValueCompressionAlgorithm(Configuration conf) {
@@ -256,7 +256,8 @@ public class FSHLog extends AbstractFSWAL<Writer> {
    */
   @Override
   protected Writer createWriterInstance(FileSystem fs, Path path) throws IOException {
-    Writer writer = FSHLogProvider.createWriter(conf, fs, path, false, this.blocksize);
+    Writer writer = FSHLogProvider.createWriter(conf, fs, path, false, this.blocksize,
+      valueDictionaryTrainer);
     if (writer instanceof ProtobufLogWriter) {
       preemptiveSync((ProtobufLogWriter) writer);
     }
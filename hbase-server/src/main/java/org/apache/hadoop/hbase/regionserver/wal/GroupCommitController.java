@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.wal;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.yetus.audience.InterfaceAudience;
+
+import org.apache.hbase.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Decides when the consumer of a WAL syncs, from the observed sync latency and the arrival rate of
+ * the sync requests. Without it, the consumer syncs once {@link AbstractFSWAL#WAL_BATCH_SIZE}
+ * bytes are appended, or as soon as nothing is left to append and a sync is requested.
+ * <p>
+ * With a target p99 sync latency, the batch size shrinks while the observed p99 exceeds the target
+ * and grows back to the configured one otherwise, and the consumer waits a little before a sync
+ * when another sync request is expected within the latency left under the target, until that
+ * request arrives. With a maximum
+ * number of syncs per second, the consumer waits until the minimum interval since the last sync
+ * has elapsed. The waits for the latency target never exceed {@link #MAX_WAIT_US_KEY}.
+ * <p>
+ * Only accessed by the consumer of the WAL, not thread safe.
+ */
+@InterfaceAudience.Private
+class GroupCommitController {
+
+  /** The target p99 sync latency in milliseconds, 0 for none. */
+  static final String TARGET_SYNC_LATENCY_MS_KEY = "hbase.wal.group.commit.target.sync.latency.ms";
+  static final long DEFAULT_TARGET_SYNC_LATENCY_MS = 0;
+
+  /** The maximum number of syncs per second, 0 for no limit. */
+  static final String MAX_SYNCS_PER_SECOND_KEY = "hbase.wal.group.commit.max.syncs.per.second";
+  static final int DEFAULT_MAX_SYNCS_PER_SECOND = 0;
+
+  /** The maximum time to wait for more sync requests before a sync, in microseconds. */
+  static final String MAX_WAIT_US_KEY = "hbase.wal.group.commit.max.wait.us";
+  static final long DEFAULT_MAX_WAIT_US = 2000;
+
+  static final long MIN_BATCH_SIZE = 4L * 1024;
+
+  // The number of sync latencies the p99 is computed from, and how often it is recomputed.
+  private static final int LATENCY_SAMPLES = 128;
+  private static final int LATENCY_UPDATE_INTERVAL = 16;
+
+  // The weight of a new sample in the mean time between sync requests.
+  private static final double ARRIVAL_WEIGHT = 0.125;
+
+  // Shared by all the WALs, only created if one of them enables the group commit.
+  private static final class TimerHolder {
+    private static final ScheduledExecutorService TIMER =
+      Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+        .setNameFormat("WAL-Group-Commit-Timer").build());
+  }
+
+  private final long targetLatencyNs;
+  private final long minSyncIntervalNs;
+  private final long maxWaitNs;
+  private final long maxBatchSize;
+  private final long minBatchSize;
+
+  private long batchSize;
+
+  private final long[] latencies = new long[LATENCY_SAMPLES];
+  private long latencyCount;
+  private long p99LatencyNs;
+
+  private long lastRequestNs;
+  private double meanRequestIntervalNs = -1;
+
+  private long lastSyncNs;
+  private boolean syncedOnce;
+
+  // The deadline of the wait in progress before a sync, if waiting, and the part of it due to the
+  // maximum number of syncs per second, which a new sync request does not end.
+  private boolean waiting;
+  private long waitStartNs;
+  private long waitDeadlineNs;
+  private long rateLimitDeadlineNs;
+
+  GroupCommitController(long targetLatencyMs, int maxSyncsPerSecond, long maxWaitUs,
+    long batchSize) {
+    this.targetLatencyNs = TimeUnit.MILLISECONDS.toNanos(targetLatencyMs);
+    this.minSyncIntervalNs =
+      maxSyncsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / maxSyncsPerSecond : 0;
+    this.maxWaitNs = TimeUnit.MICROSECONDS.toNanos(maxWaitUs);
+    this.maxBatchSize = batchSize;
+    this.minBatchSize = Math.min(MIN_BATCH_SIZE, batchSize);
+    this.batchSize = batchSize;
+  }
+
+  /** Returns a controller for the given configuration, null if the group commit is disabled */
+  static GroupCommitController create(Configuration conf, long batchSize) {
+    long targetLatencyMs = conf.getLong(TARGET_SYNC_LATENCY_MS_KEY, DEFAULT_TARGET_SYNC_LATENCY_MS);
+    int maxSyncsPerSecond = conf.getInt(MAX_SYNCS_PER_SECOND_KEY, DEFAULT_MAX_SYNCS_PER_SECOND);
+    if (targetLatencyMs <= 0 && maxSyncsPerSecond <= 0) {
+      return null;
+    }
+    return new GroupCommitController(targetLatencyMs, maxSyncsPerSecond,
+      conf.getLong(MAX_WAIT_US_KEY, DEFAULT_MAX_WAIT_US), batchSize);
+  }
+
+  /** Returns the size of the unsynced data to sync at, without waiting for more sync requests */
+  long getBatchSize() {
+    return batchSize;
+  }
+
+  long getP99LatencyNs() {
+    return p99LatencyNs;
+  }
+
+  /** Records a sync request consumed at the given time */
+  void syncRequested(long nowNs) {
+    if (lastRequestNs != 0) {
+      long interval = nowNs - lastRequestNs;
+      meanRequestIntervalNs = meanRequestIntervalNs < 0
+        ? interval
+        : meanRequestIntervalNs + ARRIVAL_WEIGHT * (interval - meanRequestIntervalNs);
+    }
+    lastRequestNs = nowNs;
+  }
+
+  /**
+   * Returns how long to wait for more sync requests before syncing, 0 to sync now. Once a wait is
+   * decided, returns what is left of it until the next sync, which is only what the maximum number
+   * of syncs per second requires once a new sync request arrived.
+   */
+  long getSyncDelayNs(long nowNs) {
+    if (waiting) {
+      long deadlineNs = lastRequestNs - waitStartNs > 0 ? rateLimitDeadlineNs : waitDeadlineNs;
+      return Math.max(0, deadlineNs - nowNs);
+    }
+    long delayNs = 0;
+    if (targetLatencyNs > 0 && meanRequestIntervalNs >= 0) {
+      // Wait for the next sync request if it is expected before the latency slack runs out.
+      long slackNs = Math.min(maxWaitNs, targetLatencyNs - p99LatencyNs);
+      if (meanRequestIntervalNs <= slackNs) {
+        delayNs = (long) meanRequestIntervalNs;
+      }
+    }
+    long rateLimitDelayNs =
+      minSyncIntervalNs > 0 && syncedOnce ? lastSyncNs + minSyncIntervalNs - nowNs : 0;
+    delayNs = Math.max(delayNs, rateLimitDelayNs);
+    if (delayNs <= 0) {
+      return 0;
+    }
+    waiting = true;
+    waitStartNs = nowNs;
+    waitDeadlineNs = nowNs + delayNs;
+    rateLimitDeadlineNs = nowNs + rateLimitDelayNs;
+    return delayNs;
+  }
+
+  /** Records a sync issued at the given time, and returns how long it waited for */
+  long syncIssued(long nowNs) {
+    long waitedNs = waiting ? nowNs - waitStartNs : 0;
+    waiting = false;
+    lastSyncNs = nowNs;
+    syncedOnce = true;
+    return waitedNs;
+  }
+
+  /** Records the latency of a completed sync, and adapts the batch size to it */
+  void syncCompleted(long latencyNs) {
+    latencies[(int) (latencyCount++ % LATENCY_SAMPLES)] = latencyNs;
+    if (latencyCount % LATENCY_UPDATE_INTERVAL != 0) {
+      return;
+    }
+    long[] sorted = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCY_SAMPLES));
+    Arrays.sort(sorted);
+    p99LatencyNs = sorted[(int) Math.ceil(sorted.length * 0.99) - 1];
+    if (targetLatencyNs > 0) {
+      if (p99LatencyNs > targetLatencyNs) {
+        batchSize = Math.max(minBatchSize, batchSize / 2);
+      } else {
+        batchSize = Math.min(maxBatchSize, batchSize + maxBatchSize / 16);
+      }
+    }
+  }
+
+  /** Runs the given task after the given delay */
+  static ScheduledFuture<?> schedule(Runnable task, long delayNs) {
+    return TimerHolder.TIMER.schedule(task, delayNs, TimeUnit.NANOSECONDS);
+  }
+}
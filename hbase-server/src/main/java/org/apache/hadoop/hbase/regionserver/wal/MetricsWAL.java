@@ -49,6 +49,12 @@ public class MetricsWAL implements WALActionsListener {
   @Override
   public void postSync(final long timeInNanos, final int handlerSyncs) {
     source.incrementSyncTime(timeInNanos / 1000000L);
+    source.incrementSyncBatchSize(handlerSyncs);
+  }
+
+  @Override
+  public void preSync(final long timeInNanos) {
+    source.incrementSyncWaitTime(timeInNanos / 1000L);
   }
 
   @Override
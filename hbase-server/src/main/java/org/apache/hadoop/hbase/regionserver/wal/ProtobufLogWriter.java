@@ -57,6 +57,7 @@ public class ProtobufLogWriter extends AbstractProtobufLogWriter implements FSHL
   public void append(Entry entry) throws IOException {
     entry.getKey().getBuilder(compressor).setFollowingKvCount(entry.getEdit().size()).build()
       .writeDelimitedTo(output);
+    selectValueCompressor(entry.getKey().getTableName());
     for (Cell cell : entry.getEdit().getCells()) {
       // cellEncoder must assume little about the stream, since we write PB and cells in turn.
       cellEncoder.write((ExtendedCell) cell);
@@ -78,6 +78,9 @@ public class ProtobufWALStreamReader extends AbstractProtobufWALReader
       return entry;
     }
     int expectedCells = walKey.getFollowingKvCount();
+    if (compressionCtx != null) {
+      compressionCtx.selectValueCompressor(entry.getKey().getTableName());
+    }
     long posBefore = getPosition();
     int actualCells;
     try {
@@ -196,6 +196,9 @@ public class ProtobufWALTailingReader extends AbstractProtobufWALReader
         posBefore);
       return new Result(State.NORMAL, entry, posBefore);
     }
+    if (compressionCtx != null) {
+      compressionCtx.selectValueCompressor(entry.getKey().getTableName());
+    }
     int actualCells;
     try {
       actualCells = entry.getEdit().readFromCells(cellDecoder, followingKvCount);
@@ -204,6 +204,18 @@ public class SequenceIdAccounting {
     this.highestSequenceIds.remove(encodedRegionName);
   }
 
+  /**
+   * Clear the unflushed and flushing sequence ids of a region which moved to another WAL, once all
+   * its edits in this WAL are flushed. Unlike {@link #onRegionClose(byte[])}, its highest sequence
+   * id is left to the consumer, which resets it on the next roll.
+   */
+  void onRegionMovedOut(byte[] encodedRegionName) {
+    synchronized (tieLock) {
+      this.lowestUnflushedSequenceIds.remove(encodedRegionName);
+      this.flushingSequenceIds.remove(encodedRegionName);
+    }
+  }
+
   /**
    * Update the store sequence id, e.g., upon executing in-memory compaction
    */
@@ -115,4 +115,13 @@ public interface WALActionsListener {
    */
   default void postSync(final long timeInNanos, final int handlerSyncs) {
   }
+
+  /**
+   * For notification before writer sync, when the group commit of the WAL is enabled. Used by
+   * metrics system at least.
+   * @param timeInNanos How long the WAL waited for more sync requests before the sync, in
+   *                    nanoseconds.
+   */
+  default void preSync(final long timeInNanos) {
+  }
 }
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.wal;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.regionserver.wal.CompressionContext.ValueCompressor;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.wal.WALEdit;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds, from the values appended to a WAL, the dictionaries the values of its busiest tables are
+ * compressed with in the next files of the WAL. A dictionary is raw content made of recent values
+ * of its table: each value is still compressed on its own, but the compression is primed with the
+ * dictionary, so that a small value repeating parts of the recent ones compresses well.
+ * <p>
+ * The dictionaries built when the WAL rolls are written in the header of the new file, so that the
+ * readers of the file, including the replication sources tailing it, have them before the first
+ * entry. Only the value compression codecs whose compressors and decompressors accept a dictionary,
+ * such as the ZStandard codec of hbase-compression-zstd, can use them. The files can only be read
+ * by the versions of HBase which know about the dictionaries.
+ * <p>
+ * Sampled by the consumer of the WAL, built by the roller.
+ */
+@InterfaceAudience.Private
+public class WALValueDictionaryTrainer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WALValueDictionaryTrainer.class);
+
+  /** Whether to compress the values with dictionaries, requires the WAL value compression. */
+  public static final String ENABLE_WAL_VALUE_COMPRESSION_DICTIONARY =
+    "hbase.regionserver.wal.value.compression.dictionary.enabled";
+  static final boolean DEFAULT_ENABLE_WAL_VALUE_COMPRESSION_DICTIONARY = false;
+
+  /** The maximum size of a dictionary in bytes. */
+  static final String DICTIONARY_SIZE_KEY =
+    "hbase.regionserver.wal.value.compression.dictionary.size";
+  static final int DEFAULT_DICTIONARY_SIZE = 16 * 1024;
+
+  /** The maximum number of tables to build a dictionary for, the ones appending the most. */
+  static final String MAX_TABLES_KEY =
+    "hbase.regionserver.wal.value.compression.dictionary.max.tables";
+  static final int DEFAULT_MAX_TABLES = 8;
+
+  /** The values of one in this number of entries, chosen at random, are sampled. */
+  static final String SAMPLE_INTERVAL_KEY =
+    "hbase.regionserver.wal.value.compression.dictionary.sample.interval";
+  static final int DEFAULT_SAMPLE_INTERVAL = 8;
+
+  // Shorter values are not worth sampling, and a dictionary with less content is not worth it.
+  static final int MIN_SAMPLE_LENGTH = 8;
+  static final int MIN_DICTIONARY_SIZE = 256;
+
+  /** The recent samples of a table */
+  private static final class TableSamples {
+    private final ArrayDeque<byte[]> samples = new ArrayDeque<>();
+    private long size;
+    // The bytes sampled since the last build.
+    private long sampled;
+  }
+
+  private final int dictionarySize;
+  private final int maxTables;
+  private final int sampleInterval;
+  private final int maxSampleLength;
+
+  // Guarded by the trainer.
+  private final Map<TableName, TableSamples> tables = new HashMap<>();
+
+  private volatile Map<TableName, byte[]> dictionaries = Collections.emptyMap();
+
+  WALValueDictionaryTrainer(int dictionarySize, int maxTables, int sampleInterval) {
+    this.dictionarySize = dictionarySize;
+    this.maxTables = maxTables;
+    this.sampleInterval = Math.max(1, sampleInterval);
+    // Long values are truncated, so that a dictionary holds many of them.
+    this.maxSampleLength = Math.max(MIN_SAMPLE_LENGTH, dictionarySize / 8);
+  }
+
+  /**
+   * Returns a trainer for the given configuration, null if the dictionaries are disabled or the
+   * value compression codec does not support them.
+   */
+  public static WALValueDictionaryTrainer create(Configuration conf) {
+    if (
+      !conf.getBoolean(ENABLE_WAL_VALUE_COMPRESSION_DICTIONARY,
+        DEFAULT_ENABLE_WAL_VALUE_COMPRESSION_DICTIONARY)
+        || !conf.getBoolean(HConstants.ENABLE_WAL_COMPRESSION, false)
+        || !conf.getBoolean(CompressionContext.ENABLE_WAL_VALUE_COMPRESSION, false)
+        || conf.getBoolean(HConstants.ENABLE_WAL_ENCRYPTION, false)
+    ) {
+      return null;
+    }
+    Compression.Algorithm algorithm = CompressionContext.getValueCompressionAlgorithm(conf);
+    if (!supportsDictionaries(algorithm)) {
+      LOG.warn("The WAL value compression algorithm {} does not support dictionaries, ignoring {}",
+        algorithm, ENABLE_WAL_VALUE_COMPRESSION_DICTIONARY);
+      return null;
+    }
+    return new WALValueDictionaryTrainer(conf.getInt(DICTIONARY_SIZE_KEY, DEFAULT_DICTIONARY_SIZE),
+      conf.getInt(MAX_TABLES_KEY, DEFAULT_MAX_TABLES),
+      conf.getInt(SAMPLE_INTERVAL_KEY, DEFAULT_SAMPLE_INTERVAL));
+  }
+
+  /** Returns whether the given algorithm compresses and decompresses with a dictionary */
+  static boolean supportsDictionaries(Compression.Algorithm algorithm) {
+    if (algorithm == Compression.Algorithm.NONE) {
+      return false;
+    }
+    byte[] dictionary = Bytes.toBytes("the quick brown fox jumps over the lazy dog");
+    byte[] value = Bytes.toBytes("the lazy dog jumps over the quick brown fox");
+    try {
+      byte[] compressed =
+        new ValueCompressor(algorithm, dictionary).compress(value, 0, value.length);
+      byte[] decompressed = new byte[value.length];
+      new ValueCompressor(algorithm, dictionary).decompress(new ByteArrayInputStream(compressed),
+        compressed.length, decompressed, 0, decompressed.length);
+      return Arrays.equals(value, decompressed);
+    } catch (Exception e) {
+      LOG.debug("Failed to compress with a dictionary using {}", algorithm, e);
+      return false;
+    }
+  }
+
+  /** Samples the values of an entry appended for the given table */
+  synchronized void sample(TableName tableName, WALEdit edit) {
+    // At random, so that the sampled tables do not depend on the order of the appends.
+    if (
+      (sampleInterval > 1 && ThreadLocalRandom.current().nextInt(sampleInterval) != 0)
+        || edit.isMetaEdit()
+    ) {
+      return;
+    }
+    TableSamples table = null;
+    for (Cell cell : edit.getCells()) {
+      int length = Math.min(cell.getValueLength(), maxSampleLength);
+      if (length < MIN_SAMPLE_LENGTH) {
+        continue;
+      }
+      if (table == null) {
+        table = tables.computeIfAbsent(tableName, k -> new TableSamples());
+      }
+      byte[] sample = Arrays.copyOfRange(cell.getValueArray(), cell.getValueOffset(),
+        cell.getValueOffset() + length);
+      table.samples.addLast(sample);
+      table.size += length;
+      table.sampled += length;
+      // Keep twice the dictionary size, some of the samples may be duplicates.
+      while (table.size > 2L * dictionarySize) {
+        table.size -= table.samples.removeFirst().length;
+      }
+    }
+  }
+
+  /**
+   * Builds the dictionaries of the tables which appended the most since the last build, from their
+   * recent samples. Forgets the tables which did not append since.
+   */
+  synchronized void build() {
+    List<Map.Entry<TableName, TableSamples>> ranked = new ArrayList<>();
+    for (Iterator<Map.Entry<TableName, TableSamples>> iter = tables.entrySet().iterator(); iter
+      .hasNext();) {
+      Map.Entry<TableName, TableSamples> entry = iter.next();
+      if (entry.getValue().sampled == 0) {
+        iter.remove();
+      } else {
+        ranked.add(entry);
+      }
+    }
+    ranked.sort((a, b) -> Long.compare(b.getValue().sampled, a.getValue().sampled));
+    Map<TableName, byte[]> built = new HashMap<>();
+    for (Map.Entry<TableName, TableSamples> entry : ranked) {
+      entry.getValue().sampled = 0;
+      if (built.size() < maxTables) {
+        byte[] dictionary = buildDictionary(entry.getValue());
+        if (dictionary != null) {
+          built.put(entry.getKey(), dictionary);
+        }
+      }
+    }
+    dictionaries = Collections.unmodifiableMap(built);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Built WAL value compression dictionaries for tables {}", built.keySet());
+    }
+  }
+
+  // The distinct samples, newest last since the content at the end of the dictionary is the
+  // cheapest to reference.
+  private byte[] buildDictionary(TableSamples table) {
+    Set<ByteBuffer> distinct = new HashSet<>();
+    List<byte[]> selected = new ArrayList<>();
+    int size = 0;
+    for (Iterator<byte[]> iter = table.samples.descendingIterator(); iter.hasNext();) {
+      byte[] sample = iter.next();
+      if (size + sample.length > dictionarySize) {
+        break;
+      }
+      if (distinct.add(ByteBuffer.wrap(sample))) {
+        selected.add(sample);
+        size += sample.length;
+      }
+    }
+    if (size < MIN_DICTIONARY_SIZE) {
+      return null;
+    }
+    byte[] dictionary = new byte[size];
+    int offset = size;
+    for (byte[] sample : selected) {
+      offset -= sample.length;
+      System.arraycopy(sample, 0, dictionary, offset, sample.length);
+    }
+    return dictionary;
+  }
+
+  /** Returns the dictionaries of the last build, by table */
+  public Map<TableName, byte[]> getDictionaries() {
+    return dictionaries;
+  }
+}
@@ -47,6 +47,8 @@ public class BloomFilterChunk implements BloomFilterBase {
   protected ByteBuffer bloom;
   /** The type of bloom */
   protected BloomType bloomType;
+  /** Whether all the bits of a key are in one block, see {@link BloomFilterUtil#BLOCK_BYTES} */
+  protected final boolean blocked;
 
   /**
    * Loads bloom filter meta data from file input.
@@ -59,6 +61,7 @@ public class BloomFilterChunk implements BloomFilterBase {
     this.hashType = meta.readInt();
     this.keyCount = meta.readInt();
     this.maxKeys = this.keyCount;
+    this.blocked = false;
 
     this.hash = Hash.getInstance(this.hashType);
     if (hash == null) {
@@ -75,13 +78,20 @@ public class BloomFilterChunk implements BloomFilterBase {
    * @return error rate for this particular Bloom filter
    */
   public double actualErrorRate() {
-    return BloomFilterUtil.actualErrorRate(keyCount, byteSize * 8, hashCount);
+    return blocked
+      ? BloomFilterUtil.actualBlockedErrorRate(keyCount, byteSize * 8, hashCount)
+      : BloomFilterUtil.actualErrorRate(keyCount, byteSize * 8, hashCount);
   }
 
   public BloomFilterChunk(int hashType, BloomType bloomType) {
+    this(hashType, bloomType, false);
+  }
+
+  public BloomFilterChunk(int hashType, BloomType bloomType, boolean blocked) {
     this.hashType = hashType;
     this.hash = Hash.getInstance(hashType);
     this.bloomType = bloomType;
+    this.blocked = blocked;
   }
 
   /**
@@ -115,7 +125,7 @@ public class BloomFilterChunk implements BloomFilterBase {
    * @return a Bloom filter with the same configuration as this
    */
   public BloomFilterChunk createAnother() {
-    BloomFilterChunk bbf = new BloomFilterChunk(hashType, this.bloomType);
+    BloomFilterChunk bbf = new BloomFilterChunk(hashType, this.bloomType, this.blocked);
     bbf.byteSize = byteSize;
     bbf.hashCount = hashCount;
     bbf.maxKeys = maxKeys;
@@ -162,6 +172,10 @@ public class BloomFilterChunk implements BloomFilterBase {
      */
     HashKey<byte[]> hashKey = new ByteArrayHashKey(buf, offset, len);
     int hash1 = this.hash.hash(hashKey, 0);
+    if (blocked) {
+      setBlockedHashLoc(hash1);
+      return;
+    }
     int hash2 = this.hash.hash(hashKey, hash1);
     setHashLoc(hash1, hash2);
   }
@@ -176,16 +190,32 @@ public class BloomFilterChunk implements BloomFilterBase {
     HashKey<Cell> hashKey;
     if (this.bloomType == BloomType.ROWCOL) {
       hashKey = new RowColBloomHashKey(cell);
-      hash1 = this.hash.hash(hashKey, 0);
-      hash2 = this.hash.hash(hashKey, hash1);
     } else {
       hashKey = new RowBloomHashKey(cell);
-      hash1 = this.hash.hash(hashKey, 0);
-      hash2 = this.hash.hash(hashKey, hash1);
     }
+    hash1 = this.hash.hash(hashKey, 0);
+    if (blocked) {
+      // A single hash, see BloomFilterUtil#containsBlocked.
+      setBlockedHashLoc(hash1);
+      return;
+    }
+    hash2 = this.hash.hash(hashKey, hash1);
     setHashLoc(hash1, hash2);
   }
 
+  private void setBlockedHashLoc(int hash1) {
+    int numBlocks = (int) (this.byteSize / BloomFilterUtil.BLOCK_BYTES);
+    long blockBitOffset =
+      (long) BloomFilterUtil.getBlock(hash1, numBlocks) * BloomFilterUtil.BLOCK_BYTES * 8;
+    int probe = hash1;
+    for (int i = 0; i < this.hashCount; i++) {
+      probe = BloomFilterUtil.nextBlockProbe(probe);
+      set(blockBitOffset + (probe & (BloomFilterUtil.BLOCK_BYTES * 8 - 1)));
+    }
+
+    ++this.keyCount;
+  }
+
   private void setHashLoc(int hash1, int hash2) {
     for (int i = 0; i < this.hashCount; i++) {
       long hashLoc = Math.abs((hash1 + i * hash2) % (this.byteSize * 8));
@@ -250,8 +280,11 @@ public class BloomFilterChunk implements BloomFilterBase {
       int newByteSize = (int) this.byteSize;
       int newMaxKeys = this.maxKeys;
 
+      // A blocked bloom must keep whole blocks, the block of a key then being the same modulo the
+      // new number of blocks.
+      int foldableUnit = blocked ? 2 * BloomFilterUtil.BLOCK_BYTES : 2;
       // while exponentially smaller & folding is lossless
-      while ((newByteSize & 1) == 0 && newMaxKeys > (this.keyCount << 1)) {
+      while (newByteSize % foldableUnit == 0 && newMaxKeys > (this.keyCount << 1)) {
         pieces <<= 1;
         newByteSize >>= 1;
         newMaxKeys >>= 1;
@@ -294,6 +327,10 @@ public class BloomFilterChunk implements BloomFilterBase {
     return hashCount;
   }
 
+  public boolean isBlocked() {
+    return blocked;
+  }
+
   @Override
   public String toString() {
     return BloomFilterUtil.toString(this);
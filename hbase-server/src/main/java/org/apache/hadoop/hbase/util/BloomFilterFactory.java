@@ -74,6 +74,14 @@ public final class BloomFilterFactory {
    */
   public static final String IO_STOREFILE_BLOOM_BLOCK_SIZE = "io.storefile.bloom.block.size";
 
+  /**
+   * Whether to write blocked Bloom filters, where all the bits of a key are in one cache line,
+   * making a lookup cheaper than with the bits spread over a whole Bloom block, at the cost of
+   * slightly larger filters for the same error rate. Readers tell from the Bloom filter metadata,
+   * so the setting can be changed at any time, also per column family.
+   */
+  public static final String IO_STOREFILE_BLOOM_BLOCKED = "io.storefile.bloom.blocked";
+
   /** Maximum number of times a Bloom filter can be "folded" if oversized */
   private static final int MAX_ALLOWED_FOLD_FACTOR = 7;
 
@@ -96,6 +104,9 @@ public final class BloomFilterFactory {
       case CompoundBloomFilterBase.VERSION:
         return new CompoundBloomFilter(meta, reader, metrics);
 
+      case CompoundBloomFilterBase.BLOCKED_VERSION:
+        return new CompoundBloomFilter(meta, reader, metrics, true);
+
       default:
         throw new IllegalArgumentException("Bad bloom filter format version " + version);
     }
@@ -113,6 +124,11 @@ public final class BloomFilterFactory {
     return conf.getBoolean(IO_STOREFILE_DELETEFAMILY_BLOOM_ENABLED, true);
   }
 
+  /** Returns true if blocked Bloom filters are to be written in the given configuration */
+  public static boolean isBlockedBloomEnabled(Configuration conf) {
+    return conf.getBoolean(IO_STOREFILE_BLOOM_BLOCKED, false);
+  }
+
   /** Returns the Bloom filter error rate in the given configuration */
   public static float getErrorRate(Configuration conf) {
     return conf.getFloat(IO_STOREFILE_BLOOM_ERROR_RATE, (float) 0.01);
@@ -169,7 +185,8 @@ public final class BloomFilterFactory {
     // In case of compound Bloom filters we ignore the maxKeys hint.
     CompoundBloomFilterWriter bloomWriter = new CompoundBloomFilterWriter(getBloomBlockSize(conf),
       err, Hash.getHashType(conf), maxFold, cacheConf.shouldCacheBloomsOnWrite(),
-      bloomType == BloomType.ROWCOL ? CellComparatorImpl.COMPARATOR : null, bloomType);
+      bloomType == BloomType.ROWCOL ? CellComparatorImpl.COMPARATOR : null, bloomType,
+      isBlockedBloomEnabled(conf));
     writer.addInlineBlockWriter(bloomWriter);
     return bloomWriter;
   }
@@ -197,7 +214,7 @@ public final class BloomFilterFactory {
     // In case of compound Bloom filters we ignore the maxKeys hint.
     CompoundBloomFilterWriter bloomWriter =
       new CompoundBloomFilterWriter(getBloomBlockSize(conf), err, Hash.getHashType(conf), maxFold,
-        cacheConf.shouldCacheBloomsOnWrite(), null, BloomType.ROW);
+        cacheConf.shouldCacheBloomsOnWrite(), null, BloomType.ROW, isBlockedBloomEnabled(conf));
     writer.addInlineBlockWriter(bloomWriter);
     return bloomWriter;
   }
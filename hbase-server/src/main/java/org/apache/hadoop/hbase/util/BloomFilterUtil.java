@@ -49,6 +49,14 @@ public final class BloomFilterUtil {
 
   public static final String PREFIX_LENGTH_KEY = "RowPrefixBloomFilter.prefix_length";
 
+  /**
+   * Size in bytes of the blocks of a blocked Bloom filter, a cache line. All the bits of a key are
+   * set in the same block, chosen by the hash of the key.
+   */
+  public static final int BLOCK_BYTES = 64;
+  private static final int BLOCK_BITS = BLOCK_BYTES * 8;
+  private static final int LOG2_BLOCK_BYTES = 6;
+
   /** Bit-value lookup array to prevent doing the same work over and over */
   public static final byte[] bitvals = { (byte) 0x01, (byte) 0x02, (byte) 0x04, (byte) 0x08,
     (byte) 0x10, (byte) 0x20, (byte) 0x40, (byte) 0x80 };
@@ -118,6 +126,45 @@ public final class BloomFilterUtil {
       .exp(Math.log(1 - Math.exp(-functionCount * maxKeys * 1.0 / bitSize)) * functionCount);
   }
 
+  /**
+   * Computes the error rate of a blocked Bloom filter. The number of keys in a block follows a
+   * Poisson distribution, and every block is a Bloom filter of its own, so the error rate is
+   * higher than the one of a standard Bloom filter of the same size.
+   * @return the actual error rate
+   */
+  public static double actualBlockedErrorRate(long maxKeys, long bitSize, int functionCount) {
+    double keysPerBlock = maxKeys * (double) BLOCK_BITS / bitSize;
+    int maxKeysInBlock = (int) (keysPerBlock + 10 * Math.sqrt(keysPerBlock) + 10);
+    // The bits of a key are independent, the blocks are too small to approximate this as for
+    // standard Bloom filters.
+    double bitUnsetByKey = Math.pow(1 - 1.0 / BLOCK_BITS, functionCount);
+    double probability = Math.exp(-keysPerBlock);
+    double errorRate = 0;
+    for (int i = 0; i <= maxKeysInBlock; i++) {
+      errorRate += probability * Math.pow(1 - Math.pow(bitUnsetByKey, i), functionCount);
+      probability *= keysPerBlock / (i + 1);
+    }
+    return errorRate;
+  }
+
+  /**
+   * The maximum number of keys we can put into a blocked Bloom filter of a certain size to get the
+   * given error rate, with the given number of hash functions.
+   */
+  public static long computeBlockedMaxKeys(long bitSize, double errorRate, int hashCount) {
+    long low = 0;
+    long high = computeMaxKeys(bitSize, errorRate, hashCount);
+    while (low < high) {
+      long mid = (low + high + 1) >>> 1;
+      if (actualBlockedErrorRate(mid, bitSize, hashCount) <= errorRate) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
   /**
    * Increases the given byte size of a Bloom filter until it can be folded by the given factor.
    * @return Foldable byte size
@@ -156,9 +203,26 @@ public final class BloomFilterUtil {
    */
   public static BloomFilterChunk createBySize(int byteSizeHint, double errorRate, int hashType,
     int foldFactor, BloomType bloomType) {
-    BloomFilterChunk bbf = new BloomFilterChunk(hashType, bloomType);
+    return createBySize(byteSizeHint, errorRate, hashType, foldFactor, bloomType, false);
+  }
+
+  /**
+   * Creates a Bloom filter chunk of the given size.
+   * @param byteSizeHint the desired number of bytes for the Bloom filter bit array. Will be
+   *                     increased so that folding is possible.
+   * @param errorRate    target false positive rate of the Bloom filter
+   * @param hashType     Bloom filter hash function type
+   * @param blocked      whether to set all the bits of a key in a single block of
+   *                     {@link #BLOCK_BYTES}, so that a lookup touches a single cache line
+   * @return the new Bloom filter of the desired size
+   */
+  public static BloomFilterChunk createBySize(int byteSizeHint, double errorRate, int hashType,
+    int foldFactor, BloomType bloomType, boolean blocked) {
+    BloomFilterChunk bbf = new BloomFilterChunk(hashType, bloomType, blocked);
 
-    bbf.byteSize = computeFoldableByteSize(byteSizeHint * 8L, foldFactor);
+    // A blocked Bloom filter is made of whole blocks, and can only be folded down to one block.
+    bbf.byteSize = computeFoldableByteSize(byteSizeHint * 8L,
+      blocked ? Math.max(foldFactor, LOG2_BLOCK_BYTES) : foldFactor);
     long bitSize = bbf.byteSize * 8;
     bbf.maxKeys = (int) idealMaxKeys(bitSize, errorRate);
     bbf.hashCount = optimalFunctionCount(bbf.maxKeys, bitSize);
@@ -166,15 +230,24 @@ public final class BloomFilterUtil {
     // Adjust max keys to bring error rate closer to what was requested,
     // because byteSize was adjusted to allow for folding, and hashCount was
     // rounded.
-    bbf.maxKeys = (int) computeMaxKeys(bitSize, errorRate, bbf.hashCount);
+    bbf.maxKeys = (int) (blocked
+      ? computeBlockedMaxKeys(bitSize, errorRate, bbf.hashCount)
+      : computeMaxKeys(bitSize, errorRate, bbf.hashCount));
 
     return bbf;
   }
 
   public static boolean contains(byte[] buf, int offset, int length, ByteBuff bloomBuf,
     int bloomOffset, int bloomSize, Hash hash, int hashCount) {
+    return contains(buf, offset, length, bloomBuf, bloomOffset, bloomSize, hash, hashCount, false);
+  }
+
+  public static boolean contains(byte[] buf, int offset, int length, ByteBuff bloomBuf,
+    int bloomOffset, int bloomSize, Hash hash, int hashCount, boolean blocked) {
     HashKey<byte[]> hashKey = new ByteArrayHashKey(buf, offset, length);
-    return contains(bloomBuf, bloomOffset, bloomSize, hash, hashCount, hashKey);
+    return blocked
+      ? containsBlocked(bloomBuf, bloomOffset, bloomSize, hash, hashCount, hashKey)
+      : contains(bloomBuf, bloomOffset, bloomSize, hash, hashCount, hashKey);
   }
 
   private static <T> boolean contains(ByteBuff bloomBuf, int bloomOffset, int bloomSize, Hash hash,
@@ -205,11 +278,68 @@ public final class BloomFilterUtil {
     return true;
   }
 
+  /**
+   * Looks up a key in a blocked Bloom filter. A single hash of the key is computed, which selects
+   * the block, and is mixed again for the position of every bit in the block, so that the lookup
+   * touches a single cache line and hashes the key once.
+   */
+  private static <T> boolean containsBlocked(ByteBuff bloomBuf, int bloomOffset, int bloomSize,
+    Hash hash, int hashCount, HashKey<T> hashKey) {
+    int hash1 = hash.hash(hashKey, 0);
+    int numBlocks = bloomSize >> LOG2_BLOCK_BYTES;
+    int blockOffset;
+    int probe;
+    if (randomGeneratorForTest == null) {
+      // Production mode
+      blockOffset = bloomOffset + (getBlock(hash1, numBlocks) << LOG2_BLOCK_BYTES);
+      probe = hash1;
+    } else {
+      // Test mode with "fake look-ups" to estimate "ideal false positive rate"
+      blockOffset = bloomOffset + (randomGeneratorForTest.nextInt(numBlocks) << LOG2_BLOCK_BYTES);
+      probe = randomGeneratorForTest.nextInt();
+    }
+    for (int i = 0; i < hashCount; i++) {
+      probe = nextBlockProbe(probe);
+      if (!checkBit(probe & (BLOCK_BITS - 1), bloomBuf, blockOffset)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns the block of a blocked Bloom filter holding the bits of the key of the given hash */
+  static int getBlock(int hash1, int numBlocks) {
+    // Modulo rather than a multiplicative range reduction, which folding relies on.
+    return (hash1 & Integer.MAX_VALUE) % numBlocks;
+  }
+
+  /**
+   * Returns the next bit of a key in its block, in the lowest bits, starting from the hash of the
+   * key which also selected the block.
+   */
+  static int nextBlockProbe(int probe) {
+    // The finalizer of MurmurHash3, on the golden ratio sequence.
+    int h = probe + 0x9e3779b9;
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
   public static boolean contains(Cell cell, ByteBuff bloomBuf, int bloomOffset, int bloomSize,
     Hash hash, int hashCount, BloomType type) {
+    return contains(cell, bloomBuf, bloomOffset, bloomSize, hash, hashCount, type, false);
+  }
+
+  public static boolean contains(Cell cell, ByteBuff bloomBuf, int bloomOffset, int bloomSize,
+    Hash hash, int hashCount, BloomType type, boolean blocked) {
     HashKey<Cell> hashKey =
       type == BloomType.ROWCOL ? new RowColBloomHashKey(cell) : new RowBloomHashKey(cell);
-    return contains(bloomBuf, bloomOffset, bloomSize, hash, hashCount, hashKey);
+    return blocked
+      ? containsBlocked(bloomBuf, bloomOffset, bloomSize, hash, hashCount, hashKey)
+      : contains(bloomBuf, bloomOffset, bloomSize, hash, hashCount, hashKey);
   }
 
   /**
@@ -26,9 +26,11 @@ import org.apache.hadoop.hbase.io.asyncfs.FanOutOneBlockAsyncDFSOutput;
 import org.apache.hadoop.hbase.io.asyncfs.FanOutOneBlockAsyncDFSOutputHelper;
 import org.apache.hadoop.hbase.io.asyncfs.FanOutOneBlockAsyncDFSOutputSaslHelper;
 import org.apache.hadoop.hbase.io.asyncfs.monitor.StreamSlowMonitor;
+import org.apache.hadoop.hbase.regionserver.wal.AbstractProtobufLogWriter;
 import org.apache.hadoop.hbase.regionserver.wal.AsyncFSWAL;
 import org.apache.hadoop.hbase.regionserver.wal.AsyncProtobufLogWriter;
 import org.apache.hadoop.hbase.regionserver.wal.WALUtil;
+import org.apache.hadoop.hbase.regionserver.wal.WALValueDictionaryTrainer;
 import org.apache.hadoop.hbase.util.CommonFSUtils;
 import org.apache.hadoop.hbase.util.CommonFSUtils.StreamLacksCapabilityException;
 import org.apache.hadoop.hbase.util.Pair;
@@ -117,12 +119,26 @@ public class AsyncFSWALProvider extends AbstractFSWALProvider<AsyncFSWAL> {
   public static AsyncWriter createAsyncWriter(Configuration conf, FileSystem fs, Path path,
     boolean overwritable, long blocksize, EventLoopGroup eventLoopGroup,
     Class<? extends Channel> channelClass, StreamSlowMonitor monitor) throws IOException {
+    return createAsyncWriter(conf, fs, path, overwritable, blocksize, eventLoopGroup, channelClass,
+      monitor, null);
+  }
+
+  /**
+   * Public because of AsyncFSWAL. Should be package-private
+   */
+  public static AsyncWriter createAsyncWriter(Configuration conf, FileSystem fs, Path path,
+    boolean overwritable, long blocksize, EventLoopGroup eventLoopGroup,
+    Class<? extends Channel> channelClass, StreamSlowMonitor monitor,
+    WALValueDictionaryTrainer valueDictionaryTrainer) throws IOException {
     // Configuration already does caching for the Class lookup.
     Class<? extends AsyncWriter> logWriterClass =
       conf.getClass(WRITER_IMPL, AsyncProtobufLogWriter.class, AsyncWriter.class);
     try {
       AsyncWriter writer = logWriterClass.getConstructor(EventLoopGroup.class, Class.class)
         .newInstance(eventLoopGroup, channelClass);
+      if (valueDictionaryTrainer != null && writer instanceof AbstractProtobufLogWriter) {
+        ((AbstractProtobufLogWriter) writer).setValueDictionaryTrainer(valueDictionaryTrainer);
+      }
       writer.init(fs, path, conf, overwritable, blocksize, monitor);
       return writer;
     } catch (Exception e) {
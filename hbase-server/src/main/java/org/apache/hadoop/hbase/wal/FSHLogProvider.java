@@ -23,9 +23,11 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.client.RegionInfo;
 import org.apache.hadoop.hbase.io.asyncfs.monitor.StreamSlowMonitor;
+import org.apache.hadoop.hbase.regionserver.wal.AbstractProtobufLogWriter;
 import org.apache.hadoop.hbase.regionserver.wal.FSHLog;
 import org.apache.hadoop.hbase.regionserver.wal.ProtobufLogWriter;
 import org.apache.hadoop.hbase.regionserver.wal.WALUtil;
+import org.apache.hadoop.hbase.regionserver.wal.WALValueDictionaryTrainer;
 import org.apache.hadoop.hbase.util.CommonFSUtils;
 import org.apache.hadoop.hbase.util.CommonFSUtils.StreamLacksCapabilityException;
 import org.apache.yetus.audience.InterfaceAudience;
@@ -72,12 +74,24 @@ public class FSHLogProvider extends AbstractFSWALProvider<FSHLog> {
    */
   public static Writer createWriter(final Configuration conf, final FileSystem fs, final Path path,
     final boolean overwritable, long blocksize) throws IOException {
+    return createWriter(conf, fs, path, overwritable, blocksize, null);
+  }
+
+  /**
+   * Public because of FSHLog. Should be package-private
+   */
+  public static Writer createWriter(final Configuration conf, final FileSystem fs, final Path path,
+    final boolean overwritable, long blocksize, WALValueDictionaryTrainer valueDictionaryTrainer)
+    throws IOException {
     // Configuration already does caching for the Class lookup.
     Class<? extends Writer> logWriterClass =
       conf.getClass(WRITER_IMPL, ProtobufLogWriter.class, Writer.class);
     Writer writer = null;
     try {
       writer = logWriterClass.getDeclaredConstructor().newInstance();
+      if (valueDictionaryTrainer != null && writer instanceof AbstractProtobufLogWriter) {
+        ((AbstractProtobufLogWriter) writer).setValueDictionaryTrainer(valueDictionaryTrainer);
+      }
       FileSystem rootFs = FileSystem.get(path.toUri(), conf);
       writer.init(rootFs, path, conf, overwritable, blocksize,
         StreamSlowMonitor.create(conf, path.getName()));
@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.wal;
+
+import static org.apache.hadoop.hbase.util.ConcurrentMapUtils.computeIfAbsent;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.regionserver.wal.WALActionsListener;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.hbase.wal.RegionGroupingProvider.RegionGroupingStrategy;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A WAL grouping strategy that places the regions on "hbase.wal.regiongrouping.numgroups" wal
+ * groups by their load, measured as the bytes they append to the WALs. The append rates of the
+ * regions, and the loads of the groups, are recomputed when a WAL of the groups rolls.
+ * <p>
+ * A region opening is placed in the least loaded group, or in one of the
+ * "hbase.wal.regiongrouping.dedicated.max" dedicated groups if it appends at least
+ * "hbase.wal.regiongrouping.dedicated.load.fraction" of the bytes appended by all the regions.
+ * <p>
+ * On each roll, at most one open region is moved: to a free dedicated group if it deserves one, or
+ * else from the most to the least loaded group when their loads differ by more than
+ * "hbase.wal.regiongrouping.rebalance.imbalance" of the most loaded one. The region keeps writing
+ * to its WAL until a flush of all its stores, requested right away, persists the edits whose
+ * sequence ids that WAL accounts for; the region writes to the WAL of its new group from then on.
+ * <p>
+ * A region is released from its group when its close marker is appended, or once it did not append
+ * for {@link #IDLE_UPDATES} load updates, which covers the regions closing without a marker, like
+ * the read-only ones, and the ones only warmed up. A released region appending again is accounted
+ * to the group of the WAL it appends to.
+ */
+@InterfaceAudience.Private
+public class LoadAwarePlacementStrategy implements RegionGroupingStrategy {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LoadAwarePlacementStrategy.class);
+
+  static final String MAX_DEDICATED_GROUPS = "hbase.wal.regiongrouping.dedicated.max";
+  static final int DEFAULT_MAX_DEDICATED_GROUPS = 0;
+
+  static final String DEDICATED_LOAD_FRACTION =
+    "hbase.wal.regiongrouping.dedicated.load.fraction";
+  static final float DEFAULT_DEDICATED_LOAD_FRACTION = 0.25f;
+
+  static final String REBALANCE_IMBALANCE = "hbase.wal.regiongrouping.rebalance.imbalance";
+  static final float DEFAULT_REBALANCE_IMBALANCE = 0.2f;
+
+  /** Number of consecutive load updates without appends after which a region is released */
+  static final int IDLE_UPDATES = 3;
+
+  /** The bytes appended by a region, and its append rate in bytes per second */
+  private static final class RegionLoad {
+    private final LongAdder appended = new LongAdder();
+    // Guarded by the strategy.
+    private double rate = -1;
+    private int idleUpdates;
+  }
+
+  private final ConcurrentHashMap<String, RegionLoad> regionLoads = new ConcurrentHashMap<>();
+  // The group of each region, until it is released.
+  private final ConcurrentHashMap<String, String> regionGroups = new ConcurrentHashMap<>();
+
+  // Guarded by the strategy.
+  private final Map<String, Double> groupLoads = new HashMap<>();
+  private final Map<String, Integer> groupRegions = new HashMap<>();
+  private long lastUpdateTime;
+
+  private String[] groupNames;
+  private String[] dedicatedGroupNames;
+  private float dedicatedLoadFraction;
+  private float rebalanceImbalance;
+  // Flushes all the stores of a region, which moves it to the WAL of its new group.
+  private volatile Consumer<String> flushRequester;
+
+  @Override
+  public void init(Configuration config, String providerId) {
+    int regionGroupNumber = config.getInt(BoundedGroupingStrategy.NUM_REGION_GROUPS,
+      BoundedGroupingStrategy.DEFAULT_NUM_REGION_GROUPS);
+    groupNames = new String[regionGroupNumber];
+    for (int i = 0; i < regionGroupNumber; i++) {
+      groupNames[i] = providerId + GROUP_NAME_DELIMITER + "regiongroup-" + i;
+    }
+    int dedicatedGroupNumber = config.getInt(MAX_DEDICATED_GROUPS, DEFAULT_MAX_DEDICATED_GROUPS);
+    dedicatedGroupNames = new String[dedicatedGroupNumber];
+    for (int i = 0; i < dedicatedGroupNumber; i++) {
+      dedicatedGroupNames[i] = providerId + GROUP_NAME_DELIMITER + "regiongroup-dedicated-" + i;
+    }
+    dedicatedLoadFraction =
+      config.getFloat(DEDICATED_LOAD_FRACTION, DEFAULT_DEDICATED_LOAD_FRACTION);
+    rebalanceImbalance = config.getFloat(REBALANCE_IMBALANCE, DEFAULT_REBALANCE_IMBALANCE);
+    lastUpdateTime = EnvironmentEdgeManager.currentTime();
+  }
+
+  @Override
+  public String group(byte[] identifier, byte[] namespace) {
+    if (identifier == null || identifier.length == 0) {
+      // Not a region, but a caller wanting any of the WALs, like the log roller. Not placed, so
+      // that it does not hold a slot in a group forever.
+      return groupNames[0];
+    }
+    String region = Bytes.toString(identifier);
+    String group = regionGroups.get(region);
+    if (group != null) {
+      return group;
+    }
+    synchronized (this) {
+      group = regionGroups.get(region);
+      if (group == null) {
+        group = place(region);
+        regionGroups.put(region, group);
+        // Tracked from now on, so that it gets released if it never appends.
+        computeIfAbsent(regionLoads, region, RegionLoad::new).idleUpdates = 0;
+      }
+      return group;
+    }
+  }
+
+  /**
+   * Sets what flushes all the stores of a region moved to another group, given its encoded name.
+   * Without it, the moved regions move at their next flush of all their stores.
+   */
+  void setFlushRequester(Consumer<String> flushRequester) {
+    this.flushRequester = flushRequester;
+  }
+
+  /** Returns the listener measuring the load of the regions on the WALs of the given group */
+  WALActionsListener getListener(String group) {
+    return new WALActionsListener() {
+      @Override
+      public void postAppend(long entryLen, long elapsedTimeMillis, WALKey logKey,
+        WALEdit logEdit) {
+        appended(group, Bytes.toString(logKey.getEncodedRegionName()), entryLen,
+          logEdit != null && logEdit.isRegionCloseMarker());
+      }
+
+      @Override
+      public void postLogRoll(Path oldPath, Path newPath) {
+        updateLoads();
+      }
+    };
+  }
+
+  private double getRate(String region) {
+    RegionLoad load = regionLoads.get(region);
+    return load == null || load.rate < 0 ? 0 : load.rate;
+  }
+
+  // Must be called while holding the strategy.
+  private String place(String region) {
+    double rate = getRate(region);
+    String dedicated = getDedicatedGroup(rate);
+    if (dedicated != null) {
+      addRegion(dedicated, rate);
+      LOG.debug("Placed region {} appending {} bytes/s in dedicated wal group {}", region,
+        (long) rate, dedicated);
+      return dedicated;
+    }
+    String leastLoaded = getLeastLoadedGroup();
+    addRegion(leastLoaded, rate);
+    return leastLoaded;
+  }
+
+  // Returns a free dedicated group if a region appending at the given rate deserves one, else null.
+  // Must be called while holding the strategy.
+  private String getDedicatedGroup(double rate) {
+    if (rate > 0 && dedicatedGroupNames.length > 0) {
+      double totalRate = 0;
+      for (RegionLoad load : regionLoads.values()) {
+        totalRate += Math.max(0, load.rate);
+      }
+      if (rate >= dedicatedLoadFraction * totalRate) {
+        for (String dedicated : dedicatedGroupNames) {
+          if (groupRegions.getOrDefault(dedicated, 0) == 0) {
+            return dedicated;
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  // Must be called while holding the strategy.
+  private String getLeastLoadedGroup() {
+    String leastLoaded = null;
+    for (String group : groupNames) {
+      if (leastLoaded == null || compareLoads(group, leastLoaded) < 0) {
+        leastLoaded = group;
+      }
+    }
+    return leastLoaded;
+  }
+
+  // Orders the groups by load, then by number of regions for the regions which did not append yet.
+  private int compareLoads(String group, String other) {
+    int c = Double.compare(groupLoads.getOrDefault(group, 0d), groupLoads.getOrDefault(other, 0d));
+    return c != 0
+      ? c
+      : Integer.compare(groupRegions.getOrDefault(group, 0), groupRegions.getOrDefault(other, 0));
+  }
+
+  private void addRegion(String group, double rate) {
+    groupLoads.merge(group, rate, Double::sum);
+    groupRegions.merge(group, 1, Integer::sum);
+  }
+
+  // Must be called while holding the strategy.
+  private void release(String region) {
+    String group = regionGroups.remove(region);
+    if (group != null) {
+      groupLoads.merge(group, -getRate(region), Double::sum);
+      groupRegions.merge(group, -1, Integer::sum);
+    }
+  }
+
+  void appended(String group, String region, long entryLen, boolean closed) {
+    computeIfAbsent(regionLoads, region, RegionLoad::new).appended.add(entryLen);
+    if (closed) {
+      // The next open of the region, if any, can place it in another group.
+      synchronized (this) {
+        release(region);
+      }
+    } else if (!regionGroups.containsKey(region)) {
+      synchronized (this) {
+        if (!regionGroups.containsKey(region)) {
+          // Released while idle but still open, it stays in the group of its WAL.
+          regionGroups.put(region, group);
+          addRegion(group, getRate(region));
+        }
+      }
+    }
+  }
+
+  /**
+   * Recomputes the append rates of the regions since the last update, and the loads of the groups
+   * from them. Releases the regions which stopped appending, then moves at most one open region to
+   * another group, requesting the flush which moves it to the WAL of that group.
+   */
+  void updateLoads() {
+    String moved;
+    synchronized (this) {
+      if (!recomputeLoads()) {
+        return;
+      }
+      moved = planMove();
+    }
+    Consumer<String> requester = flushRequester;
+    if (moved != null && requester != null) {
+      requester.accept(moved);
+    }
+  }
+
+  // Returns false if no time elapsed since the last update. Must be called while holding the
+  // strategy.
+  private boolean recomputeLoads() {
+    long now = EnvironmentEdgeManager.currentTime();
+    long elapsed = now - lastUpdateTime;
+    if (elapsed <= 0) {
+      return false;
+    }
+    lastUpdateTime = now;
+    for (Iterator<Map.Entry<String, RegionLoad>> iter = regionLoads.entrySet().iterator(); iter
+      .hasNext();) {
+      Map.Entry<String, RegionLoad> entry = iter.next();
+      RegionLoad load = entry.getValue();
+      long appended = load.appended.sumThenReset();
+      double rate = appended * 1000.0 / elapsed;
+      load.rate = load.rate < 0 ? rate : (load.rate + rate) / 2;
+      load.idleUpdates = appended == 0 ? load.idleUpdates + 1 : 0;
+      if (load.idleUpdates >= IDLE_UPDATES) {
+        // Closed without a close marker, or open but idle, in which case its next append gets it
+        // back in its group.
+        regionGroups.remove(entry.getKey());
+      }
+      if (load.rate < 1 && !regionGroups.containsKey(entry.getKey())) {
+        // Neither open nor appending anymore.
+        iter.remove();
+      }
+    }
+    groupLoads.clear();
+    groupRegions.clear();
+    regionGroups.forEach((region, group) -> addRegion(group, getRate(region)));
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Loads of the wal groups in bytes/s: {}", groupLoads);
+    }
+    return true;
+  }
+
+  // Returns the region moved to another group, if any. Must be called while holding the strategy.
+  private String planMove() {
+    // The heaviest region of the most loaded shared group goes first to a dedicated group, if it
+    // deserves one.
+    String mostLoaded = null;
+    for (String group : groupNames) {
+      if (mostLoaded == null || compareLoads(group, mostLoaded) > 0) {
+        mostLoaded = group;
+      }
+    }
+    String heaviest = null;
+    for (Map.Entry<String, String> entry : regionGroups.entrySet()) {
+      if (
+        entry.getValue().equals(mostLoaded)
+          && (heaviest == null || getRate(entry.getKey()) > getRate(heaviest))
+      ) {
+        heaviest = entry.getKey();
+      }
+    }
+    if (heaviest != null) {
+      String dedicated = getDedicatedGroup(getRate(heaviest));
+      if (dedicated != null) {
+        move(heaviest, mostLoaded, dedicated);
+        return heaviest;
+      }
+    }
+    // Else the region of the most loaded shared group best evening its load with the least loaded
+    // one, that is the one appending closest to half their difference, and less than it.
+    String leastLoaded = getLeastLoadedGroup();
+    double mostLoad = groupLoads.getOrDefault(mostLoaded, 0d);
+    double difference = mostLoad - groupLoads.getOrDefault(leastLoaded, 0d);
+    if (difference <= 0 || difference <= rebalanceImbalance * mostLoad) {
+      return null;
+    }
+    String best = null;
+    for (Map.Entry<String, String> entry : regionGroups.entrySet()) {
+      double rate = getRate(entry.getKey());
+      if (
+        entry.getValue().equals(mostLoaded) && rate > 0 && rate < difference && (best == null
+          || Math.abs(difference / 2 - rate) < Math.abs(difference / 2 - getRate(best)))
+      ) {
+        best = entry.getKey();
+      }
+    }
+    if (best != null) {
+      move(best, mostLoaded, leastLoaded);
+    }
+    return best;
+  }
+
+  // Must be called while holding the strategy.
+  private void move(String region, String from, String to) {
+    double rate = getRate(region);
+    regionGroups.put(region, to);
+    groupLoads.merge(from, -rate, Double::sum);
+    groupRegions.merge(from, -1, Integer::sum);
+    addRegion(to, rate);
+    LOG.info("Moving region {} appending {} bytes/s from wal group {} to wal group {}", region,
+      (long) rate, from, to);
+  }
+}
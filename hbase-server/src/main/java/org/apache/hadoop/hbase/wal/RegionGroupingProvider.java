@@ -20,6 +20,7 @@ package org.apache.hadoop.hbase.wal;
 import static org.apache.hadoop.hbase.wal.AbstractFSWALProvider.META_WAL_PROVIDER_ID;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -30,6 +31,10 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.client.RegionInfo;
+import org.apache.hadoop.hbase.regionserver.FlushLifeCycleTracker;
+import org.apache.hadoop.hbase.regionserver.FlushRequester;
+import org.apache.hadoop.hbase.regionserver.HRegion;
+import org.apache.hadoop.hbase.regionserver.RegionServerServices;
 import org.apache.hadoop.hbase.regionserver.wal.MetricsWAL;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.KeyLocker;
@@ -47,6 +52,9 @@ import org.slf4j.LoggerFactory;
  * "bounded".</li>
  * <li><em>identity</em> : each region belongs to its own group.</li>
  * <li><em>bounded</em> : bounded number of groups and region evenly assigned to each group.</li>
+ * <li><em>loadAwarePlacement</em> : bounded number of groups, a region being placed in the least
+ * loaded group when it opens, and open regions being moved between groups as their loads
+ * change.</li>
  * </ul>
  * Optionally, a FQCN to a custom implementation may be given.
  */
@@ -75,7 +83,8 @@ public class RegionGroupingProvider extends AbstractWALProvider {
     defaultStrategy(BoundedGroupingStrategy.class),
     identity(IdentityGroupingStrategy.class),
     bounded(BoundedGroupingStrategy.class),
-    namespace(NamespaceGroupingStrategy.class);
+    namespace(NamespaceGroupingStrategy.class),
+    loadAwarePlacement(LoadAwarePlacementStrategy.class);
 
     final Class<? extends RegionGroupingStrategy> clazz;
 
@@ -153,6 +162,13 @@ public class RegionGroupingProvider extends AbstractWALProvider {
       this.providerId = sb.toString();
     }
     this.strategy = getStrategy(conf, REGION_GROUPING_STRATEGY, DEFAULT_REGION_GROUPING_STRATEGY);
+    if (
+      strategy instanceof LoadAwarePlacementStrategy && abortable instanceof RegionServerServices
+    ) {
+      RegionServerServices services = (RegionServerServices) abortable;
+      ((LoadAwarePlacementStrategy) strategy)
+        .setFlushRequester(region -> requestFlush(services, region));
+    }
     this.providerClass = factory.getProviderClass(DELEGATE_PROVIDER, DEFAULT_DELEGATE_PROVIDER);
     if (providerClass.equals(this.getClass())) {
       LOG.warn("delegate provider not support multiwal, falling back to defaultProvider.");
@@ -160,11 +176,29 @@ public class RegionGroupingProvider extends AbstractWALProvider {
     }
   }
 
+  // Flushes all the stores of a region, which moves it to the WAL of its new group.
+  private static void requestFlush(RegionServerServices services, String encodedRegionName) {
+    HRegion region = (HRegion) services.getRegion(encodedRegionName);
+    FlushRequester requester = services.getFlushRequester();
+    if (region == null || requester == null) {
+      LOG.debug("Not flushing {} to move it to its new wal group, region={}, requester={}",
+        encodedRegionName, region, requester);
+      return;
+    }
+    requester.requestFlush(region,
+      new ArrayList<>(region.getTableDescriptor().getColumnFamilyNames()),
+      FlushLifeCycleTracker.DUMMY);
+  }
+
   private WALProvider createProvider(String group) throws IOException {
     WALProvider provider = WALFactory.createProvider(providerClass);
     provider.init(factory, conf,
       META_WAL_PROVIDER_ID.equals(providerId) ? META_WAL_PROVIDER_ID : group, this.abortable);
     provider.addWALActionsListener(new MetricsWAL());
+    if (strategy instanceof LoadAwarePlacementStrategy) {
+      // let the strategy measure the load of the regions on the wals of its groups
+      provider.addWALActionsListener(((LoadAwarePlacementStrategy) strategy).getListener(group));
+    }
     return provider;
   }
 
@@ -209,6 +209,15 @@ public interface WAL extends Closeable, WALFileLengthProvider {
    */
   void abortCacheFlush(byte[] encodedRegionName);
 
+  /**
+   * Tell the WAL that the region now writes to another WAL and that a flush persisted all the edits
+   * it wrote to this one, which no longer has to wait for the region to flush before letting go of
+   * its files.
+   * @param encodedRegionName Encoded region name.
+   */
+  default void regionMovedOut(byte[] encodedRegionName) {
+  }
+
   /** Returns Coprocessor host. */
   WALCoprocessorHost getCoprocessorHost();
 
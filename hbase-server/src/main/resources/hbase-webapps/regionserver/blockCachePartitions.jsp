@@ -0,0 +1,50 @@
+<%--
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+--%>
+<%@ page contentType="text/html;charset=UTF-8"
+         import="java.util.Map"
+         import="org.apache.hadoop.hbase.io.hfile.BlockCache"
+         import="org.apache.hadoop.hbase.io.hfile.CacheStats" %>
+
+<%
+  BlockCache bc = (BlockCache) request.getAttribute("bc");
+  Map<String, CacheStats> partitionStats = bc.getStats().getPartitionStats();
+if (!partitionStats.isEmpty()) { %>
+<h3>Partitions</h3>
+<table class="table table-striped">
+  <tr>
+    <th>Partition</th>
+    <th>Hits</th>
+    <th>Misses</th>
+    <th>Hit Ratio</th>
+    <th>Evicted</th>
+  </tr>
+  <% for (Map.Entry<String, CacheStats> e : partitionStats.entrySet()) { %>
+  <tr>
+    <td><%= e.getKey() %></td>
+    <td><%= String.format("%,d", e.getValue().getHitCount()) %></td>
+    <td><%= String.format("%,d", e.getValue().getMissCount()) %></td>
+    <td><%= String.format("%,.2f", e.getValue().getHitRatio() * 100) %><%= "%" %></td>
+    <td><%= String.format("%,d", e.getValue().getEvictedCount()) %></td>
+  </tr>
+  <% } %>
+</table>
+<p>Namespaces and tables with their own share of the block cache, see
+  hbase.bucketcache.partitions.</p>
+<% } %>
@@ -55,4 +55,6 @@ if (bc == null) { %>
 </table>
 <p>If block cache is made up of more than one cache -- i.e. a L1 and a L2 -- then the above
   are combined counts. Request count is sum of hits and misses.</p>
+<% request.setAttribute("bc", bc); %>
+<jsp:include page="blockCachePartitions.jsp"/>
 <% } %>
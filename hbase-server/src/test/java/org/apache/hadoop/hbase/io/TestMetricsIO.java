@@ -52,7 +52,12 @@ public class TestMetricsIO {
     metrics.updateFsWriteTime(500);
     metrics.updateFsWriteTime(600);
 
+    metrics.updateCoalescedBlockReads(3, 30);
+    metrics.updateCoalescedBlockReads(1, 12);
+
     HELPER.assertCounter("fsChecksumFailureCount", 40, metrics.getMetricsSource());
+    HELPER.assertCounter("fsCoalescedBlockReadsCount", 4, metrics.getMetricsSource());
+    HELPER.assertCounter("fsCoalescedBlockReadsWaitTime", 42, metrics.getMetricsSource());
 
     HELPER.assertCounter("fsReadTime_numOps", 2, metrics.getMetricsSource());
     HELPER.assertCounter("fsPReadTime_numOps", 1, metrics.getMetricsSource());
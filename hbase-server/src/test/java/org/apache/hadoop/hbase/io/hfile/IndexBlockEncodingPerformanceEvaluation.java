@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.apache.hadoop.hbase.CellComparatorImpl;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.io.hfile.PrefixTreeIndexBlockEncoder.Cursor;
+import org.apache.hadoop.hbase.io.hfile.PrefixTreeIndexBlockEncoder.EncodedIndexBlock;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.util.AbstractHBaseTool;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.apache.hbase.thirdparty.org.apache.commons.cli.CommandLine;
+import org.apache.hbase.thirdparty.org.apache.commons.cli.Option;
+
+/**
+ * Compares the size and the seek latency of index blocks encoded with
+ * {@link org.apache.hadoop.hbase.io.encoding.IndexBlockEncoding#NONE} and
+ * {@link org.apache.hadoop.hbase.io.encoding.IndexBlockEncoding#PREFIX_TREE}. Index entries use
+ * composite row keys made of a fixed tenant/metric part followed by a variable host and sequence.
+ */
+public class IndexBlockEncodingPerformanceEvaluation extends AbstractHBaseTool {
+
+  // Command line options and defaults.
+  public static final int DEFAULT_NUM_ENTRIES = 1000;
+  public static final Option NUM_ENTRIES_OPTION = new Option("entries", true,
+    "Number of entries in the index block. Default: " + DEFAULT_NUM_ENTRIES);
+  public static final int DEFAULT_NUM_SEEKS = 5000000;
+  public static final Option NUM_SEEKS_OPTION =
+    new Option("seeks", true, "Number of seeks per encoding. Default: " + DEFAULT_NUM_SEEKS);
+  public static final String DEFAULT_ROW_PREFIX = "tenant-0042/metric.cpu.user/";
+  public static final Option ROW_PREFIX_OPTION = new Option("row_prefix", true,
+    "Prefix shared by all the row keys. Default: " + DEFAULT_ROW_PREFIX);
+
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+
+  private int numEntries = DEFAULT_NUM_ENTRIES;
+  private int numSeeks = DEFAULT_NUM_SEEKS;
+  private String rowPrefix = DEFAULT_ROW_PREFIX;
+
+  @Override
+  protected void addOptions() {
+    addOption(NUM_ENTRIES_OPTION);
+    addOption(NUM_SEEKS_OPTION);
+    addOption(ROW_PREFIX_OPTION);
+  }
+
+  @Override
+  protected void processOptions(CommandLine cmd) {
+    numEntries = getOptionAsInt(cmd, NUM_ENTRIES_OPTION.getOpt(), DEFAULT_NUM_ENTRIES);
+    numSeeks = getOptionAsInt(cmd, NUM_SEEKS_OPTION.getOpt(), DEFAULT_NUM_SEEKS);
+    rowPrefix = cmd.getOptionValue(ROW_PREFIX_OPTION.getOpt(), DEFAULT_ROW_PREFIX);
+  }
+
+  private byte[] row(int i) {
+    return Bytes.toBytes(String.format("%shost-%06d/%010d", rowPrefix, i / 64, i));
+  }
+
+  private static ByteBuff encode(HFileIndexBlockEncoder encoder, BlockIndexChunk chunk)
+    throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    encoder.encode(chunk, false, new DataOutputStream(baos));
+    return ByteBuff.wrap(ByteBuffer.wrap(baos.toByteArray()));
+  }
+
+  @Override
+  protected int doWork() throws Exception {
+    BlockIndexChunk chunk = new HFileBlockIndex.BlockIndexChunkImpl();
+    for (int i = 0; i < numEntries; ++i) {
+      // Index every other row so that half of the probes fall between two entries.
+      chunk.add(new KeyValue(row(2 * i), FAMILY, QUALIFIER).getKey(), i * 65536L, 65536);
+    }
+    KeyValue[] probes = new KeyValue[1024];
+    Random rand = new Random(42);
+    for (int i = 0; i < probes.length; ++i) {
+      probes[i] = KeyValueUtil.createFirstOnRow(row(rand.nextInt(2 * numEntries)));
+    }
+
+    ByteBuff plain = encode(NoOpIndexBlockEncoder.INSTANCE, chunk);
+    ByteBuff prefixTree = encode(PrefixTreeIndexBlockEncoder.INSTANCE, chunk);
+    EncodedIndexBlock encoded = new EncodedIndexBlock(prefixTree);
+
+    long sink = 0;
+    // Warm up both paths before measuring.
+    for (int i = 0; i < numSeeks / 10; ++i) {
+      KeyValue probe = probes[i & (probes.length - 1)];
+      sink += HFileBlockIndex.BlockIndexReader.binarySearchNonRootIndex(probe, plain,
+        CellComparatorImpl.COMPARATOR);
+      sink += encoded.search(probe, CellComparatorImpl.COMPARATOR, encoded.newCursor());
+    }
+
+    long start = System.nanoTime();
+    for (int i = 0; i < numSeeks; ++i) {
+      sink += HFileBlockIndex.BlockIndexReader.binarySearchNonRootIndex(
+        probes[i & (probes.length - 1)], plain, CellComparatorImpl.COMPARATOR);
+    }
+    long plainNanos = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for (int i = 0; i < numSeeks; ++i) {
+      Cursor cursor = encoded.newCursor();
+      sink += encoded.search(probes[i & (probes.length - 1)], CellComparatorImpl.COMPARATOR,
+        cursor);
+    }
+    long prefixTreeNanos = System.nanoTime() - start;
+
+    System.out.println("******************************************");
+    System.out.println("Entries per block        : " + numEntries);
+    System.out.println("Block size - NONE        : " + plain.limit());
+    System.out.println("Block size - PREFIX_TREE : " + prefixTree.limit());
+    System.out.println("Seek ns/op - NONE        : " + (double) plainNanos / numSeeks);
+    System.out.println("Seek ns/op - PREFIX_TREE : " + (double) prefixTreeNanos / numSeeks);
+    System.out.println("******************************************");
+    System.out.println("Raw format for scripts");
+    System.out.println(String.format(
+      "RESULT [%s=%s, %s=%s, size_none=%s, size_prefix_tree=%s, seek_ns_none=%s, "
+        + "seek_ns_prefix_tree=%s, sink=%s]",
+      NUM_ENTRIES_OPTION.getOpt(), numEntries, NUM_SEEKS_OPTION.getOpt(), numSeeks, plain.limit(),
+      prefixTree.limit(), plainNanos / numSeeks, prefixTreeNanos / numSeeks, sink));
+    return 0;
+  }
+
+  public static void main(String[] args) throws IOException {
+    IndexBlockEncodingPerformanceEvaluation tool = new IndexBlockEncodingPerformanceEvaluation();
+    tool.setConf(HBaseConfiguration.create());
+    tool.run(args);
+  }
+}
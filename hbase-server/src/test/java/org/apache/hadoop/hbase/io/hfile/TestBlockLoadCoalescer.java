@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.io.ByteBuffAllocator;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ IOTests.class, SmallTests.class })
+public class TestBlockLoadCoalescer {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestBlockLoadCoalescer.class);
+
+  private static HFileBlock newBlock() {
+    int size = 100;
+    return new HFileBlock(BlockType.DATA, size, size, -1, ByteBuff.wrap(ByteBuffer.allocate(size)),
+      HFileBlock.FILL_HEADER, -1, -1, -1, new HFileContextBuilder().build(),
+      ByteBuffAllocator.HEAP);
+  }
+
+  @Test
+  public void testWaitersGetTheirOwnReference() throws Exception {
+    BlockLoadCoalescer coalescer = new BlockLoadCoalescer();
+    assertNull(coalescer.joinOrStart(0));
+    CompletableFuture<HFileBlock> first = coalescer.joinOrStart(0);
+    CompletableFuture<HFileBlock> second = coalescer.joinOrStart(0);
+    assertNotNull(first);
+    assertSame(first, second);
+    // A different offset is an independent load.
+    assertNull(coalescer.joinOrStart(1));
+    assertEquals(2, coalescer.getInFlightCount());
+
+    HFileBlock block = newBlock();
+    coalescer.complete(0, block);
+    assertEquals(3, block.refCnt());
+    assertSame(block, BlockLoadCoalescer.await(first));
+    assertEquals(1, coalescer.getInFlightCount());
+
+    // Once completed, the next miss starts a new load.
+    assertNull(coalescer.joinOrStart(0));
+    coalescer.complete(0, block);
+    assertEquals(3, block.refCnt());
+  }
+
+  @Test
+  public void testAbandonedLoad() throws Exception {
+    BlockLoadCoalescer coalescer = new BlockLoadCoalescer();
+    assertNull(coalescer.joinOrStart(0));
+    CompletableFuture<HFileBlock> waiter = coalescer.joinOrStart(0);
+    coalescer.abandon(0);
+    assertNull(BlockLoadCoalescer.await(waiter));
+    assertEquals(0, coalescer.getInFlightCount());
+  }
+
+  @Test
+  public void testConcurrentMissesLoadOnce() throws Exception {
+    BlockLoadCoalescer coalescer = new BlockLoadCoalescer();
+    int numThreads = 16;
+    AtomicInteger loads = new AtomicInteger();
+    HFileBlock block = newBlock();
+    CountDownLatch start = new CountDownLatch(1);
+    CountDownLatch attached = new CountDownLatch(numThreads - 1);
+    ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<HFileBlock>> results = new ArrayList<>();
+      for (int i = 0; i < numThreads; i++) {
+        results.add(pool.submit(() -> {
+          start.await();
+          CompletableFuture<HFileBlock> future = coalescer.joinOrStart(42);
+          if (future != null) {
+            attached.countDown();
+            return BlockLoadCoalescer.await(future);
+          }
+          loads.incrementAndGet();
+          // Hold the load until everybody else is waiting on it.
+          attached.await();
+          coalescer.complete(42, block);
+          return block;
+        }));
+      }
+      start.countDown();
+      for (Future<HFileBlock> result : results) {
+        assertSame(block, result.get());
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    assertEquals(1, loads.get());
+    assertEquals(numThreads, block.refCnt());
+  }
+}
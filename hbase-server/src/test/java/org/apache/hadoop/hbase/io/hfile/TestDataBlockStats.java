@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.CompareOperator;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.BinaryPrefixComparator;
+import org.apache.hadoop.hbase.filter.BlockStats;
+import org.apache.hadoop.hbase.filter.ColumnRangeFilter;
+import org.apache.hadoop.hbase.filter.QualifierFilter;
+import org.apache.hadoop.hbase.filter.RegexStringComparator;
+import org.apache.hadoop.hbase.filter.TimestampsFilter;
+import org.apache.hadoop.hbase.filter.ValueFilter;
+import org.apache.hadoop.hbase.regionserver.HRegion;
+import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the {@link DataBlockStats} of HFiles, and the data blocks the scanners skip by them.
+ */
+@Category({ IOTests.class, MediumTests.class })
+public class TestDataBlockStats {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestDataBlockStats.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final int NUM_KV = 2000;
+  // The row with a delete marker.
+  private static final int DELETED = 1000;
+
+  private static Configuration conf;
+  private static FileSystem fs;
+  private static Path path;
+
+  @BeforeClass
+  public static void setUp() throws IOException {
+    conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.setBoolean(DataBlockStats.ENABLED_KEY, true);
+    fs = FileSystem.get(conf);
+    path = new Path(TEST_UTIL.getDataTestDir(), "stats");
+    HFileContext meta = new HFileContextBuilder().withBlockSize(512).build();
+    try (HFile.Writer writer = HFile.getWriterFactory(conf, new CacheConfig(conf))
+      .withPath(fs, path).withFileContext(meta).create()) {
+      for (int i = 0; i < NUM_KV; ++i) {
+        if (i == DELETED) {
+          writer.append(new KeyValue(row(i), FAMILY, QUALIFIER, i, KeyValue.Type.Delete));
+        }
+        writer.append(new KeyValue(row(i), FAMILY, QUALIFIER, i, value(i)));
+      }
+    }
+  }
+
+  private static byte[] row(int i) {
+    return Bytes.toBytes(String.format("row-%08d", i));
+  }
+
+  private static byte[] value(int i) {
+    return Bytes.toBytes(String.format("v%08d", i));
+  }
+
+  private static List<Cell> scan(HFile.Reader reader, Predicate<BlockStats> filter,
+    int readaheadBlocks) throws IOException {
+    List<Cell> cells = new ArrayList<>();
+    try (HFileScanner scanner = reader.getScanner(conf, false, true)) {
+      scanner.setReadahead(readaheadBlocks);
+      scanner.setDataBlockFilter(filter);
+      assertTrue(scanner.seekTo());
+      do {
+        cells.add(new KeyValue(scanner.getCell()));
+      } while (scanner.next());
+    }
+    return cells;
+  }
+
+  @Test
+  public void testStats() throws IOException {
+    try (HFile.Reader reader = HFile.createReader(fs, path, CacheConfig.DISABLED, true, conf)) {
+      DataBlockStats stats = reader.getDataBlockStats();
+      assertTrue(stats.getEntryCount() > 10);
+      int withDeletes = 0;
+      long nextTimestamp = 0;
+      DataBlockStats.Entry entry = stats.getEntryAfter(-1);
+      assertEquals(reader.getTrailer().getFirstDataBlockOffset(), entry.getOffset());
+      for (; entry != null; entry = stats.getEntryAfter(entry.getOffset())) {
+        // A single qualifier, and timestamps increasing with the rows.
+        assertEquals(nextTimestamp, entry.getMinTimestamp());
+        nextTimestamp = entry.getMaxTimestamp() + 1;
+        assertArrayEquals(QUALIFIER, entry.getMinQualifier());
+        assertArrayEquals(QUALIFIER, entry.getMaxQualifier());
+        assertTrue(entry.hasAllValueBounds());
+        assertEquals(1, entry.getQualifiers().size());
+        assertArrayEquals(value((int) entry.getMaxTimestamp()), entry.getMaxValue(QUALIFIER));
+        assertNull(entry.getMinValue(FAMILY));
+        if (entry.hasDeletes()) {
+          withDeletes++;
+          assertTrue(entry.getMinTimestamp() <= DELETED && DELETED <= entry.getMaxTimestamp());
+          // The value of the delete marker is empty.
+          assertEquals(0, entry.getMinValue(QUALIFIER).length);
+        } else {
+          assertArrayEquals(value((int) entry.getMinTimestamp()), entry.getMinValue(QUALIFIER));
+        }
+      }
+      assertEquals(NUM_KV, nextTimestamp);
+      assertEquals(1, withDeletes);
+    }
+  }
+
+  @Test
+  public void testStatsCached() throws IOException {
+    LruBlockCache cache = new LruBlockCache(8 * 1024 * 1024, 64 * 1024);
+    try (HFile.Reader reader =
+      HFile.createReader(fs, path, new CacheConfig(conf, cache), true, conf)) {
+      long blocks = cache.getBlockCount();
+      DataBlockStats stats = reader.getDataBlockStats();
+      // The meta block is read through the cache, and parsed once per reader.
+      assertEquals(blocks + 1, cache.getBlockCount());
+      long requests = cache.getStats().getRequestCount();
+      assertSame(stats, reader.getDataBlockStats());
+      assertEquals(requests, cache.getStats().getRequestCount());
+    } finally {
+      cache.shutdown();
+    }
+  }
+
+  @Test
+  public void testScannerSkipsBlocks() throws IOException {
+    try (HFile.Reader reader = HFile.createReader(fs, path, CacheConfig.DISABLED, true, conf)) {
+      List<Cell> all = scan(reader, null, 0);
+      assertEquals(NUM_KV + 1, all.size());
+      for (int readaheadBlocks : new int[] { 0, 4 }) {
+        List<Cell> cells = scan(reader, stats -> stats.getMaxTimestamp() < NUM_KV / 2 + 500,
+          readaheadBlocks);
+        assertTrue(cells.size() < all.size() / 2);
+        // The first block, sought to, and the block with the delete marker are never skipped.
+        assertEquals(all.get(0), cells.get(0));
+        assertTrue(cells.stream().anyMatch(c -> CellUtil.isDelete(c)));
+        List<Cell> expected = new ArrayList<>();
+        for (Cell cell : all) {
+          if (cell.getTimestamp() >= NUM_KV / 2 + 500) {
+            expected.add(cell);
+          }
+        }
+        assertEquals(expected, cells.subList(cells.size() - expected.size(), cells.size()));
+      }
+      // A filter skipping every block after the first one ends the scan.
+      List<Cell> cells = scan(reader, stats -> stats.getMinTimestamp() > DELETED, 0);
+      assertTrue(cells.get(cells.size() - 1).getTimestamp() < DELETED + 50);
+    }
+  }
+
+  @Test
+  public void testFilters() throws IOException {
+    try (HFile.Reader reader = HFile.createReader(fs, path, CacheConfig.DISABLED, true, conf)) {
+      DataBlockStats.Entry entry = reader.getDataBlockStats().getEntryAfter(1000);
+      assertNotNull(entry);
+      int min = (int) entry.getMinTimestamp();
+      int max = (int) entry.getMaxTimestamp();
+      assertTrue(min < max);
+
+      assertTrue(valueFilter(CompareOperator.LESS, value(min)).canSkipBlock(entry));
+      assertFalse(valueFilter(CompareOperator.LESS_OR_EQUAL, value(min)).canSkipBlock(entry));
+      assertTrue(valueFilter(CompareOperator.GREATER, value(max)).canSkipBlock(entry));
+      assertFalse(valueFilter(CompareOperator.GREATER_OR_EQUAL, value(max)).canSkipBlock(entry));
+      assertFalse(valueFilter(CompareOperator.EQUAL, value(min + 1)).canSkipBlock(entry));
+      assertTrue(valueFilter(CompareOperator.EQUAL, value(max + 1)).canSkipBlock(entry));
+      assertFalse(valueFilter(CompareOperator.NOT_EQUAL, value(min)).canSkipBlock(entry));
+      assertTrue(new ValueFilter(CompareOperator.EQUAL,
+        new BinaryPrefixComparator(Bytes.toBytes("w"))).canSkipBlock(entry));
+      assertFalse(new ValueFilter(CompareOperator.EQUAL,
+        new BinaryPrefixComparator(Bytes.toBytes("v"))).canSkipBlock(entry));
+      // Comparators not ordering values as bytes never skip.
+      assertFalse(new ValueFilter(CompareOperator.EQUAL, new RegexStringComparator("^w"))
+        .canSkipBlock(entry));
+      // Nor do the filters once the value bounds are dropped.
+      assertFalse(valueFilter(CompareOperator.LESS, value(min))
+        .canSkipBlock(DataBlockStats.withoutVersionStats(entry)));
+
+      assertTrue(new QualifierFilter(CompareOperator.EQUAL, new BinaryComparator(FAMILY))
+        .canSkipBlock(entry));
+      assertFalse(new QualifierFilter(CompareOperator.EQUAL, new BinaryComparator(QUALIFIER))
+        .canSkipBlock(DataBlockStats.withoutVersionStats(entry)));
+      assertTrue(new ColumnRangeFilter(Bytes.toBytes("r"), true, null, false).canSkipBlock(entry));
+      assertTrue(new ColumnRangeFilter(QUALIFIER, false, null, false).canSkipBlock(entry));
+      assertFalse(new ColumnRangeFilter(QUALIFIER, true, null, false).canSkipBlock(entry));
+      assertTrue(new ColumnRangeFilter(null, false, QUALIFIER, false).canSkipBlock(entry));
+      assertFalse(new ColumnRangeFilter(null, false, QUALIFIER, true).canSkipBlock(entry));
+
+      assertTrue(new TimestampsFilter(Arrays.asList((long) min - 1, (long) max + 1))
+        .canSkipBlock(entry));
+      assertFalse(new TimestampsFilter(Arrays.asList((long) min - 1, (long) max))
+        .canSkipBlock(entry));
+    }
+  }
+
+  private static ValueFilter valueFilter(CompareOperator op, byte[] value) {
+    return new ValueFilter(op, new BinaryComparator(value));
+  }
+
+  @Test
+  public void testRegionScan() throws IOException {
+    HRegion region = TEST_UTIL.createTestRegion("TestDataBlockStats",
+      ColumnFamilyDescriptorBuilder.newBuilder(FAMILY).setBlocksize(512)
+        .setMaxVersions(Integer.MAX_VALUE).setConfiguration(DataBlockStats.ENABLED_KEY, "true")
+        .build());
+    try {
+      for (int i = 0; i < NUM_KV; i++) {
+        region.put(new Put(row(i)).addColumn(FAMILY, QUALIFIER, i + 1, value(i)));
+      }
+      region.flush(true);
+      region.delete(new Delete(row(DELETED + 500)));
+      region.flush(true);
+
+      Scan scan = new Scan().readAllVersions().setFilter(
+        new ValueFilter(CompareOperator.GREATER_OR_EQUAL, new BinaryComparator(value(DELETED))));
+      List<Integer> expected = new ArrayList<>();
+      for (int i = DELETED; i < NUM_KV; i++) {
+        if (i != DELETED + 500) {
+          expected.add(i);
+        }
+      }
+      assertEquals(expected, scanRows(region, scan));
+
+      expected.clear();
+      for (int i = 99; i < 199; i++) {
+        expected.add(i);
+      }
+      assertEquals(expected, scanRows(region, new Scan().setTimeRange(100, 200)));
+    } finally {
+      HBaseTestingUtil.closeRegionAndWAL(region);
+    }
+  }
+
+  private static List<Integer> scanRows(HRegion region, Scan scan) throws IOException {
+    List<Integer> rows = new ArrayList<>();
+    try (RegionScanner scanner = region.getScanner(scan)) {
+      List<Cell> cells = new ArrayList<>();
+      boolean more;
+      do {
+        more = scanner.next(cells);
+        for (Cell cell : cells) {
+          rows.add(Integer.parseInt(Bytes.toString(CellUtil.cloneRow(cell)).substring(4)));
+        }
+        cells.clear();
+      } while (more);
+    }
+    return rows;
+  }
+}
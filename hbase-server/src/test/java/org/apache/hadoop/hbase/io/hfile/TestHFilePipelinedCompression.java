@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests HFiles whose data blocks are compressed in the background, see
+ * {@link HFileWriterImpl#COMPRESSION_THREADS_KEY}.
+ */
+@Category({ IOTests.class, SmallTests.class })
+public class TestHFilePipelinedCompression {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestHFilePipelinedCompression.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final int NUM_KV = 5000;
+
+  private Configuration conf;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws IOException {
+    conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.setBoolean(DataBlockStats.ENABLED_KEY, true);
+    conf.setInt(HFileWriterImpl.MAX_PENDING_BLOCKS_KEY, 3);
+    fs = FileSystem.get(conf);
+  }
+
+  private static KeyValue cell(int i) {
+    return new KeyValue(Bytes.toBytes(String.format("row-%08d", i)), FAMILY, QUALIFIER, i,
+      Bytes.toBytes(String.format("value-%08d-%s", i, i % 7 == 0 ? "seven" : "other")));
+  }
+
+  private Path write(String name, int compressionThreads, CacheConfig cacheConf)
+    throws IOException {
+    Configuration writerConf = new Configuration(conf);
+    writerConf.setInt(HFileWriterImpl.COMPRESSION_THREADS_KEY, compressionThreads);
+    Path path = new Path(TEST_UTIL.getDataTestDir(), name);
+    HFileContext meta = new HFileContextBuilder().withBlockSize(1024)
+      .withCompression(Compression.Algorithm.GZ).build();
+    try (HFile.Writer writer = HFile.getWriterFactory(writerConf, cacheConf).withPath(fs, path)
+      .withFileContext(meta).create()) {
+      for (int i = 0; i < NUM_KV; ++i) {
+        writer.append(cell(i));
+      }
+    }
+    return path;
+  }
+
+  private byte[] read(Path path) throws IOException {
+    try (FSDataInputStream in = fs.open(path)) {
+      return IOUtils.toByteArray(in);
+    }
+  }
+
+  private void assertCells(HFile.Reader reader) throws IOException {
+    List<Cell> cells = new ArrayList<>();
+    try (HFileScanner scanner = reader.getScanner(conf, true, true)) {
+      assertTrue(scanner.seekTo());
+      do {
+        cells.add(new KeyValue(scanner.getCell()));
+      } while (scanner.next());
+      for (int i = 0; i < NUM_KV; i += 97) {
+        assertEquals(0, scanner.seekTo(cell(i)));
+        assertEquals(cell(i), scanner.getCell());
+      }
+    }
+    assertEquals(NUM_KV, cells.size());
+    for (int i = 0; i < NUM_KV; ++i) {
+      assertEquals(cell(i), cells.get(i));
+    }
+  }
+
+  @Test
+  public void testSameFile() throws IOException {
+    CacheConfig cacheConf = new CacheConfig(conf);
+    Path sequential = write("sequential", 0, cacheConf);
+    Path pipelined = write("pipelined", 2, cacheConf);
+    // With a single level index, the blocks are written in the same order.
+    assertArrayEquals(read(sequential), read(pipelined));
+  }
+
+  @Test
+  public void testInlineBlocksAndCacheOnWrite() throws IOException {
+    // Leaf index blocks are written between the data blocks.
+    conf.setInt(HFileBlockIndex.MAX_CHUNK_SIZE_KEY, 256);
+    conf.setBoolean(CacheConfig.CACHE_BLOCKS_ON_WRITE_KEY, true);
+    conf.setBoolean(CacheConfig.CACHE_INDEX_BLOCKS_ON_WRITE_KEY, true);
+    BlockCache cache = BlockCacheFactory.createBlockCache(conf);
+    CacheConfig cacheConf = new CacheConfig(conf, cache);
+    Path path = write("inline", 2, cacheConf);
+    try (HFile.Reader reader = HFile.createReader(fs, path, CacheConfig.DISABLED, true, conf)) {
+      assertTrue(reader.getTrailer().getNumDataIndexLevels() > 1);
+      assertEquals(cache.getDataBlockCount(), reader.getDataBlockStats().getEntryCount());
+      assertCells(reader);
+    }
+    // The scanner reads the blocks cached on write.
+    try (HFile.Reader reader = HFile.createReader(fs, path, cacheConf, true, conf)) {
+      assertCells(reader);
+      assertEquals(0, cache.getStats().getMissCount());
+    }
+    cache.shutdown();
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ IOTests.class, MediumTests.class })
+public class TestHFileReadahead {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestHFileReadahead.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final int NUM_KV = 5000;
+
+  private static Configuration conf;
+  private static FileSystem fs;
+  private static Path path;
+
+  @BeforeClass
+  public static void setUp() throws IOException {
+    conf = TEST_UTIL.getConfiguration();
+    fs = FileSystem.get(conf);
+    path = new Path(TEST_UTIL.getDataTestDir(), "readahead");
+    // Small blocks and small index chunks, so that there are many data blocks interleaved with
+    // leaf index blocks.
+    conf.setInt(HFileBlockIndex.MAX_CHUNK_SIZE_KEY, 512);
+    HFileContext meta = new HFileContextBuilder().withBlockSize(512).build();
+    try (HFile.Writer writer = HFile.getWriterFactory(conf, new CacheConfig(conf))
+      .withPath(fs, path).withFileContext(meta).create()) {
+      for (int i = 0; i < NUM_KV; ++i) {
+        writer.append(new KeyValue(Bytes.toBytes(String.format("row-%08d", i)), FAMILY, QUALIFIER,
+          i, Bytes.toBytes(i)));
+      }
+    }
+  }
+
+  private static List<KeyValue> scan(HFile.Reader reader, int readaheadBlocks) throws IOException {
+    List<KeyValue> kvs = new ArrayList<>();
+    try (HFileScanner scanner = reader.getScanner(conf, false, true)) {
+      scanner.setReadahead(readaheadBlocks);
+      assertTrue(scanner.seekTo());
+      do {
+        kvs.add(new KeyValue(scanner.getCell()));
+      } while (scanner.next());
+    }
+    return kvs;
+  }
+
+  @Test
+  public void testScanWithReadahead() throws IOException {
+    try (HFile.Reader reader =
+      HFile.createReader(fs, path, CacheConfig.DISABLED, true, conf)) {
+      List<KeyValue> expected = scan(reader, 0);
+      assertEquals(NUM_KV, expected.size());
+      assertEquals(expected, scan(reader, 1));
+      assertEquals(expected, scan(reader, 8));
+    }
+  }
+
+  @Test
+  public void testReadNext() throws IOException {
+    try (HFile.Reader reader =
+      HFile.createReader(fs, path, CacheConfig.DISABLED, true, conf)) {
+      HFileReadahead readahead =
+        new HFileReadahead(reader, false, true, false, reader.getDataBlockEncoding(), 4);
+      HFileBlock block = reader.readBlock(reader.getTrailer().getFirstDataBlockOffset(), -1, false,
+        true, false, true, BlockType.DATA, null);
+      List<Long> offsets = new ArrayList<>();
+      boolean readAhead = false;
+      long lastDataBlockOffset = reader.getTrailer().getLastDataBlockOffset();
+      while (block.getOffset() < lastDataBlockOffset) {
+        HFileBlock next = readahead.readNext(block);
+        assertEquals(block.getOffset() + block.getOnDiskSizeWithHeader(), next.getOffset());
+        readAhead |= readahead.getPendingCount() > 0;
+        offsets.add(next.getOffset());
+        block.release();
+        block = next;
+      }
+      block.release();
+      assertTrue(readAhead);
+      assertTrue(offsets.size() > 2 * HFileReadahead.SEQUENTIAL_THRESHOLD);
+
+      // Going back to an earlier block is a seek, the blocks read ahead are dropped.
+      HFileBlock first = reader.readBlock(reader.getTrailer().getFirstDataBlockOffset(), -1, false,
+        true, false, true, BlockType.DATA, null);
+      HFileBlock next = readahead.readNext(first);
+      assertEquals(offsets.get(0).longValue(), next.getOffset());
+      assertEquals(0, readahead.getPendingCount());
+      first.release();
+      next.release();
+      readahead.drain();
+      assertFalse(readahead.getPendingCount() > 0);
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.ToLongFunction;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.Waiter;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the scheduling of the prefetches by {@link PrefetchExecutor}.
+ */
+@Category({ IOTests.class, SmallTests.class })
+public class TestPrefetchExecutor {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestPrefetchExecutor.class);
+
+  private Configuration conf;
+
+  @Before
+  public void setUp() {
+    conf = HBaseConfiguration.create();
+    conf.setInt(PrefetchExecutor.PREFETCH_DELAY, 0);
+    PrefetchExecutor.loadConfiguration(conf);
+  }
+
+  @After
+  public void tearDown() {
+    conf.setInt(PrefetchExecutor.PREFETCH_DELAY, 1000);
+    conf.setLong(PrefetchExecutor.PREFETCH_BANDWIDTH, 0);
+    PrefetchExecutor.loadConfiguration(conf);
+  }
+
+  private static Path path(String region, String file) {
+    return new Path("/hbase/data/default/table/" + region + "/f/" + file);
+  }
+
+  private static Runnable prefetch(Path path, List<String> done, CountDownLatch latch) {
+    return () -> {
+      try {
+        latch.await();
+        done.add(path.getName());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        PrefetchExecutor.complete(path);
+      }
+    };
+  }
+
+  @Test
+  public void testHottestFirst() throws Exception {
+    ToLongFunction<String> heat = region -> region.equals("hot") ? 100 : 0;
+    PrefetchExecutor.addHeatSource(heat);
+    List<String> done = Collections.synchronizedList(new ArrayList<>());
+    int threads = HBaseConfiguration.create().getInt("hbase.hfile.thread.prefetch", 4);
+    List<CountDownLatch> busy = new ArrayList<>();
+    try {
+      // Keeps all threads busy, so that the next prefetches wait for one.
+      for (int i = 0; i < threads; i++) {
+        CountDownLatch latch = new CountDownLatch(1);
+        busy.add(latch);
+        Path path = path("busy", "busy" + i);
+        PrefetchExecutor.request(path, prefetch(path, done, latch));
+      }
+      Waiter.waitFor(conf, 10000, PrefetchExecutor::isPrefetchStarted);
+      CountDownLatch noWait = new CountDownLatch(0);
+      Path cold = path("cold", "cold");
+      PrefetchExecutor.request(cold, prefetch(cold, done, noWait));
+      Path hot = path("hot", "hot");
+      PrefetchExecutor.request(hot, prefetch(hot, done, noWait));
+      // Frees a single thread, which runs the hottest first though requested last.
+      busy.get(0).countDown();
+      Waiter.waitFor(conf, 10000, () -> done.size() == 3);
+      assertEquals(Arrays.asList("busy0", "hot", "cold"), done);
+    } finally {
+      busy.forEach(CountDownLatch::countDown);
+      PrefetchExecutor.removeHeatSource(heat);
+    }
+    Waiter.waitFor(conf, 10000, () -> PrefetchExecutor.getPrefetchFutures().isEmpty());
+  }
+
+  @Test
+  public void testCancelRegion() throws Exception {
+    conf.setInt(PrefetchExecutor.PREFETCH_DELAY, Integer.MAX_VALUE);
+    conf.setFloat(PrefetchExecutor.PREFETCH_DELAY_VARIATION, 0);
+    PrefetchExecutor.loadConfiguration(conf);
+    List<String> done = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch noWait = new CountDownLatch(0);
+    Path moving1 = path("moving", "file1");
+    Path moving2 = path("moving", "file2");
+    Path staying = path("staying", "file1");
+    for (Path path : Arrays.asList(moving1, moving2, staying)) {
+      PrefetchExecutor.request(path, prefetch(path, done, noWait));
+    }
+    assertEquals(2, PrefetchExecutor.cancelRegion("moving"));
+    assertTrue(PrefetchExecutor.isCompleted(moving1));
+    assertTrue(PrefetchExecutor.isCompleted(moving2));
+    assertFalse(PrefetchExecutor.isCompleted(staying));
+    PrefetchExecutor.cancel(staying);
+    assertTrue(done.isEmpty());
+  }
+
+  @Test
+  public void testThrottle() {
+    conf.setLong(PrefetchExecutor.PREFETCH_BANDWIDTH, 1024 * 1024);
+    PrefetchExecutor.loadConfiguration(conf);
+    long start = System.nanoTime();
+    PrefetchExecutor.throttle(1024 * 1024);
+    PrefetchExecutor.throttle(1024 * 1024);
+    // The second megabyte waits for the first one.
+    assertTrue(System.nanoTime() - start >= 500_000_000L);
+
+    conf.setLong(PrefetchExecutor.PREFETCH_BANDWIDTH, 0);
+    PrefetchExecutor.loadConfiguration(conf);
+    start = System.nanoTime();
+    PrefetchExecutor.throttle(1024 * 1024 * 1024);
+    assertTrue(System.nanoTime() - start < 500_000_000L);
+  }
+}
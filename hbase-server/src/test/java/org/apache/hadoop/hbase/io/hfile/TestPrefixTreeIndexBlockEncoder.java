@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.CellComparatorImpl;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.io.encoding.IndexBlockEncoding;
+import org.apache.hadoop.hbase.io.hfile.PrefixTreeIndexBlockEncoder.Cursor;
+import org.apache.hadoop.hbase.io.hfile.PrefixTreeIndexBlockEncoder.EncodedIndexBlock;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ IOTests.class, MediumTests.class })
+public class TestPrefixTreeIndexBlockEncoder {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestPrefixTreeIndexBlockEncoder.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final int NUM_KV = 10000;
+
+  private Configuration conf;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws IOException {
+    conf = new Configuration(TEST_UTIL.getConfiguration());
+    fs = FileSystem.get(conf);
+  }
+
+  /** Long composite row keys sharing a tenant and a metric component, as seen in practice. */
+  private static byte[] compositeRow(int i) {
+    return Bytes.toBytes(String.format("tenant-0042/metric.cpu.user/host-%06d/%010d", i / 100, i));
+  }
+
+  @Test
+  public void testSearchMatchesNonRootFormat() throws IOException {
+    Random rand = new Random(12345);
+    BlockIndexChunk chunk = new HFileBlockIndex.BlockIndexChunkImpl();
+    List<byte[]> keys = new ArrayList<>();
+    int n = 200;
+    for (int i = 0; i < n; ++i) {
+      byte[] key = new KeyValue(compositeRow(i * 2 + 1), FAMILY, QUALIFIER).getKey();
+      keys.add(key);
+      chunk.add(key, i * 1000L, 100 + i);
+    }
+
+    EncodedIndexBlock encoded =
+      new EncodedIndexBlock(encode(PrefixTreeIndexBlockEncoder.INSTANCE, chunk));
+    ByteBuff plain = encode(NoOpIndexBlockEncoder.INSTANCE, chunk);
+    assertEquals(n, encoded.getNumEntries());
+
+    // Every key must round trip.
+    Cursor cursor = encoded.newCursor();
+    for (int i = 0; i < n; ++i) {
+      assertArrayEquals(keys.get(i), encoded.getKey(i, cursor));
+    }
+    assertNull(encoded.getKey(n, cursor));
+
+    // Probe exact keys, keys falling between entries, and keys before the first entry.
+    for (int i = 0; i < 2 * n + 2; ++i) {
+      KeyValue probe = new KeyValue(compositeRow(i), FAMILY, QUALIFIER);
+      if (rand.nextBoolean()) {
+        probe = KeyValueUtil.createFirstOnRow(compositeRow(i));
+      }
+      int expected = HFileBlockIndex.BlockIndexReader.binarySearchNonRootIndex(probe, plain,
+        CellComparatorImpl.COMPARATOR);
+      int actual = encoded.search(probe, CellComparatorImpl.COMPARATOR, cursor);
+      assertEquals("probe " + i, expected, actual);
+      if (actual >= 0) {
+        assertEquals(actual * 1000L, encoded.getBlockOffset(cursor));
+        assertEquals(100 + actual, encoded.getOnDiskDataSize(cursor));
+        byte[] next = encoded.getKeyAfterFound(cursor);
+        if (actual + 1 < n) {
+          assertArrayEquals(keys.get(actual + 1), next);
+        } else {
+          assertNull(next);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testEncodedBlockIsSmaller() throws IOException {
+    BlockIndexChunk chunk = new HFileBlockIndex.BlockIndexChunkImpl();
+    for (int i = 0; i < 500; ++i) {
+      chunk.add(new KeyValue(compositeRow(i), FAMILY, QUALIFIER).getKey(), i, i);
+    }
+    int plainSize = encode(NoOpIndexBlockEncoder.INSTANCE, chunk).limit();
+    int encodedSize = encode(PrefixTreeIndexBlockEncoder.INSTANCE, chunk).limit();
+    assertTrue("encoded=" + encodedSize + ", plain=" + plainSize, encodedSize * 2 < plainSize);
+  }
+
+  @Test
+  public void testEmptyChunk() throws IOException {
+    EncodedIndexBlock encoded = new EncodedIndexBlock(
+      encode(PrefixTreeIndexBlockEncoder.INSTANCE, new HFileBlockIndex.BlockIndexChunkImpl()));
+    assertEquals(0, encoded.getNumEntries());
+    assertEquals(-1, encoded.search(KeyValueUtil.createFirstOnRow(compositeRow(1)),
+      CellComparatorImpl.COMPARATOR, encoded.newCursor()));
+  }
+
+  @Test
+  public void testWriteAndReadMultiLevelIndex() throws IOException {
+    // Small chunks to get intermediate index levels.
+    conf.setInt(HFileBlockIndex.MAX_CHUNK_SIZE_KEY, 512);
+    Path plainPath = new Path(TEST_UTIL.getDataTestDir(), "plain_index");
+    Path encodedPath = new Path(TEST_UTIL.getDataTestDir(), "prefix_tree_index");
+    List<KeyValue> kvs = writeHFile(plainPath, IndexBlockEncoding.NONE);
+    writeHFile(encodedPath, IndexBlockEncoding.PREFIX_TREE);
+
+    CacheConfig cacheConf = new CacheConfig(conf);
+    try (HFile.Reader plain = HFile.createReader(fs, plainPath, cacheConf, true, conf);
+      HFile.Reader encoded = HFile.createReader(fs, encodedPath, cacheConf, true, conf)) {
+      assertEquals(IndexBlockEncoding.PREFIX_TREE.name(), Bytes
+        .toString(encoded.getHFileInfo().get(HFileIndexBlockEncoder.INDEX_BLOCK_ENCODING)));
+      assertTrue(encoded.getTrailer().getNumDataIndexLevels() > 2);
+      assertEquals(plain.getTrailer().getNumDataIndexLevels(),
+        encoded.getTrailer().getNumDataIndexLevels());
+      assertTrue(encoded.getTrailer().getUncompressedDataIndexSize()
+          < plain.getTrailer().getUncompressedDataIndexSize());
+      assertEquals(plain.getFirstKey().get(), encoded.getFirstKey().get());
+      assertEquals(plain.midKey().get(), encoded.midKey().get());
+
+      for (boolean pread : new boolean[] { false, true }) {
+        HFileScanner scanner = encoded.getScanner(conf, true, pread);
+        for (KeyValue kv : kvs) {
+          assertEquals(0, scanner.seekTo(kv));
+          assertEquals(kv, scanner.getCell());
+        }
+        // A key before the first one of the file.
+        assertEquals(-1, scanner.seekTo(KeyValueUtil.createFirstOnRow(Bytes.toBytes("a"))));
+        scanner.close();
+      }
+    }
+  }
+
+  private List<KeyValue> writeHFile(Path path, IndexBlockEncoding encoding) throws IOException {
+    HFileContext meta =
+      new HFileContextBuilder().withBlockSize(1024).withIndexBlockEncoding(encoding).build();
+    List<KeyValue> kvs = new ArrayList<>();
+    try (HFile.Writer writer = HFile.getWriterFactory(conf, new CacheConfig(conf))
+      .withPath(fs, path).withFileContext(meta).create()) {
+      for (int i = 0; i < NUM_KV; ++i) {
+        KeyValue kv = new KeyValue(compositeRow(i), FAMILY, QUALIFIER, i, Bytes.toBytes(i));
+        writer.append(kv);
+        kvs.add(kv);
+      }
+    }
+    return kvs;
+  }
+
+  private static ByteBuff encode(HFileIndexBlockEncoder encoder, BlockIndexChunk chunk)
+    throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    encoder.encode(chunk, false, new DataOutputStream(baos));
+    return ByteBuff.wrap(ByteBuffer.wrap(baos.toByteArray()));
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.ByteBufferKeyValue;
+import org.apache.hadoop.hbase.CellComparatorImpl;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
+import org.apache.hadoop.hbase.io.encoding.RowIndexCodecV1;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests that seeks in {@link DataBlockEncoding#ROW_INDEX_V1} blocks with a row hash index find the
+ * same cells as without it.
+ */
+@Category({ IOTests.class, MediumTests.class })
+public class TestRowIndexV1HashIndex {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestRowIndexV1HashIndex.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final int ROW_COUNT = 500;
+  private static final int CELLS_PER_ROW = 3;
+
+  private Configuration conf;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws IOException {
+    conf = new Configuration(TEST_UTIL.getConfiguration());
+    fs = FileSystem.get(conf);
+  }
+
+  private static byte[] row(int i) {
+    return Bytes.toBytes(String.format("row%06d", i));
+  }
+
+  private Path writeHFile(String name, boolean hashIndex) throws IOException {
+    Configuration writerConf = new Configuration(conf);
+    writerConf.setBoolean(RowIndexCodecV1.ROW_HASH_INDEX_ENABLED_KEY, hashIndex);
+    Path path = new Path(TEST_UTIL.getDataTestDir(), name);
+    // A single block, the index taking room in the blocks changing where they end otherwise, and
+    // with them the results of the seeks.
+    HFileContext context = new HFileContextBuilder().withBlockSize(1024 * 1024)
+      .withDataBlockEncoding(DataBlockEncoding.ROW_INDEX_V1)
+      .withCellComparator(CellComparatorImpl.COMPARATOR).build();
+    HFile.Writer writer = new HFile.WriterFactory(writerConf, new CacheConfig(writerConf))
+      .withPath(fs, path).withFileContext(context).create();
+    try {
+      // Only the even rows are written, the odd ones being looked up as absent rows.
+      for (int i = 0; i < ROW_COUNT; i += 2) {
+        for (int j = 0; j < CELLS_PER_ROW; j++) {
+          KeyValue kv = new KeyValue(row(i), FAMILY, Bytes.toBytes("q" + j), 1L,
+            Bytes.toBytes("value" + i + "-" + j));
+          // Some of the rows are hashed from a ByteBuffer.
+          writer.append(i % 4 == 0 ? kv : new ByteBufferKeyValue(ByteBuffer.wrap(kv.getBuffer()),
+            kv.getOffset(), kv.getLength()));
+        }
+      }
+    } finally {
+      writer.close();
+    }
+    return path;
+  }
+
+  private List<String> seek(Path path, boolean before) throws IOException {
+    List<String> results = new ArrayList<>();
+    HFile.Reader reader = HFile.createReader(fs, path, new CacheConfig(conf), true, conf);
+    try {
+      HFileScanner scanner = reader.getScanner(conf, true, true);
+      for (int i = 0; i < ROW_COUNT; i++) {
+        List<ExtendedCell> keys = new ArrayList<>();
+        keys.add(PrivateCellUtil.createFirstOnRow(row(i)));
+        keys.add(KeyValueUtil.createFirstOnRow(row(i), FAMILY, Bytes.toBytes("q1")));
+        keys.add(new KeyValue(row(i), FAMILY, Bytes.toBytes("q2"), 1L, KeyValue.Type.Put));
+        keys.add(PrivateCellUtil.createLastOnRow(row(i)));
+        for (ExtendedCell key : keys) {
+          if (before) {
+            boolean found = scanner.seekBefore(key);
+            results.add(found + " " + (found ? scanner.getCell() : ""));
+          } else {
+            int result = scanner.seekTo(key);
+            results.add(result + " " + (result >= 0 ? scanner.getCell() : ""));
+          }
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return results;
+  }
+
+  @Test
+  public void testSeeks() throws IOException {
+    Path withIndex = writeHFile("withRowHashIndex", true);
+    Path withoutIndex = writeHFile("withoutRowHashIndex", false);
+    // The index takes room in the blocks.
+    assertTrue(fs.getFileStatus(withIndex).getLen() > fs.getFileStatus(withoutIndex).getLen());
+    assertEquals(seek(withoutIndex, false), seek(withIndex, false));
+    assertEquals(seek(withoutIndex, true), seek(withIndex, true));
+  }
+}
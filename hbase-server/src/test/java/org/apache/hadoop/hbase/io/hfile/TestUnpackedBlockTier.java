@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the tier of unpacked blocks in front of the {@link LruBlockCache} when data blocks are
+ * cached compressed.
+ */
+@Category({ IOTests.class, SmallTests.class })
+public class TestUnpackedBlockTier {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestUnpackedBlockTier.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+  private static final Random RNG = new Random(9713312);
+
+  @Test
+  public void testHotBlocksAreKeptUnpacked() throws IOException {
+    Configuration conf = HBaseConfiguration.create(TEST_UTIL.getConfiguration());
+    conf.setBoolean(CacheConfig.CACHE_DATA_BLOCKS_COMPRESSED_KEY, true);
+    conf.setFloat(CacheConfig.CACHE_DATA_BLOCKS_COMPRESSED_HOT_TIER_FACTOR_KEY, 0.5f);
+    conf.setInt(CacheConfig.CACHE_DATA_BLOCKS_COMPRESSED_HOT_TIER_PROMOTE_KEY, 2);
+    LruBlockCache cache =
+      new LruBlockCache(4 * 1024 * 1024, HConstants.DEFAULT_BLOCKSIZE, false, conf);
+    UnpackedBlockTier tier = cache.getUnpackedTier();
+    assertNotNull(tier);
+    CacheConfig cacheConf = new CacheConfig(conf, cache);
+    FileSystem fs = FileSystem.get(conf);
+    Path path = new Path(TEST_UTIL.getDataTestDir(), "testHotBlocksAreKeptUnpacked");
+    writeHFile(conf, cacheConf, fs, path);
+
+    try (HFile.Reader reader = HFile.createReader(fs, path, cacheConf, true, conf)) {
+      // Miss, then two hits unpacking the block, the second one promoting it.
+      int dataBlocks = 0;
+      for (int i = 0; i < 3; i++) {
+        List<HFileBlock> blocks = readDataBlocks(reader);
+        assertFalse(blocks.isEmpty());
+        for (HFileBlock block : blocks) {
+          assertTrue(block.isUnpacked());
+          block.release();
+        }
+        dataBlocks = blocks.size();
+      }
+      assertEquals(dataBlocks, tier.getBlockCount());
+      assertEquals(dataBlocks, tier.getPromotedCount());
+      assertEquals(0, tier.getHitCount());
+
+      // Now served unpacked by the tier.
+      List<HFileBlock> blocks = readDataBlocks(reader);
+      for (HFileBlock block : blocks) {
+        BlockCacheKey key = new BlockCacheKey(reader.getName(), block.getOffset());
+        HFileBlock unpacked = (HFileBlock) cache.getUnpackedBlock(key);
+        assertSame(unpacked, block);
+        unpacked.release();
+        block.release();
+      }
+      assertTrue(tier.getHitCount() >= dataBlocks);
+      // The packed blocks and the tier are both accounted in the size of the cache.
+      assertTrue(tier.size() > 0);
+      assertTrue(cache.getCurrentSize() > tier.size());
+
+      cache.evictBlocksByHfileName(reader.getName());
+      assertEquals(0, tier.getBlockCount());
+      assertEquals(0, tier.size());
+    }
+  }
+
+  @Test
+  public void testEvictsLessFrequentBlocks() {
+    HFileBlock[] blocks = new HFileBlock[3];
+    BlockCacheKey[] keys = new BlockCacheKey[blocks.length];
+    CacheTestUtils.HFileBlockPair[] pairs = CacheTestUtils.generateHFileBlocks(1024, blocks.length);
+    for (int i = 0; i < blocks.length; i++) {
+      blocks[i] = (HFileBlock) pairs[i].getBlock();
+      keys[i] = pairs[i].getBlockName();
+    }
+    // Room for two blocks.
+    UnpackedBlockTier tier =
+      new UnpackedBlockTier(blocks[0].heapSize() * 5 / 2, 1024, 1, delta -> {
+      });
+    assertNull(tier.getBlock(keys[0]));
+    assertNull(tier.getBlock(keys[0]));
+    assertNull(tier.getBlock(keys[1]));
+    assertTrue(tier.cacheBlock(keys[0], blocks[0]));
+    assertTrue(tier.cacheBlock(keys[1], blocks[1]));
+    // Not hotter than any block in the tier.
+    assertNull(tier.getBlock(keys[2]));
+    assertFalse(tier.cacheBlock(keys[2], blocks[2]));
+    // Hotter than the second block, which makes room.
+    for (int i = 0; i < 3; i++) {
+      assertNull(tier.getBlock(keys[2]));
+    }
+    assertTrue(tier.cacheBlock(keys[2], blocks[2]));
+    assertEquals(2, tier.getBlockCount());
+    HFileBlock block = tier.getBlock(keys[0]);
+    assertNotNull(block);
+    block.release();
+    assertNull(tier.getBlock(keys[1]));
+    tier.clear();
+    assertEquals(0, tier.size());
+  }
+
+  @Test
+  public void testConcurrentPromotions() throws Exception {
+    CacheTestUtils.HFileBlockPair[] pairs = CacheTestUtils.generateHFileBlocks(1024, 64);
+    long blockSize = ((HFileBlock) pairs[0].getBlock()).heapSize();
+    // Room for ten blocks, all as frequent, so none gets evicted once full.
+    long maxSize = blockSize * 10;
+    UnpackedBlockTier tier = new UnpackedBlockTier(maxSize, 1024, 1, delta -> {
+    });
+    for (CacheTestUtils.HFileBlockPair pair : pairs) {
+      assertNull(tier.getBlock(pair.getBlockName()));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (CacheTestUtils.HFileBlockPair pair : pairs) {
+        futures.add(executor
+          .submit(() -> tier.cacheBlock(pair.getBlockName(), (HFileBlock) pair.getBlock())));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertTrue(tier.size() + " > " + maxSize, tier.size() <= maxSize);
+    assertEquals(tier.getBlockCount() * blockSize, tier.size());
+    tier.clear();
+    assertEquals(0, tier.size());
+  }
+
+  private static void writeHFile(Configuration conf, CacheConfig cacheConf, FileSystem fs,
+    Path path) throws IOException {
+    HFileContext context =
+      new HFileContextBuilder().withCompression(Compression.Algorithm.GZ).build();
+    try (HFile.Writer writer = new HFile.WriterFactory(conf, cacheConf).withPath(fs, path)
+      .withFileContext(context).create()) {
+      byte[] family = Bytes.toBytes("f");
+      byte[] qualifier = Bytes.toBytes("q");
+      for (int i = 0; i < 2000; i++) {
+        writer.append(new KeyValue(RandomKeyValueUtil.randomOrderedKey(RNG, i), family, qualifier,
+          RandomKeyValueUtil.randomValue(RNG)));
+      }
+    }
+  }
+
+  private static List<HFileBlock> readDataBlocks(HFile.Reader reader) throws IOException {
+    List<HFileBlock> blocks = new ArrayList<>();
+    long offset = reader.getTrailer().getFirstDataBlockOffset();
+    long max = reader.getTrailer().getLastDataBlockOffset();
+    while (offset <= max) {
+      HFileBlock block =
+        reader.readBlock(offset, -1, true, false, false, true, BlockType.DATA, null);
+      offset += block.getOnDiskSizeWithHeader();
+      blocks.add(block);
+    }
+    return blocks;
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.io.ByteBuffAllocator;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.BlockType;
+import org.apache.hadoop.hbase.util.AbstractHBaseTool;
+
+import org.apache.hbase.thirdparty.org.apache.commons.cli.CommandLine;
+import org.apache.hbase.thirdparty.org.apache.commons.cli.Option;
+
+/**
+ * Measures the heap retained by the BucketCache backingMap index, comparing the default
+ * {@link ConcurrentHashMap} with {@link PackedBackingMap}, and the latency of lookups. The
+ * {@link BucketEntry} values are shared by all the keys so that only the index itself is counted.
+ * Run with a heap large enough for the number of entries, e.g. -Xmx32g for 100M entries.
+ */
+public class BackingMapPerformanceEvaluation extends AbstractHBaseTool {
+
+  // Command line options and defaults.
+  public static final int DEFAULT_NUM_ENTRIES = 100_000_000;
+  public static final Option NUM_ENTRIES_OPTION = new Option("entries", true,
+    "Number of blocks in the backing map. Default: " + DEFAULT_NUM_ENTRIES);
+  public static final int DEFAULT_BLOCKS_PER_FILE = 4096;
+  public static final Option BLOCKS_PER_FILE_OPTION = new Option("blocks_per_file", true,
+    "Number of blocks per hfile. Default: " + DEFAULT_BLOCKS_PER_FILE);
+  public static final Option MAP_OPTION =
+    new Option("map", true, "Map to evaluate, 'chm', 'packed' or 'both'. Default: both");
+
+  private int numEntries = DEFAULT_NUM_ENTRIES;
+  private int blocksPerFile = DEFAULT_BLOCKS_PER_FILE;
+  private String mapType = "both";
+
+  @Override
+  protected void addOptions() {
+    addOption(NUM_ENTRIES_OPTION);
+    addOption(BLOCKS_PER_FILE_OPTION);
+    addOption(MAP_OPTION);
+  }
+
+  @Override
+  protected void processOptions(CommandLine cmd) {
+    numEntries = getOptionAsInt(cmd, NUM_ENTRIES_OPTION.getOpt(), DEFAULT_NUM_ENTRIES);
+    blocksPerFile = getOptionAsInt(cmd, BLOCKS_PER_FILE_OPTION.getOpt(), DEFAULT_BLOCKS_PER_FILE);
+    mapType = cmd.getOptionValue(MAP_OPTION.getOpt(), mapType);
+  }
+
+  private BlockCacheKey key(int i) {
+    int file = i / blocksPerFile;
+    return new BlockCacheKey(String.format("%032x", file), "cf" + (file % 4),
+      String.format("region-%08x", file / 64), (i % blocksPerFile) * 65536L, true, BlockType.DATA,
+      false);
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(200);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private void evaluate(String name, Supplier<Map<BlockCacheKey, BucketEntry>> mapSupplier)
+    throws InterruptedException {
+    BucketEntry entry = new BucketEntry(0, 65536, 65536, 0L, false, (e) -> ByteBuffAllocator.NONE,
+      ByteBuffAllocator.HEAP);
+    long before = usedHeap();
+    Map<BlockCacheKey, BucketEntry> map = mapSupplier.get();
+    long start = System.nanoTime();
+    for (int i = 0; i < numEntries; i++) {
+      map.put(key(i), entry);
+    }
+    long putNanos = System.nanoTime() - start;
+    long heap = usedHeap() - before;
+
+    int numGets = Math.min(numEntries, 10_000_000);
+    long step = Math.max(1, numEntries / numGets);
+    long found = 0;
+    start = System.nanoTime();
+    for (int i = 0; i < numGets; i++) {
+      if (map.get(key((int) ((i * step) % numEntries))) != null) {
+        found++;
+      }
+    }
+    long getNanos = System.nanoTime() - start;
+
+    System.out.println("******************************************");
+    System.out.println("Map                 : " + name);
+    System.out.println("Entries             : " + map.size());
+    System.out.println("Heap bytes          : " + heap);
+    System.out.println("Heap bytes per entry: " + (double) heap / numEntries);
+    System.out.println("Put ns/op           : " + (double) putNanos / numEntries);
+    System.out.println("Get ns/op           : " + (double) getNanos / numGets);
+    System.out.println("******************************************");
+    System.out.println("Raw format for scripts");
+    System.out.println(String.format(
+      "RESULT [map=%s, %s=%s, heap_bytes=%s, heap_bytes_per_entry=%s, put_ns=%s, get_ns=%s, "
+        + "found=%s]",
+      name, NUM_ENTRIES_OPTION.getOpt(), numEntries, heap, heap / numEntries,
+      putNanos / numEntries, getNanos / numGets, found));
+    map.clear();
+  }
+
+  @Override
+  protected int doWork() throws Exception {
+    if (mapType.equals("chm") || mapType.equals("both")) {
+      evaluate("chm", () -> new ConcurrentHashMap<>(numEntries));
+    }
+    if (mapType.equals("packed") || mapType.equals("both")) {
+      evaluate("packed", PackedBackingMap::new);
+    }
+    return 0;
+  }
+
+  public static void main(String[] args) throws IOException {
+    BackingMapPerformanceEvaluation tool = new BackingMapPerformanceEvaluation();
+    tool.setConf(HBaseConfiguration.create());
+    tool.run(args);
+  }
+}
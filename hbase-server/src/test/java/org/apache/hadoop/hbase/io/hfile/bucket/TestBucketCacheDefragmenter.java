@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.io.hfile.CacheTestUtils;
+import org.apache.hadoop.hbase.io.hfile.CacheTestUtils.HFileBlockPair;
+import org.apache.hadoop.hbase.io.hfile.Cacheable;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ IOTests.class, MediumTests.class })
+public class TestBucketCacheDefragmenter {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestBucketCacheDefragmenter.class);
+
+  private static final int SMALL = 8 * 1024;
+  private static final int LARGE = 32 * 1024;
+  // 4 large or 16 small items per bucket, 8 buckets.
+  private static final long CAPACITY = 8 * 4 * LARGE;
+
+  @Test
+  public void testStartDraining() throws Exception {
+    BucketAllocator allocator = new BucketAllocator(CAPACITY, new int[] { SMALL, LARGE });
+    assertEquals(-1, allocator.startDraining());
+    List<Long> offsets = new ArrayList<>();
+    // The small size claims all the buckets but the only one of the large size.
+    for (int i = 0; i < 7 * 16; i++) {
+      offsets.add(allocator.allocateBlock(SMALL));
+    }
+    for (int i = 0; i < 4; i++) {
+      allocator.allocateBlock(LARGE);
+    }
+    for (int i = 0; i < offsets.size(); i += 2) {
+      allocator.freeBlock(offsets.get(i), SMALL);
+    }
+    // Nothing starved yet.
+    assertEquals(-1, allocator.startDraining());
+    assertLargeAllocationFails(allocator);
+
+    int bucketNo = allocator.startDraining();
+    assertNotEquals(-1, bucketNo);
+    // The draining bucket takes no new block, even once it has room.
+    long offsetInBucket = -1;
+    for (long offset : offsets) {
+      if (allocator.getBucketIndex(offset) == bucketNo) {
+        offsetInBucket = offset;
+        break;
+      }
+    }
+    allocator.freeBlock(offsetInBucket + SMALL, SMALL);
+    for (int i = 0; i < 7 * 8 - 8; i++) {
+      assertNotEquals(bucketNo, allocator.getBucketIndex(allocator.allocateBlock(SMALL)));
+    }
+    allocator.stopDraining(bucketNo);
+    assertEquals(bucketNo, allocator.getBucketIndex(allocator.allocateBlock(SMALL)));
+  }
+
+  @Test
+  public void testDefragment() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    // Filling the cache must not trigger any eviction.
+    conf.setFloat(BucketCache.ACCEPT_FACTOR_CONFIG_NAME, 1.0f);
+    conf.setFloat(BucketCache.MIN_FACTOR_CONFIG_NAME, 1.0f);
+    BucketCache cache = new BucketCache("offheap", CAPACITY, SMALL, new int[] { SMALL, LARGE },
+      1, 1000, null, BucketCache.DEFAULT_ERROR_TOLERATION_DURATION, conf);
+    try {
+      HFileBlockPair[] small = CacheTestUtils.generateHFileBlocks(SMALL / 2, 7 * 16);
+      HFileBlockPair[] large = CacheTestUtils.generateHFileBlocks(LARGE / 2, 4);
+      for (HFileBlockPair block : small) {
+        cacheAndWait(cache, block);
+      }
+      for (HFileBlockPair block : large) {
+        cacheAndWait(cache, block);
+      }
+      List<HFileBlockPair> kept = new ArrayList<>();
+      for (int i = 0; i < small.length; i++) {
+        if (i % 2 == 0) {
+          assertTrue(cache.evictBlock(small[i].getBlockName()));
+        } else {
+          kept.add(small[i]);
+        }
+      }
+      BucketAllocator allocator = cache.getAllocator();
+      assertLargeAllocationFails(allocator);
+
+      BucketCacheDefragmenter defragmenter =
+        new BucketCacheDefragmenter(cache, 1000, Long.MAX_VALUE / 1000);
+      assertEquals(8 * small[0].getBlock().getSerializedLength(), defragmenter.defragment());
+      assertEquals(0, defragmenter.defragment());
+
+      // The relocated blocks are still there, with the same content.
+      for (HFileBlockPair block : kept) {
+        assertBlockEquals(cache, block);
+      }
+      for (HFileBlockPair block : large) {
+        assertBlockEquals(cache, block);
+      }
+      assertEquals(kept.size() + large.length, cache.getBlockCount());
+      // The freed bucket is now available to the large size.
+      allocator.allocateBlock(LARGE);
+    } finally {
+      cache.shutdown();
+    }
+  }
+
+  private static void assertLargeAllocationFails(BucketAllocator allocator) throws Exception {
+    try {
+      allocator.allocateBlock(LARGE);
+      fail("Should be full");
+    } catch (CacheFullException e) {
+      // expected
+    }
+  }
+
+  private static void cacheAndWait(BucketCache cache, HFileBlockPair block) throws Exception {
+    cache.cacheBlock(block.getBlockName(), block.getBlock());
+    TestBucketCache.waitUntilFlushedToBucket(cache, block.getBlockName());
+  }
+
+  private static void assertBlockEquals(BucketCache cache, HFileBlockPair block) {
+    Cacheable cached = cache.getBlock(block.getBlockName(), false, false, false);
+    assertNotNull(cached);
+    try {
+      ByteBuffer expected = ByteBuffer.allocate(block.getBlock().getSerializedLength());
+      ByteBuffer actual = ByteBuffer.allocate(cached.getSerializedLength());
+      block.getBlock().serialize(expected, true);
+      cached.serialize(actual, true);
+      assertEquals(expected, actual);
+    } finally {
+      cached.release();
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.Waiter;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.BlockType;
+import org.apache.hadoop.hbase.io.hfile.CacheStats;
+import org.apache.hadoop.hbase.io.hfile.CacheTestUtils;
+import org.apache.hadoop.hbase.io.hfile.CacheTestUtils.HFileBlockPair;
+import org.apache.hadoop.hbase.io.hfile.Cacheable;
+import org.apache.hadoop.hbase.regionserver.HRegion;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the per namespace and per table capacity partitions of the {@link BucketCache}.
+ */
+@Category({ IOTests.class, MediumTests.class })
+public class TestBucketCachePartitions {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestBucketCachePartitions.class);
+
+  private static final int BLOCK_SIZE = 4096;
+
+  @Test
+  public void testScanDoesNotFlushOtherPartitions() throws Exception {
+    Map<String, HRegion> onlineRegions = new HashMap<>();
+    onlineRegions.put("hotRegion", mockRegion("ns1:hot"));
+    onlineRegions.put("scanRegion", mockRegion("ns2:scan"));
+    Configuration conf = HBaseConfiguration.create();
+    conf.set(BucketCachePartitions.PARTITIONS_KEY, "ns1, ns2:scan");
+    conf.setFloat(BucketCachePartitions.PARTITION_KEY_PREFIX + "ns1.min", 0.25f);
+    conf.setFloat(BucketCachePartitions.PARTITION_KEY_PREFIX + "ns2:scan.max", 0.25f);
+    BucketCache cache = new BucketCache("offheap", 1024 * 1024, BLOCK_SIZE,
+      new int[] { 2 * BLOCK_SIZE }, 1, 1000, null, BucketCache.DEFAULT_ERROR_TOLERATION_DURATION,
+      conf, onlineRegions);
+    try {
+      BlockCacheKey[] hot = cacheBlocks(cache, "hotRegion", 16);
+      for (BlockCacheKey key : hot) {
+        assertNotNull(read(cache, key));
+      }
+      // A scan much larger than the cache, every block is read once.
+      cacheBlocks(cache, "scanRegion", 512);
+
+      // The hot blocks are the least recently used ones, but their partition is under its
+      // minimum share.
+      for (BlockCacheKey key : hot) {
+        assertNotNull("Hot block " + key + " was evicted", read(cache, key));
+      }
+      Map<String, CacheStats> stats = cache.getStats().getPartitionStats();
+      assertEquals(2, stats.size());
+      assertEquals(0, stats.get("ns1").getEvictedCount());
+      assertEquals(2 * hot.length, stats.get("ns1").getHitCount());
+      assertEquals(hot.length, stats.get("ns1").getMissCount());
+      assertTrue(stats.get("ns2:scan").getEvictedCount() > 0);
+      assertEquals(512, stats.get("ns2:scan").getMissCount());
+    } finally {
+      cache.shutdown();
+    }
+  }
+
+  @Test
+  public void testUnpartitionedTable() throws Exception {
+    Map<String, HRegion> onlineRegions = new HashMap<>();
+    onlineRegions.put("region", mockRegion("ns3:t"));
+    Configuration conf = HBaseConfiguration.create();
+    conf.set(BucketCachePartitions.PARTITIONS_KEY, "ns1,ns2:t");
+    BucketCachePartitions partitions = BucketCachePartitions.create(conf, onlineRegions);
+    assertNotNull(partitions);
+    assertNull(partitions.getPartition(key("region", 0)));
+    assertNull(partitions.getPartition(key("offlineRegion", 0)));
+    assertNull(partitions.getPartition(new BlockCacheKey("file", 0)));
+
+    assertNull(BucketCachePartitions.create(HBaseConfiguration.create(), onlineRegions));
+  }
+
+  @Test
+  public void testInvalidShares() {
+    Configuration conf = HBaseConfiguration.create();
+    conf.set(BucketCachePartitions.PARTITIONS_KEY, "ns1,ns2");
+    conf.setFloat(BucketCachePartitions.PARTITION_KEY_PREFIX + "ns1.min", 0.6f);
+    conf.setFloat(BucketCachePartitions.PARTITION_KEY_PREFIX + "ns2.min", 0.6f);
+    try {
+      BucketCachePartitions.create(conf, new HashMap<>());
+      fail("Minimum shares add up to more than the capacity");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    conf.setFloat(BucketCachePartitions.PARTITION_KEY_PREFIX + "ns2.min", 0.2f);
+    conf.setFloat(BucketCachePartitions.PARTITION_KEY_PREFIX + "ns2.max", 0.1f);
+    try {
+      BucketCachePartitions.create(conf, new HashMap<>());
+      fail("Maximum share below the minimum share");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private static HRegion mockRegion(String table) {
+    HRegion region = mock(HRegion.class);
+    when(region.getTableDescriptor())
+      .thenReturn(TableDescriptorBuilder.newBuilder(TableName.valueOf(table)).build());
+    return region;
+  }
+
+  private static BlockCacheKey key(String regionName, long offset) {
+    return new BlockCacheKey(regionName + "-file", "cf", regionName, offset, true, BlockType.DATA,
+      false);
+  }
+
+  private static BlockCacheKey[] cacheBlocks(BucketCache cache, String regionName, int count)
+    throws InterruptedException {
+    HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(BLOCK_SIZE, count);
+    BlockCacheKey[] keys = new BlockCacheKey[count];
+    for (int i = 0; i < count; i++) {
+      keys[i] = key(regionName, i * BLOCK_SIZE);
+      // A miss first, as a reader does before caching the block it loaded.
+      assertNull(read(cache, keys[i]));
+      cache.cacheBlock(keys[i], blocks[i].getBlock());
+      Waiter.waitFor(HBaseConfiguration.create(), 10000, () -> cache.ramCache.isEmpty());
+    }
+    return keys;
+  }
+
+  private static Cacheable read(BucketCache cache, BlockCacheKey key) {
+    Cacheable block = cache.getBlock(key, true, false, true);
+    if (block != null) {
+      block.release();
+    }
+    return block;
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import static org.apache.hadoop.hbase.io.hfile.CacheConfig.BUCKETCACHE_PERSIST_INTERVAL_KEY;
+import static org.apache.hadoop.hbase.io.hfile.bucket.BucketCache.DEFAULT_ERROR_TOLERATION_DURATION;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.io.ByteBuffAllocator;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.CacheTestUtils;
+import org.apache.hadoop.hbase.io.hfile.CacheTestUtils.HFileBlockPair;
+import org.apache.hadoop.hbase.io.hfile.Cacheable;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the recovery of a persistent {@link BucketCache} from its snapshot and the
+ * {@link BucketCachePersistenceLog} of the changes since.
+ */
+@Category({ IOTests.class, MediumTests.class })
+public class TestBucketCachePersistenceLog {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestBucketCachePersistenceLog.class);
+
+  private static final long CAPACITY = 32 * 1024 * 1024;
+  private static final int[] BUCKET_SIZES = new int[] { 8 * 1024 + 1024 };
+
+  @Test
+  public void testRecoverFromSnapshotAndLog() throws Exception {
+    HBaseTestingUtil testUtil = new HBaseTestingUtil();
+    Path testDir = testUtil.getDataTestDir();
+    testUtil.getTestFileSystem().mkdirs(testDir);
+    Configuration conf = createConf(Long.MAX_VALUE);
+    BucketCache cache = createCache(testDir, conf);
+    HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(8192, 4);
+    HFileBlockPair[] smallerBlocks = CacheTestUtils.generateHFileBlocks(4096, 1);
+    for (HFileBlockPair block : blocks) {
+      cacheAndWait(cache, block);
+    }
+    cache.persistToFile();
+    // Changes after the snapshot, only in the log. The smaller block takes the slot of the evicted
+    // one.
+    assertTrue(cache.evictBlock(blocks[3].getBlockName()));
+    cacheAndWait(cache, smallerBlocks[0]);
+    cache.getPersistenceLog().sync();
+
+    // Recovers without shutting down the previous cache, as after a crash.
+    BucketCache recovered = createCache(testDir, conf);
+    try {
+      BlockCacheKey[] keys =
+        CacheTestUtils.regenerateKeys(blocks, CacheTestUtils.getHFileNames(blocks));
+      BlockCacheKey[] smallerKeys =
+        CacheTestUtils.regenerateKeys(smallerBlocks, CacheTestUtils.getHFileNames(smallerBlocks));
+      assertEquals(4, recovered.backingMap.size());
+      for (int i = 0; i < 3; i++) {
+        assertBlock(blocks[i], recovered.getBlock(keys[i], false, false, false));
+      }
+      assertNull(recovered.getBlock(keys[3], false, false, false));
+      assertBlock(smallerBlocks[0], recovered.getBlock(smallerKeys[0], false, false, false));
+    } finally {
+      recovered.shutdown();
+      cache.shutdown();
+    }
+  }
+
+  @Test
+  public void testReplayOverlappingInsert() throws Exception {
+    HBaseTestingUtil testUtil = new HBaseTestingUtil();
+    Path testDir = testUtil.getDataTestDir();
+    testUtil.getTestFileSystem().mkdirs(testDir);
+    Configuration conf = createConf(Long.MAX_VALUE);
+    BucketCache cache = createCache(testDir, conf);
+    HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(8192, 2);
+    HFileBlockPair[] smallerBlocks = CacheTestUtils.generateHFileBlocks(4096, 1);
+    for (HFileBlockPair block : blocks) {
+      cacheAndWait(cache, block);
+    }
+    cache.persistToFile();
+    // An insert in the slot of a block, with no eviction of the block before it.
+    BucketEntry entry = cache.backingMap.get(blocks[1].getBlockName());
+    BucketEntry overlapping = new BucketEntry(entry.offset(), 4096, 4096, 1, false,
+      cache::createRecycler, ByteBuffAllocator.HEAP);
+    overlapping.setDeserializerReference(smallerBlocks[0].getBlock().getDeserializer());
+    cache.getPersistenceLog().inserted(smallerBlocks[0].getBlockName(), overlapping);
+    cache.getPersistenceLog().sync();
+
+    BucketCache recovered = createCache(testDir, conf);
+    try {
+      BlockCacheKey[] keys =
+        CacheTestUtils.regenerateKeys(blocks, CacheTestUtils.getHFileNames(blocks));
+      BlockCacheKey[] smallerKeys =
+        CacheTestUtils.regenerateKeys(smallerBlocks, CacheTestUtils.getHFileNames(smallerBlocks));
+      assertEquals(2, recovered.backingMap.size());
+      assertTrue(recovered.backingMap.containsKey(keys[0]));
+      assertFalse(recovered.backingMap.containsKey(keys[1]));
+      assertEquals(entry.offset(), recovered.backingMap.get(smallerKeys[0]).offset());
+    } finally {
+      recovered.shutdown();
+      cache.shutdown();
+    }
+  }
+
+  @Test
+  public void testCompaction() throws Exception {
+    HBaseTestingUtil testUtil = new HBaseTestingUtil();
+    Path testDir = testUtil.getDataTestDir();
+    testUtil.getTestFileSystem().mkdirs(testDir);
+    Configuration conf = createConf(1);
+    BucketCache cache = createCache(testDir, conf);
+    BucketCachePersistenceLog log = cache.getPersistenceLog();
+    HFileBlockPair[] blocks = CacheTestUtils.generateHFileBlocks(8192, 4);
+    for (HFileBlockPair block : blocks) {
+      cacheAndWait(cache, block);
+    }
+    assertTrue(log.needsCompaction());
+    log.compact();
+    assertFalse(log.needsCompaction());
+    assertEquals(0, log.getSize());
+    assertTrue(new File(testDir + "/bucket.persistence").exists());
+    assertEquals(1, countLogs(testDir));
+
+    // Shutting down writes a last snapshot, with no log left.
+    assertTrue(cache.evictBlock(blocks[0].getBlockName()));
+    cache.shutdown();
+    assertEquals(0, countLogs(testDir));
+    BucketCache recovered = createCache(testDir, conf);
+    try {
+      assertEquals(3, recovered.backingMap.size());
+      BlockCacheKey[] keys =
+        CacheTestUtils.regenerateKeys(blocks, CacheTestUtils.getHFileNames(blocks));
+      for (int i = 1; i < blocks.length; i++) {
+        assertBlock(blocks[i], recovered.getBlock(keys[i], false, false, false));
+      }
+    } finally {
+      recovered.shutdown();
+    }
+  }
+
+  private static Configuration createConf(long compactionSize) {
+    Configuration conf = HBaseConfiguration.create();
+    // Disables the persister thread, the tests sync and compact the log themselves.
+    conf.setLong(BUCKETCACHE_PERSIST_INTERVAL_KEY, Long.MAX_VALUE);
+    conf.setBoolean(BucketCachePersistenceLog.ENABLED_KEY, true);
+    conf.setLong(BucketCachePersistenceLog.COMPACTION_SIZE_KEY, compactionSize);
+    return conf;
+  }
+
+  private static BucketCache createCache(Path testDir, Configuration conf) throws Exception {
+    BucketCache cache = new BucketCache("file:" + testDir + "/bucket.cache", CAPACITY, 8192,
+      BUCKET_SIZES, BucketCache.DEFAULT_WRITER_THREADS, BucketCache.DEFAULT_WRITER_QUEUE_ITEMS,
+      testDir + "/bucket.persistence", DEFAULT_ERROR_TOLERATION_DURATION, conf);
+    assertTrue(cache.waitForCacheInitialization(10000));
+    assertNotNull(cache.getPersistenceLog());
+    return cache;
+  }
+
+  private static int countLogs(Path testDir) {
+    String[] logs =
+      new File(testDir.toString()).list((dir, name) -> name.startsWith("bucket.persistence.log."));
+    return logs.length;
+  }
+
+  private static void cacheAndWait(BucketCache cache, HFileBlockPair block) throws Exception {
+    cache.cacheBlock(block.getBlockName(), block.getBlock());
+    TestBucketCache.waitUntilFlushedToBucket(cache, block.getBlockName());
+  }
+
+  private static void assertBlock(HFileBlockPair expected, Cacheable actual) {
+    assertNotNull(actual);
+    assertEquals(expected.getBlock(), actual);
+    actual.release();
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.Waiter;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.CacheTestUtils;
+import org.apache.hadoop.hbase.io.hfile.CacheTestUtils.HFileBlockPair;
+import org.apache.hadoop.hbase.io.hfile.Cacheable;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the tinylfu admission and eviction policy of the {@link BucketCache}.
+ */
+@Category({ IOTests.class, MediumTests.class })
+public class TestBucketCacheTinyLfu {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestBucketCacheTinyLfu.class);
+
+  private static final int BLOCK_SIZE = 4096;
+
+  @Test
+  public void testSketchCounts() {
+    FrequencySketch sketch = new FrequencySketch(1024);
+    assertEquals(0, sketch.frequency(42));
+    for (int i = 0; i < 5; i++) {
+      sketch.increment(42);
+    }
+    assertEquals(5, sketch.frequency(42));
+    for (int i = 0; i < 100; i++) {
+      sketch.increment(42);
+    }
+    assertEquals(FrequencySketch.MAX_FREQUENCY, sketch.frequency(42));
+  }
+
+  @Test
+  public void testSketchAging() {
+    FrequencySketch sketch = new FrequencySketch(64);
+    for (int i = 0; i < 8; i++) {
+      sketch.increment(-1);
+    }
+    assertEquals(8, sketch.frequency(-1));
+    // Fill the sample with other items, the counters get halved once it is complete. The other
+    // items may share counters with ours, so its frequency can grow before that.
+    int before;
+    int i = 0;
+    do {
+      assertTrue("Never aged", i < sketch.getSampleSize());
+      before = sketch.frequency(-1);
+      sketch.increment(i++);
+    } while (sketch.frequency(-1) >= before);
+    int after = sketch.frequency(-1);
+    assertTrue(before + " halved to " + after, after >= before / 2 && after <= (before + 1) / 2);
+  }
+
+  @Test
+  public void testScanDoesNotFlushHotBlocks() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    conf.set(BucketCache.EVICTION_POLICY_KEY, BucketCache.EVICTION_POLICY_TINYLFU);
+    BucketCache cache = new BucketCache("offheap", 1024 * 1024, BLOCK_SIZE,
+      new int[] { 2 * BLOCK_SIZE }, 1, 1000, null, BucketCache.DEFAULT_ERROR_TOLERATION_DURATION,
+      conf);
+    try {
+      HFileBlockPair[] hot = CacheTestUtils.generateHFileBlocks(BLOCK_SIZE, 16);
+      for (HFileBlockPair block : hot) {
+        cacheAndWait(cache, block);
+      }
+      for (int i = 0; i < 5; i++) {
+        for (HFileBlockPair block : hot) {
+          read(cache, block.getBlockName());
+        }
+      }
+
+      // A scan much larger than the cache, every block is read once.
+      HFileBlockPair[] scan = CacheTestUtils.generateHFileBlocks(BLOCK_SIZE, 512);
+      for (HFileBlockPair block : scan) {
+        cacheAndWait(cache, block);
+      }
+
+      for (HFileBlockPair block : hot) {
+        assertNotNull("Hot block " + block.getBlockName() + " was evicted",
+          read(cache, block.getBlockName()));
+      }
+      BucketCacheStats stats = (BucketCacheStats) cache.getStats();
+      assertTrue(stats.getAdmissionRejectedCount() > 0);
+      assertTrue(stats.getEvictedCount() > 0);
+    } finally {
+      cache.shutdown();
+    }
+  }
+
+  @Test
+  public void testAdmissionAges() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    conf.set(BucketCache.EVICTION_POLICY_KEY, BucketCache.EVICTION_POLICY_TINYLFU);
+    BucketCache cache = new BucketCache("offheap", 1024 * 1024, BLOCK_SIZE,
+      new int[] { 2 * BLOCK_SIZE }, 1, 1000, null, BucketCache.DEFAULT_ERROR_TOLERATION_DURATION,
+      conf);
+    try {
+      // Fills 110 of the 128 slots, past the minimum factor but short of the acceptable one, so
+      // that admission applies and nothing gets evicted.
+      for (HFileBlockPair block : CacheTestUtils.generateHFileBlocks(BLOCK_SIZE, 110)) {
+        cacheAndWait(cache, block);
+      }
+      // The last eviction dropped a block which was accessed very often.
+      BlockCacheKey victim = new BlockCacheKey("victim", 0);
+      for (int i = 0; i < FrequencySketch.MAX_FREQUENCY; i++) {
+        read(cache, victim);
+      }
+      cache.victim = victim;
+      HFileBlockPair block = CacheTestUtils.generateHFileBlocks(BLOCK_SIZE, 1)[0];
+      read(cache, block.getBlockName());
+      read(cache, block.getBlockName());
+      cacheAndWait(cache, block);
+      assertFalse(cache.backingMap.containsKey(block.getBlockName()));
+
+      // The frequency of the victim ages with the other ones, so blocks get admitted again.
+      int sampleSize = 10 * 1024 * 1024 / BLOCK_SIZE;
+      for (int i = 0; i < 2 * sampleSize; i++) {
+        read(cache, new BlockCacheKey("other", i));
+      }
+      read(cache, block.getBlockName());
+      read(cache, block.getBlockName());
+      cacheAndWait(cache, block);
+      assertTrue(cache.backingMap.containsKey(block.getBlockName()));
+    } finally {
+      cache.shutdown();
+    }
+  }
+
+  @Test
+  public void testInMemoryEvictionsSetNoAdmissionBar() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    conf.set(BucketCache.EVICTION_POLICY_KEY, BucketCache.EVICTION_POLICY_TINYLFU);
+    BucketCache cache = new BucketCache("offheap", 1024 * 1024, BLOCK_SIZE,
+      new int[] { 2 * BLOCK_SIZE }, 1, 1000, null, BucketCache.DEFAULT_ERROR_TOLERATION_DURATION,
+      conf);
+    try {
+      // Hot in-memory blocks overflowing the cache, they skip the admission.
+      for (HFileBlockPair block : CacheTestUtils.generateHFileBlocks(BLOCK_SIZE, 256)) {
+        for (int i = 0; i < FrequencySketch.MAX_FREQUENCY; i++) {
+          read(cache, block.getBlockName());
+        }
+        cache.cacheBlock(block.getBlockName(), block.getBlock(), true);
+        Waiter.waitFor(conf, 10000, () -> cache.ramCache.isEmpty());
+      }
+      assertTrue(cache.getStats().getEvictedCount() > 0);
+      // Their evictions do not raise the bar of the other blocks.
+      assertNull(cache.victim);
+    } finally {
+      cache.shutdown();
+    }
+  }
+
+  private static Cacheable read(BucketCache cache, BlockCacheKey key) {
+    Cacheable block = cache.getBlock(key, true, false, true);
+    if (block != null) {
+      block.release();
+    }
+    return block;
+  }
+
+  private static void cacheAndWait(BucketCache cache, HFileBlockPair block)
+    throws InterruptedException {
+    // A miss first, as a reader does before caching the block it loaded.
+    assertEquals(null, read(cache, block.getBlockName()));
+    cache.cacheBlock(block.getBlockName(), block.getBlock());
+    Waiter.waitFor(HBaseConfiguration.create(), 10000, () -> cache.ramCache.isEmpty());
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile.bucket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.io.ByteBuffAllocator;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.io.hfile.BlockType;
+import org.apache.hadoop.hbase.io.hfile.CacheTestUtils;
+import org.apache.hadoop.hbase.io.hfile.CacheTestUtils.HFileBlockPair;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ IOTests.class, SmallTests.class })
+public class TestPackedBackingMap {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestPackedBackingMap.class);
+
+  private static BucketEntry newEntry(long offset) {
+    return new BucketEntry(offset * 256, 10, 10, 0L, false, (entry) -> ByteBuffAllocator.NONE,
+      ByteBuffAllocator.HEAP);
+  }
+
+  private static BlockCacheKey newKey(int file, long offset) {
+    return new BlockCacheKey("hfile" + file, "cf" + (file % 3), "region" + (file % 5), offset,
+      file % 2 == 0, file % 4 == 0 ? null : BlockType.DATA, file % 7 == 0);
+  }
+
+  @Test
+  public void testAgainstHashMap() {
+    // Many blocks per file so that probing, resizing and shifting are all exercised.
+    PackedBackingMap map = new PackedBackingMap();
+    Map<BlockCacheKey, BucketEntry> expected = new HashMap<>();
+    Random rand = new Random(12345);
+    for (int i = 0; i < 200000; i++) {
+      BlockCacheKey key = newKey(rand.nextInt(50), rand.nextInt(500) * 64L);
+      switch (rand.nextInt(4)) {
+        case 0:
+        case 1:
+          BucketEntry entry = newEntry(i);
+          assertSame(expected.put(key, entry), map.put(key, entry));
+          break;
+        case 2:
+          assertSame(expected.remove(key), map.remove(key));
+          break;
+        default:
+          assertSame(expected.get(key), map.get(key));
+      }
+    }
+    assertEquals(expected.size(), map.size());
+    int seen = 0;
+    for (Map.Entry<BlockCacheKey, BucketEntry> e : map.entrySet()) {
+      BlockCacheKey key = e.getKey();
+      assertSame(expected.get(key), e.getValue());
+      BlockCacheKey original = newKey(Integer.parseInt(key.getHfileName().substring(5)), 0);
+      assertEquals(original.getRegionName(), key.getRegionName());
+      assertEquals(original.getCfName(), key.getCfName());
+      assertEquals(original.isPrimary(), key.isPrimary());
+      assertEquals(original.getBlockType(), key.getBlockType());
+      assertEquals(original.isArchived(), key.isArchived());
+      seen++;
+    }
+    assertEquals(expected.size(), seen);
+
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertNull(map.get(newKey(1, 0)));
+  }
+
+  @Test
+  public void testConditionalOperations() {
+    PackedBackingMap map = new PackedBackingMap();
+    BlockCacheKey key = newKey(1, 0);
+    BucketEntry first = newEntry(1);
+    BucketEntry second = newEntry(2);
+    assertNull(map.putIfAbsent(key, first));
+    assertSame(first, map.putIfAbsent(key, second));
+    assertFalse(map.remove(key, second));
+    assertFalse(map.replace(key, second, first));
+    assertTrue(map.replace(key, first, second));
+    assertSame(second, map.replace(key, first));
+    assertTrue(map.remove(key, first));
+    assertNull(map.replace(key, first));
+    assertTrue(map.isEmpty());
+  }
+
+  @Test
+  public void testIteratorRemove() {
+    PackedBackingMap map = new PackedBackingMap();
+    for (int i = 0; i < 1000; i++) {
+      map.put(newKey(i % 10, i), newEntry(i));
+    }
+    Iterator<Map.Entry<BlockCacheKey, BucketEntry>> it = map.entrySet().iterator();
+    while (it.hasNext()) {
+      if (it.next().getKey().getOffset() % 2 == 0) {
+        it.remove();
+      }
+    }
+    assertEquals(500, map.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i % 2 == 1, map.containsKey(newKey(i % 10, i)));
+    }
+
+    // The entry is reused, but removing still works after moving to the next file.
+    it = map.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<BlockCacheKey, BucketEntry> entry = it.next();
+      BlockCacheKey key = entry.getKey();
+      it.hasNext();
+      it.remove();
+      assertFalse(map.containsKey(key));
+    }
+    assertTrue(map.isEmpty());
+  }
+
+  @Test
+  public void testConcurrentGets() throws Exception {
+    PackedBackingMap map = new PackedBackingMap();
+    // The even blocks stay while the odd ones of the same files come and go.
+    for (int i = 0; i < 1000; i += 2) {
+      map.put(newKey(i % 5, i), newEntry(i));
+    }
+    AtomicBoolean stop = new AtomicBoolean();
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 2; t++) {
+      threads.add(new Thread(() -> {
+        Random rand = new Random();
+        while (!stop.get()) {
+          int i = rand.nextInt(500) * 2 + 1;
+          map.put(newKey(i % 5, i), newEntry(i));
+          map.remove(newKey(i % 5, rand.nextInt(500) * 2 + 1));
+        }
+      }));
+    }
+    for (int t = 0; t < 2; t++) {
+      threads.add(new Thread(() -> {
+        try {
+          for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < 1000; i += 2) {
+              BucketEntry entry = map.get(newKey(i % 5, i));
+              assertEquals(i * 256L, entry.offset());
+            }
+          }
+        } catch (Throwable e) {
+          error.set(e);
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads.subList(2, 4)) {
+      thread.join();
+    }
+    stop.set(true);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(error.get());
+  }
+
+  @Test
+  public void testKeysOfFile() {
+    PackedBackingMap map = new PackedBackingMap();
+    for (int file = 0; file < 10; file++) {
+      for (int i = 0; i < 100; i++) {
+        map.put(newKey(file, i * 100L), newEntry(i));
+      }
+    }
+    Set<BlockCacheKey> keys = map.keysOfFile("hfile3", 1000, 1999);
+    assertEquals(10, keys.size());
+    for (BlockCacheKey key : keys) {
+      assertEquals("hfile3", key.getHfileName());
+      assertTrue(key.getOffset() >= 1000 && key.getOffset() < 2000);
+    }
+    assertEquals(100, map.keysOfFile("hfile7", 0, Long.MAX_VALUE).size());
+    assertTrue(map.keysOfFile("unknown", 0, Long.MAX_VALUE).isEmpty());
+  }
+
+  @Test
+  public void testBucketCacheWithPackedBackingMap() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setBoolean(BucketCache.PACKED_BACKING_MAP_KEY, true);
+    BucketCache cache = new BucketCache("offheap", 32 * 1024 * 1024, 8192,
+      new int[] { 8192 + 1024 }, 1, 64, null, 100, conf);
+    try {
+      assertTrue(cache.waitForCacheInitialization(10000));
+      assertTrue(cache.backingMap instanceof PackedBackingMap);
+      Path path = new Path("/hbase/data/default/t/region/cf/hfile");
+      HFileBlockPair[] blocks = CacheTestUtils.generateBlocksForPath(8192, 10, path, false);
+      for (HFileBlockPair block : blocks) {
+        cache.cacheBlock(block.getBlockName(), block.getBlock());
+        TestBucketCache.waitUntilFlushedToBucket(cache, block.getBlockName());
+      }
+      assertEquals(10, cache.getBlockCount());
+      assertEquals(10, cache.evictBlocksByHfileName("hfile"));
+      assertEquals(0, cache.backingMap.size());
+    } finally {
+      cache.shutdown();
+    }
+  }
+}
@@ -81,6 +81,8 @@ import org.apache.hbase.thirdparty.com.google.protobuf.ServiceException;
 
 import org.apache.hadoop.hbase.shaded.protobuf.ProtobufUtil;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos.CacheBlocksRequest;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos.CacheBlocksResponse;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos.ClearCompactionQueuesRequest;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos.ClearCompactionQueuesResponse;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos.ClearRegionBlockCacheRequest;
@@ -461,6 +463,12 @@ class MockRegionServer implements AdminProtos.AdminService.BlockingInterface,
     return null;
   }
 
+  @Override
+  public CacheBlocksResponse cacheBlocks(RpcController controller, CacheBlocksRequest request)
+    throws ServiceException {
+    return null;
+  }
+
   @Override
   public List<HRegion> getRegions() {
     return null;
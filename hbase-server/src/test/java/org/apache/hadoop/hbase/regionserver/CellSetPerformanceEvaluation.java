@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.util.AbstractHBaseTool;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import org.apache.hbase.thirdparty.org.apache.commons.cli.CommandLine;
+import org.apache.hbase.thirdparty.org.apache.commons.cli.Option;
+
+/**
+ * Measures the insert rate of concurrent writers into the active segment of the memstore, and the
+ * heap retained by its index, comparing the default ConcurrentSkipListMap with
+ * {@link CellBTreeMap}. The cells are created before the measures, so that only the index is
+ * counted in the heap. Run with a heap large enough for the number of cells, e.g. -Xmx8g for 10M
+ * cells.
+ */
+public class CellSetPerformanceEvaluation extends AbstractHBaseTool {
+
+  // Command line options and defaults.
+  public static final int DEFAULT_NUM_CELLS = 4_000_000;
+  public static final Option NUM_CELLS_OPTION = new Option("cells", true,
+    "Number of cells inserted by all writers. Default: " + DEFAULT_NUM_CELLS);
+  public static final int DEFAULT_NUM_WRITERS = 8;
+  public static final Option NUM_WRITERS_OPTION =
+    new Option("writers", true, "Number of concurrent writers. Default: " + DEFAULT_NUM_WRITERS);
+  public static final Option INDEX_OPTION =
+    new Option("index", true, "Index to evaluate, 'cslm', 'btree' or 'both'. Default: both");
+  public static final Option SEQUENTIAL_OPTION =
+    new Option("sequential", false, "Each writer inserts increasing rows. Default: random rows");
+
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final byte[] VALUE = new byte[16];
+
+  private int numCells = DEFAULT_NUM_CELLS;
+  private int numWriters = DEFAULT_NUM_WRITERS;
+  private String indexType = "both";
+  private boolean sequential = false;
+
+  @Override
+  protected void addOptions() {
+    addOption(NUM_CELLS_OPTION);
+    addOption(NUM_WRITERS_OPTION);
+    addOption(INDEX_OPTION);
+    addOption(SEQUENTIAL_OPTION);
+  }
+
+  @Override
+  protected void processOptions(CommandLine cmd) {
+    numCells = getOptionAsInt(cmd, NUM_CELLS_OPTION.getOpt(), DEFAULT_NUM_CELLS);
+    numWriters = getOptionAsInt(cmd, NUM_WRITERS_OPTION.getOpt(), DEFAULT_NUM_WRITERS);
+    indexType = cmd.getOptionValue(INDEX_OPTION.getOpt(), indexType);
+    sequential = cmd.hasOption(SEQUENTIAL_OPTION.getOpt());
+  }
+
+  /** Returns the cells of each writer, the writers inserting interleaved rows. */
+  private List<List<ExtendedCell>> createCells() {
+    List<List<ExtendedCell>> cells = new ArrayList<>();
+    for (int w = 0; w < numWriters; w++) {
+      List<ExtendedCell> writerCells = new ArrayList<>();
+      for (int i = w; i < numCells; i += numWriters) {
+        writerCells.add(
+          new KeyValue(Bytes.toBytes(String.format("row%010d", i)), FAMILY, QUALIFIER, 1L, VALUE));
+      }
+      if (!sequential) {
+        Collections.shuffle(writerCells, new Random(w));
+      }
+      cells.add(writerCells);
+    }
+    return cells;
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(200);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private void evaluate(MutableSegment.IndexType type, List<List<ExtendedCell>> cells)
+    throws InterruptedException {
+    Configuration conf = new Configuration(getConf());
+    conf.setBoolean(MemStoreLAB.USEMSLAB_KEY, false);
+    conf.setEnum(MutableSegment.INDEX_TYPE_KEY, type);
+    long before = usedHeap();
+    MutableSegment segment =
+      SegmentFactory.instance().createMutableSegment(conf, CellComparator.getInstance(), null);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> writers = new ArrayList<>();
+    for (List<ExtendedCell> writerCells : cells) {
+      Thread writer = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        for (ExtendedCell cell : writerCells) {
+          segment.add(cell, false, null, false);
+        }
+      });
+      writer.start();
+      writers.add(writer);
+    }
+    long startNanos = System.nanoTime();
+    start.countDown();
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    long putNanos = System.nanoTime() - startNanos;
+    long heap = usedHeap() - before;
+
+    startNanos = System.nanoTime();
+    long scanned = 0;
+    for (Iterator<ExtendedCell> it = segment.iterator(); it.hasNext(); it.next()) {
+      scanned++;
+    }
+    long scanNanos = System.nanoTime() - startNanos;
+
+    int count = segment.getCellsCount();
+    System.out.println("******************************************");
+    System.out.println("Index                 : " + type);
+    System.out.println("Writers               : " + numWriters);
+    System.out.println("Cells                 : " + count);
+    System.out.println("Heap bytes per cell   : " + (double) heap / count);
+    System.out.println("Accounted heap        : " + segment.getHeapSize());
+    System.out.println("Inserts per second    : " + (long) (count * 1e9 / putNanos));
+    System.out.println("Scan ns per cell      : " + (double) scanNanos / scanned);
+    System.out.println("******************************************");
+    System.out.println("Raw format for scripts");
+    System.out.println(String.format(
+      "RESULT [index=%s, %s=%s, %s=%s, sequential=%s, heap_bytes_per_cell=%s, inserts_per_sec=%s,"
+        + " scan_ns=%s]",
+      type, NUM_WRITERS_OPTION.getOpt(), numWriters, NUM_CELLS_OPTION.getOpt(), count, sequential,
+      heap / count, (long) (count * 1e9 / putNanos), scanNanos / scanned));
+  }
+
+  @Override
+  protected int doWork() throws Exception {
+    List<List<ExtendedCell>> cells = createCells();
+    if (indexType.equals("cslm") || indexType.equals("both")) {
+      evaluate(MutableSegment.IndexType.CSLM_MAP, cells);
+    }
+    if (indexType.equals("btree") || indexType.equals("both")) {
+      evaluate(MutableSegment.IndexType.BTREE_MAP, cells);
+    }
+    return 0;
+  }
+
+  public static void main(String[] args) throws IOException {
+    CellSetPerformanceEvaluation tool = new CellSetPerformanceEvaluation();
+    tool.setConf(HBaseConfiguration.create());
+    tool.run(args);
+  }
+}
@@ -462,6 +462,11 @@ public class MetricsRegionServerWrapperStub implements MetricsRegionServerWrappe
     return 2000;
   }
 
+  @Override
+  public long getL2CacheAdmissionRejectedCount() {
+    return 30;
+  }
+
   @Override
   public long getL2CacheHitCount() {
     return 800;
@@ -204,6 +204,13 @@ public class MetricsRegionWrapperStub implements MetricsRegionWrapper {
     return map;
   }
 
+  @Override
+  public Map<String, Long> getStoreFlushTime() {
+    Map<String, Long> map = new HashMap<>();
+    map.put("info", 0L);
+    return map;
+  }
+
   @Override
   public String getTableDescriptorHash() {
     return "testhash123abc";
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.util.AbstractHBaseTool;
+
+import org.apache.hbase.thirdparty.org.apache.commons.cli.CommandLine;
+import org.apache.hbase.thirdparty.org.apache.commons.cli.Option;
+
+/**
+ * Measures the rate of write transactions of concurrent handlers sharing the
+ * {@link MultiVersionConcurrencyControl} of a region. Each transaction begins, optionally with an
+ * action like the sequencing of the WAL append, then completes and waits for the read point.
+ */
+public class MultiVersionConcurrencyControlPerformanceEvaluation extends AbstractHBaseTool {
+
+  // Command line options and defaults.
+  public static final int DEFAULT_NUM_THREADS = 16;
+  public static final Option NUM_THREADS_OPTION = new Option("threads", true,
+    "Number of concurrent handlers. Default: " + DEFAULT_NUM_THREADS);
+  public static final int DEFAULT_NUM_OPS = 1_000_000;
+  public static final Option NUM_OPS_OPTION = new Option("ops", true,
+    "Number of transactions of all handlers. Default: " + DEFAULT_NUM_OPS);
+  public static final Option ACTION_OPTION = new Option("action", false,
+    "Begins the transactions with an action, like the WAL append does. Default: no action");
+
+  private int numThreads = DEFAULT_NUM_THREADS;
+  private int numOps = DEFAULT_NUM_OPS;
+  private boolean action = false;
+
+  @Override
+  protected void addOptions() {
+    addOption(NUM_THREADS_OPTION);
+    addOption(NUM_OPS_OPTION);
+    addOption(ACTION_OPTION);
+  }
+
+  @Override
+  protected void processOptions(CommandLine cmd) {
+    numThreads = getOptionAsInt(cmd, NUM_THREADS_OPTION.getOpt(), DEFAULT_NUM_THREADS);
+    numOps = getOptionAsInt(cmd, NUM_OPS_OPTION.getOpt(), DEFAULT_NUM_OPS);
+    action = cmd.hasOption(ACTION_OPTION.getOpt());
+  }
+
+  @Override
+  protected int doWork() throws Exception {
+    MultiVersionConcurrencyControl mvcc = new MultiVersionConcurrencyControl();
+    AtomicLong sequence = new AtomicLong();
+    Runnable sequencing = () -> sequence.incrementAndGet();
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    int opsPerThread = numOps / numThreads;
+    for (int t = 0; t < numThreads; t++) {
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        for (int i = 0; i < opsPerThread; i++) {
+          MultiVersionConcurrencyControl.WriteEntry e =
+            action ? mvcc.begin(sequencing) : mvcc.begin();
+          mvcc.completeAndWait(e);
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    long startNanos = System.nanoTime();
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    long nanos = System.nanoTime() - startNanos;
+    long ops = (long) opsPerThread * numThreads;
+    if (mvcc.getReadPoint() != ops) {
+      throw new IllegalStateException("Read point " + mvcc.getReadPoint() + " != " + ops);
+    }
+
+    System.out.println("******************************************");
+    System.out.println("Threads               : " + numThreads);
+    System.out.println("Transactions          : " + ops);
+    System.out.println("Action                : " + action);
+    System.out.println("Transactions per sec  : " + (long) (ops * 1e9 / nanos));
+    System.out.println("******************************************");
+    System.out.println("Raw format for scripts");
+    System.out.println(String.format("RESULT [%s=%s, %s=%s, action=%s, ops_per_sec=%s]",
+      NUM_THREADS_OPTION.getOpt(), numThreads, NUM_OPS_OPTION.getOpt(), ops, action,
+      (long) (ops * 1e9 / nanos)));
+    return 0;
+  }
+
+  public static void main(String[] args) throws IOException {
+    MultiVersionConcurrencyControlPerformanceEvaluation tool =
+      new MultiVersionConcurrencyControlPerformanceEvaluation();
+    tool.setConf(HBaseConfiguration.create());
+    tool.run(args);
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.io.hfile.BlockCache;
+import org.apache.hadoop.hbase.io.hfile.BlockCacheKey;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests that the cached blocks of a region are sent to the server it moves to.
+ */
+@Category({ RegionServerTests.class, MediumTests.class })
+public class TestBlockCacheTransfer {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestBlockCacheTransfer.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+  private static final TableName TABLE_NAME = TableName.valueOf("TestBlockCacheTransfer");
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    TEST_UTIL.getConfiguration().setBoolean(BlockCacheTransfer.ENABLED_KEY, true);
+    TEST_UTIL.startMiniCluster(2);
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    TEST_UTIL.shutdownMiniCluster();
+  }
+
+  private static Set<Long> cachedOffsets(HRegionServer server, String hfileName) {
+    BlockCache cache = server.getBlockCache().get();
+    return cache.getBlockKeysForFile(hfileName).stream().map(BlockCacheKey::getOffset)
+      .collect(Collectors.toSet());
+  }
+
+  @Test
+  public void testMove() throws Exception {
+    Table table = TEST_UTIL.createTable(TABLE_NAME, FAMILY);
+    int rows = TEST_UTIL.loadTable(table, FAMILY);
+    TEST_UTIL.flush(TABLE_NAME);
+    // Caches the blocks on the server hosting the region.
+    assertEquals(rows, HBaseTestingUtil.countRows(table));
+
+    HRegionServer source = TEST_UTIL.getRSForFirstRegionInTable(TABLE_NAME);
+    HRegionServer destination = TEST_UTIL.getOtherRegionServer(source);
+    HRegion region = source.getRegions(TABLE_NAME).get(0);
+    HStore store = region.getStore(FAMILY);
+    assertEquals(1, store.getStorefilesCount());
+    String hfileName = store.getStorefiles().iterator().next().getPath().getName();
+    Set<Long> sourceOffsets = cachedOffsets(source, hfileName);
+    assertFalse(sourceOffsets.isEmpty());
+    assertTrue(cachedOffsets(destination, hfileName).isEmpty());
+
+    TEST_UTIL.moveRegionAndWait(region.getRegionInfo(), destination.getServerName());
+    assertTrue(cachedOffsets(destination, hfileName).containsAll(sourceOffsets));
+    assertEquals(rows, HBaseTestingUtil.countRows(table));
+  }
+}
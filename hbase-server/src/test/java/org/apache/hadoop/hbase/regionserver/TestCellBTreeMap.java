@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.ExtendedCell;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests {@link CellBTreeMap} against {@link ConcurrentSkipListMap}, and as the index of the active
+ * segment.
+ */
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestCellBTreeMap {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestCellBTreeMap.class);
+
+  private static final CellComparator COMPARATOR = CellComparator.getInstance();
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+
+  private static ExtendedCell cell(int row, long ts) {
+    return new KeyValue(Bytes.toBytes(String.format("row%08d", row)), FAMILY, QUALIFIER, ts,
+      Bytes.toBytes(row));
+  }
+
+  private static List<ExtendedCell> list(NavigableMap<ExtendedCell, ExtendedCell> map) {
+    return new ArrayList<>(map.values());
+  }
+
+  private static void assertSameMaps(NavigableMap<ExtendedCell, ExtendedCell> expected,
+    NavigableMap<ExtendedCell, ExtendedCell> actual, Random rand) {
+    assertEquals(list(expected), list(actual));
+    assertEquals(list(expected.descendingMap()), list(actual.descendingMap()));
+    assertEquals(expected.isEmpty(), actual.isEmpty());
+    for (int i = 0; i < 200; i++) {
+      ExtendedCell key = cell(rand.nextInt(3000), rand.nextInt(3));
+      boolean inclusive = rand.nextBoolean();
+      // The keys of the skip list are the first cells put, its values and the cells of the map
+      // the last ones.
+      assertSame(expected.get(key), actual.get(key));
+      assertEquals(expected.containsKey(key), actual.containsKey(key));
+      assertEquals(expected.ceilingKey(key), actual.ceilingKey(key));
+      assertEquals(expected.floorKey(key), actual.floorKey(key));
+      assertEquals(expected.higherKey(key), actual.higherKey(key));
+      assertEquals(expected.lowerKey(key), actual.lowerKey(key));
+      assertEquals(list(expected.headMap(key, inclusive)), list(actual.headMap(key, inclusive)));
+      assertEquals(list(expected.tailMap(key, inclusive)), list(actual.tailMap(key, inclusive)));
+      assertEquals(list(expected.tailMap(key, inclusive).descendingMap()),
+        list(actual.tailMap(key, inclusive).descendingMap()));
+      assertEquals(list(expected.descendingMap().headMap(key, inclusive)),
+        list(actual.descendingMap().headMap(key, inclusive)));
+      ExtendedCell to = cell(rand.nextInt(3000), 1);
+      if (COMPARATOR.compare(key, to) <= 0) {
+        NavigableMap<ExtendedCell, ExtendedCell> expectedSub =
+          expected.subMap(key, inclusive, to, true);
+        NavigableMap<ExtendedCell, ExtendedCell> actualSub =
+          actual.subMap(key, inclusive, to, true);
+        assertEquals(list(expectedSub), list(actualSub));
+        assertEquals(expectedSub.ceilingKey(to), actualSub.ceilingKey(to));
+        assertEquals(expectedSub.lowerKey(key), actualSub.lowerKey(key));
+        assertEquals(expectedSub.firstEntry(), actualSub.firstEntry());
+        assertEquals(expectedSub.lastEntry(), actualSub.lastEntry());
+      }
+    }
+    if (!expected.isEmpty()) {
+      assertEquals(expected.firstKey(), actual.firstKey());
+      assertEquals(expected.lastKey(), actual.lastKey());
+    }
+  }
+
+  @Test
+  public void testAsSkipList() {
+    Random rand = new Random(12345);
+    NavigableMap<ExtendedCell, ExtendedCell> expected = new ConcurrentSkipListMap<>(COMPARATOR);
+    NavigableMap<ExtendedCell, ExtendedCell> actual = new CellBTreeMap<>(COMPARATOR);
+    assertSameMaps(expected, actual, rand);
+    for (int i = 0; i < 5000; i++) {
+      ExtendedCell cell = cell(rand.nextInt(3000), rand.nextInt(3));
+      assertSame(expected.put(cell, cell), actual.put(cell, cell));
+    }
+    assertSameMaps(expected, actual, rand);
+
+    // Removes from the map and from its iterators.
+    for (int i = 0; i < 1000; i++) {
+      ExtendedCell cell = cell(rand.nextInt(3000), rand.nextInt(3));
+      assertSame(expected.remove(cell), actual.remove(cell));
+    }
+    Iterator<ExtendedCell> expectedIterator = expected.values().iterator();
+    Iterator<ExtendedCell> actualIterator = actual.values().iterator();
+    while (expectedIterator.hasNext()) {
+      assertSame(expectedIterator.next(), actualIterator.next());
+      if (rand.nextInt(3) == 0) {
+        expectedIterator.remove();
+        actualIterator.remove();
+      }
+    }
+    assertFalse(actualIterator.hasNext());
+    assertSameMaps(expected, actual, rand);
+
+    actual.clear();
+    assertTrue(actual.isEmpty());
+    assertNull(actual.firstEntry());
+  }
+
+  @Test
+  public void testSequentialInserts() {
+    NavigableMap<ExtendedCell, ExtendedCell> map = new CellBTreeMap<>(COMPARATOR);
+    List<ExtendedCell> cells = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      cells.add(cell(i, 1));
+    }
+    // Increasing rows, then decreasing rows.
+    cells.forEach(cell -> map.put(cell, cell));
+    for (int i = 2000; i >= 1000; i--) {
+      ExtendedCell cell = cell(i, 1);
+      cells.add(cell);
+      map.put(cell, cell);
+    }
+    Collections.sort(cells, COMPARATOR);
+    assertEquals(cells, list(map));
+    Collections.reverse(cells);
+    assertEquals(cells, list(map.descendingMap()));
+  }
+
+  @Test
+  public void testConcurrentWriters() throws Exception {
+    NavigableMap<ExtendedCell, ExtendedCell> map = new CellBTreeMap<>(COMPARATOR);
+    int writers = 4;
+    int cellsPerWriter = 20000;
+    AtomicBoolean done = new AtomicBoolean(false);
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int w = 0; w < writers; w++) {
+      int writer = w;
+      threads.add(new Thread(() -> {
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < cellsPerWriter; i++) {
+          rows.add(i * writers + writer);
+        }
+        Collections.shuffle(rows, new Random(writer));
+        for (int row : rows) {
+          ExtendedCell cell = cell(row, 1);
+          map.put(cell, cell);
+        }
+      }));
+    }
+    Thread reader = new Thread(() -> {
+      try {
+        while (!done.get()) {
+          ExtendedCell previous = null;
+          for (ExtendedCell cell : map.values()) {
+            assertTrue(previous == null || COMPARATOR.compare(previous, cell) < 0);
+            previous = cell;
+          }
+          previous = null;
+          for (ExtendedCell cell : map.descendingMap().values()) {
+            assertTrue(previous == null || COMPARATOR.compare(previous, cell) > 0);
+            previous = cell;
+          }
+        }
+      } catch (Throwable t) {
+        error.set(t);
+      }
+    });
+    reader.start();
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    done.set(true);
+    reader.join();
+    assertNull(error.get());
+    assertEquals(writers * cellsPerWriter, map.size());
+    int i = 0;
+    for (ExtendedCell cell : map.values()) {
+      assertEquals(0, COMPARATOR.compare(cell(i++, 1), cell));
+    }
+  }
+
+  @Test
+  public void testActiveSegment() {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setBoolean(MemStoreLAB.USEMSLAB_KEY, false);
+    MutableSegment skipList =
+      SegmentFactory.instance().createMutableSegment(conf, COMPARATOR, null);
+    conf.setEnum(MutableSegment.INDEX_TYPE_KEY, MutableSegment.IndexType.BTREE_MAP);
+    MutableSegment btree = SegmentFactory.instance().createMutableSegment(conf, COMPARATOR, null);
+    assertTrue(btree.getCellSet().getDelegatee() instanceof CellBTreeMap);
+    for (int i = 0; i < 1000; i++) {
+      ExtendedCell cell = cell(i, 1);
+      skipList.add(cell, false, null, false);
+      btree.add(cell, false, null, false);
+    }
+    assertEquals(skipList.getCellsCount(), btree.getCellsCount());
+    assertEquals(skipList.getDataSize(), btree.getDataSize());
+    assertTrue(btree.getHeapSize() < skipList.getHeapSize());
+    List<ExtendedCell> expected = new ArrayList<>();
+    skipList.iterator().forEachRemaining(expected::add);
+    List<ExtendedCell> actual = new ArrayList<>();
+    btree.iterator().forEachRemaining(actual::add);
+    assertEquals(expected, actual);
+
+    // Upserts remove the older versions through the iterator of the tail set.
+    btree.upsert(cell(10, 2), 2, null, false);
+    btree.upsert(cell(10, 3), 3, null, false);
+    assertEquals(1001, btree.getCellsCount());
+    assertEquals(cell(10, 3), btree.getCellSet().get(cell(10, 3)));
+    assertNull(btree.getCellSet().get(cell(10, 1)));
+
+    // The heap of the index moves to the immutable segment.
+    ImmutableSegment immutable = SegmentFactory.instance().createImmutableSegment(btree, null);
+    assertEquals(btree.indexEntrySize(), immutable.indexEntrySize());
+  }
+}
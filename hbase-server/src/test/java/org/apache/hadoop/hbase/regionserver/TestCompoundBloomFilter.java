@@ -166,6 +166,16 @@ public class TestCompoundBloomFilter {
     }
   }
 
+  @Test
+  public void testBlockedCompoundBloomFilter() throws IOException {
+    conf.setBoolean(BloomFilterFactory.IO_STOREFILE_BLOOM_BLOCKED, true);
+    try {
+      testCompoundBloomFilter();
+    } finally {
+      conf.setBoolean(BloomFilterFactory.IO_STOREFILE_BLOOM_BLOCKED, false);
+    }
+  }
+
   /**
    * Validates the false positive ratio by computing its z-value and comparing it to the provided
    * threshold.
@@ -226,6 +236,7 @@ public class TestCompoundBloomFilter {
         String fakeLookupModeStr =
           ", fake lookup is " + (fakeLookupEnabled ? "enabled" : "disabled");
         CompoundBloomFilter cbf = (CompoundBloomFilter) r.getGeneralBloomFilter();
+        assertEquals(BloomFilterFactory.isBlockedBloomEnabled(conf), cbf.isBlocked());
         cbf.enableTestingStats();
         int numFalsePos = 0;
         Random rand = new Random(EVALUATION_SEED);
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Append;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RegionInfoBuilder;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.hbase.util.ManualEnvironmentEdge;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the delta counters of a column family, summed when read and folded by flushes and
+ * compactions.
+ */
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestDeltaCounters {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestDeltaCounters.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final byte[] QUALIFIER2 = Bytes.toBytes("q2");
+  private static final byte[] ROW = Bytes.toBytes("row");
+
+  private HRegion region;
+
+  @Before
+  public void setUp() throws IOException {
+    Configuration conf = new Configuration(TEST_UTIL.getConfiguration());
+    TableDescriptor td = TableDescriptorBuilder.newBuilder(TableName.valueOf("TestDeltaCounters"))
+      .setColumnFamily(ColumnFamilyDescriptorBuilder.newBuilder(FAMILY)
+        .setConfiguration(HStore.DELTA_COUNTERS_KEY, "true").build())
+      .build();
+    region = HBaseTestingUtil.createRegionAndWAL(
+      RegionInfoBuilder.newBuilder(td.getTableName()).build(),
+      TEST_UTIL.getDataTestDir("TestDeltaCounters"), conf, td);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    EnvironmentEdgeManager.reset();
+    HBaseTestingUtil.closeRegionAndWAL(region);
+  }
+
+  private void increment(long amount) throws IOException {
+    Increment increment = new Increment(ROW).addColumn(FAMILY, QUALIFIER, amount);
+    increment.setReturnResults(false);
+    region.increment(increment);
+  }
+
+  private long get(byte[] qualifier) throws IOException {
+    return Bytes.toLong(region.get(new Get(ROW)).getValue(FAMILY, qualifier));
+  }
+
+  /** Returns the number of cells of the row in the store */
+  private int countRawCells() throws IOException {
+    try (RegionScanner scanner = region.getScanner(new Scan().setRaw(true).readAllVersions())) {
+      List<Cell> cells = new ArrayList<>();
+      scanner.next(cells);
+      return cells.size();
+    }
+  }
+
+  @Test
+  public void testIncrements() throws IOException {
+    for (int i = 1; i <= 10; i++) {
+      increment(i);
+    }
+    // Each increment is a delta, the reads sum them.
+    assertEquals(10, countRawCells());
+    assertEquals(55, get(QUALIFIER));
+    Result result = region.get(new Get(ROW).addColumn(FAMILY, QUALIFIER));
+    assertEquals(1, result.size());
+    assertEquals(55, Bytes.toLong(result.getValue(FAMILY, QUALIFIER)));
+
+    // The results are the sums, the deltas of a batch adding up.
+    Result incremented = region.increment(new Increment(ROW).addColumn(FAMILY, QUALIFIER, 5));
+    assertEquals(60, Bytes.toLong(incremented.getValue(FAMILY, QUALIFIER)));
+    OperationStatus[] statuses = region.batchMutate(
+      new Mutation[] { new Increment(ROW).addColumn(FAMILY, QUALIFIER, 1),
+        new Increment(ROW).addColumn(FAMILY, QUALIFIER, 2).addColumn(FAMILY, QUALIFIER2, 7) },
+      true);
+    assertEquals(61, Bytes.toLong(statuses[0].getResult().getValue(FAMILY, QUALIFIER)));
+    assertEquals(63, Bytes.toLong(statuses[1].getResult().getValue(FAMILY, QUALIFIER)));
+    assertEquals(63, get(QUALIFIER));
+    assertEquals(7, get(QUALIFIER2));
+
+    try {
+      region.append(new Append(ROW).addColumn(FAMILY, QUALIFIER, Bytes.toBytes(1L)));
+      fail("Appends should be rejected");
+    } catch (DoNotRetryIOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testFlushAndCompaction() throws IOException {
+    for (int i = 1; i <= 10; i++) {
+      increment(i);
+    }
+    // The flush folds the deltas.
+    region.flush(true);
+    assertEquals(1, countRawCells());
+    assertEquals(55, get(QUALIFIER));
+
+    for (int i = 1; i <= 10; i++) {
+      increment(i);
+    }
+    region.flush(true);
+    assertEquals(2, countRawCells());
+    assertEquals(110, get(QUALIFIER));
+    increment(1);
+    assertEquals(111, get(QUALIFIER));
+
+    // The compaction folds the deltas of the files.
+    region.compact(true);
+    assertEquals(2, countRawCells());
+    region.flush(true);
+    region.compact(true);
+    assertEquals(1, countRawCells());
+    assertEquals(111, get(QUALIFIER));
+
+    // A delete resets the counter.
+    region.delete(new Delete(ROW).addColumns(FAMILY, QUALIFIER));
+    increment(3);
+    assertEquals(3, get(QUALIFIER));
+    region.flush(true);
+    region.compact(true);
+    assertEquals(3, get(QUALIFIER));
+    assertEquals(1, countRawCells());
+  }
+
+  @Test
+  public void testReopen() throws IOException {
+    // The deltas written faster than the clock are stamped ahead of it.
+    ManualEnvironmentEdge edge = new ManualEnvironmentEdge();
+    edge.setValue(EnvironmentEdgeManager.currentTime());
+    EnvironmentEdgeManager.injectEdge(edge);
+    for (int i = 1; i <= 10; i++) {
+      increment(i);
+    }
+    region.flush(true);
+    increment(1);
+    region.close();
+    region = HRegion.openHRegion(region, null);
+    // The clock of the reopened region is past the timestamps of the deltas written before.
+    for (int i = 1; i <= 10; i++) {
+      increment(i);
+    }
+    assertEquals(111, get(QUALIFIER));
+    region.flush(true);
+    region.compact(true);
+    assertEquals(111, get(QUALIFIER));
+  }
+
+  @Test
+  public void testRejectedMutations() throws IOException {
+    increment(5);
+    try {
+      region.put(new Put(ROW).addColumn(FAMILY, QUALIFIER, Bytes.toBytes(0L)));
+      fail("Puts should be rejected");
+    } catch (DoNotRetryIOException e) {
+      // expected
+    }
+    try {
+      region.delete(new Delete(ROW).addColumn(FAMILY, QUALIFIER));
+      fail("Deletes of the latest version should be rejected");
+    } catch (DoNotRetryIOException e) {
+      // expected
+    }
+    try {
+      region.delete(new Delete(ROW).addFamilyVersion(FAMILY, 1L));
+      fail("Deletes of a version of the family should be rejected");
+    } catch (DoNotRetryIOException e) {
+      // expected
+    }
+    assertEquals(5, get(QUALIFIER));
+  }
+}
@@ -354,7 +354,7 @@ public class TestHStoreFile {
     // move to SFT interface.
     StoreFileTracker sft = StoreFileTrackerFactory.create(testConf, false,
       StoreContext.getBuilder()
-        .withFamilyStoreDirectoryPath(new Path(dstHri.getRegionNameAsString(), TEST_FAMILY))
+        .withFamilyStoreDirectoryPath(dstPath)
         .withColumnFamilyDescriptor(ColumnFamilyDescriptorBuilder.of(TEST_FAMILY))
         .withRegionFileSystem(dstRegionFs).build());
     sft.createHFileLink(hri.getTable(), hri.getEncodedName(), storeFilePath.getName(), true);
@@ -420,7 +420,7 @@ public class TestHStoreFile {
 
     StoreFileTracker sft = StoreFileTrackerFactory.create(testConf, true,
       StoreContext.getBuilder()
-        .withFamilyStoreDirectoryPath(new Path(hriClone.getRegionNameAsString(), TEST_FAMILY))
+        .withFamilyStoreDirectoryPath(dstPath)
         .withColumnFamilyDescriptor(ColumnFamilyDescriptorBuilder.of(TEST_FAMILY))
         .withRegionFileSystem(cloneRegionFs).build());
     sft.createHFileLink(hri.getTable(), hri.getEncodedName(), storeFilePath.getName(), true);
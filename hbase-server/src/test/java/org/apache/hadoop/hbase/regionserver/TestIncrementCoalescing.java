@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HConstants.OperationStatusCode;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RegionInfoBuilder;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.security.access.AccessController;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the concurrent increments to a same row applied in batches, on a family enabling it.
+ */
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestIncrementCoalescing {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestIncrementCoalescing.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] OTHER_FAMILY = Bytes.toBytes("o");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final byte[] ROW = Bytes.toBytes("row");
+
+  private HRegion region;
+
+  @Before
+  public void setUp() throws IOException {
+    Configuration conf = new Configuration(TEST_UTIL.getConfiguration());
+    TableDescriptor td = TableDescriptorBuilder
+      .newBuilder(TableName.valueOf("TestIncrementCoalescing"))
+      .setColumnFamily(ColumnFamilyDescriptorBuilder.newBuilder(FAMILY)
+        .setConfiguration(IncrementCoalescer.INCREMENT_COALESCING_KEY, "true").build())
+      .setColumnFamily(ColumnFamilyDescriptorBuilder.of(OTHER_FAMILY)).build();
+    region = HBaseTestingUtil.createRegionAndWAL(
+      RegionInfoBuilder.newBuilder(td.getTableName()).build(),
+      TEST_UTIL.getDataTestDir("TestIncrementCoalescing"), conf, td);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    HBaseTestingUtil.closeRegionAndWAL(region);
+  }
+
+  private static long value(Result result, byte[] family) {
+    return Bytes.toLong(result.getValue(family, QUALIFIER));
+  }
+
+  @Test
+  public void testConcurrentIncrements() throws Exception {
+    int threads = 8;
+    int incrementsPerThread = 200;
+    Set<Long> returned = new ConcurrentSkipListSet<>();
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    List<Thread> incrementers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      incrementers.add(new Thread(() -> {
+        try {
+          for (int i = 0; i < incrementsPerThread; i++) {
+            returned.add(value(region.increment(new Increment(ROW).addColumn(FAMILY, QUALIFIER, 1)),
+              FAMILY));
+          }
+        } catch (Throwable e) {
+          error.set(e);
+        }
+      }));
+    }
+    incrementers.forEach(Thread::start);
+    for (Thread incrementer : incrementers) {
+      incrementer.join();
+    }
+    assertNull(error.get());
+    long total = threads * incrementsPerThread;
+    assertEquals(total, value(region.get(new Get(ROW)), FAMILY));
+    // Each increment returns its own post-increment value.
+    assertEquals(total, returned.size());
+    assertEquals(1L, (long) returned.iterator().next());
+    assertEquals(total, (long) ((ConcurrentSkipListSet<Long>) returned).last());
+  }
+
+  @Test
+  public void testIncrementsOfBatch() throws IOException {
+    // The increments of a same column in an atomic batch apply on top of each other.
+    Mutation[] increments =
+      new Mutation[] { new Increment(ROW).addColumn(OTHER_FAMILY, QUALIFIER, 1),
+        new Increment(ROW).addColumn(OTHER_FAMILY, QUALIFIER, 2),
+        new Increment(ROW).addColumn(OTHER_FAMILY, QUALIFIER, 3) };
+    OperationStatus[] statuses = region.batchMutate(increments, true);
+    assertEquals(1, value(statuses[0].getResult(), OTHER_FAMILY));
+    assertEquals(3, value(statuses[1].getResult(), OTHER_FAMILY));
+    assertEquals(6, value(statuses[2].getResult(), OTHER_FAMILY));
+    assertEquals(6, value(region.get(new Get(ROW)), OTHER_FAMILY));
+  }
+
+  @Test
+  public void testIncrementsOfNonAtomicBatch() throws IOException {
+    region.put(new Put(ROW).addColumn(OTHER_FAMILY, QUALIFIER, Bytes.toBytes(10L)));
+    // The increments of a same column in a non atomic batch all apply on top of the stored value.
+    Mutation[] increments =
+      new Mutation[] { new Increment(ROW).addColumn(OTHER_FAMILY, QUALIFIER, 1),
+        new Increment(ROW).addColumn(OTHER_FAMILY, QUALIFIER, 2) };
+    OperationStatus[] statuses = region.batchMutate(increments, false);
+    assertEquals(11, value(statuses[0].getResult(), OTHER_FAMILY));
+    assertEquals(12, value(statuses[1].getResult(), OTHER_FAMILY));
+    assertEquals(12, value(region.get(new Get(ROW)), OTHER_FAMILY));
+  }
+
+  @Test
+  public void testNotCoalescingWithAccessController() throws IOException {
+    IncrementCoalescer coalescer =
+      IncrementCoalescer.create(region, region.getTableDescriptor(), 100);
+    Increment increment = new Increment(ROW).addColumn(FAMILY, QUALIFIER, 1);
+    RegionCoprocessorHost host = mock(RegionCoprocessorHost.class);
+    region.setCoprocessorHost(host);
+    try {
+      assertTrue(coalescer.canCoalesce(increment, HConstants.NO_NONCE));
+      // The increments of a batch would all be checked as the user of the caller applying it.
+      RegionCoprocessorHost secureHost = mock(RegionCoprocessorHost.class);
+      when(secureHost.findCoprocessor(AccessController.class))
+        .thenReturn(mock(AccessController.class));
+      region.setCoprocessorHost(secureHost);
+      assertFalse(coalescer.canCoalesce(increment, HConstants.NO_NONCE));
+    } finally {
+      region.setCoprocessorHost(null);
+    }
+  }
+
+  @Test
+  public void testFailedIncrement() throws IOException {
+    IncrementCoalescer coalescer =
+      IncrementCoalescer.create(region, region.getTableDescriptor(), 100);
+    assertNotNull(coalescer);
+    Increment increment = new Increment(ROW).addColumn(FAMILY, QUALIFIER, 1);
+    assertTrue(coalescer.canCoalesce(increment, HConstants.NO_NONCE));
+    assertFalse(coalescer.canCoalesce(new Increment(ROW).addColumn(FAMILY, QUALIFIER, 1)
+      .addColumn(OTHER_FAMILY, QUALIFIER, 1), HConstants.NO_NONCE));
+    // The nonce of an increment is written to the WAL only when applied on its own.
+    assertFalse(coalescer.canCoalesce(increment, 1));
+
+    // A value which is not a long fails its increment only.
+    region.put(new Put(ROW).addColumn(FAMILY, Bytes.toBytes("s"), Bytes.toBytes("s")));
+    try {
+      region.increment(new Increment(ROW).addColumn(FAMILY, Bytes.toBytes("s"), 1));
+      fail("Increment of a string should fail");
+    } catch (DoNotRetryIOException e) {
+      // expected
+    }
+    assertEquals(1, value(region.increment(new Increment(ROW).addColumn(FAMILY, QUALIFIER, 1)),
+      FAMILY));
+    assertEquals(OperationStatusCode.SUCCESS,
+      region.batchMutate(new Mutation[] { new Increment(ROW).addColumn(FAMILY, QUALIFIER, 1) })[0]
+        .getOperationStatusCode());
+  }
+}
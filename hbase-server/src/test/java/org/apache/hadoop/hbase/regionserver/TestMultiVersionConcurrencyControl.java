@@ -17,9 +17,13 @@
  */
 package org.apache.hadoop.hbase.regionserver;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import org.apache.hadoop.hbase.HBaseClassTestRule;
 import org.apache.hadoop.hbase.testclassification.MediumTests;
 import org.apache.hadoop.hbase.testclassification.RegionServerTests;
@@ -137,4 +141,90 @@ public class TestMultiVersionConcurrencyControl {
       Assert.assertTrue(statuses[i].get());
     }
   }
+
+  /**
+   * Checks that the read point only covers completed writes, and that the completion actions run
+   * once each in the order of the write numbers.
+   */
+  @Test
+  public void testVisibility() throws Exception {
+    MultiVersionConcurrencyControl mvcc = new MultiVersionConcurrencyControl();
+    AtomicLong lastAction = new AtomicLong();
+    AtomicReference<String> error = new AtomicReference<>();
+
+    // A pending write keeps the following completed ones, more than the slots of the pending
+    // writes, invisible.
+    MultiVersionConcurrencyControl.WriteEntry first = mvcc.begin();
+    for (int i = 0; i < 1000; i++) {
+      MultiVersionConcurrencyControl.WriteEntry e = mvcc.begin();
+      long writeNumber = e.getWriteNumber();
+      e.attachCompletionAction(() -> lastAction.compareAndSet(writeNumber - 1, writeNumber));
+      Assert.assertFalse(mvcc.complete(e));
+    }
+    Assert.assertEquals(0, mvcc.getReadPoint());
+    first.attachCompletionAction(() -> lastAction.compareAndSet(0, 1));
+    Assert.assertTrue(mvcc.complete(first));
+    Assert.assertEquals(1001, mvcc.getReadPoint());
+    Assert.assertEquals(1001, lastAction.get());
+
+    int writers = 8;
+    int writesPerWriter = 5000;
+    long start = mvcc.getWritePoint();
+    AtomicIntegerArray completed = new AtomicIntegerArray(writers * writesPerWriter + 1);
+    AtomicBoolean finished = new AtomicBoolean(false);
+    List<Thread> threads = new ArrayList<>();
+    for (int w = 0; w < writers; w++) {
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < writesPerWriter; i++) {
+          MultiVersionConcurrencyControl.WriteEntry e =
+            i % 2 == 0 ? mvcc.begin() : mvcc.begin(() -> Thread.yield());
+          long writeNumber = e.getWriteNumber();
+          e.attachCompletionAction(() -> {
+            if (!lastAction.compareAndSet(writeNumber - 1, writeNumber)) {
+              error.compareAndSet(null,
+                "Action of " + writeNumber + " ran after the one of " + lastAction.get());
+            }
+          });
+          if (ThreadLocalRandom.current().nextInt(10) == 0) {
+            Thread.yield();
+          }
+          completed.set((int) (writeNumber - start), 1);
+          if (i % 3 == 0) {
+            mvcc.complete(e);
+          } else {
+            mvcc.completeAndWait(e);
+            if (mvcc.getReadPoint() < writeNumber) {
+              error.compareAndSet(null, "Write " + writeNumber + " not visible after wait");
+            }
+          }
+        }
+      }));
+    }
+    Thread reader = new Thread(() -> {
+      long checked = start;
+      while (!finished.get()) {
+        long readPoint = mvcc.getReadPoint();
+        if (readPoint < checked) {
+          error.compareAndSet(null, "Read point went back from " + checked + " to " + readPoint);
+        }
+        for (; checked < readPoint; checked++) {
+          if (completed.get((int) (checked + 1 - start)) == 0) {
+            error.compareAndSet(null, "Read point " + readPoint + " covers pending " + checked);
+          }
+        }
+        Thread.yield();
+      }
+    });
+    reader.start();
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    finished.set(true);
+    reader.join();
+    Assert.assertNull(error.get());
+    // The writers not waiting for their last writes, the last one to complete made them visible.
+    Assert.assertEquals(start + writers * writesPerWriter, mvcc.getReadPoint());
+    Assert.assertEquals(mvcc.getReadPoint(), lastAction.get());
+  }
 }
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RegionInfoBuilder;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.monitoring.MonitoredTask;
+import org.apache.hadoop.hbase.regionserver.throttle.ThroughputController;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests that the stores of a region write their flush files concurrently when
+ * {@link HRegion#FLUSH_STORES_THREADS_MAX_KEY} is above 1.
+ */
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestParallelStoreFlush {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestParallelStoreFlush.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+  private static final byte[][] FAMILIES =
+    { Bytes.toBytes("f1"), Bytes.toBytes("f2"), Bytes.toBytes("f3") };
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final int ROWS = 100;
+
+  /** Counted down by the flush of each store, which waits for the flushes of all other stores. */
+  private static volatile CountDownLatch flushing;
+
+  public static class WaitForAllStoresFlusher extends DefaultStoreFlusher {
+
+    public WaitForAllStoresFlusher(Configuration conf, HStore store) {
+      super(conf, store);
+    }
+
+    @Override
+    public List<Path> flushSnapshot(MemStoreSnapshot snapshot, long cacheFlushId,
+      MonitoredTask status, ThroughputController throughputController,
+      FlushLifeCycleTracker tracker, Consumer<Path> writerCreationTracker) throws IOException {
+      CountDownLatch latch = flushing;
+      latch.countDown();
+      try {
+        if (!latch.await(30, TimeUnit.SECONDS)) {
+          throw new IOException("Stores not flushed concurrently");
+        }
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      return super.flushSnapshot(snapshot, cacheFlushId, status, throughputController, tracker,
+        writerCreationTracker);
+    }
+  }
+
+  private HRegion region;
+
+  @Before
+  public void setUp() throws IOException {
+    Configuration conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.setInt(HRegion.FLUSH_STORES_THREADS_MAX_KEY, FAMILIES.length);
+    conf.set(DefaultStoreEngine.DEFAULT_STORE_FLUSHER_CLASS_KEY,
+      WaitForAllStoresFlusher.class.getName());
+    TableDescriptorBuilder builder =
+      TableDescriptorBuilder.newBuilder(TableName.valueOf("TestParallelStoreFlush"));
+    for (byte[] family : FAMILIES) {
+      builder.setColumnFamily(ColumnFamilyDescriptorBuilder.of(family));
+    }
+    TableDescriptor td = builder.build();
+    region = HBaseTestingUtil.createRegionAndWAL(
+      RegionInfoBuilder.newBuilder(td.getTableName()).build(),
+      TEST_UTIL.getDataTestDir("TestParallelStoreFlush"), conf, td);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    HBaseTestingUtil.closeRegionAndWAL(region);
+  }
+
+  private void put(int round) throws IOException {
+    for (int i = 0; i < ROWS; i++) {
+      Put put = new Put(Bytes.toBytes(i));
+      for (byte[] family : FAMILIES) {
+        put.addColumn(family, QUALIFIER, Bytes.toBytes(round));
+      }
+      region.put(put);
+    }
+  }
+
+  @Test
+  public void testFlush() throws IOException {
+    for (int round = 1; round <= 2; round++) {
+      put(round);
+      flushing = new CountDownLatch(FAMILIES.length);
+      assertTrue(region.flush(true).isFlushSucceeded());
+      assertEquals(0, flushing.getCount());
+      assertEquals(0, region.getMemStoreDataSize());
+      for (HStore store : region.getStores()) {
+        assertEquals(round, store.getStorefilesCount());
+        assertTrue(store.getFlushTime() >= 0);
+      }
+      for (int i = 0; i < ROWS; i++) {
+        Result result = region.get(new Get(Bytes.toBytes(i)));
+        for (byte[] family : FAMILIES) {
+          assertEquals(round, Bytes.toInt(result.getValue(family, QUALIFIER)));
+        }
+      }
+    }
+  }
+}
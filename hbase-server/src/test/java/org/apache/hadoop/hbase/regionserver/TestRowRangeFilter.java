@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFileContext;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.io.hfile.ReaderContext;
+import org.apache.hadoop.hbase.io.hfile.ReaderContextBuilder;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the {@link RowRangeFilter} of store files.
+ */
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestRowRangeFilter {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestRowRangeFilter.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+  private static final byte[] FAMILY = Bytes.toBytes("family");
+
+  private static RowRangeFilter build(int prefixLength, int maxEntries, String... rows)
+    throws Exception {
+    RowRangeFilter.Builder builder = new RowRangeFilter.Builder(prefixLength, maxEntries);
+    for (String row : rows) {
+      builder.append(new KeyValue(Bytes.toBytes(row), FAMILY, FAMILY, 1L, FAMILY));
+      builder.append(new KeyValue(Bytes.toBytes(row), FAMILY, FAMILY, 0L, FAMILY));
+    }
+    byte[] bytes = builder.toBytes();
+    return bytes == null ? null : RowRangeFilter.parseFrom(bytes);
+  }
+
+  private static boolean mayContain(RowRangeFilter filter, String lower, String upper,
+    boolean upperInclusive) {
+    return filter.mayContain(Bytes.toBytes(lower), Bytes.toBytes(upper), upperInclusive);
+  }
+
+  @Test
+  public void testRanges() throws Exception {
+    RowRangeFilter filter = build(4, 100, "ab", "abcd1", "abcd2", "b", "dddd");
+    assertEquals(4, filter.getPrefixLength());
+    assertEquals(4, filter.getCount());
+    assertTrue(mayContain(filter, "", "", false));
+    assertTrue(mayContain(filter, "a", "ab", true));
+    assertFalse(mayContain(filter, "a", "ab", false));
+    assertTrue(mayContain(filter, "abcd", "abcd", true));
+    // Only the truncated prefix is known, abcd0 to abcd9 may be in the file.
+    assertTrue(mayContain(filter, "abcd5", "abcd6", false));
+    assertFalse(mayContain(filter, "abce", "b", false));
+    assertTrue(mayContain(filter, "abce", "b", true));
+    assertFalse(mayContain(filter, "c", "dddd", false));
+    assertTrue(mayContain(filter, "c", "ddddd", false));
+    assertTrue(mayContain(filter, "c", "", false));
+    assertFalse(mayContain(filter, "ddde", "", false));
+
+    assertTrue(filter.mayContain(new Scan(new Get(Bytes.toBytes("b")))));
+    assertFalse(filter.mayContain(new Scan(new Get(Bytes.toBytes("c")))));
+    assertFalse(filter.mayContain(reversedScan("cz", "c")));
+    assertTrue(filter.mayContain(reversedScan("dz", "c")));
+  }
+
+  @Test
+  public void testShortening() throws Exception {
+    RowRangeFilter filter = build(4, 3, "aa1", "aa2", "ab1", "ab2", "b");
+    // Shortened down to 2 bytes to keep no more than 3 prefixes.
+    assertEquals(2, filter.getPrefixLength());
+    assertEquals(3, filter.getCount());
+    assertTrue(mayContain(filter, "aa3", "aa4", false));
+    assertFalse(mayContain(filter, "ac", "b", false));
+
+    assertNull(build(2, 1, "a", "b"));
+  }
+
+  @Test
+  public void testNoFalseNegatives() throws Exception {
+    Random rand = new Random(12345);
+    NavigableSet<String> rows = new TreeSet<>();
+    for (int i = 0; i < 1000; i++) {
+      // Clustered rows, with no row in every other hundred.
+      int row = rand.nextInt(25) * 200 + rand.nextInt(100);
+      rows.add(String.format("%04d", row) + (char) ('a' + rand.nextInt(26)));
+    }
+    RowRangeFilter filter = build(4, 200, rows.toArray(new String[0]));
+    assertTrue(filter.getPrefixLength() < 4);
+    int skipped = 0;
+    for (int i = 0; i < 5000; i++) {
+      String lower = String.format("%04d", i);
+      String upper = String.format("%04d", i + 1);
+      boolean mayContain = mayContain(filter, lower, upper, false);
+      if (!rows.subSet(lower, true, upper, false).isEmpty()) {
+        assertTrue("False negative for " + lower, mayContain);
+      } else if (!mayContain) {
+        skipped++;
+      }
+    }
+    assertTrue(skipped > 0);
+  }
+
+  @Test
+  public void testStoreFileScanner() throws Exception {
+    Configuration conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.setBoolean(RowRangeFilter.ENABLED_KEY, true);
+    FileSystem fs = FileSystem.getLocal(conf);
+    Path dir = TEST_UTIL.getDataTestDir("TestRowRangeFilter");
+    fs.mkdirs(dir);
+    Path f = StoreFileWriter.getUniqueFile(fs, dir);
+    CacheConfig cacheConf = new CacheConfig(conf);
+    HFileContext meta = new HFileContextBuilder().withBlockSize(8192).build();
+    StoreFileWriter writer = new StoreFileWriter.Builder(conf, cacheConf, fs).withFilePath(f)
+      .withFileContext(meta).build();
+    try {
+      // Two series with a gap in time in each.
+      for (String series : new String[] { "host0001", "host0002" }) {
+        for (int i = 0; i < 100; i++) {
+          byte[] row = Bytes.toBytes(series + String.format("%010d", i < 50 ? i : i * 1000000));
+          writer.append(new KeyValue(row, FAMILY, FAMILY, 1L, FAMILY));
+        }
+      }
+    } finally {
+      writer.close();
+    }
+
+    ReaderContext context = new ReaderContextBuilder().withFileSystemAndPath(fs, f).build();
+    StoreFileInfo storeFileInfo = StoreFileInfo.createStoreFileInfoForHFile(conf, fs, f, true);
+    storeFileInfo.initHFileInfo(context);
+    StoreFileReader reader = storeFileInfo.createReader(context, cacheConf);
+    storeFileInfo.getHFileInfo().initMetaAndIndex(reader.getHFileReader());
+    reader.loadFileInfo();
+    StoreFileScanner scanner = reader.getStoreFileScanner(false, false, false, 0, 0, false);
+    HStore store = mock(HStore.class);
+    when(store.getColumnFamilyDescriptor()).thenReturn(ColumnFamilyDescriptorBuilder.of(FAMILY));
+    try {
+      assertTrue(shouldUseScanner(scanner, store, "host0001", "host0002"));
+      assertTrue(shouldUseScanner(scanner, store, "host00020000000010", "host00020000000011"));
+      // Within the first and last keys of the file, but with no row.
+      assertFalse(shouldUseScanner(scanner, store, "host00010001", "host00010049"));
+      assertFalse(shouldUseScanner(scanner, store, "host00015", "host0002"));
+      assertTrue(scanner.shouldUseScanner(reversedScan("host0003", "host00015"), store,
+        Long.MIN_VALUE));
+    } finally {
+      scanner.close();
+      reader.close(true);
+      fs.delete(f, true);
+    }
+  }
+
+  private static Scan reversedScan(String start, String stop) {
+    return new Scan().withStartRow(Bytes.toBytes(start)).withStopRow(Bytes.toBytes(stop))
+      .setReversed(true);
+  }
+
+  private static boolean shouldUseScanner(StoreFileScanner scanner, HStore store, String start,
+    String stop) {
+    Scan scan = new Scan().withStartRow(Bytes.toBytes(start)).withStopRow(Bytes.toBytes(stop));
+    return scanner.shouldUseScanner(scan, store, Long.MIN_VALUE);
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtil;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RegionInfoBuilder;
+import org.apache.hadoop.hbase.client.RowMutations;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.regionserver.Region.RowLock;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests the row locks of a region kept in stripes, with a single stripe so that all rows collide.
+ */
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestStripedRowLocks {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestStripedRowLocks.class);
+
+  private static final HBaseTestingUtil TEST_UTIL = new HBaseTestingUtil();
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+  private static final byte[] ROW1 = Bytes.toBytes("row1");
+  private static final byte[] ROW2 = Bytes.toBytes("row2");
+
+  private HRegion region;
+
+  @Before
+  public void setUp() throws IOException {
+    Configuration conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.setBoolean(HRegion.ROWLOCK_STRIPED_KEY, true);
+    conf.setInt(HRegion.ROWLOCK_STRIPES_KEY, 1);
+    conf.setInt("hbase.rowlock.wait.duration", 100);
+    TableDescriptor td = TableDescriptorBuilder.newBuilder(TableName.valueOf("TestStripedRowLocks"))
+      .setColumnFamily(ColumnFamilyDescriptorBuilder.of(FAMILY)).build();
+    region = HBaseTestingUtil.createRegionAndWAL(
+      RegionInfoBuilder.newBuilder(td.getTableName()).build(),
+      TEST_UTIL.getDataTestDir("TestStripedRowLocks"), conf, td);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    HBaseTestingUtil.closeRegionAndWAL(region);
+  }
+
+  private static CompletableFuture<RowLock> lockInOtherThread(HRegion region, byte[] row,
+    boolean readLock) {
+    CompletableFuture<RowLock> future = new CompletableFuture<>();
+    new Thread(() -> {
+      try {
+        RowLock lock = region.getRowLock(row, readLock);
+        lock.release();
+        future.complete(lock);
+      } catch (Throwable t) {
+        future.completeExceptionally(t);
+      }
+    }).start();
+    return future;
+  }
+
+  @Test
+  public void testLocks() throws Exception {
+    RowLock lock1 = region.getRowLock(ROW1, false);
+    // Another row of the same stripe is not blocked, the same row is.
+    lockInOtherThread(region, ROW2, false).get();
+    try {
+      lockInOtherThread(region, ROW1, true).get();
+      fail("Row should be locked");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IOException);
+    }
+    assertEquals(1, region.getRowLockContexts().size());
+    lock1.release();
+    assertTrue(region.getRowLockContexts().isEmpty());
+
+    // Read locks are shared.
+    RowLock read1 = region.getRowLock(ROW1, true);
+    RowLock read2 = lockInOtherThread(region, ROW1, true).get();
+    assertSame(read1, read2);
+    read1.release();
+    assertTrue(region.getRowLockContexts().isEmpty());
+
+    // Released contexts are reused for other rows, with their locks.
+    RowLock lock2 = region.getRowLock(ROW2, false);
+    HRegion.RowLockContext context2 = ((HRegion.RowLockImpl) lock2).getContext();
+    RowLock lock1Again = region.getRowLock(ROW1, false);
+    assertNotSame(context2, ((HRegion.RowLockImpl) lock1Again).getContext());
+    lock2.release();
+    lock1Again.release();
+    RowLock reused = region.getRowLock(ROW2, true);
+    assertSame(((HRegion.RowLockImpl) lock1Again).getContext(),
+      ((HRegion.RowLockImpl) reused).getContext());
+    reused.release();
+  }
+
+  @Test
+  public void testBatchMutate() throws IOException {
+    // The same row twice in a batch takes its read lock once.
+    Mutation[] puts = new Mutation[] { new Put(ROW1).addColumn(FAMILY, QUALIFIER, ROW1),
+      new Put(ROW1).addColumn(FAMILY, Bytes.toBytes("q2"), ROW1),
+      new Put(ROW2).addColumn(FAMILY, QUALIFIER, ROW2) };
+    region.batchMutate(puts);
+    assertTrue(region.getRowLockContexts().isEmpty());
+    assertEquals(2, region.get(new Get(ROW1)).size());
+    assertEquals(1, region.get(new Get(ROW2)).size());
+
+    // Atomic mutations take the write locks of all rows.
+    region.mutateRowsWithLocks(
+      Arrays.asList(new Put(ROW1).addColumn(FAMILY, QUALIFIER, ROW2),
+        new Put(ROW2).addColumn(FAMILY, QUALIFIER, ROW1)),
+      Arrays.asList(ROW1, ROW2), HConstants.NO_NONCE, HConstants.NO_NONCE);
+    assertTrue(region.getRowLockContexts().isEmpty());
+    assertEquals(0, Bytes.compareTo(ROW2, region.get(new Get(ROW1)).getValue(FAMILY, QUALIFIER)));
+
+    // The same row twice in an atomic batch takes its write lock twice, and releases it twice.
+    region.mutateRow(new RowMutations(ROW1).add(new Put(ROW1).addColumn(FAMILY, QUALIFIER, ROW1))
+      .add(new Delete(ROW1).addColumns(FAMILY, Bytes.toBytes("q2"))));
+    assertTrue(region.getRowLockContexts().isEmpty());
+    assertEquals(1, region.get(new Get(ROW1)).size());
+  }
+}
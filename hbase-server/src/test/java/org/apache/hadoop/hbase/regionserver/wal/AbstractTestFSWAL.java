@@ -23,6 +23,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
@@ -636,6 +637,48 @@ public abstract class AbstractTestFSWAL {
     }
   }
 
+  @Test
+  public void testFlushMovesRegionToAnotherWAL() throws IOException {
+    byte[] b = Bytes.toBytes("b");
+    TableDescriptor htd = TableDescriptorBuilder.newBuilder(TableName.valueOf("table"))
+      .setColumnFamily(ColumnFamilyDescriptorBuilder.of(b)).build();
+    RegionInfo hri = RegionInfoBuilder.newBuilder(htd.getTableName()).build();
+    byte[] encodedName = hri.getEncodedNameAsBytes();
+    try (
+      AbstractFSWAL<?> from = newWAL(FS, CommonFSUtils.getWALRootDir(CONF), DIR.toString(),
+        HConstants.HREGION_OLDLOGDIR_NAME, CONF, null, true, "from", null);
+      AbstractFSWAL<?> to = newWAL(FS, CommonFSUtils.getWALRootDir(CONF), DIR.toString(),
+        HConstants.HREGION_OLDLOGDIR_NAME, CONF, null, true, "to", null)) {
+      ChunkCreator.initialize(MemStoreLAB.CHUNK_SIZE_DEFAULT, false, 0, 0, 0, null,
+        MemStoreLAB.INDEX_CHUNK_SIZE_PERCENTAGE_DEFAULT);
+      TEST_UTIL.createLocalHRegion(hri, CONF, htd, from).close();
+      RegionServerServices rsServices = mock(RegionServerServices.class);
+      when(rsServices.getServerName()).thenReturn(ServerName.valueOf("localhost:12345", 123456));
+      when(rsServices.getConfiguration()).thenReturn(CONF);
+      when(rsServices.getWAL(hri)).thenReturn(from);
+      HRegion region =
+        HRegion.openHRegion(TEST_UTIL.getDataTestDir(), hri, htd, from, CONF, rsServices, null);
+      try {
+        region.put(new Put(b).addColumn(b, b, b));
+        assertNotEquals(HConstants.NO_SEQNUM, getEarliestMemStoreSeqNum(from, encodedName));
+
+        // The region server now wants the region on the other WAL, it moves there on flush.
+        when(rsServices.getWAL(hri)).thenReturn(to);
+        assertSame(from, region.getWAL());
+        region.flush(true);
+        assertSame(to, region.getWAL());
+        assertEquals(HConstants.NO_SEQNUM, getEarliestMemStoreSeqNum(from, encodedName));
+
+        // New edits are only accounted by the WAL the region moved to.
+        region.put(new Put(b).addColumn(b, b, b));
+        assertEquals(HConstants.NO_SEQNUM, getEarliestMemStoreSeqNum(from, encodedName));
+        assertNotEquals(HConstants.NO_SEQNUM, getEarliestMemStoreSeqNum(to, encodedName));
+      } finally {
+        region.close();
+      }
+    }
+  }
+
   public static long getEarliestMemStoreSeqNum(WAL wal, byte[] encodedRegionName) {
     if (wal != null) {
       if (wal instanceof AbstractFSWAL) {
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.wal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestGroupCommitController {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestGroupCommitController.class);
+
+  private static final long BATCH_SIZE = 64 * 1024;
+
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private static final long US = TimeUnit.MICROSECONDS.toNanos(1);
+
+  @Test
+  public void testCreate() {
+    Configuration conf = HBaseConfiguration.create();
+    assertNull(GroupCommitController.create(conf, BATCH_SIZE));
+    conf.setInt(GroupCommitController.MAX_SYNCS_PER_SECOND_KEY, 1000);
+    assertNotNull(GroupCommitController.create(conf, BATCH_SIZE));
+  }
+
+  @Test
+  public void testLatencyTarget() {
+    GroupCommitController controller = new GroupCommitController(10, 0, 2000, BATCH_SIZE);
+    long now = 1000 * MS;
+    // No sync request seen yet, nothing to wait for.
+    assertEquals(0, controller.getSyncDelayNs(now));
+
+    // Sync requests every 100us, well under the slack of the target: wait for the next one.
+    for (int i = 0; i < 10; i++) {
+      now += 100 * US;
+      controller.syncRequested(now);
+    }
+    assertEquals(100 * US, controller.getSyncDelayNs(now));
+    // The wait in progress shrinks until the sync.
+    assertEquals(40 * US, controller.getSyncDelayNs(now + 60 * US));
+    assertEquals(0, controller.getSyncDelayNs(now + 100 * US));
+    assertEquals(100 * US, controller.syncIssued(now + 100 * US));
+
+    // Sync requests every 5ms, more than the maximum wait: sync at once.
+    for (int i = 0; i < 20; i++) {
+      now += 5 * MS;
+      controller.syncRequested(now);
+    }
+    assertEquals(0, controller.getSyncDelayNs(now));
+    assertEquals(0, controller.syncIssued(now));
+  }
+
+  @Test
+  public void testWaitEndsOnRequest() {
+    GroupCommitController controller = new GroupCommitController(10, 0, 2000, BATCH_SIZE);
+    long now = 1000 * MS;
+    for (int i = 0; i < 10; i++) {
+      now += 100 * US;
+      controller.syncRequested(now);
+    }
+    assertEquals(100 * US, controller.getSyncDelayNs(now));
+    // The request waited for arrives early, sync at once.
+    controller.syncRequested(now + 30 * US);
+    assertEquals(0, controller.getSyncDelayNs(now + 30 * US));
+    assertEquals(30 * US, controller.syncIssued(now + 30 * US));
+
+    // Except for what the maximum number of syncs per second requires.
+    controller = new GroupCommitController(10, 100, 2000, BATCH_SIZE);
+    for (int i = 0; i < 10; i++) {
+      now += 100 * US;
+      controller.syncRequested(now);
+    }
+    controller.syncIssued(now);
+    assertEquals(10 * MS, controller.getSyncDelayNs(now));
+    controller.syncRequested(now + 30 * US);
+    assertEquals(10 * MS - 30 * US, controller.getSyncDelayNs(now + 30 * US));
+  }
+
+  @Test
+  public void testBatchSize() {
+    GroupCommitController controller = new GroupCommitController(10, 0, 2000, BATCH_SIZE);
+    assertEquals(BATCH_SIZE, controller.getBatchSize());
+    // Syncs slower than the target shrink the batch size, down to the minimum.
+    for (int i = 0; i < 1000; i++) {
+      controller.syncCompleted(20 * MS);
+    }
+    assertEquals(20 * MS, controller.getP99LatencyNs());
+    assertEquals(GroupCommitController.MIN_BATCH_SIZE, controller.getBatchSize());
+
+    // No slack left under the target, no wait.
+    controller.syncRequested(1000 * MS);
+    controller.syncRequested(1000 * MS + 100 * US);
+    assertEquals(0, controller.getSyncDelayNs(1000 * MS + 100 * US));
+
+    // Faster syncs grow it back, up to the configured one.
+    for (int i = 0; i < 1000; i++) {
+      controller.syncCompleted(1 * MS);
+    }
+    assertEquals(1 * MS, controller.getP99LatencyNs());
+    assertEquals(BATCH_SIZE, controller.getBatchSize());
+  }
+
+  @Test
+  public void testMaxSyncsPerSecond() {
+    GroupCommitController controller = new GroupCommitController(0, 100, 2000, BATCH_SIZE);
+    long now = 1000 * MS;
+    assertEquals(0, controller.getSyncDelayNs(now));
+    controller.syncIssued(now);
+    // The next sync waits for the 10ms interval, beyond the maximum wait for the latency target.
+    assertEquals(10 * MS, controller.getSyncDelayNs(now));
+    assertEquals(7 * MS, controller.getSyncDelayNs(now + 3 * MS));
+    assertEquals(10 * MS, controller.syncIssued(now + 10 * MS));
+    assertEquals(0, controller.getSyncDelayNs(now + 30 * MS));
+  }
+}
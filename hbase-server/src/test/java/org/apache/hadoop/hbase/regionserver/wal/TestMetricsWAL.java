@@ -75,6 +75,9 @@ public class TestMetricsWAL {
     MetricsWAL metricsWAL = new MetricsWAL(source);
     metricsWAL.postSync(nanos, 1);
     verify(source, times(1)).incrementSyncTime(145);
+    verify(source, times(1)).incrementSyncBatchSize(1);
+    metricsWAL.preSync(TimeUnit.MICROSECONDS.toNanos(250));
+    verify(source, times(1)).incrementSyncWaitTime(250);
   }
 
   @Test
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.wal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.wal.WALEdit;
+import org.apache.hadoop.hbase.wal.WALEditInternalHelper;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestWALValueDictionaryTrainer {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestWALValueDictionaryTrainer.class);
+
+  private static final TableName TABLE = TableName.valueOf("table");
+  private static final TableName OTHER_TABLE = TableName.valueOf("other");
+
+  private static WALEdit edit(String value) {
+    WALEdit edit = new WALEdit();
+    WALEditInternalHelper.addExtendedCell(edit, new KeyValue(Bytes.toBytes("row"),
+      Bytes.toBytes("f"), Bytes.toBytes("q"), Bytes.toBytes(value)));
+    return edit;
+  }
+
+  private static String sample(int i) {
+    return String.format("{\"user\":\"user-%04d\",\"status\":\"active\"}", i);
+  }
+
+  @Test
+  public void testCreate() {
+    Configuration conf = HBaseConfiguration.create();
+    assertNull(WALValueDictionaryTrainer.create(conf));
+    // Requires the value compression.
+    conf.setBoolean(WALValueDictionaryTrainer.ENABLE_WAL_VALUE_COMPRESSION_DICTIONARY, true);
+    assertNull(WALValueDictionaryTrainer.create(conf));
+    conf.setBoolean(HConstants.ENABLE_WAL_COMPRESSION, true);
+    conf.setBoolean(CompressionContext.ENABLE_WAL_VALUE_COMPRESSION, false);
+    assertNull(WALValueDictionaryTrainer.create(conf));
+    assertFalse(WALValueDictionaryTrainer.supportsDictionaries(Compression.Algorithm.NONE));
+  }
+
+  @Test
+  public void testBuild() {
+    WALValueDictionaryTrainer trainer = new WALValueDictionaryTrainer(1024, 1, 1);
+    for (int i = 0; i < 100; i++) {
+      trainer.sample(TABLE, edit(sample(i % 50)));
+      if (i % 10 == 0) {
+        trainer.sample(OTHER_TABLE, edit(sample(i)));
+      }
+    }
+    assertTrue(trainer.getDictionaries().isEmpty());
+    trainer.build();
+    // Only the table appending the most has a dictionary.
+    Map<TableName, byte[]> dictionaries = trainer.getDictionaries();
+    assertEquals(1, dictionaries.size());
+    String dictionary = Bytes.toString(dictionaries.get(TABLE));
+    assertTrue(dictionary.length() <= 1024);
+    // The distinct recent samples, the newest last.
+    assertTrue(dictionary.endsWith(sample(48) + sample(49)));
+    assertEquals(dictionary.indexOf(sample(49)), dictionary.lastIndexOf(sample(49)));
+
+    // The dictionaries are kept until the next build, the tables which did not append since the
+    // last build are forgotten.
+    trainer.sample(OTHER_TABLE, edit(sample(0)));
+    assertEquals(dictionaries, trainer.getDictionaries());
+    trainer.build();
+    assertEquals(Collections.singleton(OTHER_TABLE), trainer.getDictionaries().keySet());
+    trainer.build();
+    assertTrue(trainer.getDictionaries().isEmpty());
+  }
+
+  @Test
+  public void testSampling() {
+    WALValueDictionaryTrainer trainer = new WALValueDictionaryTrainer(1024, 8, 1);
+    // The small values are not sampled.
+    for (int i = 0; i < 100; i++) {
+      trainer.sample(TABLE, edit("small"));
+    }
+    trainer.build();
+    assertTrue(trainer.getDictionaries().isEmpty());
+    // Too few samples for a dictionary.
+    for (int i = 0; i < 5; i++) {
+      trainer.sample(TABLE, edit(sample(i)));
+    }
+    trainer.build();
+    assertTrue(trainer.getDictionaries().isEmpty());
+
+    // One in four entries is sampled.
+    trainer = new WALValueDictionaryTrainer(1024, 8, 4);
+    for (int i = 0; i < 1000; i++) {
+      trainer.sample(TABLE, edit(sample(i)));
+    }
+    trainer.build();
+    String dictionary = Bytes.toString(trainer.getDictionaries().get(TABLE));
+    assertTrue(dictionary.length() > 1024 - sample(0).length());
+    assertFalse(dictionary.contains(sample(0)));
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+
+import org.apache.hbase.thirdparty.org.apache.commons.cli.CommandLine;
+import org.apache.hbase.thirdparty.org.apache.commons.cli.Option;
+
+/**
+ * Compares the standard Bloom filter chunks of
+ * {@link org.apache.hadoop.hbase.io.hfile.CompoundBloomFilter} with blocked ones, see
+ * {@link BloomFilterFactory#IO_STOREFILE_BLOOM_BLOCKED}: the size per key, the false positive rate
+ * and the latency of lookups of present and absent keys, over as many chunks as a large store file
+ * has, so that they don't all fit in the CPU caches.
+ */
+public class BloomFilterPerformanceEvaluation extends AbstractHBaseTool {
+
+  // Command line options and defaults.
+  public static final int DEFAULT_NUM_CHUNKS = 512;
+  public static final Option NUM_CHUNKS_OPTION =
+    new Option("chunks", true, "Number of Bloom chunks. Default: " + DEFAULT_NUM_CHUNKS);
+  public static final int DEFAULT_CHUNK_SIZE = 128 * 1024;
+  public static final Option CHUNK_SIZE_OPTION = new Option("chunk_size", true,
+    "Size of a Bloom chunk in bytes. Default: " + DEFAULT_CHUNK_SIZE);
+  public static final float DEFAULT_ERROR_RATE = 0.01f;
+  public static final Option ERROR_RATE_OPTION =
+    new Option("error_rate", true, "Target error rate. Default: " + DEFAULT_ERROR_RATE);
+  public static final int DEFAULT_KEY_LENGTH = 32;
+  public static final Option KEY_LENGTH_OPTION =
+    new Option("key_length", true, "Length of the keys. Default: " + DEFAULT_KEY_LENGTH);
+  public static final int DEFAULT_NUM_LOOKUPS = 10_000_000;
+  public static final Option NUM_LOOKUPS_OPTION =
+    new Option("lookups", true, "Number of lookups. Default: " + DEFAULT_NUM_LOOKUPS);
+
+  private int numChunks = DEFAULT_NUM_CHUNKS;
+  private int chunkSize = DEFAULT_CHUNK_SIZE;
+  private float errorRate = DEFAULT_ERROR_RATE;
+  private int keyLength = DEFAULT_KEY_LENGTH;
+  private int numLookups = DEFAULT_NUM_LOOKUPS;
+
+  @Override
+  protected void addOptions() {
+    addOption(NUM_CHUNKS_OPTION);
+    addOption(CHUNK_SIZE_OPTION);
+    addOption(ERROR_RATE_OPTION);
+    addOption(KEY_LENGTH_OPTION);
+    addOption(NUM_LOOKUPS_OPTION);
+  }
+
+  @Override
+  protected void processOptions(CommandLine cmd) {
+    numChunks = getOptionAsInt(cmd, NUM_CHUNKS_OPTION.getOpt(), DEFAULT_NUM_CHUNKS);
+    chunkSize = getOptionAsInt(cmd, CHUNK_SIZE_OPTION.getOpt(), DEFAULT_CHUNK_SIZE);
+    errorRate = Float.parseFloat(
+      cmd.getOptionValue(ERROR_RATE_OPTION.getOpt(), String.valueOf(DEFAULT_ERROR_RATE)));
+    keyLength = getOptionAsInt(cmd, KEY_LENGTH_OPTION.getOpt(), DEFAULT_KEY_LENGTH);
+    numLookups = getOptionAsInt(cmd, NUM_LOOKUPS_OPTION.getOpt(), DEFAULT_NUM_LOOKUPS);
+  }
+
+  private byte[] key(int chunk, long i, boolean present) {
+    byte[] key = new byte[keyLength];
+    // Absent keys differ from the present ones by their first byte.
+    key[0] = (byte) (present ? 0 : 1);
+    Bytes.putInt(key, 1, chunk);
+    Bytes.putLong(key, 5, i);
+    return key;
+  }
+
+  private void evaluate(String name, boolean blocked) {
+    BloomFilterChunk[] chunks = new BloomFilterChunk[numChunks];
+    ByteBuff[] buffs = new ByteBuff[numChunks];
+    long numKeys = 0;
+    long start = System.nanoTime();
+    for (int c = 0; c < numChunks; c++) {
+      chunks[c] = BloomFilterUtil.createBySize(chunkSize, errorRate, Hash.MURMUR_HASH3, 0,
+        BloomType.ROW, blocked);
+      chunks[c].allocBloom();
+      for (long i = 0; i < chunks[c].getMaxKeys(); i++) {
+        byte[] key = key(c, i, true);
+        chunks[c].add(key, 0, key.length);
+      }
+      numKeys += chunks[c].getKeyCount();
+      buffs[c] = ByteBuff.wrap(ByteBuffer.wrap(chunks[c].bloom.array()));
+    }
+    long addNanos = System.nanoTime() - start;
+
+    Random rand = new Random(12345);
+    byte[][] keys = new byte[numLookups][];
+    int[] keyChunks = new int[numLookups];
+    for (boolean present : new boolean[] { true, false }) {
+      for (int i = 0; i < numLookups; i++) {
+        keyChunks[i] = rand.nextInt(numChunks);
+        keys[i] = key(keyChunks[i], rand.nextInt((int) chunks[keyChunks[i]].getMaxKeys()), present);
+      }
+      long found = 0;
+      start = System.nanoTime();
+      for (int i = 0; i < numLookups; i++) {
+        BloomFilterChunk chunk = chunks[keyChunks[i]];
+        if (
+          BloomFilterUtil.contains(keys[i], 0, keys[i].length, buffs[keyChunks[i]], 0,
+            (int) chunk.getByteSize(), chunk.hash, chunk.getHashCount(), blocked)
+        ) {
+          found++;
+        }
+      }
+      long lookupNanos = System.nanoTime() - start;
+
+      System.out.println("******************************************");
+      System.out.println("Bloom               : " + name);
+      System.out.println("Present keys        : " + present);
+      System.out.println("Keys                : " + numKeys);
+      System.out.println("Hash count          : " + chunks[0].getHashCount());
+      System.out.println("Bits per key        : " + chunkSize * 8.0 * numChunks / numKeys);
+      System.out.println("Add ns/op           : " + (double) addNanos / numKeys);
+      System.out.println("Contains ns/op      : " + (double) lookupNanos / numLookups);
+      System.out.println("Positive rate       : " + (double) found / numLookups);
+      System.out.println("******************************************");
+      System.out.println("Raw format for scripts");
+      System.out.println(String.format(
+        "RESULT [bloom=%s, present=%s, %s=%s, %s=%s, keys=%s, hash_count=%s, bits_per_key=%s, "
+          + "add_ns=%s, contains_ns=%s, positive_rate=%s]",
+        name, present, CHUNK_SIZE_OPTION.getOpt(), chunkSize, ERROR_RATE_OPTION.getOpt(),
+        errorRate, numKeys, chunks[0].getHashCount(), chunkSize * 8.0 * numChunks / numKeys,
+        addNanos / numKeys, lookupNanos / numLookups, (double) found / numLookups));
+    }
+  }
+
+  @Override
+  protected int doWork() throws Exception {
+    // Twice each, the first run warming up the JIT.
+    for (int i = 0; i < 2; i++) {
+      evaluate("standard", false);
+      evaluate("blocked", true);
+    }
+    return 0;
+  }
+
+  public static void main(String[] args) throws IOException {
+    BloomFilterPerformanceEvaluation tool = new BloomFilterPerformanceEvaluation();
+    tool.setConf(HBaseConfiguration.create());
+    tool.run(args);
+  }
+}
@@ -26,6 +26,7 @@ import java.io.DataOutputStream;
 import java.nio.ByteBuffer;
 import org.apache.hadoop.hbase.HBaseClassTestRule;
 import org.apache.hadoop.hbase.nio.MultiByteBuff;
+import org.apache.hadoop.hbase.regionserver.BloomType;
 import org.apache.hadoop.hbase.testclassification.MiscTests;
 import org.apache.hadoop.hbase.testclassification.SmallTests;
 import org.junit.ClassRule;
@@ -191,6 +192,54 @@ public class TestBloomFilterChunk {
     assertTrue(Math.abs(bitSize2 - bitSize) * 1.0 / bitSize < 1e-5);
   }
 
+  @Test
+  public void testBlockedBloom() throws Exception {
+    double errorRate = 0.01;
+    BloomFilterChunk b = BloomFilterUtil.createBySize(64 * 1024, errorRate, Hash.MURMUR_HASH, 3,
+      BloomType.ROW, true);
+    assertTrue(b.isBlocked());
+    assertEquals(0, b.getByteSize() % BloomFilterUtil.BLOCK_BYTES);
+    // Slightly fewer keys than a standard Bloom filter for the same error rate.
+    long standardMaxKeys =
+      BloomFilterUtil.computeMaxKeys(b.getByteSize() * 8, errorRate, b.getHashCount());
+    assertTrue(b.getMaxKeys() < standardMaxKeys);
+    assertTrue(b.getMaxKeys() > standardMaxKeys * 0.9);
+    b.allocBloom();
+    // A tenth of the keys, so that the filter folds by 8.
+    int numKeys = (int) b.getMaxKeys() / 10;
+    for (int i = 0; i < numKeys; ++i) {
+      byte[] ib = Bytes.toBytes(i);
+      b.add(ib, 0, ib.length);
+    }
+    b.compactBloom();
+    assertEquals(8 * 1024, b.getByteSize());
+    assertTrue(b.actualErrorRate() <= errorRate);
+
+    int falsePositives = 0;
+    for (int i = 0; i < 2 * numKeys; ++i) {
+      byte[] bytes = Bytes.toBytes(i);
+      if (
+        BloomFilterUtil.contains(bytes, 0, bytes.length, new MultiByteBuff(b.bloom), 0,
+          (int) b.byteSize, b.hash, b.hashCount, true)
+      ) {
+        if (i >= numKeys) falsePositives++;
+      } else {
+        assertFalse(i < numKeys);
+      }
+    }
+    assertTrue("False positives: " + falsePositives, falsePositives <= numKeys * errorRate);
+  }
+
+  @Test
+  public void testBlockedErrorRate() {
+    long bitSize = 8 * 128 * 1024;
+    long maxKeys = BloomFilterUtil.computeBlockedMaxKeys(bitSize, 0.01, 7);
+    assertTrue(BloomFilterUtil.actualBlockedErrorRate(maxKeys, bitSize, 7) <= 0.01);
+    assertTrue(BloomFilterUtil.actualBlockedErrorRate(maxKeys + 1, bitSize, 7) > 0.01);
+    assertTrue(BloomFilterUtil.actualBlockedErrorRate(maxKeys, bitSize, 7)
+        > BloomFilterUtil.actualErrorRate(maxKeys, bitSize, 7));
+  }
+
   @Test
   public void testFoldableByteSize() {
     assertEquals(128, BloomFilterUtil.computeFoldableByteSize(1000, 5));
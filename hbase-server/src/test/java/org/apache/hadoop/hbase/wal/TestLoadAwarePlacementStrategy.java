@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.wal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.RegionInfo;
+import org.apache.hadoop.hbase.client.RegionInfoBuilder;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.hbase.util.ManualEnvironmentEdge;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.hadoop.hbase.shaded.protobuf.ProtobufUtil;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.WALProtos.RegionEventDescriptor;
+
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestLoadAwarePlacementStrategy {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestLoadAwarePlacementStrategy.class);
+
+  private static final TableName TABLE = TableName.valueOf("TestLoadAwarePlacementStrategy");
+
+  private static final String DEDICATED_GROUP = "provider.regiongroup-dedicated-0";
+
+  private final ManualEnvironmentEdge clock = new ManualEnvironmentEdge();
+
+  private final List<String> flushed = new ArrayList<>();
+
+  private LoadAwarePlacementStrategy strategy;
+
+  @Before
+  public void setUp() {
+    clock.setValue(1000);
+    EnvironmentEdgeManager.injectEdge(clock);
+    init(1);
+  }
+
+  private void init(int dedicatedGroups) {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setInt(BoundedGroupingStrategy.NUM_REGION_GROUPS, 2);
+    conf.setInt(LoadAwarePlacementStrategy.MAX_DEDICATED_GROUPS, dedicatedGroups);
+    conf.setFloat(LoadAwarePlacementStrategy.DEDICATED_LOAD_FRACTION, 0.5f);
+    strategy = new LoadAwarePlacementStrategy();
+    strategy.init(conf, "provider");
+    strategy.setFlushRequester(flushed::add);
+  }
+
+  @After
+  public void tearDown() {
+    EnvironmentEdgeManager.reset();
+  }
+
+  private static RegionInfo region(int i) {
+    return RegionInfoBuilder.newBuilder(TABLE).setStartKey(Bytes.toBytes(i)).build();
+  }
+
+  private String group(RegionInfo region) {
+    return strategy.group(region.getEncodedNameAsBytes(), TABLE.getNamespace());
+  }
+
+  private void append(RegionInfo region, long bytes) throws IOException {
+    strategy.getListener(group(region)).postAppend(bytes, 0,
+      new WALKeyImpl(region.getEncodedNameAsBytes(), TABLE, 0), new WALEdit());
+  }
+
+  private void update() {
+    clock.incValue(1000);
+    strategy.updateLoads();
+  }
+
+  private void close(RegionInfo region) throws IOException {
+    RegionEventDescriptor desc = ProtobufUtil.toRegionEventDescriptor(
+      RegionEventDescriptor.EventType.REGION_CLOSE, region, 1,
+      ServerName.valueOf("server", 1, 1), Collections.emptyMap());
+    strategy.getListener(group(region)).postAppend(100, 0,
+      new WALKeyImpl(region.getEncodedNameAsBytes(), TABLE, 0),
+      WALEdit.createRegionEventWALEdit(region, desc));
+  }
+
+  @Test
+  public void testPlacement() throws IOException {
+    RegionInfo hot = region(0);
+    RegionInfo cold1 = region(1);
+    RegionInfo cold2 = region(2);
+    RegionInfo cold3 = region(3);
+    // Regions which did not append yet spread over the groups.
+    String hotGroup = group(hot);
+    String cold1Group = group(cold1);
+    assertNotEquals(hotGroup, cold1Group);
+    // A region keeps its group while open.
+    assertEquals(hotGroup, group(hot));
+
+    append(hot, 100_000);
+    append(cold1, 1_000);
+    update();
+    // The hot region moves to the dedicated group, by a flush of all its stores.
+    assertEquals(DEDICATED_GROUP, group(hot));
+    assertEquals(Collections.singletonList(hot.getEncodedName()), flushed);
+    // The next regions go to the least loaded group.
+    assertEquals(hotGroup, group(cold2));
+    assertEquals(hotGroup, group(cold3));
+
+    // Once closed, the hot region is placed in the dedicated group again when reopened.
+    close(hot);
+    assertEquals(DEDICATED_GROUP, group(hot));
+
+    // The dedicated group is taken, another hot region goes to the least loaded group.
+    append(cold2, 500_000);
+    update();
+    assertEquals(hotGroup, group(cold2));
+    close(cold2);
+    assertEquals(hotGroup, group(cold2));
+    assertEquals(1, flushed.size());
+  }
+
+  @Test
+  public void testRebalance() throws IOException {
+    init(0);
+    RegionInfo[] regions = { region(0), region(1), region(2), region(3) };
+    for (RegionInfo region : regions) {
+      group(region);
+    }
+    assertEquals("provider.regiongroup-0", group(regions[0]));
+    assertEquals("provider.regiongroup-0", group(regions[2]));
+    append(regions[0], 3_000);
+    append(regions[1], 500);
+    append(regions[2], 2_000);
+    append(regions[3], 500);
+    update();
+    // The region evening the loads best moves to the least loaded group.
+    assertEquals("provider.regiongroup-1", group(regions[2]));
+    assertEquals(Collections.singletonList(regions[2].getEncodedName()), flushed);
+
+    // Balanced, no region moves anymore.
+    append(regions[0], 3_000);
+    append(regions[1], 500);
+    append(regions[2], 2_000);
+    append(regions[3], 500);
+    update();
+    assertEquals(1, flushed.size());
+  }
+
+  @Test
+  public void testNoRegion() {
+    // Callers wanting any WAL do not take a slot in a group.
+    assertEquals("provider.regiongroup-0", strategy.group(HConstants.EMPTY_BYTE_ARRAY, null));
+    assertEquals("provider.regiongroup-0", strategy.group(null, null));
+    assertEquals("provider.regiongroup-0", group(region(0)));
+    assertEquals("provider.regiongroup-1", group(region(1)));
+  }
+
+  @Test
+  public void testIdleRelease() throws IOException {
+    init(0);
+    RegionInfo idle = region(0);
+    String idleGroup = group(idle);
+    assertEquals("provider.regiongroup-0", idleGroup);
+    // Closed without a close marker, or open but idle, the region gets released.
+    for (int i = 0; i < LoadAwarePlacementStrategy.IDLE_UPDATES; i++) {
+      update();
+    }
+    assertEquals(idleGroup, group(region(1)));
+    // Appending again, it is accounted to the group of its WAL.
+    strategy.getListener(idleGroup).postAppend(1000, 0,
+      new WALKeyImpl(idle.getEncodedNameAsBytes(), TABLE, 0), new WALEdit());
+    assertEquals(idleGroup, group(idle));
+    update();
+    assertEquals("provider.regiongroup-1", group(region(2)));
+  }
+}